@@ -29,6 +29,7 @@ import com.frostwire.util.StringUtils;
 
 import java.text.Normalizer;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author gubatron
@@ -62,6 +63,10 @@ public final class LocalSearchEngine {
 
     private LocalSearchEngine() {
         this.manager = SearchManager.getInstance();
+        // fewer cores and a slower network than a desktop
+        this.manager.setGlobalBudget(4);
+        this.manager.setEngineBudget(2);
+        this.manager.setTokenTimeout(TimeUnit.SECONDS.toMillis(90));
         this.manager.setListener(new SearchListener() {
             @Override
             public void onResults(long token, List<? extends SearchResult> results) {
@@ -28,7 +28,6 @@ import com.frostwire.platform.Platforms;
 import com.frostwire.transfers.BittorrentDownload;
 import com.frostwire.transfers.TransferItem;
 import com.frostwire.transfers.TransferState;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 
 import java.io.File;
@@ -49,7 +48,8 @@ public final class BTDownload extends TorrentAlertAdapter implements BittorrentD
             AlertType.TORRENT_REMOVED.swig(),
             AlertType.TORRENT_CHECKED.swig(),
             AlertType.SAVE_RESUME_DATA.swig(),
-            AlertType.PIECE_FINISHED.swig()};
+            AlertType.PIECE_FINISHED.swig(),
+            AlertType.STORAGE_MOVED.swig()};
 
     private static final String EXTRA_DATA_KEY = "extra_data";
     private static final String WAS_PAUSED_EXTRA_KEY = "was_paused";
@@ -60,6 +60,11 @@ public final class BTDownload extends TorrentAlertAdapter implements BittorrentD
     private final Date created;
     private final PiecesTracker piecesTracker;
     private final File parts;
+    private final FileProgress fileProgress;
+
+    private final Object itemsLock;
+    private List<TransferItem> items;
+    private boolean piecesChecked;
 
     private final Map<String, String> extra;
 
@@ -79,6 +84,8 @@ public final class BTDownload extends TorrentAlertAdapter implements BittorrentD
         TorrentInfo ti = th.getTorrentInfo();
         this.piecesTracker = ti != null ? new PiecesTracker(ti) : null;
         this.parts = ti != null ? new File(savePath, "." + ti.infoHash() + ".parts") : null;
+        this.fileProgress = new FileProgress(th);
+        this.itemsLock = new Object();
 
         this.extra = createExtra();
         this.paymentOptions = loadPaymentOptions(ti);
@@ -375,7 +382,7 @@ public final class BTDownload extends TorrentAlertAdapter implements BittorrentD
             }
         }
 
-        engine.resumeDataFile(infoHash).delete();
+        engine.removeResumeData(infoHash);
         engine.resumeTorrentFile(infoHash).delete();
     }
 
@@ -402,6 +409,8 @@ public final class BTDownload extends TorrentAlertAdapter implements BittorrentD
             }
         }
 
+        fileProgress.invalidate();
+
         th.saveResumeData();
     }
 
@@ -419,6 +428,11 @@ public final class BTDownload extends TorrentAlertAdapter implements BittorrentD
     @Override
     public void torrentChecked(TorrentCheckedAlert alert) {
         try {
+            synchronized (itemsLock) {
+                piecesChecked = false;
+            }
+            fileProgress.invalidate();
+
             if (th.isValid()) {
                 // trigger items calculation
                 getItems();
@@ -454,6 +468,14 @@ public final class BTDownload extends TorrentAlertAdapter implements BittorrentD
         }
     }
 
+    @Override
+    public void storageMoved(StorageMovedAlert alert) {
+        // the items are recreated with the new save path
+        synchronized (itemsLock) {
+            items = null;
+        }
+    }
+
     public boolean isPartial() {
         Priority[] priorities = th.getFilePriorities();
 
@@ -517,35 +539,52 @@ public final class BTDownload extends TorrentAlertAdapter implements BittorrentD
         th.replaceTrackers(list);
     }
 
+    /**
+     * The items are created once, after that only the pieces state is
+     * updated, incrementally from the piece finished alerts.
+     */
     @Override
     public List<TransferItem> getItems() {
-        ArrayList<TransferItem> items = new ArrayList<>();
+        synchronized (itemsLock) {
+            if (items == null && th.isValid()) {
+                TorrentInfo ti = th.getTorrentInfo();
+                if (ti != null && ti.isValid()) {
+                    items = createItems(ti);
+                    piecesChecked = false;
+                }
+            }
 
-        if (th.isValid()) {
-            TorrentInfo ti = th.getTorrentInfo();
-            if (ti != null && ti.isValid()) {
-                FileStorage fs = ti.files();
-                int numFiles = ti.numFiles();
+            if (items != null && !piecesChecked && piecesTracker != null && th.isValid()) {
+                checkPieces();
+                piecesChecked = true;
+            }
 
-                for (int i = 0; i < numFiles; i++) {
-                    BTDownloadItem item = new BTDownloadItem(th, i, fs.filePath(i), fs.fileSize(i), piecesTracker);
-                    items.add(item);
-                }
+            return items != null ? items : Collections.<TransferItem>emptyList();
+        }
+    }
 
-                if (piecesTracker != null) {
-                    int numPieces = ti.numPieces();
+    private List<TransferItem> createItems(TorrentInfo ti) {
+        FileStorage fs = ti.files();
+        int numFiles = ti.numFiles();
+        File savePath = new File(th.getSavePath());
 
-                    // perform piece complete check
-                    for (int i = 0; i < numPieces; i++) {
-                        if (th.havePiece(i)) {
-                            piecesTracker.setComplete(i, true);
-                        }
-                    }
-                }
-            }
+        List<TransferItem> list = new ArrayList<>(numFiles);
+        for (int i = 0; i < numFiles; i++) {
+            list.add(new BTDownloadItem(th, i, savePath, fs.filePath(i), fs.fileSize(i), piecesTracker, fileProgress));
         }
 
-        return items;
+        return Collections.unmodifiableList(list);
+    }
+
+    private void checkPieces() {
+        int numPieces = th.getTorrentInfo().numPieces();
+
+        // perform piece complete check
+        for (int i = 0; i < numPieces; i++) {
+            if (th.havePiece(i)) {
+                piecesTracker.setComplete(i, true);
+            }
+        }
     }
 
     public File getTorrentFile() {
@@ -622,12 +661,11 @@ public final class BTDownload extends TorrentAlertAdapter implements BittorrentD
         try {
             if (th.isValid()) {
                 String infoHash = th.getInfoHash().toString();
-                File file = engine.resumeDataFile(infoHash);
 
                 Entry e = alert.resumeData();
                 e.swig().dict().set(EXTRA_DATA_KEY, Entry.fromMap(extra).swig());
 
-                FileUtils.writeByteArrayToFile(file, e.bencode());
+                engine.writeResumeData(infoHash, e.bencode());
             }
         } catch (Throwable e) {
             LOG.warn("Error saving resume data", e);
@@ -639,10 +677,9 @@ public final class BTDownload extends TorrentAlertAdapter implements BittorrentD
 
         try {
             String infoHash = getInfoHash();
-            File file = engine.resumeDataFile(infoHash);
+            byte[] arr = engine.readResumeData(infoHash);
 
-            if (file.exists()) {
-                byte[] arr = FileUtils.readFileToByteArray(file);
+            if (arr != null) {
                 entry e = entry.bdecode(Vectors.bytes2byte_vector(arr));
                 string_entry_map d = e.dict();
 
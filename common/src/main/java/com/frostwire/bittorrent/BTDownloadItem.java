@@ -38,17 +38,20 @@ public class BTDownloadItem implements TransferItem {
     private final String name;
     private final long size;
 
-    private PiecesTracker piecesTracker;
+    private final PiecesTracker piecesTracker;
+    private final FileProgress progress;
 
-    public BTDownloadItem(TorrentHandle th, int index, String filePath, long fileSize, PiecesTracker piecesTracker) {
+    BTDownloadItem(TorrentHandle th, int index, File savePath, String filePath, long fileSize,
+                   PiecesTracker piecesTracker, FileProgress progress) {
         this.th = th;
         this.index = index;
 
-        this.file = new File(th.getSavePath(), filePath);
+        this.file = new File(savePath, filePath);
         this.name = file.getName();
         this.size = fileSize;
 
         this.piecesTracker = piecesTracker;
+        this.progress = progress;
     }
 
     @Override
@@ -82,8 +85,7 @@ public class BTDownloadItem implements TransferItem {
             return 0;
         }
 
-        long[] progress = th.getFileProgress(TorrentHandle.FileProgressFlags.PIECE_GRANULARITY);
-        return progress[index];
+        return progress.get(index);
     }
 
     @Override
@@ -98,7 +100,7 @@ public class BTDownloadItem implements TransferItem {
         if (downloaded == size) {
             progress = 100;
         } else {
-            progress = (int) ((float) (getDownloaded() * 100) / (float) size);
+            progress = (int) ((float) (downloaded * 100) / (float) size);
         }
 
         return progress;
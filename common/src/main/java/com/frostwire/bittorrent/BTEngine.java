@@ -31,6 +31,13 @@ import org.apache.commons.io.FilenameUtils;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static com.frostwire.jlibtorrent.alerts.AlertType.*;
@@ -56,11 +63,16 @@ public final class BTEngine {
     };
 
     private static final String TORRENT_ORIG_PATH_KEY = "torrent_orig_path";
+
+    private static final int RESTORE_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+    private static final int RESTORE_WINDOW = 32;
+
     public static BTContext ctx;
 
     private final ReentrantLock sync;
     private final InnerListener innerListener;
-    private final Queue<RestoreDownloadTask> restoreDownloadsQueue;
+    private final Object restoreLock;
+    private volatile RestorePipeline<RestoreItem> restorePipeline;
 
     private Session session;
     private Downloader downloader;
@@ -71,15 +83,24 @@ public final class BTEngine {
     private List<TcpEndpoint> listenEndpoints;
     private Address externalAddress;
 
-    private static final LruCache<String, byte[]> MAGNET_CACHE = new LruCache<String, byte[]>(50);
+    private static final long MAGNET_CACHE_MEMORY_SIZE = 8 * 1024 * 1024; // 8MB
+    private static final long MAGNET_CACHE_DISK_SIZE = 64 * 1024 * 1024; // 64MB
+
     private static final Object MAGNET_LOCK = new Object();
 
+    private final MagnetCache magnetCache;
+    private volatile ResumeJournal resumeJournal;
+
+    private final Map<String, PendingMagnet> pendingMagnets;
+
     private BTEngine() {
         this.sync = new ReentrantLock();
         this.innerListener = new InnerListener();
-        this.restoreDownloadsQueue = new LinkedList<>();
+        this.restoreLock = new Object();
 
         this.listenEndpoints = new LinkedList<>();
+        this.pendingMagnets = new HashMap<>();
+        this.magnetCache = new MagnetCache(MAGNET_CACHE_MEMORY_SIZE, MAGNET_CACHE_DISK_SIZE);
     }
 
     private static class Loader {
@@ -174,6 +195,8 @@ public final class BTEngine {
             session = new Session(ctx.interfaces, ctx.retries, false, innerListener);
             downloader = new Downloader(session);
             loadSettings();
+            openResumeJournal();
+            openMagnetCache();
             fireStarted();
         } finally {
             sync.unlock();
@@ -194,11 +217,26 @@ public final class BTEngine {
             session.removeListener(innerListener);
             saveSettings();
 
+            synchronized (restoreLock) {
+                if (restorePipeline != null) {
+                    restorePipeline.stop();
+                    restorePipeline = null;
+                }
+            }
+
+            cancelMagnets();
+            magnetCache.close();
+            LOGGER.info("Magnet cache stats: " + magnetCache);
+
             downloader = null;
 
             session.abort();
             session = null;
 
+            if (resumeJournal != null) {
+                resumeJournal.close();
+            }
+
             fireStopped();
 
         } finally {
@@ -449,6 +487,40 @@ public final class BTEngine {
      * @return
      */
     public byte[] fetchMagnet(String uri, int timeout) {
+        Future<byte[]> f = fetchMagnetAsync(uri);
+        if (f == null) {
+            return null;
+        }
+
+        try {
+            return f.get(timeout, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (CancellationException e) {
+            return null;
+        } catch (ExecutionException e) {
+            LOGGER.error("Error fetching magnet: " + uri, e);
+            return null;
+        } finally {
+            f.cancel(false);
+        }
+    }
+
+    /**
+     * Starts fetching the metadata of the magnet, the returned future is
+     * completed as soon as the metadata is received. Concurrent fetches of
+     * the same info-hash share the same torrent in the session.
+     * <p>
+     * Cancelling the future detaches the caller, the torrent is removed
+     * once there are no callers waiting for it.
+     *
+     * @param uri the magnet uri
+     * @return the future metadata, null if the session is not started
+     */
+    public Future<byte[]> fetchMagnetAsync(String uri) {
         if (session == null) {
             return null;
         }
@@ -465,57 +537,43 @@ public final class BTEngine {
         final sha1_hash info_hash = p.getInfo_hash();
         String sha1 = info_hash.to_hex();
 
-        byte[] data = MAGNET_CACHE.get(sha1);
+        MagnetFetch f = new MagnetFetch();
+
+        byte[] data = magnetCache.get(sha1);
         if (data != null) {
-            return data;
+            f.complete(data);
+            return f;
         }
 
-        boolean add;
-        torrent_handle th;
-
         synchronized (MAGNET_LOCK) {
-            th = session.swig().find_torrent(info_hash);
-            if (th != null && th.is_valid()) {
-                // we have a download with the same info-hash, let's wait
-                add = false;
-            } else {
-                add = true;
-            }
-
-            if (add) {
-                p.setName("fetch_magnet:" + uri);
-                p.setSave_path("fetch_magnet/" + uri);
+            PendingMagnet pm = pendingMagnets.get(sha1);
 
-                long flags = p.get_flags();
-                flags &= ~add_torrent_params.flags_t.flag_auto_managed.swigValue();
-                p.set_flags(flags);
-
-                ec.clear();
-                th = session.swig().add_torrent(p, ec);
-                th.resume();
-            }
-        }
+            if (pm == null) {
+                torrent_handle th = session.swig().find_torrent(info_hash);
+                boolean add = th == null || !th.is_valid();
 
-        int n = 0;
-        do {
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                // ignore
-            }
+                if (add) {
+                    p.setName("fetch_magnet:" + uri);
+                    p.setSave_path("fetch_magnet/" + uri);
 
-            data = MAGNET_CACHE.get(sha1);
+                    long flags = p.get_flags();
+                    flags &= ~add_torrent_params.flags_t.flag_auto_managed.swigValue();
+                    p.set_flags(flags);
 
-            n++;
-        } while (n < timeout && data == null);
+                    ec.clear();
+                    th = session.swig().add_torrent(p, ec);
+                    th.resume();
+                } // else we have a download with the same info-hash, let's wait
 
-        synchronized (MAGNET_LOCK) {
-            if (add && th != null && th.is_valid()) {
-                session.swig().remove_torrent(th);
+                pm = new PendingMagnet(sha1, th, add);
+                pendingMagnets.put(sha1, pm);
             }
+
+            f.pending = pm;
+            pm.waiters.add(f);
         }
 
-        return data;
+        return f;
     }
 
     public void restoreDownloads() {
@@ -535,30 +593,59 @@ public final class BTEngine {
             }
         });
 
-        if (torrents != null) {
-            for (File t : torrents) {
+        final List<File> files = torrents != null ? Arrays.asList(torrents) : Collections.<File>emptyList();
+
+        final RestorePipeline<RestoreItem> pipeline = new RestorePipeline<>(new RestoreHandler(),
+                RESTORE_THREADS, RESTORE_WINDOW);
+
+        synchronized (restoreLock) {
+            if (restorePipeline != null) {
+                restorePipeline.stop();
+            }
+            restorePipeline = pipeline;
+        }
+
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
                 try {
-                    String infoHash = FilenameUtils.getBaseName(t.getName());
-                    if (infoHash != null) {
-                        File resumeFile = resumeDataFile(infoHash);
-
-                        File savePath = readSavePath(infoHash);
-                        if (setupSaveDir(savePath) == null) {
-                            LOGGER.warn("Can't create data dir or mount point is not accessible");
-                            return;
+                    pipeline.run(files, migrateVuzeDownloads());
+                } catch (Throwable e) {
+                    LOGGER.error("Error restoring downloads", e);
+                } finally {
+                    synchronized (restoreLock) {
+                        if (restorePipeline == pipeline) {
+                            restorePipeline = null;
                         }
-
-                        restoreDownloadsQueue.add(new RestoreDownloadTask(t, null, null, resumeFile));
                     }
-                } catch (Throwable e) {
-                    LOGGER.error("Error restoring torrent download: " + t, e);
                 }
             }
+        }, "BTEngine-restoreDownloads");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void openResumeJournal() {
+        if (ctx.homeDir == null || !ctx.homeDir.exists()) {
+            LOGGER.warn("Wrong setup with BTEngine home dir, unable to open the resume journal");
+            return;
         }
 
-        migrateVuzeDownloads();
+        if (resumeJournal == null) {
+            resumeJournal = new ResumeJournal(new File(ctx.homeDir, "resume.journal"));
+        }
+        resumeJournal.open();
+        // the old layout, one .resume file per torrent
+        resumeJournal.migrate(ctx.homeDir);
+    }
+
+    private void openMagnetCache() {
+        if (ctx.homeDir == null || !ctx.homeDir.exists()) {
+            LOGGER.warn("Wrong setup with BTEngine home dir, magnet cache in memory only");
+            return;
+        }
 
-        runNextRestoreDownloadTask();
+        magnetCache.open(ctx.homeDir, "magnets");
     }
 
     File settingsFile() {
@@ -569,8 +656,20 @@ public final class BTEngine {
         return new File(ctx.homeDir, infoHash + ".torrent");
     }
 
-    File resumeDataFile(String infoHash) {
-        return new File(ctx.homeDir, infoHash + ".resume");
+    byte[] readResumeData(String infoHash) {
+        return resumeJournal != null ? resumeJournal.get(infoHash) : null;
+    }
+
+    void writeResumeData(String infoHash, byte[] data) {
+        if (resumeJournal != null) {
+            resumeJournal.put(infoHash, data);
+        }
+    }
+
+    void removeResumeData(String infoHash) {
+        if (resumeJournal != null) {
+            resumeJournal.remove(infoHash);
+        }
     }
 
     File readTorrentPath(String infoHash) {
@@ -591,7 +690,7 @@ public final class BTEngine {
         File savePath = null;
 
         try {
-            byte[] arr = FileUtils.readFileToByteArray(resumeDataFile(infoHash));
+            byte[] arr = readResumeData(infoHash);
             entry e = entry.bdecode(Vectors.bytes2byte_vector(arr));
             savePath = new File(e.dict().get("save_path").string());
         } catch (Throwable e) {
@@ -712,7 +811,9 @@ public final class BTEngine {
         LOGGER.info("Listen failed on " + s + " (error: " + message + ")");
     }
 
-    private void migrateVuzeDownloads() {
+    private List<RestoreItem> migrateVuzeDownloads() {
+        List<RestoreItem> items = new LinkedList<>();
+
         try {
             File dir = new File(ctx.homeDir.getParent(), "azureus");
             File file = new File(dir, "downloads.config");
@@ -738,7 +839,7 @@ public final class BTEngine {
 
                         if (torrent.exists() && saveDir.exists()) {
                             LOGGER.info("Restored old vuze download: " + torrent);
-                            restoreDownloadsQueue.add(new RestoreDownloadTask(torrent, saveDir, priorities, null));
+                            items.add(new RestoreItem(new TorrentInfo(torrent), saveDir, priorities, null, false));
                             saveResumeTorrent(torrent);
                         }
                     } catch (Throwable e) {
@@ -751,6 +852,8 @@ public final class BTEngine {
         } catch (Throwable e) {
             LOGGER.error("Error migrating old vuze downloads", e);
         }
+
+        return items;
     }
 
     private File setupSaveDir(File saveDir) {
@@ -781,16 +884,14 @@ public final class BTEngine {
         return result;
     }
 
-    private void runNextRestoreDownloadTask() {
-        final RestoreDownloadTask task;
-        try {
-            task = restoreDownloadsQueue.poll();
-        } catch (Throwable t) {
-            // on Android, LinkedList's .poll() implementation throws a NoSuchElementException
-            return;
-        }
-        if (task != null) {
-            task.run();
+    private void restoreDownloadAdded(TorrentAlert<?> alert) {
+        RestorePipeline<RestoreItem> pipeline = restorePipeline;
+        if (pipeline != null) {
+            try {
+                pipeline.added(alert.handle().getInfoHash().toString());
+            } catch (Throwable e) {
+                LOGGER.error("Error acknowledging restored download", e);
+            }
         }
     }
 
@@ -816,18 +917,26 @@ public final class BTEngine {
                 th.resume();
             }
         } else { // new download
-            addTorrentSupport(ti, saveDir, priorities, resumeFile, true, magnetUrlParams);
+            byte[] resumeData = null;
+            if (resumeFile != null) {
+                try {
+                    resumeData = FileUtils.readFileToByteArray(resumeFile);
+                } catch (Throwable e) {
+                    LOGGER.warn("Unable to read resume data", e);
+                }
+            }
+            addTorrentSupport(ti, saveDir, priorities, resumeData, true, magnetUrlParams);
             //session.asyncAddTorrent(ti, saveDir, priorities, resumeFile);
         }
     }
 
-    private TorrentHandle addTorrentSupport(TorrentInfo ti, File saveDir, Priority[] priorities, File resumeFile, boolean async, String magnetUrlParams) {
+    private TorrentHandle addTorrentSupport(TorrentInfo ti, File saveDir, Priority[] priorities, byte[] resumeData, boolean async, String magnetUrlParams) {
 
         String savePath = null;
         if (saveDir != null) {
             savePath = saveDir.getAbsolutePath();
-        } else if (resumeFile == null) {
-            throw new IllegalArgumentException("Both saveDir and resumeFile can't be null at the same time");
+        } else if (resumeData == null) {
+            throw new IllegalArgumentException("Both saveDir and resumeData can't be null at the same time");
         }
 
         add_torrent_params p = add_torrent_params.create_instance();
@@ -854,10 +963,9 @@ public final class BTEngine {
 
         flags &= ~add_torrent_params.flags_t.flag_auto_managed.swigValue();
 
-        if (resumeFile != null) {
+        if (resumeData != null) {
             try {
-                byte[] data = FileUtils.readFileToByteArray(resumeFile);
-                p.set_resume_data(Vectors.bytes2byte_vector(data));
+                p.set_resume_data(Vectors.bytes2byte_vector(resumeData));
 
                 flags |= add_torrent_params.flags_t.flag_use_resume_save_path.swigValue();
             } catch (Throwable e) {
@@ -929,7 +1037,7 @@ public final class BTEngine {
                 case TORRENT_ADDED:
                     TorrentAlert<?> torrentAlert = (TorrentAlert<?>) alert;
                     fireDownloadAdded(torrentAlert);
-                    runNextRestoreDownloadTask();
+                    restoreDownloadAdded(torrentAlert);
                     break;
                 case PIECE_FINISHED:
                     doResumeData((TorrentAlert<?>) alert, false);
@@ -989,33 +1097,225 @@ public final class BTEngine {
             String sha1 = ti.infoHash().toHex();
             byte[] data = ti.bencode();
 
-            MAGNET_CACHE.put(sha1, data);
+            magnetCache.put(sha1, data);
+
+            completeMagnet(sha1, data);
         } catch (Throwable e) {
             LOGGER.error("Error in saving magnet in internal cache", e);
         }
     }
 
-    private final class RestoreDownloadTask implements Runnable {
+    private void completeMagnet(String sha1, byte[] data) {
+        List<MagnetFetch> waiters;
+
+        synchronized (MAGNET_LOCK) {
+            PendingMagnet pm = pendingMagnets.remove(sha1);
+            if (pm == null) {
+                return;
+            }
+
+            removeMagnetTorrent(pm);
+            waiters = new ArrayList<>(pm.waiters);
+            pm.waiters.clear();
+        }
+
+        for (MagnetFetch f : waiters) {
+            f.complete(data);
+        }
+    }
+
+    private void cancelMagnet(MagnetFetch f) {
+        synchronized (MAGNET_LOCK) {
+            PendingMagnet pm = f.pending;
+            if (pm != null && pm.waiters.remove(f) && pm.waiters.isEmpty()) {
+                if (pendingMagnets.get(pm.sha1) == pm) {
+                    pendingMagnets.remove(pm.sha1);
+                }
+                removeMagnetTorrent(pm);
+            }
+        }
+    }
+
+    private void cancelMagnets() {
+        List<MagnetFetch> waiters = new ArrayList<>();
+
+        synchronized (MAGNET_LOCK) {
+            for (PendingMagnet pm : pendingMagnets.values()) {
+                waiters.addAll(pm.waiters);
+                pm.waiters.clear();
+            }
+            pendingMagnets.clear();
+        }
+
+        for (MagnetFetch f : waiters) {
+            f.cancel(false);
+        }
+    }
+
+    // must be called holding MAGNET_LOCK
+    private void removeMagnetTorrent(PendingMagnet pm) {
+        try {
+            if (pm.added && session != null && pm.th != null && pm.th.is_valid()) {
+                session.swig().remove_torrent(pm.th);
+            }
+        } catch (Throwable e) {
+            LOGGER.error("Error removing magnet fetch torrent", e);
+        }
+    }
+
+    private static final class PendingMagnet {
+
+        private final String sha1;
+        private final torrent_handle th;
+        private final boolean added;
+        private final List<MagnetFetch> waiters;
+
+        public PendingMagnet(String sha1, torrent_handle th, boolean added) {
+            this.sha1 = sha1;
+            this.th = th;
+            this.added = added;
+            this.waiters = new LinkedList<>();
+        }
+    }
 
-        private final File torrent;
+    private final class MagnetFetch implements Future<byte[]> {
+
+        private static final int PENDING = 0;
+        private static final int COMPLETED = 1;
+        private static final int CANCELLED = 2;
+
+        private final CountDownLatch latch;
+        // the only transition out of pending, completed or cancelled
+        private final AtomicInteger state;
+
+        private PendingMagnet pending;
+        private volatile byte[] data;
+
+        public MagnetFetch() {
+            this.latch = new CountDownLatch(1);
+            this.state = new AtomicInteger(PENDING);
+        }
+
+        /**
+         * Detaches this waiter, the fetch goes on while there are others.
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+
+            latch.countDown();
+            cancelMagnet(this);
+
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        @Override
+        public boolean isDone() {
+            return latch.getCount() == 0;
+        }
+
+        @Override
+        public byte[] get() throws InterruptedException {
+            latch.await();
+            return result();
+        }
+
+        @Override
+        public byte[] get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+            if (!latch.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return result();
+        }
+
+        private void complete(byte[] data) {
+            if (state.compareAndSet(PENDING, COMPLETED)) {
+                this.data = data;
+                latch.countDown();
+            }
+        }
+
+        private byte[] result() {
+            if (state.get() == CANCELLED) {
+                throw new CancellationException();
+            }
+            return data;
+        }
+    }
+
+    private static final class RestoreItem {
+
+        private final TorrentInfo ti;
         private final File saveDir;
         private final Priority[] priorities;
-        private final File resume;
+        private final byte[] resumeData;
+        private final boolean finished;
 
-        public RestoreDownloadTask(File torrent, File saveDir, Priority[] priorities, File resume) {
-            this.torrent = torrent;
+        public RestoreItem(TorrentInfo ti, File saveDir, Priority[] priorities, byte[] resumeData, boolean finished) {
+            this.ti = ti;
             this.saveDir = saveDir;
             this.priorities = priorities;
-            this.resume = resume;
+            this.resumeData = resumeData;
+            this.finished = finished;
         }
+    }
+
+    private final class RestoreHandler implements RestorePipeline.Handler<RestoreItem> {
 
         @Override
-        public void run() {
-            try {
-                session.asyncAddTorrent(new TorrentInfo(torrent), saveDir, priorities, resume);
-            } catch (Throwable e) {
-                LOGGER.error("Unable to restore download from previous session. (" + torrent.getAbsolutePath() + ")", e);
+        public RestoreItem parse(File torrent) throws Exception {
+            String infoHash = FilenameUtils.getBaseName(torrent.getName());
+            if (infoHash == null) {
+                return null;
+            }
+
+            byte[] resumeData = readResumeData(infoHash);
+            File savePath = null;
+            boolean finished = false;
+
+            if (resumeData != null) {
+                try {
+                    entry e = entry.bdecode(Vectors.bytes2byte_vector(resumeData));
+                    string_entry_map d = e.dict();
+                    savePath = new File(d.get("save_path").string());
+                    // set when the download completed, kept while seeding
+                    finished = d.has_key("completed_time") && d.get("completed_time").integer() > 0;
+                } catch (Throwable e) {
+                    // can't recover the resume data, let libtorrent check the files
+                }
             }
+
+            if (setupSaveDir(savePath) == null) {
+                LOGGER.warn("Can't create data dir or mount point is not accessible, skipping: " + torrent);
+                return null;
+            }
+
+            return new RestoreItem(new TorrentInfo(torrent), null, null, resumeData, finished);
+        }
+
+        @Override
+        public String infoHash(RestoreItem item) {
+            return item.ti.infoHash().toString();
+        }
+
+        @Override
+        public boolean isFinished(RestoreItem item) {
+            return item.finished;
+        }
+
+        @Override
+        public void add(RestoreItem item) {
+            if (session == null) {
+                throw new IllegalStateException("Session stopped");
+            }
+            addTorrentSupport(item.ti, item.saveDir, item.priorities, item.resumeData, true, null);
         }
     }
 
@@ -1144,17 +1444,18 @@ public final class BTEngine {
         return totalDHTNodes;
     }
 
-    private static final class LruCache<K, V> extends LinkedHashMap<K, V> {
-
-        private final int maxSize;
+    /**
+     * Number of magnet fetches resolved by the metadata cache.
+     */
+    public long getMagnetCacheHits() {
+        return magnetCache.hits() + magnetCache.diskHits();
+    }
 
-        public LruCache(int maxSize) {
-            this.maxSize = maxSize;
-        }
+    public double getMagnetCacheHitRate() {
+        return magnetCache.hitRate();
+    }
 
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-            return size() > maxSize;
-        }
+    public int getMagnetCacheSize() {
+        return magnetCache.size();
     }
 }
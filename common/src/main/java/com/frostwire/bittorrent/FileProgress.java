@@ -0,0 +1,59 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.bittorrent;
+
+import com.frostwire.jlibtorrent.TorrentHandle;
+
+/**
+ * The files progress of a download, fetched at most once per refresh
+ * interval and shared by all the items.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+final class FileProgress {
+
+    private static final long REFRESH_INTERVAL_MILLIS = 500;
+
+    private final TorrentHandle th;
+
+    private long[] progress;
+    private long timestamp;
+
+    public FileProgress(TorrentHandle th) {
+        this.th = th;
+    }
+
+    public synchronized long get(int index) {
+        long now = System.currentTimeMillis();
+        if (progress == null || (now - timestamp) >= REFRESH_INTERVAL_MILLIS) {
+            progress = th.getFileProgress(TorrentHandle.FileProgressFlags.PIECE_GRANULARITY);
+            timestamp = now;
+        }
+
+        return index < progress.length ? progress[index] : 0;
+    }
+
+    /**
+     * Forces a fetch in the next read.
+     */
+    public synchronized void invalidate() {
+        progress = null;
+    }
+}
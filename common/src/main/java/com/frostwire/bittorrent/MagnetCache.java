@@ -0,0 +1,371 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.bittorrent;
+
+import com.frostwire.logging.Logger;
+import com.frostwire.util.Hex;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Thread safe cache of torrent metadata (the bencoded info) keyed by info-hash.
+ * <p>
+ * The most recently used data is kept in memory up to a byte budget. If opened
+ * with a directory, the data is also appended to a blob file and its location
+ * to a fixed size records index file. On open the index is loaded, the data
+ * is read from the blob file on demand. The files are compacted when the blob
+ * file goes over its own budget.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+public final class MagnetCache {
+
+    private static final Logger LOG = Logger.getLogger(MagnetCache.class);
+
+    // sha1 (20) + offset (8) + length (4)
+    private static final int INDEX_RECORD_SIZE = 32;
+    private static final int SHA1_SIZE = 20;
+
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+
+    private final LinkedHashMap<String, byte[]> memory;
+    private final LinkedHashMap<String, Location> index;
+
+    private long memoryBytes;
+
+    private File indexFile;
+    private File dataFile;
+    private RandomAccessFile indexRaf;
+    private RandomAccessFile dataRaf;
+
+    private long hits;
+    private long diskHits;
+    private long misses;
+
+    public MagnetCache(long maxMemoryBytes, long maxDiskBytes) {
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDiskBytes = maxDiskBytes;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true);
+        this.index = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Opens (or creates) the persistent files, loading the index.
+     */
+    public synchronized void open(File dir, String name) {
+        close();
+
+        indexFile = new File(dir, name + ".idx");
+        dataFile = new File(dir, name + ".dat");
+
+        try {
+            loadIndex();
+
+            if (dataFile.length() > maxDiskBytes) {
+                compact();
+            }
+
+            indexRaf = new RandomAccessFile(indexFile, "rw");
+            indexRaf.seek(indexRaf.length());
+            dataRaf = new RandomAccessFile(dataFile, "rw");
+
+            LOG.info("Magnet cache opened, entries: " + index.size() + ", bytes: " + dataFile.length());
+        } catch (Throwable e) {
+            LOG.error("Error opening magnet cache, using memory only", e);
+            close();
+            index.clear();
+        }
+    }
+
+    public synchronized void close() {
+        IOUtils.closeQuietly(indexRaf);
+        IOUtils.closeQuietly(dataRaf);
+        indexRaf = null;
+        dataRaf = null;
+    }
+
+    public synchronized byte[] get(String sha1) {
+        byte[] data = memory.get(sha1);
+        if (data != null) {
+            hits++;
+            return data;
+        }
+
+        Location loc = index.get(sha1);
+        if (loc != null && dataRaf != null) {
+            try {
+                data = new byte[loc.length];
+                dataRaf.seek(loc.offset);
+                dataRaf.readFully(data);
+                diskHits++;
+                putMemory(sha1, data);
+                return data;
+            } catch (Throwable e) {
+                LOG.warn("Error reading magnet data from disk: " + sha1, e);
+                index.remove(sha1);
+            }
+        }
+
+        misses++;
+        return null;
+    }
+
+    public synchronized void put(String sha1, byte[] data) {
+        putMemory(sha1, data);
+
+        if (dataRaf != null && !index.containsKey(sha1)) {
+            try {
+                long offset = dataRaf.length();
+                dataRaf.seek(offset);
+                dataRaf.write(data);
+
+                // the index record is written after the data, a partial
+                // write is detected on load and discarded
+                ByteBuffer record = ByteBuffer.allocate(INDEX_RECORD_SIZE);
+                record.put(Hex.decode(sha1));
+                record.putLong(offset);
+                record.putInt(data.length);
+                indexRaf.write(record.array());
+
+                index.put(sha1, new Location(offset, data.length));
+
+                if (dataRaf.length() > maxDiskBytes) {
+                    close();
+                    compact();
+                    indexRaf = new RandomAccessFile(indexFile, "rw");
+                    indexRaf.seek(indexRaf.length());
+                    dataRaf = new RandomAccessFile(dataFile, "rw");
+                }
+            } catch (Throwable e) {
+                LOG.error("Error writing magnet data to disk, using memory only", e);
+                close();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        Set<String> keys = new HashSet<>(index.keySet());
+        keys.addAll(memory.keySet());
+        return keys.size();
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long diskHits() {
+        return diskHits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * The ratio of lookups found in memory or disk.
+     */
+    public synchronized double hitRate() {
+        long total = hits + diskHits + misses;
+        return total > 0 ? (double) (hits + diskHits) / total : 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "MagnetCache[entries=" + index.size() + ", memory=" + memory.size() + "/" + memoryBytes +
+                " bytes, hits=" + hits + ", diskHits=" + diskHits + ", misses=" + misses + "]";
+    }
+
+    private void putMemory(String sha1, byte[] data) {
+        if (data.length > maxMemoryBytes) {
+            return;
+        }
+
+        byte[] old = memory.put(sha1, data);
+        if (old != null) {
+            memoryBytes -= old.length;
+        }
+        memoryBytes += data.length;
+
+        Iterator<byte[]> it = memory.values().iterator();
+        while (memoryBytes > maxMemoryBytes && it.hasNext()) {
+            memoryBytes -= it.next().length;
+            it.remove();
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        index.clear();
+
+        // left by an interrupted compaction
+        delete(tmpFile(indexFile));
+        delete(tmpFile(dataFile));
+
+        if (!indexFile.exists() || !dataFile.exists()) {
+            delete(indexFile);
+            delete(dataFile);
+            return;
+        }
+
+        long dataLength = dataFile.length();
+
+        RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+        try {
+            FileChannel ch = raf.getChannel();
+            long n = ch.size() / INDEX_RECORD_SIZE;
+            if (n == 0) {
+                return;
+            }
+
+            // not mapped, a live mapping prevents the compaction from
+            // deleting the file in some systems
+            ByteBuffer buffer = ByteBuffer.allocate((int) (n * INDEX_RECORD_SIZE));
+            while (buffer.hasRemaining()) {
+                if (ch.read(buffer) == -1) {
+                    break;
+                }
+            }
+            buffer.flip();
+            n = buffer.remaining() / INDEX_RECORD_SIZE;
+
+            byte[] hash = new byte[SHA1_SIZE];
+            for (long i = 0; i < n; i++) {
+                buffer.get(hash);
+                long offset = buffer.getLong();
+                int length = buffer.getInt();
+
+                if (offset < 0 || length < 0 || offset + length > dataLength) {
+                    // partial write, ignore the rest
+                    break;
+                }
+
+                index.put(Hex.encode(hash), new Location(offset, length));
+            }
+        } finally {
+            IOUtils.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * Rewrites the files keeping the most recently used entries up
+     * to half the disk budget.
+     */
+    private void compact() throws IOException {
+        List<Map.Entry<String, Location>> entries = new ArrayList<>(index.entrySet());
+        List<Map.Entry<String, Location>> keep = new LinkedList<>();
+
+        long total = 0;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Map.Entry<String, Location> e = entries.get(i);
+            if (total + e.getValue().length > maxDiskBytes / 2) {
+                break;
+            }
+            total += e.getValue().length;
+            keep.add(0, e);
+        }
+
+        File tmpIndex = tmpFile(indexFile);
+        File tmpData = tmpFile(dataFile);
+
+        LinkedHashMap<String, Location> newIndex = new LinkedHashMap<>(16, 0.75f, true);
+
+        RandomAccessFile src = null;
+        RandomAccessFile idx = null;
+        RandomAccessFile dat = null;
+        try {
+            src = new RandomAccessFile(dataFile, "r");
+            idx = new RandomAccessFile(tmpIndex, "rw");
+            dat = new RandomAccessFile(tmpData, "rw");
+
+            idx.setLength(0);
+            dat.setLength(0);
+
+            ByteBuffer record = ByteBuffer.allocate(INDEX_RECORD_SIZE);
+            long offset = 0;
+            for (Map.Entry<String, Location> e : keep) {
+                Location loc = e.getValue();
+                byte[] data = new byte[loc.length];
+                src.seek(loc.offset);
+                src.readFully(data);
+                dat.write(data);
+
+                record.clear();
+                record.put(Hex.decode(e.getKey()));
+                record.putLong(offset);
+                record.putInt(loc.length);
+                idx.write(record.array());
+
+                newIndex.put(e.getKey(), new Location(offset, loc.length));
+                offset += loc.length;
+            }
+        } finally {
+            IOUtils.closeQuietly(src);
+            IOUtils.closeQuietly(idx);
+            IOUtils.closeQuietly(dat);
+        }
+
+        // without the index the data is discarded on load, so an interrupted
+        // replace never pairs an index with the wrong data
+        if (indexFile.exists() && !indexFile.delete()) {
+            delete(tmpIndex);
+            delete(tmpData);
+            throw new IOException("Unable to replace the magnet cache index file");
+        }
+        // the rename doesn't replace an existing file in some systems
+        if ((!tmpData.renameTo(dataFile) && (!dataFile.delete() || !tmpData.renameTo(dataFile))) ||
+                !tmpIndex.renameTo(indexFile)) {
+            delete(tmpIndex);
+            delete(tmpData);
+            throw new IOException("Unable to replace the magnet cache files");
+        }
+
+        index.clear();
+        index.putAll(newIndex);
+
+        LOG.info("Magnet cache compacted, entries: " + index.size() + ", bytes: " + total);
+    }
+
+    private static File tmpFile(File f) {
+        return new File(f.getPath() + ".tmp");
+    }
+
+    private static void delete(File f) {
+        if (f.exists() && !f.delete()) {
+            LOG.warn("Unable to delete file: " + f);
+        }
+    }
+
+    private static final class Location {
+
+        private final long offset;
+        private final int length;
+
+        public Location(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.bittorrent;
+
+import com.frostwire.logging.Logger;
+import com.frostwire.util.ThreadPool;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Restores the downloads of a previous session.
+ * <p>
+ * The saved files are parsed in parallel, then the downloads are added
+ * unfinished first, keeping a bounded window of asynchronous adds in flight.
+ * Each add is acknowledged with {@link #added(String)} (usually from the
+ * torrent added alert), if an acknowledge doesn't arrive in time the slot
+ * is released anyway to keep the pipeline moving.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+final class RestorePipeline<T> {
+
+    private static final Logger LOG = Logger.getLogger(RestorePipeline.class);
+
+    private static final long ADD_TIMEOUT = 10000; // 10 seconds
+
+    private final Handler<T> handler;
+    private final int threads;
+    private final int window;
+
+    private final Semaphore slots;
+    private final ConcurrentHashMap<String, Boolean> inflight;
+
+    private final AtomicInteger parsed;
+    private final AtomicInteger added;
+    private final AtomicInteger failed;
+    private final AtomicInteger timeouts;
+
+    private volatile boolean stopped;
+
+    private long parseTime;
+    private long totalTime;
+
+    public RestorePipeline(Handler<T> handler, int threads, int window) {
+        if (threads <= 0 || window <= 0) {
+            throw new IllegalArgumentException("Threads and window must be > 0");
+        }
+
+        this.handler = handler;
+        this.threads = threads;
+        this.window = window;
+
+        this.slots = new Semaphore(window);
+        this.inflight = new ConcurrentHashMap<>();
+
+        this.parsed = new AtomicInteger();
+        this.added = new AtomicInteger();
+        this.failed = new AtomicInteger();
+        this.timeouts = new AtomicInteger();
+    }
+
+    /**
+     * Parses the files and adds the resulting items plus the already
+     * parsed extra items, blocks until the last add is acknowledged.
+     */
+    public void run(List<File> files, List<T> extra) {
+        long start = System.currentTimeMillis();
+
+        List<T> items = parse(files);
+        items.addAll(extra);
+
+        parseTime = System.currentTimeMillis() - start;
+
+        // stable, keeps the listing order inside each group
+        Collections.sort(items, new Comparator<T>() {
+            @Override
+            public int compare(T o1, T o2) {
+                boolean f1 = handler.isFinished(o1);
+                boolean f2 = handler.isFinished(o2);
+                return f1 == f2 ? 0 : (f1 ? 1 : -1);
+            }
+        });
+
+        for (T item : items) {
+            if (stopped) {
+                break;
+            }
+
+            boolean permit = acquire();
+
+            // without a permit (timeout) the ack must not release one
+            String infoHash = handler.infoHash(item);
+            inflight.put(infoHash, permit);
+
+            try {
+                handler.add(item);
+            } catch (Throwable e) {
+                failed.incrementAndGet();
+                LOG.error("Unable to restore download: " + infoHash, e);
+                added(infoHash);
+            }
+        }
+
+        // wait for the last adds
+        for (int i = 0; i < window && !stopped; i++) {
+            acquire();
+        }
+
+        totalTime = System.currentTimeMillis() - start;
+
+        LOG.info(toString());
+    }
+
+    /**
+     * Acknowledges an add, releasing its window slot.
+     */
+    public void added(String infoHash) {
+        Boolean permit = inflight.remove(infoHash);
+        if (permit != null) {
+            added.incrementAndGet();
+            if (permit) {
+                slots.release();
+            }
+        }
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    public int parsed() {
+        return parsed.get();
+    }
+
+    public int added() {
+        return added.get();
+    }
+
+    public int failed() {
+        return failed.get();
+    }
+
+    public int timeouts() {
+        return timeouts.get();
+    }
+
+    public int inflight() {
+        return inflight.size();
+    }
+
+    /**
+     * Downloads restored per second.
+     */
+    public double throughput() {
+        return totalTime > 0 ? added.get() * 1000.0 / totalTime : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Restored " + added.get() + " downloads (parsed: " + parsed.get() + ", failed: " + failed.get() +
+                ", timeouts: " + timeouts.get() + ") in " + totalTime + "ms (parse: " + parseTime + "ms), " +
+                String.format("%.1f", throughput()) + " downloads/s";
+    }
+
+    private List<T> parse(List<File> files) {
+        List<T> items = new ArrayList<>(files.size());
+        if (files.isEmpty()) {
+            return items;
+        }
+
+        ThreadPool pool = new ThreadPool("RestorePipeline", threads, threads, 1L, new LinkedBlockingQueue<Runnable>(), true);
+
+        try {
+            List<Future<T>> futures = new ArrayList<>(files.size());
+            for (final File f : files) {
+                futures.add(pool.submit(new Callable<T>() {
+                    @Override
+                    public T call() throws Exception {
+                        return handler.parse(f);
+                    }
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    T item = futures.get(i).get();
+                    if (item != null) {
+                        items.add(item);
+                        parsed.incrementAndGet();
+                    }
+                } catch (ExecutionException e) {
+                    failed.incrementAndGet();
+                    LOG.error("Error parsing saved download: " + files.get(i), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopped = true;
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return items;
+    }
+
+    /**
+     * Returns false if no permit was taken.
+     */
+    private boolean acquire() {
+        try {
+            if (slots.tryAcquire(ADD_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            // lost acknowledge, don't stall the restore
+            timeouts.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopped = true;
+        }
+        return false;
+    }
+
+    interface Handler<T> {
+
+        /**
+         * Returns null if the file should be skipped.
+         */
+        T parse(File file) throws Exception;
+
+        String infoHash(T item);
+
+        boolean isFinished(T item);
+
+        void add(T item) throws Exception;
+    }
+}
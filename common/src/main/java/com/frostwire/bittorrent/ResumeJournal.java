@@ -0,0 +1,518 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.bittorrent;
+
+import com.frostwire.logging.Logger;
+import com.frostwire.util.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.zip.CRC32;
+
+/**
+ * Single file, append-only store of the torrents resume data.
+ * <p>
+ * Each record is [type, info-hash, length, data, crc32]. The latest data
+ * is kept in memory, the writes are batched and committed periodically
+ * with one write and one sync (group commit), overwriting the same
+ * info-hash in a batch only writes the last value. On open, the records
+ * are replayed up to the first incomplete or corrupted one, and the file
+ * is rewritten with only the live data when the garbage is too much.
+ * <p>
+ * The rewrite goes to a synced {@code .tmp} file, where it can't replace
+ * the journal in one rename the old one is kept as {@code .bak} until the
+ * new one is in place. On open, a missing journal is recovered from them.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+public final class ResumeJournal {
+
+    private static final Logger LOG = Logger.getLogger(ResumeJournal.class);
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+
+    private static final int SHA1_SIZE = 20;
+    private static final int MAX_DATA_SIZE = 64 * 1024 * 1024; // 64MB
+
+    private static final long DEFAULT_COMMIT_INTERVAL = 1000; // 1 second
+    private static final long COMPACT_MIN_SIZE = 1024 * 1024; // 1MB
+
+    private final File file;
+    private final File tmpFile;
+    private final File bakFile;
+    private final long commitInterval;
+
+    private final Object commitLock;
+
+    // guarded by this
+    private final Map<String, byte[]> entries;
+    private Map<String, byte[]> pending;
+    private long liveBytes;
+
+    // guarded by commitLock
+    private FileChannel channel;
+    private long fileSize;
+    private long commits;
+    private long records;
+    private Timer timer;
+
+    public ResumeJournal(File file, long commitInterval) {
+        this.file = file;
+        this.tmpFile = new File(file.getPath() + ".tmp");
+        this.bakFile = new File(file.getPath() + ".bak");
+        this.commitInterval = commitInterval;
+
+        this.commitLock = new Object();
+        this.entries = new HashMap<>();
+        this.pending = new LinkedHashMap<>();
+    }
+
+    public ResumeJournal(File file) {
+        this(file, DEFAULT_COMMIT_INTERVAL);
+    }
+
+    public void open() {
+        synchronized (commitLock) {
+            if (channel != null) {
+                return;
+            }
+
+            try {
+                restoreFile();
+                load();
+                channel = new RandomAccessFile(file, "rw").getChannel();
+                channel.truncate(fileSize);
+                channel.position(fileSize);
+
+                if (shouldCompact()) {
+                    compact();
+                }
+
+                LOG.info("Resume journal opened, entries: " + size() + ", bytes: " + fileSize);
+            } catch (Throwable e) {
+                LOG.error("Error opening resume journal, using memory only", e);
+                IOUtils.closeQuietly(channel);
+                channel = null;
+                return;
+            }
+
+            if (commitInterval > 0 && timer == null) {
+                timer = new Timer("ResumeJournal-committer", true);
+                timer.schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        commit();
+                    }
+                }, commitInterval, commitInterval);
+            }
+        }
+    }
+
+    /**
+     * Commits the pending writes and closes the file.
+     */
+    public void close() {
+        synchronized (commitLock) {
+            if (timer != null) {
+                timer.cancel();
+                timer = null;
+            }
+
+            commit();
+            IOUtils.closeQuietly(channel);
+            channel = null;
+        }
+    }
+
+    /**
+     * Imports the old per torrent {@code <info-hash>.resume} files found in
+     * the directory, the files are deleted once committed to the journal.
+     */
+    public int migrate(File dir) {
+        File[] files = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name != null && FilenameUtils.getExtension(name).equals("resume");
+            }
+        });
+
+        if (files == null || files.length == 0) {
+            return 0;
+        }
+
+        List<File> migrated = new ArrayList<>(files.length);
+        int n = 0;
+        for (File f : files) {
+            try {
+                String infoHash = FilenameUtils.getBaseName(f.getName());
+                // if already in the journal, the file is a leftover of a previous migration
+                if (get(infoHash) == null) {
+                    put(infoHash, FileUtils.readFileToByteArray(f));
+                    n++;
+                }
+                migrated.add(f);
+            } catch (Throwable e) {
+                LOG.warn("Error migrating resume file: " + f, e);
+            }
+        }
+
+        if (commit()) {
+            for (File f : migrated) {
+                if (!f.delete()) {
+                    LOG.warn("Unable to delete migrated resume file: " + f);
+                }
+            }
+        }
+
+        LOG.info("Migrated " + n + " resume files to the journal");
+
+        return n;
+    }
+
+    public synchronized byte[] get(String infoHash) {
+        return entries.get(infoHash);
+    }
+
+    public synchronized void put(String infoHash, byte[] data) {
+        if (infoHash == null || infoHash.length() != 2 * SHA1_SIZE) {
+            throw new IllegalArgumentException("Invalid info-hash: " + infoHash);
+        }
+        Hex.decode(infoHash); // fails with non hex digits
+
+        byte[] old = entries.put(infoHash, data);
+        if (old != null) {
+            liveBytes -= old.length;
+        }
+        liveBytes += data.length;
+
+        pending.put(infoHash, data);
+    }
+
+    public synchronized void remove(String infoHash) {
+        byte[] old = entries.remove(infoHash);
+        if (old != null) {
+            liveBytes -= old.length;
+            pending.put(infoHash, null);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long commits() {
+        synchronized (commitLock) {
+            return commits;
+        }
+    }
+
+    public long records() {
+        synchronized (commitLock) {
+            return records;
+        }
+    }
+
+    /**
+     * Writes and syncs the pending records, returns false if there
+     * was an error or the journal is not open.
+     */
+    public boolean commit() {
+        synchronized (commitLock) {
+            if (channel == null) {
+                return false;
+            }
+
+            Map<String, byte[]> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return true;
+                }
+                batch = pending;
+                pending = new LinkedHashMap<>();
+            }
+
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                for (Map.Entry<String, byte[]> e : batch.entrySet()) {
+                    writeRecord(out, e.getKey(), e.getValue());
+                }
+                out.flush();
+
+                write(channel, bytes.toByteArray());
+                channel.force(false);
+
+                fileSize = channel.position();
+                commits++;
+                records += batch.size();
+            } catch (Throwable e) {
+                LOG.error("Error committing resume journal", e);
+
+                // put back what was not overwritten in the meantime
+                synchronized (this) {
+                    batch.putAll(pending);
+                    pending = batch;
+                }
+                recover();
+                return false;
+            }
+
+            if (shouldCompact()) {
+                try {
+                    compact();
+                } catch (Throwable e) {
+                    LOG.error("Error compacting resume journal", e);
+                }
+            }
+
+            return channel != null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ResumeJournal[entries=" + size() + ", commits=" + commits() + ", records=" + records() + "]";
+    }
+
+    private boolean shouldCompact() {
+        long live;
+        synchronized (this) {
+            live = liveBytes;
+        }
+        return fileSize > COMPACT_MIN_SIZE && fileSize > 2 * live;
+    }
+
+    // must be called holding commitLock
+    private void compact() throws IOException {
+        Map<String, byte[]> snapshot;
+        synchronized (this) {
+            snapshot = new HashMap<>(entries);
+        }
+
+        File tmp = tmpFile;
+
+        FileChannel ch = new RandomAccessFile(tmp, "rw").getChannel();
+        try {
+            ch.truncate(0);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (Map.Entry<String, byte[]> e : snapshot.entrySet()) {
+                writeRecord(out, e.getKey(), e.getValue());
+            }
+            out.flush();
+
+            write(ch, bytes.toByteArray());
+            ch.force(true);
+        } finally {
+            IOUtils.closeQuietly(ch);
+        }
+
+        long oldSize = fileSize;
+
+        // the file can't be replaced while open in some systems
+        IOUtils.closeQuietly(channel);
+        channel = null;
+
+        try {
+            replaceFile();
+        } finally {
+            // never an empty journal, the data could be in the other files
+            if (restoreFile()) {
+                channel = new RandomAccessFile(file, "rw").getChannel();
+                fileSize = channel.size();
+                channel.position(fileSize);
+            } else {
+                LOG.error("Resume journal file lost, using memory only");
+            }
+        }
+
+        LOG.info("Resume journal compacted from " + oldSize + " to " + fileSize + " bytes");
+    }
+
+    // must be called holding commitLock, with the synced tmp file
+    private void replaceFile() throws IOException {
+        if (tmpFile.renameTo(file)) {
+            return;
+        }
+
+        // the rename doesn't replace an existing file in some systems,
+        // the old one is kept until the new one is in place
+        if ((bakFile.exists() && !bakFile.delete()) || !file.renameTo(bakFile)) {
+            throw new IOException("Unable to backup the resume journal file");
+        }
+
+        if (!tmpFile.renameTo(file)) {
+            if (!bakFile.renameTo(file)) {
+                LOG.error("Unable to restore the resume journal backup file");
+            }
+            throw new IOException("Unable to replace the resume journal file");
+        }
+
+        if (!bakFile.delete()) {
+            LOG.warn("Unable to delete the resume journal backup file");
+        }
+    }
+
+    /**
+     * Puts back the journal if a replace was interrupted, the tmp file is
+     * complete if the journal is missing, otherwise it's discarded.
+     * Returns false if there is no journal.
+     */
+    private boolean restoreFile() {
+        if (file.exists()) {
+            tmpFile.delete();
+            bakFile.delete();
+            return true;
+        }
+
+        if (tmpFile.exists() && tmpFile.renameTo(file)) {
+            LOG.warn("Resume journal recovered from " + tmpFile);
+            bakFile.delete();
+            return true;
+        }
+
+        if (bakFile.exists() && bakFile.renameTo(file)) {
+            LOG.warn("Resume journal recovered from " + bakFile);
+            return true;
+        }
+
+        return false;
+    }
+
+    // reopens the file after an error, discarding a partial write
+    private void recover() {
+        try {
+            channel.truncate(fileSize);
+            channel.position(fileSize);
+        } catch (Throwable e) {
+            LOG.error("Error recovering resume journal, using memory only", e);
+            IOUtils.closeQuietly(channel);
+            channel = null;
+        }
+    }
+
+    private void load() throws IOException {
+        fileSize = 0;
+
+        if (!file.exists()) {
+            return;
+        }
+
+        long length = file.length();
+        long position = 0;
+
+        byte[] hash = new byte[SHA1_SIZE];
+        CRC32 crc = new CRC32();
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        try {
+            while (position < length) {
+                byte type = in.readByte();
+                in.readFully(hash);
+                int size = in.readInt();
+
+                if ((type != PUT && type != REMOVE) || size < 0 || size > MAX_DATA_SIZE) {
+                    throw new IOException("Invalid record at " + position);
+                }
+
+                byte[] data = new byte[size];
+                in.readFully(data);
+                int checksum = in.readInt();
+
+                crc.reset();
+                crc.update(type);
+                crc.update(hash);
+                crc.update(data);
+                if ((int) crc.getValue() != checksum) {
+                    throw new IOException("Invalid record checksum at " + position);
+                }
+
+                String infoHash = Hex.encode(hash);
+                synchronized (this) {
+                    byte[] old = type == PUT ? entries.put(infoHash, data) : entries.remove(infoHash);
+                    if (old != null) {
+                        liveBytes -= old.length;
+                    }
+                    if (type == PUT) {
+                        liveBytes += data.length;
+                    }
+                }
+
+                position += 1 + SHA1_SIZE + 4 + size + 4;
+            }
+        } catch (EOFException e) {
+            LOG.warn("Resume journal ends with an incomplete record, discarding it");
+        } catch (IOException e) {
+            LOG.warn("Resume journal corrupted, discarding from there: " + e.getMessage());
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+
+        fileSize = position;
+    }
+
+    private static void writeRecord(DataOutputStream out, String infoHash, byte[] data) throws IOException {
+        byte type = data != null ? PUT : REMOVE;
+        byte[] hash = Hex.decode(infoHash);
+        if (data == null) {
+            data = new byte[0];
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(hash);
+        crc.update(data);
+
+        out.writeByte(type);
+        out.write(hash);
+        out.writeInt(data.length);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void write(FileChannel ch, byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            ch.write(buffer);
+        }
+    }
+}
@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.util.LinkedList;
 import java.util.ListIterator;
 
@@ -49,7 +50,7 @@ public final class Mp4Demuxer {
             boolean fragments = Box.findFirst(head, Box.mvex) != null;
 
             if (fragments) {
-                muxFragments(new RandomAccessFile[]{in}, out, inf, buf, l);
+                muxFragments(new ReadableByteChannel[]{in.getChannel()}, new long[]{in.length()}, out, inf, buf, l);
             } else {
                 trackSimple(tkhd.trackId(), in, out, inf, buf, l);
             }
@@ -69,7 +70,7 @@ public final class Mp4Demuxer {
 
         try {
             ByteBuffer buf = ByteBuffer.allocate(100 * 1024);
-            muxFragments(new RandomAccessFile[]{v_in, a_in}, out, inf, buf, l);
+            muxFragments(new ReadableByteChannel[]{v_in.getChannel(), a_in.getChannel()}, new long[]{v_in.length(), a_in.length()}, out, inf, buf, l);
         } finally {
             IO.close(v_in);
             IO.close(a_in);
@@ -77,6 +78,24 @@ public final class Mp4Demuxer {
         }
     }
 
+    /**
+     * Muxes the fragments as they are read from the channels, the channels can
+     * block waiting for data (a file still downloading), but the total length
+     * of each stream must be known in advance.
+     */
+    public static void muxFragments(ReadableByteChannel video, long videoLength, ReadableByteChannel audio, long audioLength, File output, Mp4Info inf, DemuxerListener l) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(output, "rw");
+
+        out.setLength(0);
+
+        try {
+            ByteBuffer buf = ByteBuffer.allocate(100 * 1024);
+            muxFragments(new ReadableByteChannel[]{video, audio}, new long[]{videoLength, audioLength}, out, inf, buf, l);
+        } finally {
+            IO.close(out);
+        }
+    }
+
     private static void trackSimple(int id, RandomAccessFile input, RandomAccessFile output, Mp4Info inf, ByteBuffer buf, final DemuxerListener l) throws IOException {
         int trackId = id;
         final InputChannel in = new InputChannel(input.getChannel());
@@ -180,14 +199,13 @@ public final class Mp4Demuxer {
         }
     }
 
-    private static void muxFragments(RandomAccessFile[] inputs, RandomAccessFile output, Mp4Info inf, ByteBuffer buf, DemuxerListener l) throws IOException {
+    private static void muxFragments(ReadableByteChannel[] inputs, long[] lengths, RandomAccessFile output, Mp4Info inf, ByteBuffer buf, DemuxerListener l) throws IOException {
         int n = inputs.length;
         InputChannel[] ins = new InputChannel[n];
         FragmentCtx[] ctxs = new FragmentCtx[n];
         for (int i = 0; i < n; i++) {
-            RandomAccessFile input = inputs[i];
-            ins[i] = new InputChannel(input.getChannel());
-            ctxs[i] = new FragmentCtx(input.length());
+            ins[i] = new InputChannel(inputs[i]);
+            ctxs[i] = new FragmentCtx(lengths[i]);
         }
         OutputChannel out = new OutputChannel(output.getChannel());
 
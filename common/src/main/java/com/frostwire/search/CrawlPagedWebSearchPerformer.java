@@ -20,11 +20,21 @@ package com.frostwire.search;
 
 import com.frostwire.logging.Logger;
 import com.frostwire.search.torrent.TorrentSearchResult;
+import com.frostwire.util.SingleFlight;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @author gubatron
@@ -41,8 +51,12 @@ public abstract class CrawlPagedWebSearchPerformer<T extends CrawlableSearchResu
     private static CrawlCache cache = null;
     private static MagnetDownloader magnetDownloader = null;
 
+    private static final SingleFlight<String, byte[]> downloads = new SingleFlight<String, byte[]>();
+
     private int numCrawls;
 
+    private final Set<Future<byte[]>> magnetFetches;
+
     protected static final Map<String, Integer> UNIT_TO_BYTES;
     static {
         UNIT_TO_BYTES = new HashMap<>();
@@ -56,8 +70,13 @@ public abstract class CrawlPagedWebSearchPerformer<T extends CrawlableSearchResu
     public CrawlPagedWebSearchPerformer(String domainName, long token, String keywords, int timeout, int pages, int numCrawls) {
         super(domainName, token, keywords, timeout, pages);
         this.numCrawls = numCrawls;
+        this.magnetFetches = Collections.newSetFromMap(new ConcurrentHashMap<Future<byte[]>, Boolean>());
     }
 
+    /**
+     * The cache is used concurrently by all the crawl threads, wrap it in a
+     * {@link MemoryCrawlCache} if it's not thread safe or if it's slow.
+     */
     public static void setCache(CrawlCache cache) {
         CrawlPagedWebSearchPerformer.cache = cache;
     }
@@ -109,32 +128,8 @@ public abstract class CrawlPagedWebSearchPerformer<T extends CrawlableSearchResu
                         }
                     }
 
-                    if (data == null) { // not a big deal about synchronization here
-                        LOG.debug("Downloading data for: " + url);
-
-                        if (url.startsWith("magnet")) {
-                            data = fetchMagnet(url);
-                        } else {
-                            data = fetchBytes(url, sr.getDetailsUrl(), DEFAULT_CRAWL_TIMEOUT);
-                        }
-
-                        //we put this here optimistically hoping this is actually
-                        //valid data. if no data can be crawled from this we remove it
-                        //from the cache. we do this because this same data may come
-                        //from another search engine and this way we avoid the
-                        //expense of performing another download.
-                        if (data != null) {
-                            cachePut(url, data);
-
-                            if (sr instanceof TorrentSearchResult) {
-                                // if the search result has an infohash we can use...
-                                String infohash = ((TorrentSearchResult) sr).getHash();
-                                cachePut(infohash, data);
-                            }
-                        } else {
-                            LOG.warn("Failed to download data: " + url);
-                            cachePut("failed:" + url, long2array(System.currentTimeMillis()));
-                        }
+                    if (data == null) {
+                        data = download(url, sr);
                     }
 
                     try {
@@ -164,22 +159,123 @@ public abstract class CrawlPagedWebSearchPerformer<T extends CrawlableSearchResu
 
     protected abstract String getCrawlUrl(T sr);
 
+    /**
+     * Downloads the data, concurrent crawls of the same url or infohash
+     * (usually the same torrent from different search engines) share a
+     * single download.
+     * <p>
+     * The magnets are not shared here, the engine already shares the
+     * metadata fetch and each performer waits on (and cancels) its own.
+     */
+    private byte[] download(final String url, final CrawlableSearchResult sr) {
+        final String infohash = sr instanceof TorrentSearchResult ? ((TorrentSearchResult) sr).getHash() : null;
+
+        try {
+            if (url.startsWith("magnet")) {
+                return load(url, infohash, sr);
+            }
+
+            return downloads.execute(Arrays.asList(url, infohash), new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return load(url, infohash, sr);
+                }
+            });
+        } catch (Throwable e) {
+            LOG.warn("Error downloading data for: " + url + ", e=" + e.getMessage());
+            return null;
+        }
+    }
+
+    private byte[] load(String url, String infohash, CrawlableSearchResult sr) {
+        // a download in flight could have finished right before this one started
+        byte[] data = cacheGet(url);
+        if (data == null && infohash != null) {
+            data = cacheGet(infohash);
+        }
+        if (data != null) {
+            return data;
+        }
+
+        LOG.debug("Downloading data for: " + url);
+
+        if (url.startsWith("magnet")) {
+            data = fetchMagnet(url);
+        } else {
+            data = fetchBytes(url, sr.getDetailsUrl(), DEFAULT_CRAWL_TIMEOUT);
+        }
+
+        //we put this here optimistically hoping this is actually
+        //valid data. if no data can be crawled from this we remove it
+        //from the cache. we do this because this same data may come
+        //from another search engine and this way we avoid the
+        //expense of performing another download.
+        if (data != null) {
+            cachePut(url, data);
+
+            if (infohash != null) {
+                // if the search result has an infohash we can use...
+                cachePut(infohash, data);
+            }
+        } else {
+            LOG.warn("Failed to download data: " + url);
+            cachePut("failed:" + url, long2array(System.currentTimeMillis()));
+        }
+
+        return data;
+    }
+
     protected abstract List<? extends SearchResult> crawlResult(T sr, byte[] data) throws Exception;
 
+    /**
+     * Waits for the magnet metadata, the wait is cancelled if this performer is stopped,
+     * which only detaches it from the fetch shared with other waiters.
+     *
+     * @throws CancellationException if the performer was stopped
+     */
     private byte[] fetchMagnet(String magnet) {
-        if (magnetDownloader != null) {
-            return magnetDownloader.download(magnet, DEFAULT_MAGNET_DOWNLOAD_TIMEOUT_SECS);
-        } else {
+        if (magnetDownloader == null) {
             LOG.warn("Magnet downloader not set, download not supported: " + magnet);
             return null;
         }
+
+        Future<byte[]> f = magnetDownloader.downloadAsync(magnet);
+        if (f == null) {
+            return null;
+        }
+
+        magnetFetches.add(f);
+        try {
+            if (isStopped()) {
+                throw new CancellationException();
+            }
+            return f.get(DEFAULT_MAGNET_DOWNLOAD_TIMEOUT_SECS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            LOG.warn("Error fetching magnet: " + magnet + ", e=" + e.getMessage());
+            return null;
+        } finally {
+            magnetFetches.remove(f);
+            f.cancel(false);
+        }
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+
+        for (Future<byte[]> f : magnetFetches) {
+            f.cancel(true);
+        }
     }
 
     private byte[] cacheGet(String key) {
         if (cache != null) {
-            synchronized (cache) {
-                return cache.get(key);
-            }
+            return cache.get(key);
         } else {
             return null;
         }
@@ -187,17 +283,13 @@ public abstract class CrawlPagedWebSearchPerformer<T extends CrawlableSearchResu
 
     private void cachePut(String key, byte[] data) {
         if (cache != null) {
-            synchronized (cache) {
-                cache.put(key, data);
-            }
+            cache.put(key, data);
         }
     }
 
     private void cacheRemove(String key) {
         if (cache != null) {
-            synchronized (cache) {
-                cache.remove(key);
-            }
+            cache.remove(key);
         }
     }
 
@@ -225,18 +317,28 @@ public abstract class CrawlPagedWebSearchPerformer<T extends CrawlableSearchResu
 
     public static void clearCache() {
         if (cache != null) {
-            synchronized (cache) {
-                cache.clear();
-            }
+            cache.clear();
         }
     }
 
+    /**
+     * Number of crawl downloads actually performed.
+     */
+    public static long getDownloadCount() {
+        return downloads.executions();
+    }
+
+    /**
+     * Number of crawls that joined a download in flight instead of performing their own.
+     */
+    public static long getSharedDownloadCount() {
+        return downloads.joins();
+    }
+
     public static long getCacheSize() {
         long result = 0;
         if (cache != null) {
-            synchronized (cache) {
-                result = cache.size();
-            }
+            result = cache.size();
         }
         return result;
     }
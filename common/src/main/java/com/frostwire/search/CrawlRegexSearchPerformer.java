@@ -18,6 +18,12 @@
 
 package com.frostwire.search;
 
+import com.frostwire.logging.Logger;
+import org.apache.commons.io.IOUtils;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -26,6 +32,8 @@ import java.util.List;
  */
 public abstract class CrawlRegexSearchPerformer<T extends CrawlableSearchResult> extends CrawlPagedWebSearchPerformer<T> implements RegexSearchPerformer<T> {
 
+    private static final Logger LOG = Logger.getLogger(CrawlRegexSearchPerformer.class);
+
     private final int regexMaxResults;
 
     public CrawlRegexSearchPerformer(String domainName, long token, String keywords, int timeout, int pages, int numCrawls, int regexMaxResults) {
@@ -33,6 +41,38 @@ public abstract class CrawlRegexSearchPerformer<T extends CrawlableSearchResult>
         this.regexMaxResults = regexMaxResults;
     }
 
+    /**
+     * If {@link #isStreamingScrape()}, the page is matched as it arrives
+     * and the results are reported in batches, returning an empty list.
+     */
+    @Override
+    protected List<? extends SearchResult> searchPage(int page) {
+        if (!isStreamingScrape()) {
+            return super.searchPage(page);
+        }
+
+        String url = null;
+        InputStream in = null;
+        try {
+            url = getUrl(page, getEncodedKeywords());
+            in = fetchStream(url);
+            new StreamingScraper(this, regexMaxResults) {
+                @Override
+                protected void onResults(List<? extends SearchResult> results) {
+                    CrawlRegexSearchPerformer.this.onResults(results);
+                }
+            }.scrape(new InputStreamReader(in, "UTF-8"));
+        } catch (Throwable e) {
+            if (url == null) {
+                url = "n.a";
+            }
+            LOG.error("Error searching page [" + url + "]: " + e.getMessage(), e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        return Collections.emptyList();
+    }
+
     @Override
     protected List<? extends SearchResult> searchPage(String page) {
         final int prefixOffset = preliminaryHtmlPrefixOffset(page);
@@ -40,6 +80,15 @@ public abstract class CrawlRegexSearchPerformer<T extends CrawlableSearchResult>
         return PerformersHelper.searchPageHelper(this, reducedPage, regexMaxResults);
     }
 
+    /**
+     * Override to match the search page over a bounded window as it is
+     * read, only for the performers using the whole page as is, that is
+     * without a custom fetch or preliminary html offsets.
+     */
+    protected boolean isStreamingScrape() {
+        return false;
+    }
+
     protected int preliminaryHtmlSuffixOffset(String page) {
         return page.length();
     }
@@ -17,6 +17,8 @@
 
 package com.frostwire.search;
 
+import java.util.concurrent.Future;
+
 /**
  * 
  * @author gubatron
@@ -26,4 +28,12 @@ package com.frostwire.search;
 public interface MagnetDownloader {
 
     public byte[] download(String magnet, int timeout);
+
+    /**
+     * Starts the download of the magnet metadata, cancelling the returned
+     * future stops waiting for it.
+     *
+     * @return the future metadata, or null if the download can't be started
+     */
+    public Future<byte[]> downloadAsync(String magnet);
 }
@@ -0,0 +1,440 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.frostwire.search;
+
+import com.frostwire.logging.Logger;
+import com.frostwire.util.ThreadPool;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Size bounded in-memory tier in front of a (slower) crawl cache.
+ * <p>
+ * The entries are spread over independent segments, reads are lock free
+ * and eviction uses a CLOCK (second chance) approximation of LRU per segment.
+ * Writes are applied to the memory tier right away and to the backing cache
+ * from a single background thread. Until a write reaches the backing cache
+ * it's kept as pending, so a miss never loads a value older than it. The
+ * backing cache is read from the callers threads while written, it must be
+ * thread safe (the database and disk caches are).
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+public final class MemoryCrawlCache implements CrawlCache {
+
+    private static final Logger LOG = Logger.getLogger(MemoryCrawlCache.class);
+
+    private static final int NUM_SEGMENTS = 16;
+
+    private final CrawlCache backend;
+    private final Segment[] segments;
+    private final ExecutorService writer;
+
+    public MemoryCrawlCache(CrawlCache backend, long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Max bytes must be > 0");
+        }
+
+        this.backend = backend;
+        this.segments = new Segment[NUM_SEGMENTS];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(maxBytes / NUM_SEGMENTS);
+        }
+        this.writer = backend != null ?
+                new ThreadPool("MemoryCrawlCache-writer", 1, 1, 1L, new LinkedBlockingQueue<Runnable>(), true) :
+                null;
+    }
+
+    @Override
+    public byte[] get(String key) {
+        Segment s = segment(key);
+
+        byte[] data = s.get(key);
+        if (data != null) {
+            s.hits.incrementAndGet();
+            return data;
+        }
+
+        s.misses.incrementAndGet();
+
+        if (backend != null) {
+            long version;
+            synchronized (s.writes) {
+                Write w = s.pending.get(key);
+                if (w != null) {
+                    return w.data;
+                }
+                if (s.clearing > 0) {
+                    return null;
+                }
+                version = s.version;
+            }
+
+            try {
+                data = backend.get(key);
+            } catch (Throwable e) {
+                LOG.warn("Error reading from backing crawl cache: " + e.getMessage());
+            }
+
+            if (data != null) {
+                synchronized (s.writes) {
+                    // a write in the meantime makes the value read stale
+                    if (s.version == version) {
+                        s.put(key, data);
+                    }
+                }
+            }
+        }
+
+        return data;
+    }
+
+    @Override
+    public void put(final String key, final byte[] data) {
+        write(key, data);
+    }
+
+    @Override
+    public void remove(final String key) {
+        write(key, null);
+    }
+
+    @Override
+    public void clear() {
+        for (Segment s : segments) {
+            synchronized (s.writes) {
+                s.version++;
+                s.clear();
+                if (backend != null) {
+                    // the writes queued before are overwritten by the clear
+                    s.pending.clear();
+                    s.clearing++;
+                }
+            }
+        }
+
+        if (backend != null) {
+            writer.execute(new BackendTask() {
+                @Override
+                protected void execute() {
+                    backend.clear();
+                }
+
+                @Override
+                protected void done() {
+                    for (Segment s : segments) {
+                        synchronized (s.writes) {
+                            s.clearing--;
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * The size of the backing cache, or the number of entries in memory
+     * if there is no backing cache.
+     */
+    @Override
+    public long size() {
+        if (backend != null) {
+            return backend.size();
+        } else {
+            return count();
+        }
+    }
+
+    public long count() {
+        long n = 0;
+        for (Segment s : segments) {
+            n += s.map.size();
+        }
+        return n;
+    }
+
+    public long bytes() {
+        long n = 0;
+        for (Segment s : segments) {
+            n += s.bytes.get();
+        }
+        return n;
+    }
+
+    public long hits() {
+        long n = 0;
+        for (Segment s : segments) {
+            n += s.hits.get();
+        }
+        return n;
+    }
+
+    public long misses() {
+        long n = 0;
+        for (Segment s : segments) {
+            n += s.misses.get();
+        }
+        return n;
+    }
+
+    public long evictions() {
+        long n = 0;
+        for (Segment s : segments) {
+            n += s.evictions.get();
+        }
+        return n;
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryCrawlCache[count=" + count() + ", bytes=" + bytes() + ", hits=" + hits() +
+                ", misses=" + misses() + ", evictions=" + evictions() + "]";
+    }
+
+    private Segment segment(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (NUM_SEGMENTS - 1)];
+    }
+
+    // data null is a remove
+    private void write(final String key, final byte[] data) {
+        final Segment s = segment(key);
+        final Write w = new Write(data);
+
+        synchronized (s.writes) {
+            s.version++;
+            if (data != null) {
+                s.put(key, data);
+            } else {
+                s.remove(key);
+            }
+            if (backend != null) {
+                s.pending.put(key, w);
+            }
+        }
+
+        if (backend != null) {
+            writer.execute(new BackendTask() {
+                @Override
+                protected void execute() {
+                    if (data != null) {
+                        backend.put(key, data);
+                    } else {
+                        backend.remove(key);
+                    }
+                }
+
+                @Override
+                protected void done() {
+                    synchronized (s.writes) {
+                        if (s.pending.get(key) == w) {
+                            s.pending.remove(key);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private abstract class BackendTask implements Runnable {
+
+        @Override
+        public final void run() {
+            try {
+                execute();
+            } catch (Throwable e) {
+                LOG.warn("Error writing to backing crawl cache: " + e.getMessage());
+            } finally {
+                done();
+            }
+        }
+
+        protected abstract void execute();
+
+        protected abstract void done();
+    }
+
+    private static final class Write {
+
+        private final byte[] data;
+
+        public Write(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    private static final class Entry {
+
+        private final String key;
+        private final byte[] data;
+
+        private volatile boolean referenced;
+        private volatile boolean removed;
+
+        public Entry(String key, byte[] data) {
+            this.key = key;
+            this.data = data;
+        }
+    }
+
+    private static final class Segment {
+
+        private final long maxBytes;
+        private final ConcurrentHashMap<String, Entry> map;
+        private final ConcurrentLinkedQueue<Entry> clock;
+        private final ReentrantLock lock;
+
+        // guards the writes not yet in the backing cache
+        private final Object writes;
+        private final Map<String, Write> pending;
+        private long version;
+        private int clearing;
+
+        private final AtomicLong bytes;
+        private final AtomicLong hits;
+        private final AtomicLong misses;
+        private final AtomicLong evictions;
+
+        // entries in the clock queue no longer in the map
+        private int stale;
+
+        public Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+            this.map = new ConcurrentHashMap<String, Entry>();
+            this.clock = new ConcurrentLinkedQueue<Entry>();
+            this.lock = new ReentrantLock();
+            this.writes = new Object();
+            this.pending = new HashMap<String, Write>();
+            this.bytes = new AtomicLong();
+            this.hits = new AtomicLong();
+            this.misses = new AtomicLong();
+            this.evictions = new AtomicLong();
+        }
+
+        public byte[] get(String key) {
+            Entry e = map.get(key);
+            if (e != null) {
+                e.referenced = true;
+                return e.data;
+            }
+            return null;
+        }
+
+        public void put(String key, byte[] data) {
+            if (data == null || data.length > maxBytes) {
+                remove(key);
+                return;
+            }
+
+            Entry e = new Entry(key, data);
+
+            lock.lock();
+            try {
+                Entry old = map.put(key, e);
+                if (old != null) {
+                    unlink(old);
+                }
+                bytes.addAndGet(data.length);
+                clock.offer(e);
+
+                evict();
+
+                if (stale > map.size()) {
+                    purge();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void remove(String key) {
+            lock.lock();
+            try {
+                Entry e = map.remove(key);
+                if (e != null) {
+                    unlink(e);
+                }
+
+                if (stale > map.size()) {
+                    purge();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void clear() {
+            lock.lock();
+            try {
+                map.clear();
+                clock.clear();
+                bytes.set(0);
+                stale = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void unlink(Entry e) {
+            e.removed = true;
+            bytes.addAndGet(-e.data.length);
+            stale++;
+        }
+
+        private void evict() {
+            while (bytes.get() > maxBytes) {
+                Entry e = clock.poll();
+                if (e == null) {
+                    break;
+                }
+
+                if (e.removed) {
+                    stale--;
+                } else if (e.referenced) {
+                    e.referenced = false;
+                    clock.offer(e);
+                } else {
+                    map.remove(e.key, e);
+                    e.removed = true;
+                    bytes.addAndGet(-e.data.length);
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+
+        private void purge() {
+            Iterator<Entry> it = clock.iterator();
+            while (it.hasNext()) {
+                if (it.next().removed) {
+                    it.remove();
+                }
+            }
+            stale = 0;
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.frostwire.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Tells if a search result contains all the (normalized) tokens of a query.
+ * <p>
+ * Built once per search. The text of the result is stripped of html,
+ * sanitized and normalized in a few passes over per thread reusable char
+ * buffers, then all the tokens are searched at once with an Aho-Corasick
+ * automaton. The result is the same as sanitizing and normalizing the
+ * text with regular expressions and testing each token with
+ * {@link String#contains(CharSequence)}.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+public final class QueryMatcher {
+
+    private static final Pattern COMBINING_DIACRITICAL_MARKS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+
+    // the sequences replaced by a space in the sanitized text, in order of precedence
+    private static final String[] SANITIZE_SEQUENCES = {".torrent", "www.", ".com", ".net"};
+    private static final String SANITIZE_CHARS = "\\/%_;-.()[]\n\r\u00D0&~{}*@^'=!,\u00A1|#\u00C0\u00C1";
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private final int numTokens;
+    private final boolean matchesAll;
+
+    // automaton, node 0 is the root
+    private final char[][] keys;
+    private final int[][] next;
+    private final int[] fail;
+    private final int[][] outputs;
+
+    private QueryMatcher(List<String> tokens) {
+        Set<String> set = new LinkedHashSet<>(tokens);
+        // empty tokens are contained in any text
+        set.remove("");
+
+        this.numTokens = set.size();
+        this.matchesAll = numTokens == 0;
+
+        List<char[]> keys = new ArrayList<>();
+        List<int[]> next = new ArrayList<>();
+        List<int[]> outputs = new ArrayList<>();
+        keys.add(new char[0]);
+        next.add(new int[0]);
+        outputs.add(new int[0]);
+
+        int index = 0;
+        for (String token : set) {
+            int state = 0;
+            for (int i = 0; i < token.length(); i++) {
+                char c = token.charAt(i);
+                int s = go(keys.get(state), next.get(state), c);
+                if (s == -1) {
+                    s = keys.size();
+                    keys.add(new char[0]);
+                    next.add(new int[0]);
+                    outputs.add(new int[0]);
+
+                    keys.set(state, append(keys.get(state), c));
+                    next.set(state, append(next.get(state), s));
+                }
+                state = s;
+            }
+            outputs.set(state, append(outputs.get(state), index));
+            index++;
+        }
+
+        this.keys = keys.toArray(new char[0][]);
+        this.next = next.toArray(new int[0][]);
+        this.outputs = outputs.toArray(new int[0][]);
+        this.fail = new int[this.keys.length];
+
+        buildFailureLinks();
+    }
+
+    public static QueryMatcher from(List<String> tokens) {
+        return new QueryMatcher(tokens);
+    }
+
+    /**
+     * Matches the display name of the result, plus the display name of
+     * the parent and the filename when available.
+     */
+    public boolean matches(SearchResult sr) {
+        String parent = null;
+        if (sr instanceof CrawledSearchResult) {
+            parent = String.valueOf(((CrawledSearchResult) sr).getParent().getDisplayName());
+        }
+
+        String filename = null;
+        if (sr instanceof FileSearchResult) {
+            filename = String.valueOf(((FileSearchResult) sr).getFilename());
+        }
+
+        return matches(String.valueOf(sr.getDisplayName()), parent, filename);
+    }
+
+    /**
+     * Matches the concatenation of the non null parts.
+     */
+    public boolean matches(String part1, String part2, String part3) {
+        if (matchesAll) {
+            return true;
+        }
+
+        Scratch s = SCRATCH.get();
+
+        s.length = 0;
+        s.append(part1);
+        s.append(part2);
+        s.append(part3);
+
+        strip(s, '<', '>');
+        strip(s, '&', ';');
+        sanitize(s);
+        normalize(s);
+
+        return search(s);
+    }
+
+    private boolean search(Scratch s) {
+        boolean[] found = s.found(numTokens);
+        int remaining = numTokens;
+
+        char[] text = s.buffer;
+        int state = 0;
+        for (int i = 0; i < s.length; i++) {
+            char c = text[i];
+
+            int n;
+            while ((n = go(keys[state], next[state], c)) == -1 && state != 0) {
+                state = fail[state];
+            }
+            state = n != -1 ? n : 0;
+
+            for (int t : outputs[state]) {
+                if (!found[t]) {
+                    found[t] = true;
+                    if (--remaining == 0) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private void buildFailureLinks() {
+        LinkedList<Integer> queue = new LinkedList<>();
+        for (int s : next[0]) {
+            fail[s] = 0;
+            queue.add(s);
+        }
+
+        while (!queue.isEmpty()) {
+            int r = queue.poll();
+            for (int i = 0; i < keys[r].length; i++) {
+                char c = keys[r][i];
+                int s = next[r][i];
+                queue.add(s);
+
+                int state = fail[r];
+                int n;
+                while ((n = go(keys[state], next[state], c)) == -1 && state != 0) {
+                    state = fail[state];
+                }
+                fail[s] = n != -1 ? n : 0;
+
+                // the outputs of the longest proper suffix are outputs too
+                int[] out = outputs[s];
+                for (int t : outputs[fail[s]]) {
+                    out = append(out, t);
+                }
+                outputs[s] = out;
+            }
+        }
+    }
+
+    private static int go(char[] keys, int[] next, char c) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == c) {
+                return next[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the text from an open char to the nearest close char in the
+     * same line (same as replacing "\<open>.*?\<close>" with "").
+     */
+    private static void strip(Scratch s, char open, char close) {
+        char[] buffer = s.buffer;
+        int length = s.length;
+        int j = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = buffer[i];
+            if (c == open) {
+                int k = i + 1;
+                while (k < length && buffer[k] != close && !isLineTerminator(buffer[k])) {
+                    k++;
+                }
+                if (k < length && buffer[k] == close) {
+                    i = k;
+                    continue;
+                }
+            }
+            buffer[j++] = c;
+        }
+
+        s.length = j;
+    }
+
+    /**
+     * Replaces the noise sequences and chars by spaces, collapses the
+     * whitespaces and trims.
+     */
+    private static void sanitize(Scratch s) {
+        char[] buffer = s.buffer;
+        int length = s.length;
+        int j = 0;
+        boolean space = false;
+
+        for (int i = 0; i < length; i++) {
+            char c = buffer[i];
+
+            int skip = sequenceAt(buffer, length, i);
+            if (skip > 0) {
+                i += skip - 1;
+                c = ' ';
+            } else if (SANITIZE_CHARS.indexOf(c) != -1) {
+                c = ' ';
+            }
+
+            if (isWhitespace(c)) {
+                if (!space) {
+                    buffer[j++] = ' ';
+                    space = true;
+                }
+            } else {
+                buffer[j++] = c;
+                space = false;
+            }
+        }
+
+        // trim
+        int start = 0;
+        while (start < j && buffer[start] <= ' ') {
+            start++;
+        }
+        while (j > start && buffer[j - 1] <= ' ') {
+            j--;
+        }
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, j - start);
+        }
+
+        s.length = j - start;
+    }
+
+    private static int sequenceAt(char[] buffer, int length, int offset) {
+        for (String seq : SANITIZE_SEQUENCES) {
+            int n = seq.length();
+            if (offset + n <= length) {
+                int k = 0;
+                while (k < n && buffer[offset + k] == seq.charAt(k)) {
+                    k++;
+                }
+                if (k == n) {
+                    return n;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * NFKD decomposition, without the combining marks and in lower case. The
+     * ASCII only text (the common case) is simply lower cased in place.
+     */
+    private static void normalize(Scratch s) {
+        char[] buffer = s.buffer;
+        int length = s.length;
+
+        boolean ascii = true;
+        for (int i = 0; i < length && ascii; i++) {
+            ascii = buffer[i] < 0x80;
+        }
+
+        if (ascii) {
+            for (int i = 0; i < length; i++) {
+                char c = buffer[i];
+                if (c >= 'A' && c <= 'Z') {
+                    buffer[i] = (char) (c + ('a' - 'A'));
+                }
+            }
+        } else {
+            String str = Normalizer.normalize(new String(buffer, 0, length), Normalizer.Form.NFKD);
+            str = COMBINING_DIACRITICAL_MARKS.matcher(str).replaceAll("");
+            str = str.toLowerCase(Locale.US);
+
+            s.length = 0;
+            s.append(str);
+        }
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    // same as the regex \s
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static char[] append(char[] arr, char c) {
+        char[] r = Arrays.copyOf(arr, arr.length + 1);
+        r[arr.length] = c;
+        return r;
+    }
+
+    private static int[] append(int[] arr, int n) {
+        int[] r = Arrays.copyOf(arr, arr.length + 1);
+        r[arr.length] = n;
+        return r;
+    }
+
+    private static final class Scratch {
+
+        private char[] buffer = new char[256];
+        private int length;
+
+        private boolean[] found = new boolean[16];
+
+        void append(String str) {
+            if (str == null) {
+                return;
+            }
+
+            int n = str.length();
+            if (length + n > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + n));
+            }
+            str.getChars(0, n, buffer, length);
+            length += n;
+        }
+
+        boolean[] found(int n) {
+            if (found.length < n) {
+                found = new boolean[n];
+            } else {
+                Arrays.fill(found, 0, n, false);
+            }
+            return found;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.frostwire.search;
+
+import com.frostwire.search.torrent.TorrentSearchResult;
+import com.frostwire.util.Hex;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Detects the same result reported by different engines (or pages) of a
+ * search, the torrents by info-hash and the HTTP results by normalized
+ * download URL.
+ * <p>
+ * The first result of a key goes on, the next ones are merged into its
+ * {@link Group} and dropped, which also avoids crawling them again. The
+ * UI shows the seeds and sources of the group with the first result.
+ * The results of a crawl (the files of a torrent) are never merged, they
+ * share the info-hash of the parent.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+public final class SearchDeduplicator {
+
+    private static final String BASE32_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
+
+    private final Map<String, Group> groups;
+
+    private long results;
+    private long duplicates;
+    private long crawlsAvoided;
+
+    public SearchDeduplicator() {
+        this.groups = new HashMap<>();
+    }
+
+    /**
+     * Returns false if the result is a duplicate of a previous one, in
+     * which case it is merged into the group of the first.
+     */
+    public synchronized boolean add(SearchResult sr) {
+        results++;
+
+        String key = key(sr);
+        if (key == null) {
+            return true;
+        }
+
+        Group g = groups.get(key);
+        if (g == null) {
+            groups.put(key, new Group(sr));
+            return true;
+        }
+
+        g.merge(sr);
+        duplicates++;
+        if (sr instanceof CrawlableSearchResult) {
+            crawlsAvoided++;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the merged entry of the result, or null if the
+     * result is not subject to deduplication.
+     */
+    public synchronized Group group(SearchResult sr) {
+        String key = key(sr);
+        return key != null ? groups.get(key) : null;
+    }
+
+    public synchronized long results() {
+        return results;
+    }
+
+    public synchronized long duplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Duplicate results that would have been crawled.
+     */
+    public synchronized long crawlsAvoided() {
+        return crawlsAvoided;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long pct = results > 0 ? duplicates * 100 / results : 0;
+        return "SearchDeduplicator[results=" + results + ", duplicates=" + duplicates + " (" + pct + "%)" +
+                ", crawlsAvoided=" + crawlsAvoided + ", groups=" + groups.size() + "]";
+    }
+
+    /**
+     * The canonical key of the result, or null if it can't be determined.
+     */
+    static String key(SearchResult sr) {
+        if (sr instanceof CrawledSearchResult) {
+            // the files of a torrent have the hash of the torrent
+            if (!(sr instanceof HttpSearchResult)) {
+                return null;
+            }
+        } else if (sr instanceof TorrentSearchResult) {
+            String hash = infoHash(((TorrentSearchResult) sr).getHash());
+            return hash != null ? "btih:" + hash : null;
+        }
+
+        if (sr instanceof HttpSearchResult) {
+            String url = normalizeUrl(((HttpSearchResult) sr).getDownloadUrl());
+            return url != null ? "url:" + url : null;
+        }
+
+        return null;
+    }
+
+    /**
+     * Lower case hex form of a hex or base32 info-hash.
+     */
+    static String infoHash(String hash) {
+        if (hash == null) {
+            return null;
+        }
+
+        hash = hash.trim();
+        if (hash.length() == 40) {
+            try {
+                Hex.decode(hash);
+                return hash.toLowerCase(Locale.US);
+            } catch (Throwable e) {
+                return null;
+            }
+        }
+
+        if (hash.length() == 32) {
+            byte[] bytes = new byte[20];
+            int buffer = 0;
+            int bits = 0;
+            int n = 0;
+            for (int i = 0; i < 32; i++) {
+                int v = BASE32_ALPHABET.indexOf(Character.toUpperCase(hash.charAt(i)));
+                if (v == -1) {
+                    return null;
+                }
+                buffer = (buffer << 5) | v;
+                bits += 5;
+                if (bits >= 8) {
+                    bits -= 8;
+                    bytes[n++] = (byte) (buffer >> bits);
+                }
+            }
+            return Hex.encode(bytes).toLowerCase(Locale.US);
+        }
+
+        return null;
+    }
+
+    /**
+     * Lower case scheme and host, without default port, fragment
+     * and trailing slash.
+     */
+    static String normalizeUrl(String url) {
+        if (url == null || url.trim().isEmpty()) {
+            return null;
+        }
+
+        url = url.trim();
+
+        try {
+            URI u = new URI(url);
+            String scheme = u.getScheme();
+            String host = u.getHost();
+            if (scheme == null || host == null) {
+                return url;
+            }
+
+            scheme = scheme.toLowerCase(Locale.US);
+            int port = u.getPort();
+            if ((port == 80 && scheme.equals("http")) || (port == 443 && scheme.equals("https"))) {
+                port = -1;
+            }
+
+            String path = u.getRawPath();
+            if (path == null) {
+                path = "";
+            }
+            while (path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+
+            StringBuilder sb = new StringBuilder(url.length());
+            sb.append(scheme).append("://").append(host.toLowerCase(Locale.US));
+            if (port != -1) {
+                sb.append(':').append(port);
+            }
+            sb.append(path);
+            if (u.getRawQuery() != null) {
+                sb.append('?').append(u.getRawQuery());
+            }
+            return sb.toString();
+        } catch (Throwable e) {
+            return url;
+        }
+    }
+
+    /**
+     * The results with the same key, merged.
+     */
+    public static final class Group {
+
+        private final SearchResult first;
+        private final Set<String> sources;
+        private int seeds;
+        private int size;
+
+        Group(SearchResult first) {
+            this.first = first;
+            this.sources = new LinkedHashSet<>();
+            this.seeds = -1;
+            merge(first);
+        }
+
+        /**
+         * The result shown for the group.
+         */
+        public synchronized SearchResult first() {
+            return first;
+        }
+
+        public synchronized Set<String> sources() {
+            return Collections.unmodifiableSet(new LinkedHashSet<>(sources));
+        }
+
+        /**
+         * The maximum seeds reported, the engines see the same swarm so
+         * the counts are not added. -1 if unknown.
+         */
+        public synchronized int seeds() {
+            return seeds;
+        }
+
+        /**
+         * Number of results merged, including the first.
+         */
+        public synchronized int size() {
+            return size;
+        }
+
+        private synchronized void merge(SearchResult sr) {
+            size++;
+            if (sr.getSource() != null) {
+                sources.add(sr.getSource());
+            }
+            if (sr instanceof TorrentSearchResult) {
+                seeds = Math.max(seeds, ((TorrentSearchResult) sr).getSeeds());
+            }
+        }
+    }
+}
@@ -40,8 +40,12 @@ import com.frostwire.util.ThreadPool;
 
 import java.lang.ref.WeakReference;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author gubatron
@@ -51,17 +55,38 @@ public final class SearchManager {
 
     private static final Logger LOG = Logger.getLogger(SearchManager.class);
 
-    private final ExecutorService executor;
-    private final List<SearchTask> tasks;
+    /**
+     * Time after the first perform of a token when its pending crawls are
+     * dropped, unless the platform sets its own.
+     */
+    public static final long DEFAULT_TOKEN_TIMEOUT = TimeUnit.MINUTES.toMillis(2);
+
+    private final ThreadPool executor;
+    private final SearchTaskRegistry tasks;
     private final List<WeakReference<SearchTable>> tables;
+    private final ConcurrentMap<Class<?>, Bulkhead> bulkheads;
+    private final ConcurrentMap<Long, Long> deadlines;
+    private final ConcurrentMap<Long, SearchDeduplicator> deduplicators;
+    private final AtomicLong duplicates;
+    private final AtomicLong crawlsAvoided;
 
     private SearchListener listener;
     private SearchTable lastTable;
 
+    private volatile int engineBudget;
+    private volatile long tokenTimeout;
+
     private SearchManager(int nThreads) {
         this.executor = new ThreadPool("SearchManager", nThreads, nThreads, 1L, new PriorityBlockingQueue<Runnable>(), true);
-        this.tasks = Collections.synchronizedList(new LinkedList<SearchTask>());
+        this.tasks = new SearchTaskRegistry();
         this.tables = Collections.synchronizedList(new LinkedList<WeakReference<SearchTable>>());
+        this.bulkheads = new ConcurrentHashMap<Class<?>, Bulkhead>();
+        this.deadlines = new ConcurrentHashMap<Long, Long>();
+        this.deduplicators = new ConcurrentHashMap<Long, SearchDeduplicator>();
+        this.duplicates = new AtomicLong();
+        this.crawlsAvoided = new AtomicLong();
+        this.engineBudget = Math.max(1, nThreads / 2);
+        this.tokenTimeout = DEFAULT_TOKEN_TIMEOUT;
     }
 
     private static class Loader {
@@ -102,7 +127,16 @@ public final class SearchManager {
                 }
             });
 
-            SearchTask task = new PerformTask(this, performer, nextOrdinal(performer.getToken()));
+            long timeout = tokenTimeout;
+            if (timeout > 0) {
+                deadlines.putIfAbsent(performer.getToken(), System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout));
+            }
+
+            if (!deduplicators.containsKey(performer.getToken())) {
+                deduplicators.putIfAbsent(performer.getToken(), new SearchDeduplicator());
+            }
+
+            SearchTask task = new PerformTask(this, performer, tasks.register(performer));
             submit(task);
         } else {
             LOG.warn("Search performer is null, review your logic");
@@ -145,15 +179,158 @@ public final class SearchManager {
         this.listener = listener;
     }
 
+    /**
+     * Sets the number of worker threads shared by all the search engines.
+     */
+    public void setGlobalBudget(int nThreads) {
+        if (nThreads <= 0) {
+            throw new IllegalArgumentException("Global budget must be > 0");
+        }
+        if (nThreads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(nThreads);
+            executor.setCorePoolSize(nThreads);
+        } else {
+            executor.setCorePoolSize(nThreads);
+            executor.setMaximumPoolSize(nThreads);
+        }
+    }
+
+    /**
+     * Sets the maximum number of tasks of the same search engine that can
+     * be running (or waiting for a worker) at the same time, 0 means no limit.
+     * <p>
+     * The tasks of an engine over its budget are parked until one of its
+     * own tasks finishes, so a slow engine can't hold every worker.
+     */
+    public void setEngineBudget(int maxTasks) {
+        if (maxTasks < 0) {
+            throw new IllegalArgumentException("Engine budget must be >= 0");
+        }
+        this.engineBudget = maxTasks;
+        for (Bulkhead b : bulkheads.values()) {
+            dispatch(b);
+        }
+    }
+
+    /**
+     * Sets the time after the first perform of a token when its pending
+     * crawls are dropped, 0 means no deadline. Applies to new tokens.
+     */
+    public void setTokenTimeout(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Token timeout must be >= 0");
+        }
+        this.tokenTimeout = millis;
+    }
+
+    /**
+     * The scheduling metrics of each search engine, also logged (debug)
+     * when a search finishes.
+     */
+    public List<SearchTaskStats> engineStats() {
+        List<SearchTaskStats> stats = new ArrayList<SearchTaskStats>(bulkheads.size());
+        for (Bulkhead b : bulkheads.values()) {
+            stats.add(b.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the deduplicator of a search in progress, null if the
+     * token is unknown or already finished. The UI takes the merged
+     * group of each result from it.
+     */
+    public SearchDeduplicator deduplicator(long token) {
+        return deduplicators.get(token);
+    }
+
+    /**
+     * Total of duplicate results dropped, in all the searches.
+     */
+    public long duplicates() {
+        return duplicates.get();
+    }
+
+    /**
+     * Total of duplicate results not crawled, in all the searches.
+     */
+    public long crawlsAvoided() {
+        return crawlsAvoided.get();
+    }
+
     private void submit(SearchTask task) {
-        tasks.add(task);
-        executor.execute(task);
+        Bulkhead b = bulkhead(task.performer);
+        task.bulkhead = b;
+        task.submitted = System.nanoTime();
+        b.queued.incrementAndGet();
+        b.parked.offer(task);
+        dispatch(b);
+    }
+
+    private Bulkhead bulkhead(SearchPerformer performer) {
+        Class<?> key = performer.getClass();
+        Bulkhead b = bulkheads.get(key);
+        if (b == null) {
+            Bulkhead newBulkhead = new Bulkhead(key.getSimpleName());
+            b = bulkheads.putIfAbsent(key, newBulkhead);
+            if (b == null) {
+                b = newBulkhead;
+            }
+        }
+        return b;
+    }
+
+    private void dispatch(Bulkhead b) {
+        while (!b.parked.isEmpty()) {
+            int n = b.slots.get();
+            int limit = engineBudget;
+            if (limit > 0 && n >= limit) {
+                return;
+            }
+            if (!b.slots.compareAndSet(n, n + 1)) {
+                continue;
+            }
+
+            SearchTask task = b.parked.poll();
+            if (task == null) {
+                b.slots.decrementAndGet();
+            } else if (task instanceof CrawlTask && expired(task)) {
+                b.slots.decrementAndGet();
+                b.queued.decrementAndGet();
+                b.dropped.incrementAndGet();
+                onTokenTaskFinished(task);
+            } else {
+                try {
+                    executor.execute(task);
+                } catch (Throwable e) {
+                    LOG.error("Error submitting search task: " + task, e);
+                    b.slots.decrementAndGet();
+                    b.queued.decrementAndGet();
+                    onTokenTaskFinished(task);
+                }
+            }
+        }
+    }
+
+    private boolean expired(SearchTask task) {
+        Long deadline = deadlines.get(task.token());
+        return deadline != null && System.nanoTime() - deadline > 0;
     }
 
     private void onResults(SearchPerformer performer, List<? extends SearchResult> results) {
         List<SearchResult> list = new LinkedList<SearchResult>();
+        SearchDeduplicator dedup = deduplicators.get(performer.getToken());
 
         for (SearchResult sr : results) {
+            if (dedup != null && !dedup.add(sr)) {
+                // already reported (and crawled) from another engine
+                duplicates.incrementAndGet();
+                if (sr instanceof CrawlableSearchResult) {
+                    crawlsAvoided.incrementAndGet();
+                }
+                continue;
+            }
+
             if (sr instanceof CrawlableSearchResult) {
                 CrawlableSearchResult csr = (CrawlableSearchResult) sr;
 
@@ -217,7 +394,7 @@ public final class SearchManager {
     private void crawl(SearchPerformer performer, CrawlableSearchResult sr) {
         if (performer != null && !performer.isStopped()) {
             try {
-                SearchTask task = new CrawlTask(this, performer, sr, nextOrdinal(performer.getToken()));
+                SearchTask task = new CrawlTask(this, performer, sr, tasks.register(performer));
                 submit(task);
             } catch (Throwable e) {
                 LOG.warn("Error scheduling crawling of search result: " + sr);
@@ -228,51 +405,57 @@ public final class SearchManager {
     }
 
     private void stopTasks(long token) {
-        synchronized (tasks) {
-            Iterator<SearchTask> it = tasks.iterator();
-            while (it.hasNext()) {
-                SearchTask task = it.next();
-                if (token == -1L || task.token() == token) {
-                    task.stopSearch();
-                }
-            }
-        }
+        tasks.stop(token);
     }
 
-    private void checkIfFinished(long token) {
-        SearchTask pendingTask = null;
+    private void onTaskStarted(SearchTask task) {
+        Bulkhead b = task.bulkhead;
+        task.started = System.nanoTime();
+        b.queued.decrementAndGet();
+        b.running.incrementAndGet();
+        b.waitTime.addAndGet(task.started - task.submitted);
+    }
 
-        synchronized (tasks) {
-            Iterator<SearchTask> it = tasks.iterator();
-            while (it.hasNext() && pendingTask == null) {
-                SearchTask task = it.next();
-                if (task.token() == token && !task.stopped()) {
-                    pendingTask = task;
-                }
+    private boolean dropIfExpired(SearchTask task) {
+        if (expired(task)) {
+            Bulkhead b = task.bulkhead;
+            b.dropped.incrementAndGet();
+            // only the tasks run count in the averages
+            b.waitTime.addAndGet(task.submitted - task.started);
+            return true;
+        }
+        return false;
+    }
 
-                if (task.stopped()) {
-                    it.remove();
-                }
+    private void onTaskFinished(SearchTask task, boolean dropped) {
+        Bulkhead b = task.bulkhead;
+        b.running.decrementAndGet();
+        if (!dropped) {
+            long t = System.nanoTime() - task.started;
+            b.completed.incrementAndGet();
+            b.runTime.addAndGet(t);
+            long max = b.maxRunTime.get();
+            while (t > max && !b.maxRunTime.compareAndSet(max, t)) {
+                max = b.maxRunTime.get();
             }
         }
 
-        if (pendingTask == null) {
-            onStopped(token);
-        }
+        b.slots.decrementAndGet();
+        dispatch(b);
+
+        onTokenTaskFinished(task);
     }
 
-    private int nextOrdinal(long token) {
-        int ordinal = 0;
-        synchronized (tasks) {
-            Iterator<SearchTask> it = tasks.iterator();
-            while (it.hasNext()) {
-                SearchTask task = it.next();
-                if (task.token() == token) {
-                    ordinal = ordinal + 1;
-                }
+    private void onTokenTaskFinished(SearchTask task) {
+        if (tasks.complete(task.performer)) {
+            deadlines.remove(task.token());
+            SearchDeduplicator dedup = deduplicators.remove(task.token());
+            if (dedup != null && dedup.duplicates() > 0) {
+                LOG.info("Search " + task.token() + " finished, " + dedup);
             }
+            LOG.debug("Search " + task.token() + " finished, engines " + engineStats());
+            onStopped(task.token());
         }
-        return ordinal;
     }
 
     private static abstract class SearchTask extends Thread implements Comparable<SearchTask> {
@@ -281,6 +464,10 @@ public final class SearchManager {
         protected final SearchPerformer performer;
         private final int ordinal;
 
+        Bulkhead bulkhead;
+        long submitted;
+        long started;
+
         public SearchTask(SearchManager manager, SearchPerformer performer, int ordinal) {
             this.manager = manager;
             this.performer = performer;
@@ -296,10 +483,6 @@ public final class SearchManager {
             return performer.isStopped();
         }
 
-        public void stopSearch() {
-            performer.stop();
-        }
-
         @Override
         public int compareTo(SearchTask o) {
             int x = ordinal;
@@ -316,6 +499,7 @@ public final class SearchManager {
 
         @Override
         public void run() {
+            manager.onTaskStarted(this);
             try {
                 if (!stopped()) {
                     performer.perform();
@@ -323,9 +507,7 @@ public final class SearchManager {
             } catch (Throwable e) {
                 LOG.warn("Error performing search: " + performer + ", e=" + e.getMessage());
             } finally {
-                if (manager.tasks.remove(this)) {
-                    manager.checkIfFinished(performer.getToken());
-                }
+                manager.onTaskFinished(this, false);
             }
         }
     }
@@ -341,20 +523,62 @@ public final class SearchManager {
 
         @Override
         public void run() {
+            manager.onTaskStarted(this);
+            boolean dropped = false;
             try {
                 if (!stopped()) {
-                    performer.crawl(sr);
+                    dropped = manager.dropIfExpired(this);
+                    if (!dropped) {
+                        performer.crawl(sr);
+                    }
                 }
             } catch (Throwable e) {
                 LOG.warn("Error performing crawling of: " + sr + ", e=" + e.getMessage());
             } finally {
-                if (manager.tasks.remove(this)) {
-                    manager.checkIfFinished(performer.getToken());
-                }
+                manager.onTaskFinished(this, dropped);
             }
         }
     }
 
+    private static final class Bulkhead {
+
+        private final String name;
+        private final PriorityBlockingQueue<SearchTask> parked;
+        // tasks handed to the executor, limited by the engine budget
+        private final AtomicInteger slots;
+        private final AtomicInteger queued;
+        private final AtomicInteger running;
+        private final AtomicLong completed;
+        private final AtomicLong dropped;
+        private final AtomicLong waitTime;
+        private final AtomicLong runTime;
+        private final AtomicLong maxRunTime;
+
+        public Bulkhead(String name) {
+            this.name = name;
+            this.parked = new PriorityBlockingQueue<SearchTask>();
+            this.slots = new AtomicInteger();
+            this.queued = new AtomicInteger();
+            this.running = new AtomicInteger();
+            this.completed = new AtomicLong();
+            this.dropped = new AtomicLong();
+            this.waitTime = new AtomicLong();
+            this.runTime = new AtomicLong();
+            this.maxRunTime = new AtomicLong();
+        }
+
+        public SearchTaskStats stats() {
+            int r = running.get();
+            long c = completed.get();
+            long avgWaitTime = (c + r) > 0 ? waitTime.get() / (c + r) : 0;
+            long avgRunTime = c > 0 ? runTime.get() / c : 0;
+            return new SearchTaskStats(name, queued.get(), r, c, dropped.get(),
+                    TimeUnit.NANOSECONDS.toMillis(avgWaitTime),
+                    TimeUnit.NANOSECONDS.toMillis(avgRunTime),
+                    TimeUnit.NANOSECONDS.toMillis(maxRunTime.get()));
+        }
+    }
+
     // search engines
 
     private static final int DEFAULT_SEARCH_PERFORMER_TIMEOUT = 10000;
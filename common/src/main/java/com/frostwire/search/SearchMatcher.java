@@ -46,6 +46,14 @@ public final class SearchMatcher {
         return matcher.find();
     }
 
+    public int start() {
+        return matcher.start();
+    }
+
+    public int end() {
+        return matcher.end();
+    }
+
     public String group(int group) {
         return copy(matcher.group(group));
     }
@@ -0,0 +1,156 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.frostwire.search;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps track of the in-flight search tasks grouped by search token.
+ * <p>
+ * Ordinal assignment, completion tracking and the "is this token finished"
+ * check are constant time and lock free, stopping a token only touches the
+ * performers of that token.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+final class SearchTaskRegistry {
+
+    private final ConcurrentMap<Long, TokenTasks> tokens;
+
+    SearchTaskRegistry() {
+        this.tokens = new ConcurrentHashMap<Long, TokenTasks>();
+    }
+
+    /**
+     * Registers a new in-flight task for the performer.
+     *
+     * @return the ordinal of the task, the number of tasks already pending for the same token
+     */
+    public int register(SearchPerformer performer) {
+        long token = performer.getToken();
+
+        while (true) {
+            TokenTasks t = tokens.get(token);
+            if (t == null) {
+                TokenTasks newTasks = new TokenTasks();
+                t = tokens.putIfAbsent(token, newTasks);
+                if (t == null) {
+                    t = newTasks;
+                }
+            }
+
+            int ordinal = t.acquire();
+            if (ordinal >= 0) {
+                t.performers.add(performer);
+                return ordinal;
+            }
+
+            // the entry was finished concurrently, help removing it and retry
+            tokens.remove(token, t);
+        }
+    }
+
+    /**
+     * Marks one task of the performer's token as completed.
+     *
+     * @return true if this was the last in-flight task of the token
+     */
+    public boolean complete(SearchPerformer performer) {
+        long token = performer.getToken();
+        TokenTasks t = tokens.get(token);
+        if (t == null) {
+            return false;
+        }
+
+        if (t.release()) {
+            tokens.remove(token, t);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Stops all the performers with in-flight tasks for the token, or
+     * every performer if the token is -1.
+     */
+    public void stop(long token) {
+        if (token == -1L) {
+            for (TokenTasks t : tokens.values()) {
+                t.stop();
+            }
+        } else {
+            TokenTasks t = tokens.get(token);
+            if (t != null) {
+                t.stop();
+            }
+        }
+    }
+
+    public boolean finished(long token) {
+        return pending(token) == 0;
+    }
+
+    public int pending(long token) {
+        TokenTasks t = tokens.get(token);
+        return t != null ? Math.max(t.pending.get(), 0) : 0;
+    }
+
+    public int size() {
+        return tokens.size();
+    }
+
+    private static final class TokenTasks {
+
+        // number of in-flight tasks, -1 when the entry is finished and can't be reused
+        private final AtomicInteger pending;
+        private final Set<SearchPerformer> performers;
+
+        TokenTasks() {
+            this.pending = new AtomicInteger();
+            this.performers = Collections.newSetFromMap(new ConcurrentHashMap<SearchPerformer, Boolean>());
+        }
+
+        int acquire() {
+            while (true) {
+                int n = pending.get();
+                if (n < 0) {
+                    return -1;
+                }
+                if (pending.compareAndSet(n, n + 1)) {
+                    return n;
+                }
+            }
+        }
+
+        boolean release() {
+            return pending.decrementAndGet() == 0 && pending.compareAndSet(0, -1);
+        }
+
+        void stop() {
+            for (SearchPerformer p : performers) {
+                p.stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.frostwire.search;
+
+/**
+ * Snapshot of the scheduling metrics of the tasks of one search engine
+ * (identified by the name of its performer class). Times are in milliseconds.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+public final class SearchTaskStats {
+
+    private final String name;
+    private final int queued;
+    private final int running;
+    private final long completed;
+    private final long dropped;
+    private final long avgWaitTime;
+    private final long avgRunTime;
+    private final long maxRunTime;
+
+    SearchTaskStats(String name, int queued, int running, long completed, long dropped,
+                    long avgWaitTime, long avgRunTime, long maxRunTime) {
+        this.name = name;
+        this.queued = queued;
+        this.running = running;
+        this.completed = completed;
+        this.dropped = dropped;
+        this.avgWaitTime = avgWaitTime;
+        this.avgRunTime = avgRunTime;
+        this.maxRunTime = maxRunTime;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Tasks submitted but not yet started, either waiting for a slot of the
+     * engine or for a worker thread.
+     */
+    public int queued() {
+        return queued;
+    }
+
+    public int running() {
+        return running;
+    }
+
+    public long completed() {
+        return completed;
+    }
+
+    /**
+     * Crawl tasks discarded because the deadline of their search token expired.
+     */
+    public long dropped() {
+        return dropped;
+    }
+
+    public long avgWaitTime() {
+        return avgWaitTime;
+    }
+
+    public long avgRunTime() {
+        return avgRunTime;
+    }
+
+    public long maxRunTime() {
+        return maxRunTime;
+    }
+
+    @Override
+    public String toString() {
+        return name + "[queued=" + queued + ", running=" + running + ", completed=" + completed +
+                ", dropped=" + dropped + ", avgWait=" + avgWaitTime + "ms, avgRun=" + avgRunTime +
+                "ms, maxRun=" + maxRunTime + "ms]";
+    }
+}
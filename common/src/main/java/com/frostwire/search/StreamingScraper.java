@@ -0,0 +1,131 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.frostwire.search;
+
+import com.frostwire.logging.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Matches the pattern of a regex performer over a bounded window of the
+ * page as it is read, instead of the whole page as a single string. The
+ * results of each window are reported as soon as they are matched.
+ * <p>
+ * A match is accepted only if it starts before the last {@code margin}
+ * chars of the window (or the page is over), then the window slides
+ * keeping at least that tail. The results are the same as with the whole
+ * page as long as no match is longer than the margin and the pattern
+ * doesn't depend on the end of the text ({@code $} or a final {@code \b}).
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+abstract class StreamingScraper {
+
+    private static final Logger LOG = Logger.getLogger(StreamingScraper.class);
+
+    static final int DEFAULT_WINDOW_SIZE = 64 * 1024;
+
+    private final RegexSearchPerformer<?> performer;
+    private final int maxResults;
+    private final char[] window;
+    private final int margin;
+
+    StreamingScraper(RegexSearchPerformer<?> performer, int maxResults, int windowSize) {
+        if (windowSize < 2) {
+            throw new IllegalArgumentException("windowSize must be at least 2");
+        }
+        this.performer = performer;
+        this.maxResults = maxResults;
+        this.window = new char[windowSize];
+        this.margin = windowSize / 2;
+    }
+
+    StreamingScraper(RegexSearchPerformer<?> performer, int maxResults) {
+        this(performer, maxResults, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Reads the page until the end, the max results or the performer
+     * is stopped. Returns the number of results reported.
+     */
+    int scrape(Reader reader) throws IOException {
+        int count = 0;
+        int len = 0;
+        boolean eof = false;
+
+        while (!eof && count < maxResults && !performer.isStopped()) {
+            // fill the window
+            while (len < window.length) {
+                int n = reader.read(window, len, window.length - len);
+                if (n == -1) {
+                    eof = true;
+                    break;
+                }
+                len += n;
+            }
+
+            SearchMatcher matcher = SearchMatcher.from(performer.getPattern().matcher(CharBuffer.wrap(window, 0, len)));
+            List<SearchResult> results = new LinkedList<>();
+            int limit = eof ? len : len - margin;
+            int pos = 0;
+
+            while (count < maxResults && !performer.isStopped() && find(matcher)) {
+                if (matcher.start() > limit) {
+                    // wait for the rest of the page
+                    break;
+                }
+                pos = matcher.end();
+                SearchResult sr = performer.fromMatcher(matcher);
+                if (sr != null) {
+                    results.add(sr);
+                    count++;
+                }
+            }
+
+            if (results.size() > 0) {
+                onResults(results);
+            }
+
+            if (!eof) {
+                // slide the window, a pending match starting before the
+                // margin would be longer than it
+                int from = Math.max(pos, len - margin);
+                System.arraycopy(window, from, window, 0, len - from);
+                len -= from;
+            }
+        }
+
+        return count;
+    }
+
+    protected abstract void onResults(List<? extends SearchResult> results);
+
+    private boolean find(SearchMatcher matcher) {
+        try {
+            return matcher.find();
+        } catch (Throwable t) {
+            LOG.error(performer.getPattern().toString() + " has failed.\n" + t.getMessage(), t);
+            return false;
+        }
+    }
+}
@@ -19,6 +19,8 @@ package com.frostwire.search;
 
 import com.frostwire.logging.Logger;
 import com.frostwire.util.UrlUtils;
+import com.frostwire.util.http.AsyncHttpClient;
+import com.frostwire.util.http.HttpCall;
 import com.frostwire.util.http.HttpClient;
 import com.frostwire.util.HttpClientFactory;
 import com.frostwire.util.StringUtils;
@@ -26,7 +28,11 @@ import com.frostwire.util.UserAgentGenerator;
 import org.apache.commons.io.FilenameUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 
@@ -47,6 +53,8 @@ public abstract class WebSearchPerformer extends AbstractSearchPerformer {
     private final String encodedKeywords;
     private final int timeout;
     private final HttpClient client;
+    private final AsyncHttpClient asyncClient;
+    private final Set<HttpCall<?>> calls;
 
     public WebSearchPerformer(String domainName, long token, String keywords, int timeout) {
         super(token);
@@ -60,6 +68,8 @@ public abstract class WebSearchPerformer extends AbstractSearchPerformer {
         this.encodedKeywords = UrlUtils.encode(keywords);
         this.timeout = timeout;
         this.client = HttpClientFactory.getInstance(HttpClientFactory.HttpContext.SEARCH);
+        this.asyncClient = HttpClientFactory.getAsyncInstance(HttpClientFactory.HttpContext.SEARCH);
+        this.calls = Collections.newSetFromMap(new ConcurrentHashMap<HttpCall<?>, Boolean>());
     }
 
     public final String getKeywords() {
@@ -70,6 +80,18 @@ public abstract class WebSearchPerformer extends AbstractSearchPerformer {
         return encodedKeywords;
     }
 
+    /**
+     * Aborts the requests in flight of {@link #fetchAsync(String, AsyncHttpClient.Callback)}.
+     */
+    @Override
+    public void stop() {
+        super.stop();
+
+        for (HttpCall<?> call : calls) {
+            call.cancel(true);
+        }
+    }
+
     @Override
     public void crawl(CrawlableSearchResult sr) {
         LOG.warn("Review your logic, calling deep search without implementation for: " + sr);
@@ -89,6 +111,59 @@ public abstract class WebSearchPerformer extends AbstractSearchPerformer {
         return client.get(url, timeout, DEFAULT_USER_AGENT, null, cookie, customHeaders);
     }
 
+    /**
+     * Opens the web page to be read as it arrives, the caller must close the stream.
+     *
+     * @param url
+     * @return the body of the response
+     */
+    public InputStream fetchStream(String url) throws IOException {
+        return client.getStream(url, timeout, DEFAULT_USER_AGENT, null, null, null);
+    }
+
+    /**
+     * Fetches the web page without blocking the search thread, the request
+     * is aborted if the performer is stopped.
+     */
+    public HttpCall<String> fetchAsync(String url, AsyncHttpClient.Callback<String> callback) {
+        return track(asyncClient.getAsync(url, timeout, DEFAULT_USER_AGENT, null, null, null, untrack(callback)));
+    }
+
+    public HttpCall<byte[]> fetchBytesAsync(String url, String referrer, AsyncHttpClient.Callback<byte[]> callback) {
+        return track(asyncClient.getBytesAsync(url, timeout, DEFAULT_USER_AGENT, referrer, null, untrack(callback)));
+    }
+
+    private <T> HttpCall<T> track(HttpCall<T> call) {
+        calls.add(call);
+        // it could be done before being tracked
+        if (call.isDone()) {
+            calls.remove(call);
+        } else if (isStopped()) {
+            call.cancel(true);
+        }
+        return call;
+    }
+
+    private <T> AsyncHttpClient.Callback<T> untrack(final AsyncHttpClient.Callback<T> callback) {
+        return new AsyncHttpClient.Callback<T>() {
+            @Override
+            public void onResponse(HttpCall<T> call, T result) {
+                calls.remove(call);
+                if (callback != null) {
+                    callback.onResponse(call, result);
+                }
+            }
+
+            @Override
+            public void onFailure(HttpCall<T> call, Throwable e) {
+                calls.remove(call);
+                if (callback != null) {
+                    callback.onFailure(call, e);
+                }
+            }
+        };
+    }
+
     public String post(String url, Map<String, String> formData) {
         try {
             return client.post(url, timeout, DEFAULT_USER_AGENT, formData);
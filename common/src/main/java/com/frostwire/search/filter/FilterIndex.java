@@ -0,0 +1,100 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.frostwire.search.filter;
+
+import com.frostwire.search.SearchResult;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Secondary index of a {@link SearchTable} for one filter, the key of each
+ * row (null if not accepted) as a column plus the rows of each key.
+ * <p>
+ * The filter is evaluated once per row, the views with the same filter
+ * share the index. Guarded by the table lock.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+final class FilterIndex {
+
+    private final SearchFilter filter;
+
+    private final ArrayList<FilterKey> keys;
+    private final SortedMap<FilterKey, BitSet> rows;
+
+    FilterIndex(SearchFilter filter) {
+        this.filter = filter;
+
+        this.keys = new ArrayList<>();
+        this.rows = new TreeMap<>();
+    }
+
+    public SearchFilter filter() {
+        return filter;
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * Indexes the rows of the table not yet in the index.
+     */
+    public void update(List<SearchResult> data) {
+        keys.ensureCapacity(data.size());
+        for (int row = keys.size(); row < data.size(); row++) {
+            SearchResult sr = data.get(row);
+
+            FilterKey key = null;
+            if (filter.accept(sr)) {
+                key = filter.key(sr);
+
+                BitSet b = rows.get(key);
+                if (b == null) {
+                    b = new BitSet();
+                    rows.put(key, b);
+                }
+                b.set(row);
+            }
+
+            keys.add(key);
+        }
+    }
+
+    /**
+     * The key of the row, null if the filter doesn't accept it.
+     */
+    public FilterKey key(int row) {
+        return keys.get(row);
+    }
+
+    public SortedMap<FilterKey, BitSet> rows() {
+        return Collections.unmodifiableSortedMap(rows);
+    }
+
+    public void clear() {
+        keys.clear();
+        rows.clear();
+    }
+}
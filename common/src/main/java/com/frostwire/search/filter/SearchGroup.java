@@ -20,6 +20,7 @@ package com.frostwire.search.filter;
 import com.frostwire.search.SearchResult;
 
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -29,20 +30,55 @@ import java.util.TreeSet;
  */
 public final class SearchGroup {
 
+    private final SearchTable table;
     private final SortedSet<SearchResult> data;
 
-    SearchGroup(SearchFilter filter) {
-        this.data = new TreeSet<>(filter.comparator());
+    SearchGroup(final SearchTable table, SearchFilter filter) {
+        this.table = table;
+
+        final Comparator<SearchResult> cmp = filter.comparator();
+        // results with the same order are kept, in table order
+        this.data = new TreeSet<>(new Comparator<SearchResult>() {
+            @Override
+            public int compare(SearchResult o1, SearchResult o2) {
+                int n = cmp.compare(o1, o2);
+                if (n != 0) {
+                    return n;
+                }
+                int id1 = table.id(o1);
+                int id2 = table.id(o2);
+                return id1 < id2 ? -1 : (id1 == id2 ? 0 : 1);
+            }
+        });
     }
 
+    /**
+     * Returns a snapshot of the results of the group.
+     */
     public SortedSet<SearchResult> data() {
-        return Collections.unmodifiableSortedSet(data);
+        synchronized (table.lock()) {
+            return Collections.unmodifiableSortedSet(new TreeSet<>(data));
+        }
+    }
+
+    public int size() {
+        synchronized (table.lock()) {
+            return data.size();
+        }
     }
 
     void add(SearchResult sr) {
         data.add(sr);
     }
 
+    void remove(SearchResult sr) {
+        data.remove(sr);
+    }
+
+    boolean isEmpty() {
+        return data.isEmpty();
+    }
+
     void clear() {
         data.clear();
     }
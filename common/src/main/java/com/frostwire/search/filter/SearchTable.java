@@ -24,20 +24,31 @@ import java.lang.ref.WeakReference;
 import java.util.*;
 
 /**
+ * The results of a search, safe to use from the search threads and the UI.
+ * <p>
+ * The rows are append only (the position is the row id), each filter in
+ * use by a view has a {@link FilterIndex} updated with the new rows, so the
+ * views are maintained with the added rows only and a filter is evaluated
+ * once per row.
+ *
  * @author gubatron
  * @author aldenml
  */
 public final class SearchTable {
 
     private final long token;
-    private final LinkedList<SearchResult> data;
+    private final ArrayList<SearchResult> data;
+    private final IdentityHashMap<SearchResult, Integer> ids;
+    private final IdentityHashMap<SearchFilter, FilterIndex> indexes;
 
     private final LinkedList<WeakReference<SearchView>> views;
     private final Object lock;
 
     public SearchTable(long token) {
         this.token = token;
-        this.data = new LinkedList<>();
+        this.data = new ArrayList<>();
+        this.ids = new IdentityHashMap<>();
+        this.indexes = new IdentityHashMap<>();
 
         this.views = new LinkedList<>();
         this.lock = new Object();
@@ -47,45 +58,80 @@ public final class SearchTable {
         return token;
     }
 
+    /**
+     * Returns a snapshot of the results.
+     */
     public List<SearchResult> data() {
-        return Collections.unmodifiableList(data);
+        synchronized (lock) {
+            return Collections.unmodifiableList(new ArrayList<>(data));
+        }
+    }
+
+    public int size() {
+        synchronized (lock) {
+            return data.size();
+        }
     }
 
     public SearchView view(SearchFilter filter) {
-        SearchView v = new SearchView(this, filter);
         synchronized (lock) {
+            SearchView v = new SearchView(this, filter);
             views.add(Ref.weak(v));
+            return v;
         }
-        return v;
     }
 
     public void add(List<? extends SearchResult> results) {
-        data.addAll(results);
         synchronized (lock) {
+            int from = data.size();
+            for (SearchResult sr : results) {
+                if (!ids.containsKey(sr)) {
+                    ids.put(sr, data.size());
+                }
+                data.add(sr);
+            }
+
+            for (FilterIndex index : indexes.values()) {
+                index.update(data);
+            }
+
+            boolean pruned = false;
             Iterator<WeakReference<SearchView>> it = views.iterator();
             while (it.hasNext()) {
                 WeakReference<SearchView> r = it.next();
                 if (Ref.alive(r)) {
-                    r.get().add(results);
+                    r.get().added(from, data.size());
                 } else {
                     it.remove();
+                    pruned = true;
                 }
             }
+
+            if (pruned) {
+                pruneIndexes();
+            }
         }
     }
 
     public void clear() {
-        data.clear();
         synchronized (lock) {
+            data.clear();
+            ids.clear();
+            for (FilterIndex index : indexes.values()) {
+                index.clear();
+            }
+
             Iterator<WeakReference<SearchView>> it = views.iterator();
             while (it.hasNext()) {
                 WeakReference<SearchView> r = it.next();
                 if (Ref.alive(r)) {
-                    r.get().clear();
+                    r.get().cleared();
                 } else {
                     it.remove();
                 }
             }
+
+            pruneIndexes();
         }
     }
 
@@ -98,4 +144,46 @@ public final class SearchTable {
     public void add(SearchResult sr) {
         add(Arrays.asList(sr));
     }
+
+    Object lock() {
+        return lock;
+    }
+
+    // must be called holding the lock
+
+    SearchResult row(int row) {
+        return data.get(row);
+    }
+
+    /**
+     * The first row of the result, used to break the ties in the groups.
+     */
+    int id(SearchResult sr) {
+        Integer id = ids.get(sr);
+        return id != null ? id : -1;
+    }
+
+    FilterIndex index(SearchFilter filter) {
+        FilterIndex index = indexes.get(filter);
+        if (index == null) {
+            index = new FilterIndex(filter);
+            index.update(data);
+            indexes.put(filter, index);
+        }
+        return index;
+    }
+
+    /**
+     * Drops the indexes not used by any view.
+     */
+    void pruneIndexes() {
+        Set<SearchFilter> used = Collections.newSetFromMap(new IdentityHashMap<SearchFilter, Boolean>());
+        for (WeakReference<SearchView> r : views) {
+            SearchView v = r.get();
+            if (v != null) {
+                used.add(v.filter());
+            }
+        }
+        indexes.keySet().retainAll(used);
+    }
 }
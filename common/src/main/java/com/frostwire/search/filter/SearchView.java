@@ -22,59 +22,137 @@ import com.frostwire.search.SearchResult;
 import java.util.*;
 
 /**
+ * The results of a table grouped by the key of a filter.
+ * <p>
+ * Only the new rows are processed as they arrive, and a filter change
+ * only moves the rows whose key changed, reported to a
+ * {@link SearchViewDeltaListener} as precise removed and added events.
+ *
  * @author gubatron
  * @author aldenml
  */
 public final class SearchView {
 
     private final SearchTable table;
-    private final SearchFilter filter;
     private final SortedMap<FilterKey, SearchGroup> groups;
 
+    private SearchFilter filter;
+    private FilterIndex index;
+
     private SearchViewListener listener;
 
     public SearchView(SearchTable table, SearchFilter filter) {
         this.table = table;
-        this.filter = filter;
         this.groups = new TreeMap<>();
 
-        add(table.data());
+        synchronized (table.lock()) {
+            this.filter = filter;
+            this.index = table.index(filter);
+            load();
+        }
     }
 
     public SearchFilter filter() {
-        return filter;
+        synchronized (table.lock()) {
+            return filter;
+        }
     }
 
+    /**
+     * Returns a snapshot of the groups.
+     */
     public SortedMap<FilterKey, SearchGroup> groups() {
-        return Collections.unmodifiableSortedMap(groups);
+        synchronized (table.lock()) {
+            return Collections.unmodifiableSortedMap(new TreeMap<>(groups));
+        }
     }
 
-    public void add(List<? extends SearchResult> results) {
-        LinkedList<SearchResult> added = new LinkedList<>();
+    /**
+     * Changes the filter, only the rows with a different key (or no
+     * longer accepted) are moved.
+     */
+    public void filter(SearchFilter filter) {
+        synchronized (table.lock()) {
+            if (filter == this.filter) {
+                return;
+            }
 
-        for (SearchResult sr : results) {
-            if (filter.accept(sr)) {
-                FilterKey key = filter.key(sr);
-                SearchGroup group = groups.get(key);
+            FilterIndex old = index;
+            FilterIndex idx = table.index(filter);
+            boolean sameOrder = filter.comparator() == this.filter.comparator();
 
-                if (group == null) {
-                    group = new SearchGroup(filter);
-                    groups.put(key, group);
+            this.filter = filter;
+            this.index = idx;
+
+            List<SearchResult> removed = new LinkedList<>();
+            List<SearchResult> added = new LinkedList<>();
+
+            if (!sameOrder) {
+                // the groups must be sorted again anyway
+                groups.clear();
+                load();
+            }
+
+            int n = idx.size();
+            for (int row = 0; row < n; row++) {
+                FilterKey k1 = old.key(row);
+                FilterKey k2 = idx.key(row);
+
+                if (k1 == null && k2 == null) {
+                    continue;
+                }
+                if (k1 != null && k2 != null && k1.compareTo(k2) == 0) {
+                    continue;
                 }
 
-                group.add(sr);
-                added.add(sr);
+                SearchResult sr = table.row(row);
+
+                if (k1 != null) {
+                    if (sameOrder) {
+                        remove(k1, sr);
+                    }
+                    removed.add(sr);
+                }
+                if (k2 != null) {
+                    if (sameOrder) {
+                        add(k2, sr);
+                    }
+                    added.add(sr);
+                }
             }
-        }
 
-        if (listener != null && added.size() > 0) {
-            listener.viewAdded(this, added);
+            table.pruneIndexes();
+
+            if (!sameOrder) {
+                // the order of the groups changed, not only some rows
+                if (listener != null) {
+                    listener.viewChanged(this);
+                }
+            } else if (listener instanceof SearchViewDeltaListener) {
+                if (removed.size() > 0) {
+                    ((SearchViewDeltaListener) listener).viewRemoved(this, removed);
+                }
+                if (added.size() > 0) {
+                    listener.viewAdded(this, added);
+                }
+            } else if (listener != null && (removed.size() > 0 || added.size() > 0)) {
+                listener.viewChanged(this);
+            }
         }
     }
 
+    /**
+     * Regroups the rows of the table, from the index.
+     */
     public void refresh() {
-        clear();
-        add(table.data());
+        synchronized (table.lock()) {
+            groups.clear();
+            load();
+
+            if (listener != null) {
+                listener.viewChanged(this);
+            }
+        }
     }
 
     public SearchViewListener getListener() {
@@ -86,6 +164,31 @@ public final class SearchView {
     }
 
     public void clear() {
+        synchronized (table.lock()) {
+            cleared();
+        }
+    }
+
+    // called by the table, holding the lock
+
+    void added(int from, int to) {
+        LinkedList<SearchResult> added = new LinkedList<>();
+
+        for (int row = from; row < to; row++) {
+            FilterKey key = index.key(row);
+            if (key != null) {
+                SearchResult sr = table.row(row);
+                add(key, sr);
+                added.add(sr);
+            }
+        }
+
+        if (listener != null && added.size() > 0) {
+            listener.viewAdded(this, added);
+        }
+    }
+
+    void cleared() {
         for (SearchGroup g : groups.values()) {
             g.clear();
         }
@@ -95,4 +198,32 @@ public final class SearchView {
             listener.viewChanged(this);
         }
     }
+
+    private void load() {
+        for (Map.Entry<FilterKey, BitSet> e : index.rows().entrySet()) {
+            BitSet rows = e.getValue();
+            for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                add(e.getKey(), table.row(row));
+            }
+        }
+    }
+
+    private void add(FilterKey key, SearchResult sr) {
+        SearchGroup group = groups.get(key);
+        if (group == null) {
+            group = new SearchGroup(table, filter);
+            groups.put(key, group);
+        }
+        group.add(sr);
+    }
+
+    private void remove(FilterKey key, SearchResult sr) {
+        SearchGroup group = groups.get(key);
+        if (group != null) {
+            group.remove(sr);
+            if (group.isEmpty()) {
+                groups.remove(key);
+            }
+        }
+    }
 }
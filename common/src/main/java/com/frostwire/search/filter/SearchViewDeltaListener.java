@@ -0,0 +1,35 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.frostwire.search.filter;
+
+import com.frostwire.search.SearchResult;
+
+import java.util.List;
+
+/**
+ * A view listener notified of the results removed by a filter change,
+ * instead of the whole {@link #viewChanged(SearchView)}. The results
+ * moved to another group are reported as removed and then added.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+public interface SearchViewDeltaListener extends SearchViewListener {
+
+    void viewRemoved(SearchView view, List<SearchResult> results);
+}
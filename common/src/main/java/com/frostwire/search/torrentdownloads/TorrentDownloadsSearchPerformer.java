@@ -39,6 +39,11 @@ public class TorrentDownloadsSearchPerformer extends TorrentRegexSearchPerformer
         super(domainName, token, keywords, timeout, 1, 2 * MAX_RESULTS, MAX_RESULTS, REGEX, HTML_REGEX);
     }
 
+    @Override
+    protected boolean isStreamingScrape() {
+        return true;
+    }
+
     @Override
     protected String getUrl(int page, String encodedKeywords) {
         String transformedKeywords = encodedKeywords.replace("0%20", "+");
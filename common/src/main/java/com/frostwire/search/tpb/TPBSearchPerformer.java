@@ -41,6 +41,11 @@ public class TPBSearchPerformer extends CrawlRegexSearchPerformer<TPBSearchResul
         super(domainName, token, keywords, timeout, 1, MAX_RESULTS, MAX_RESULTS);
     }
 
+    @Override
+    protected boolean isStreamingScrape() {
+        return true;
+    }
+
     @Override
     public Pattern getPattern() {
         return PATTERN;
@@ -47,6 +47,11 @@ public class YifySearchPerformer extends TorrentRegexSearchPerformer<YifySearchR
         super(domainName, token, keywords, timeout, 1, 2 * MAX_RESULTS, MAX_RESULTS, REGEX, HTML_REGEX);
     }
 
+    @Override
+    protected boolean isStreamingScrape() {
+        return true;
+    }
+
     @Override
     protected String getUrl(int page, String encodedKeywords) {
         return "https://" + getDomainName() + "/search/" + encodedKeywords + "/";
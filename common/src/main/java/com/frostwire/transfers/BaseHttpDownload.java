@@ -25,6 +25,7 @@ import com.frostwire.platform.Platforms;
 import com.frostwire.util.HttpClientFactory;
 import com.frostwire.util.ThreadPool;
 import com.frostwire.util.http.HttpClient;
+import com.frostwire.util.http.SegmentedDownload;
 import org.apache.commons.io.FilenameUtils;
 
 import java.io.File;
@@ -37,6 +38,8 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author gubatron
@@ -46,8 +49,11 @@ public abstract class BaseHttpDownload implements Transfer {
 
     private static final Logger LOG = Logger.getLogger(BaseHttpDownload.class);
 
-    // is 20 concurrent downloads enough?
-    private static final ExecutorService THREAD_POOL = ThreadPool.newThreadPool("HttpDownload", 20, true);
+    // is 20 concurrent streams enough? a DASH download takes two, the
+    // rest wait for a thread instead of being rejected
+    private static final ExecutorService THREAD_POOL = newThreadPool();
+    // the short tasks at the end of the downloads, never behind the streams
+    private static final ExecutorService FINISH_POOL = newFinishPool();
 
     protected final Info info;
 
@@ -59,6 +65,12 @@ public abstract class BaseHttpDownload implements Transfer {
     protected SpeedStat stat;
     protected boolean complete;
 
+    private SegmentedDownload segmented;
+
+    private long startTime;
+    private long finishTime;
+    private final AtomicLong bytesWritten;
+
     protected BaseHttpDownload(Info info) {
         this.info = info;
 
@@ -79,6 +91,7 @@ public abstract class BaseHttpDownload implements Transfer {
         this.created = new Date();
 
         this.stat = new SpeedStat();
+        this.bytesWritten = new AtomicLong();
         this.state = TransferState.WAITING;
         this.complete = false;
     }
@@ -171,11 +184,16 @@ public abstract class BaseHttpDownload implements Transfer {
 
         complete(state = TransferState.CANCELED);
 
+        if (segmented != null) {
+            segmented.stop();
+        }
+
         FileSystem fs = Platforms.fileSystem();
 
         if (fs.delete(tempPath)) {
             LOG.warn("Error deleting temporary file: " + tempPath);
         }
+        fs.delete(SegmentedDownload.getStateFile(tempPath));
         if (deleteData) {
             if (fs.delete(savePath)) {
                 LOG.warn("Error deleting download data file: " + savePath);
@@ -183,11 +201,32 @@ public abstract class BaseHttpDownload implements Transfer {
         }
     }
 
+    /**
+     * The wall clock time, in milliseconds, since the download started until
+     * it completed (or until now).
+     */
+    public long getElapsedTime() {
+        if (startTime == 0) {
+            return 0;
+        }
+        return (finishTime != 0 ? finishTime : System.currentTimeMillis()) - startTime;
+    }
+
+    /**
+     * The bytes written to disk, the downloaded data plus the files created
+     * while finishing, like the muxed or copied file.
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
     protected void start(final String url, final File temp, final boolean resume) {
         if (complete) {
             return;
         }
 
+        markStart();
+
         THREAD_POOL.execute(new Thread(getDisplayName()) {
             public void run() {
                 try {
@@ -197,7 +236,7 @@ public abstract class BaseHttpDownload implements Transfer {
 
                     state = TransferState.DOWNLOADING;
                     HttpClient client = HttpClientFactory.getInstance(HttpClientFactory.HttpContext.DOWNLOAD);
-                    client.setListener(new DownloadListener());
+                    client.setListener(new DownloadListener(temp));
                     client.save(url, temp, resume);
                 } catch (Throwable e) {
                     error(e);
@@ -206,11 +245,29 @@ public abstract class BaseHttpDownload implements Transfer {
         });
     }
 
+    /**
+     * Starts the download over several connections, each one with a range of
+     * the file, or in a single stream if the server doesn't support ranges.
+     */
+    protected void startSegmented(String url, File temp) {
+        if (complete) {
+            return;
+        }
+
+        markStart();
+
+        segmented = new SegmentedDownload(HttpClientFactory.getAsyncInstance(HttpClientFactory.HttpContext.DOWNLOAD), url, temp);
+        segmented.setListener(new SegmentedListener());
+        segmented.start(false);
+    }
+
     protected final void complete(TransferState state) {
         this.state = state;
         if (!complete) {
             complete = true;
+            finishTime = System.currentTimeMillis();
             if (state == TransferState.COMPLETE) {
+                LOG.info("Download " + getDisplayName() + " completed in " + getElapsedTime() + "ms, " + bytesWritten.get() + " bytes written");
                 try {
                     onComplete();
                 } catch (Throwable e) {
@@ -226,7 +283,7 @@ public abstract class BaseHttpDownload implements Transfer {
         }
 
         state = TransferState.FINISHING;
-        THREAD_POOL.execute(new Runnable() {
+        FINISH_POOL.execute(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -261,12 +318,22 @@ public abstract class BaseHttpDownload implements Transfer {
 
     protected void moveAndComplete(File src, File dst) {
         FileSystem fs = Platforms.fileSystem();
-        if (fs.copy(src, dst)) {
+
+        // a rename is atomic and doesn't write the data again, but it only
+        // works in the same file system and without the storage framework
+        boolean moved = !dst.exists() && src.renameTo(dst);
+
+        if (!moved && fs.copy(src, dst)) {
+            bytesWritten.addAndGet(fs.length(dst));
 
             if (!fs.delete(src)) {
                 LOG.warn("Error deleting source file while moving: " + src);
             }
 
+            moved = true;
+        }
+
+        if (moved) {
             state = TransferState.SCANNING;
 
             fs.scan(dst);
@@ -281,12 +348,48 @@ public abstract class BaseHttpDownload implements Transfer {
         finish();
     }
 
+    /**
+     * Called with the response headers of the download to the temp file.
+     */
+    protected void onHttpHeaders(File temp, Map<String, List<String>> headers) throws Throwable {
+    }
+
+    /**
+     * Called after {@code length} bytes were written to the temp file.
+     */
+    protected void onHttpData(File temp, int length) {
+    }
+
+    /**
+     * Called when the download to the temp file is complete, by default
+     * calls {@link #onHttpComplete()}.
+     */
+    protected void onHttpComplete(File temp) throws Throwable {
+        onHttpComplete();
+    }
+
+    protected final void addBytesWritten(long length) {
+        bytesWritten.addAndGet(length);
+    }
+
     protected void onFinishing() throws Throwable {
     }
 
     protected void onComplete() throws Throwable {
     }
 
+    private static ExecutorService newThreadPool() {
+        ThreadPool pool = new ThreadPool("HttpDownload", 20, 20, 60, new LinkedBlockingQueue<Runnable>(), true);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static ExecutorService newFinishPool() {
+        ThreadPool pool = new ThreadPool("HttpDownload-finish", 4, 4, 30, new LinkedBlockingQueue<Runnable>(), true);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
     static void simpleHTTP(String url, OutputStream out, int timeout) throws Throwable {
         URL u = new URL(url);
         URLConnection con = u.openConnection();
@@ -295,7 +398,7 @@ public abstract class BaseHttpDownload implements Transfer {
         InputStream in = con.getInputStream();
         try {
 
-            byte[] b = new byte[1024];
+            byte[] b = new byte[16 * 1024];
             int n = 0;
             while ((n = in.read(b, 0, b.length)) != -1) {
                 out.write(b, 0, n);
@@ -333,10 +436,35 @@ public abstract class BaseHttpDownload implements Transfer {
         return filename;
     }
 
+    private void markStart() {
+        if (startTime == 0) {
+            startTime = System.currentTimeMillis();
+        }
+    }
+
+    private void update(int length) {
+        // the streams of a download can be saved concurrently
+        synchronized (stat) {
+            stat.update(length);
+        }
+        bytesWritten.addAndGet(length);
+    }
+
     private final class DownloadListener extends HttpClient.HttpClientListenerAdapter {
 
+        private final File temp;
+
+        DownloadListener(File temp) {
+            this.temp = temp;
+        }
+
         @Override
         public void onHeaders(HttpClient httpClient, Map<String, List<String>> headerFields) {
+            try {
+                onHttpHeaders(temp, headerFields);
+            } catch (Throwable e) {
+                error(e);
+            }
         }
 
         @Override
@@ -346,24 +474,66 @@ public abstract class BaseHttpDownload implements Transfer {
 
         @Override
         public void onData(HttpClient client, byte[] buffer, int offset, int length) {
-            stat.update(length);
+            update(length);
             if (complete) {
                 // ok, this is not the most elegant solution but it effectively breaks the
                 // download logic flow.
                 throw new RuntimeException("Invalid status, transfer cancelled");
             }
+            onHttpData(temp, length);
         }
 
         @Override
         public void onComplete(HttpClient client) {
             try {
-                onHttpComplete();
+                onHttpComplete(temp);
             } catch (Throwable e) {
                 error(e);
             }
         }
     }
 
+    private final class SegmentedListener implements SegmentedDownload.Listener {
+
+        @Override
+        public void onStart(long size, long received, boolean segmented) {
+            if (!complete) {
+                state = TransferState.DOWNLOADING;
+            }
+        }
+
+        @Override
+        public void onData(int length) {
+            update(length);
+        }
+
+        // in the threads of the http client, the end is handled in the finish pool
+
+        @Override
+        public void onComplete() {
+            FINISH_POOL.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        onHttpComplete();
+                    } catch (Throwable e) {
+                        error(e);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onError(final Throwable e) {
+            FINISH_POOL.execute(new Runnable() {
+                @Override
+                public void run() {
+                    error(e);
+                }
+            });
+        }
+    }
+
     public static final class Info {
 
         private final String url;
@@ -29,7 +29,7 @@ public class HttpDownload extends BaseHttpDownload {
     }
 
     public void start() {
-        super.start(info.url(), tempPath, false);
+        startSegmented(info.url(), tempPath);
     }
 
     @Override
@@ -0,0 +1,138 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.transfers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads a file while it's downloaded, waiting for the bytes not yet
+ * written, until the stream is finished or {@link #isStopped()}.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+class TailChannel implements ReadableByteChannel {
+
+    private static final int WAIT_MILLIS = 500;
+
+    private final File file;
+
+    private long length;
+    private long written;
+    private boolean finished;
+
+    private RandomAccessFile raf;
+    private long position;
+
+    TailChannel(File file) {
+        this.file = file;
+        this.length = -1;
+    }
+
+    /**
+     * The total length of the stream, -1 if unknown.
+     */
+    synchronized long length() {
+        return length;
+    }
+
+    synchronized void length(long length) {
+        this.length = length;
+    }
+
+    /**
+     * Called after the bytes are written to the file.
+     */
+    synchronized void data(int length) {
+        written += length;
+        notifyAll();
+    }
+
+    synchronized void finished() {
+        finished = true;
+        notifyAll();
+    }
+
+    /**
+     * Checked while waiting, the reads fail once true.
+     */
+    protected boolean isStopped() {
+        return false;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        long available = await();
+        if (available < 0) {
+            return -1;
+        }
+
+        if (raf == null) {
+            raf = new RandomAccessFile(file, "r");
+        }
+
+        int limit = dst.limit();
+        dst.limit(dst.position() + (int) Math.min(dst.remaining(), available));
+        try {
+            int n = raf.getChannel().read(dst, position);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        } finally {
+            dst.limit(limit);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (raf != null) {
+            raf.close();
+            raf = null;
+        }
+    }
+
+    private synchronized long await() throws IOException {
+        while (position >= written) {
+            if (finished) {
+                return -1;
+            }
+            if (isStopped()) {
+                throw new IOException("Download stopped");
+            }
+            try {
+                wait(WAIT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for data");
+            }
+        }
+        return written - position;
+    }
+}
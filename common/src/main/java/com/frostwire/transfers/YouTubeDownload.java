@@ -28,6 +28,7 @@ import com.frostwire.platform.Platforms;
 import com.frostwire.search.youtube.YouTubeCrawledSearchResult;
 import com.frostwire.search.youtube.YouTubeExtractor;
 import com.frostwire.util.HttpClientFactory;
+import com.frostwire.util.ThreadPool;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 
@@ -35,6 +36,10 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * @author gubatron
@@ -50,8 +55,20 @@ public class YouTubeDownload extends BaseHttpDownload {
     private final File tempVideo;
     private final File tempAudio;
 
+    // the muxes while downloading, they wait for the data of the streams
+    private static final ExecutorService MUX_POOL = newMuxPool();
+
     private long demuxerReadCount;
 
+    // DASH: the video and audio are downloaded concurrently and muxed while
+    // the fragments arrive, if both servers send the length, if not, or the
+    // early mux fails, the files are muxed after the downloads
+    private final TailChannel videoTail;
+    private final TailChannel audioTail;
+    private int streamsComplete;
+    private boolean muxing;
+    private boolean muxed;
+
     public YouTubeDownload(YouTubeCrawledSearchResult sr) {
         super(convert(sr));
         this.sr = sr;
@@ -61,6 +78,9 @@ public class YouTubeDownload extends BaseHttpDownload {
         String filename = getSavePath().getName();
         tempVideo = buildTempFile(fs, filename, ".temp.m4v");
         tempAudio = buildTempFile(fs, filename, ".temp.m4a");
+
+        videoTail = new DownloadTail(tempVideo);
+        audioTail = new DownloadTail(tempAudio);
     }
 
     @Override
@@ -82,18 +102,35 @@ public class YouTubeDownload extends BaseHttpDownload {
     }
 
     @Override
-    protected void onHttpComplete() throws Throwable {
-        boolean callSuper = true;
+    protected void onHttpHeaders(File temp, Map<String, List<String>> headers) throws Throwable {
         if (downloadType == DownloadType.DASH) {
-            FileSystem fs = Platforms.fileSystem();
-            if (fs.exists(tempVideo) && !fs.exists(tempAudio)) {
-                start(sr.getAudio().link, tempAudio, false);
-                callSuper = false;
-            }
+            tail(temp).length(contentLength(headers));
+            startMux();
         }
+    }
+
+    @Override
+    protected void onHttpData(File temp, int length) {
+        if (downloadType == DownloadType.DASH) {
+            tail(temp).data(length);
+        }
+    }
 
-        if (callSuper) {
-            super.onHttpComplete();
+    @Override
+    protected void onHttpComplete(File temp) throws Throwable {
+        if (downloadType == DownloadType.DASH) {
+            tail(temp).finished();
+
+            boolean finish;
+            synchronized (this) {
+                streamsComplete++;
+                finish = streamsComplete == 2 && (!muxing || muxed);
+            }
+            if (finish) {
+                super.onHttpComplete(temp);
+            }
+        } else {
+            super.onHttpComplete(temp);
         }
     }
 
@@ -113,6 +150,7 @@ public class YouTubeDownload extends BaseHttpDownload {
                     demuxerReadCount = readCount;
                 }
             });
+            addBytesWritten(tempPath.length());
             moveAndComplete(tempPath, savePath);
 
             FileSystem fs = Platforms.fileSystem();
@@ -123,8 +161,11 @@ public class YouTubeDownload extends BaseHttpDownload {
         } else if (downloadType == DownloadType.DASH) {
             // intentionally not using FileSystem here
             if (tempVideo.exists() && tempAudio.exists()) {
-                state = TransferState.DEMUXING;
-                Mp4Demuxer.muxFragments(tempVideo.getAbsoluteFile(), tempAudio.getAbsoluteFile(), tempPath.getAbsoluteFile(), buildMp4Info(false), null);
+                if (!muxed) {
+                    state = TransferState.DEMUXING;
+                    Mp4Demuxer.muxFragments(tempVideo.getAbsoluteFile(), tempAudio.getAbsoluteFile(), tempPath.getAbsoluteFile(), buildMp4Info(false), null);
+                    addBytesWritten(tempPath.length());
+                }
 
                 moveAndComplete(tempPath, savePath);
 
@@ -145,6 +186,9 @@ public class YouTubeDownload extends BaseHttpDownload {
     public void start() {
         if (downloadType == DownloadType.DEMUX) {
             start(sr.getAudio().link, tempAudio, false);
+        } else if (downloadType == DownloadType.DASH) {
+            start(sr.getVideo().link, tempVideo, false);
+            start(sr.getAudio().link, tempAudio, false);
         } else {
             start(sr.getVideo().link, tempVideo, false);
         }
@@ -162,6 +206,80 @@ public class YouTubeDownload extends BaseHttpDownload {
         return 0;
     }
 
+    private TailChannel tail(File temp) {
+        return temp == tempVideo ? videoTail : audioTail;
+    }
+
+    /**
+     * Starts the mux in the background once the lengths of both streams are
+     * known, otherwise, or if it fails, it's done after the downloads in
+     * {@link #onFinishing()}.
+     */
+    private void startMux() {
+        synchronized (this) {
+            if (muxing || videoTail.length() <= 0 || audioTail.length() <= 0) {
+                return;
+            }
+            muxing = true;
+        }
+
+        MUX_POOL.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Mp4Demuxer.muxFragments(videoTail, videoTail.length(), audioTail, audioTail.length(), tempPath.getAbsoluteFile(), buildMp4Info(false), null);
+                    addBytesWritten(tempPath.length());
+
+                    boolean finish;
+                    synchronized (YouTubeDownload.this) {
+                        muxed = true;
+                        finish = streamsComplete == 2;
+                    }
+                    if (finish) {
+                        finish();
+                    }
+                } catch (Throwable e) {
+                    if (complete) {
+                        return;
+                    }
+                    LOG.warn("Error muxing while downloading, muxing after the download: " + e.getMessage());
+
+                    boolean finish;
+                    synchronized (YouTubeDownload.this) {
+                        muxing = false;
+                        finish = streamsComplete == 2;
+                    }
+                    if (finish) {
+                        finish();
+                    }
+                } finally {
+                    IOUtils.closeQuietly(videoTail);
+                    IOUtils.closeQuietly(audioTail);
+                }
+            }
+        });
+    }
+
+    private static ExecutorService newMuxPool() {
+        ThreadPool pool = new ThreadPool("YouTubeDownload-mux", 2, 2, 30, new LinkedBlockingQueue<Runnable>(), true);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    // -1 if unknown
+    private static long contentLength(Map<String, List<String>> headers) {
+        for (Map.Entry<String, List<String>> e : headers.entrySet()) {
+            if ("Content-Length".equalsIgnoreCase(e.getKey()) && e.getValue() != null && !e.getValue().isEmpty()) {
+                try {
+                    return Long.parseLong(e.getValue().get(0).trim());
+                } catch (NumberFormatException ex) {
+                    // unknown
+                }
+            }
+        }
+        return -1;
+    }
+
     private static Info convert(YouTubeCrawledSearchResult sr) {
         return new Info(sr.getDownloadUrl(), sr.getFilename(), sr.getDisplayName(), sr.getSize());
     }
@@ -227,4 +345,16 @@ public class YouTubeDownload extends BaseHttpDownload {
     private enum DownloadType {
         VIDEO, DASH, DEMUX
     }
+
+    private final class DownloadTail extends TailChannel {
+
+        DownloadTail(File file) {
+            super(file);
+        }
+
+        @Override
+        protected boolean isStopped() {
+            return complete;
+        }
+    }
 }
@@ -17,14 +17,20 @@
 
 package com.frostwire.util;
 
+import com.frostwire.util.http.AsyncHttpClient;
+import com.frostwire.util.http.ConnectionStats;
 import com.frostwire.util.http.HttpClient;
 import com.frostwire.util.http.JdkHttpClient;
 import com.frostwire.util.http.OKHTTPClient;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
 
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 
@@ -39,7 +45,8 @@ public class HttpClientFactory {
         MISC
     }
 
-    private static Map<HttpContext, ThreadPool> okHttpClientPools = null;
+    private static final int DOWNLOAD_MAX_THREADS = 64; // the max requests of the dispatcher
+    private static final int DOWNLOAD_MAX_REQUESTS_PER_HOST = 16;
 
     private HttpClientFactory() {
     }
@@ -48,25 +55,75 @@ public class HttpClientFactory {
         return new JdkHttpClient();
     }
 
+    /**
+     * Returns a new client, sharing the connections of the context with the
+     * other clients of it.
+     */
     public static HttpClient getInstance(HttpContext context) {
         if (isWindowsXP()) {
             return new JdkHttpClient();
         }
 
-        if (okHttpClientPools == null) {
-            okHttpClientPools = buildThreadPools();
+        return new OKHTTPClient(OkHttpClients.CLIENTS.get(context));
+    }
+
+    /**
+     * Returns a client to queue requests without blocking the caller, the
+     * calls of the context share its connections and a few threads.
+     */
+    public static AsyncHttpClient getAsyncInstance(HttpContext context) {
+        if (isWindowsXP()) {
+            return new JdkHttpClient();
+        }
+
+        return new OKHTTPClient(OkHttpClients.CLIENTS.get(context));
+    }
+
+    /**
+     * Returns the stats of the connections of the context, null if the
+     * contexts don't share connections in this platform.
+     */
+    public static ConnectionStats getConnectionStats(HttpContext context) {
+        if (isWindowsXP()) {
+            return null;
         }
-        return new OKHTTPClient(okHttpClientPools.get(context));
+
+        return OKHTTPClient.getConnectionStats(OkHttpClients.CLIENTS.get(context));
     }
 
-    private static Map<HttpContext, ThreadPool> buildThreadPools() {
-        final HashMap<HttpContext, ThreadPool> map = new HashMap<>();
-        map.put(HttpContext.SEARCH, new ThreadPool("OkHttpClient-searches", 1, 5, 60, new LinkedBlockingQueue<Runnable>(), true));
-        map.put(HttpContext.DOWNLOAD, new ThreadPool("OkHttpClient-downloads", 1, 10, 5, new LinkedBlockingQueue<Runnable>(), true));
-        map.put(HttpContext.MISC, new ThreadPool("OkHttpClient-misc", 2, 10, 30, new LinkedBlockingQueue<Runnable>(), true));
+    private static Map<HttpContext, OkHttpClient> buildOkHttpClients() {
+        final HashMap<HttpContext, OkHttpClient> map = new HashMap<>();
+        map.put(HttpContext.SEARCH, OKHTTPClient.newOkHttpClient(newDispatcherPool("OkHttpClient-searches", 5, 60), new ConnectionPool(20, 5, TimeUnit.MINUTES), 6));
+        map.put(HttpContext.DOWNLOAD, OKHTTPClient.newOkHttpClient(newDownloadsPool(), new ConnectionPool(10, 1, TimeUnit.MINUTES), DOWNLOAD_MAX_REQUESTS_PER_HOST));
+        map.put(HttpContext.MISC, OKHTTPClient.newOkHttpClient(newDispatcherPool("OkHttpClient-misc", 10, 30), new ConnectionPool(5, 5, TimeUnit.MINUTES), 5));
         return map;
     }
 
+    /**
+     * The threads of the dispatcher run the enqueued calls, with an unbounded
+     * queue the pool never grows past its core size, so it's the maximum.
+     */
+    private static ThreadPool newDispatcherPool(String name, int threads, long keepAliveSecs) {
+        ThreadPool pool = new ThreadPool(name, threads, threads, keepAliveSecs, new LinkedBlockingQueue<Runnable>(), true);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * The download calls are long lived streams, a thread per call in flight
+     * (the dispatcher runs up to 64), so a download doesn't wait for the
+     * segments of others, the segments per host are limited by the
+     * segmented download.
+     */
+    private static ThreadPool newDownloadsPool() {
+        return new ThreadPool("OkHttpClient-downloads", 0, DOWNLOAD_MAX_THREADS, 5, new SynchronousQueue<Runnable>(), true);
+    }
+
+    // lazy, not created in platforms using the jdk client
+    private static final class OkHttpClients {
+        static final Map<HttpContext, OkHttpClient> CLIENTS = buildOkHttpClients();
+    }
+
     private static boolean isWindowsXP() {
         String os = System.getProperty("os.name");
         os = os.toLowerCase(Locale.US);
@@ -0,0 +1,363 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.util;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * List backed by a balanced (AVL) order statistic tree, insertions and
+ * removals at any position, {@link #get(int)} and {@link #indexOf(Object)}
+ * are O(log n).
+ * <p>
+ * The elements are compared by identity, not with {@code equals}, and an
+ * instance can be only once in the list. Null elements are not allowed.
+ * Not thread safe.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+public final class IndexedTreeList<E> extends AbstractList<E> {
+
+    private final Map<E, Node<E>> nodes;
+
+    private Node<E> root;
+
+    public IndexedTreeList() {
+        this.nodes = new IdentityHashMap<>();
+    }
+
+    @Override
+    public E get(int index) {
+        return node(index).value;
+    }
+
+    @Override
+    public E set(int index, E element) {
+        Node<E> n = node(index);
+        E old = n.value;
+        if (old != element) {
+            checkElement(element);
+            nodes.remove(old);
+            n.value = element;
+            nodes.put(element, n);
+        }
+        return old;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        checkElement(element);
+
+        Node<E> n = new Node<>(element);
+        nodes.put(element, n);
+
+        if (root == null) {
+            root = n;
+        } else if (index == size()) {
+            Node<E> last = root;
+            while (last.right != null) {
+                last = last.right;
+            }
+            attachRight(last, n);
+        } else {
+            Node<E> at = node(index);
+            if (at.left == null) {
+                attachLeft(at, n);
+            } else {
+                Node<E> prev = at.left;
+                while (prev.right != null) {
+                    prev = prev.right;
+                }
+                attachRight(prev, n);
+            }
+        }
+
+        modCount++;
+    }
+
+    @Override
+    public E remove(int index) {
+        Node<E> n = node(index);
+        E value = n.value;
+
+        if (n.left != null && n.right != null) {
+            // take the place of the successor, which has no left child
+            Node<E> next = n.right;
+            while (next.left != null) {
+                next = next.left;
+            }
+            n.value = next.value;
+            nodes.put(n.value, n);
+            n = next;
+        }
+
+        nodes.remove(value);
+
+        Node<E> child = n.left != null ? n.left : n.right;
+        if (child != null) {
+            child.parent = n.parent;
+        }
+        replace(n, child);
+        rebalance(n.parent);
+
+        modCount++;
+
+        return value;
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        nodes.clear();
+        modCount++;
+    }
+
+    /**
+     * If the list is empty, the tree is built directly from the elements in O(n).
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        if (root != null) {
+            return super.addAll(c);
+        }
+
+        @SuppressWarnings("unchecked")
+        E[] arr = (E[]) c.toArray();
+        for (E e : arr) {
+            checkElement(e);
+            if (nodes.containsKey(e)) {
+                nodes.clear();
+                throw new IllegalArgumentException("Element already in the list");
+            }
+            nodes.put(e, null);
+        }
+
+        root = build(arr, 0, arr.length - 1, null);
+        modCount++;
+
+        return arr.length > 0;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        Node<E> n = nodes.get(o);
+        if (n == null) {
+            return -1;
+        }
+
+        int index = size(n.left);
+        while (n.parent != null) {
+            if (n == n.parent.right) {
+                index += size(n.parent.left) + 1;
+            }
+            n = n.parent;
+        }
+        return index;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return nodes.containsKey(o);
+    }
+
+    /**
+     * Returns the index after the last element not greater than the key,
+     * in a list sorted by the comparator.
+     */
+    public int upperBound(E key, Comparator<? super E> c) {
+        int index = 0;
+        Node<E> n = root;
+        while (n != null) {
+            if (c.compare(key, n.value) < 0) {
+                n = n.left;
+            } else {
+                index += size(n.left) + 1;
+                n = n.right;
+            }
+        }
+        return index;
+    }
+
+    private Node<E> node(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+
+        Node<E> n = root;
+        while (true) {
+            int left = size(n.left);
+            if (index < left) {
+                n = n.left;
+            } else if (index == left) {
+                return n;
+            } else {
+                index -= left + 1;
+                n = n.right;
+            }
+        }
+    }
+
+    private void checkElement(E element) {
+        if (element == null) {
+            throw new NullPointerException("Null elements are not allowed");
+        }
+        if (nodes.containsKey(element)) {
+            throw new IllegalArgumentException("Element already in the list");
+        }
+    }
+
+    private Node<E> build(E[] arr, int from, int to, Node<E> parent) {
+        if (from > to) {
+            return null;
+        }
+
+        int mid = (from + to) >>> 1;
+        Node<E> n = new Node<>(arr[mid]);
+        nodes.put(n.value, n);
+        n.parent = parent;
+        n.left = build(arr, from, mid - 1, n);
+        n.right = build(arr, mid + 1, to, n);
+        update(n);
+
+        return n;
+    }
+
+    private void attachLeft(Node<E> parent, Node<E> n) {
+        parent.left = n;
+        n.parent = parent;
+        rebalance(parent);
+    }
+
+    private void attachRight(Node<E> parent, Node<E> n) {
+        parent.right = n;
+        n.parent = parent;
+        rebalance(parent);
+    }
+
+    // replaces n by r in the parent of n
+    private void replace(Node<E> n, Node<E> r) {
+        if (n.parent == null) {
+            root = r;
+        } else if (n.parent.left == n) {
+            n.parent.left = r;
+        } else {
+            n.parent.right = r;
+        }
+    }
+
+    // fixes sizes and heights up to the root
+    private void rebalance(Node<E> n) {
+        while (n != null) {
+            update(n);
+            int b = balance(n);
+            if (b > 1) {
+                if (balance(n.left) < 0) {
+                    rotateLeft(n.left);
+                }
+                n = rotateRight(n);
+            } else if (b < -1) {
+                if (balance(n.right) > 0) {
+                    rotateRight(n.right);
+                }
+                n = rotateLeft(n);
+            }
+            n = n.parent;
+        }
+    }
+
+    private Node<E> rotateLeft(Node<E> x) {
+        Node<E> y = x.right;
+        x.right = y.left;
+        if (y.left != null) {
+            y.left.parent = x;
+        }
+        y.parent = x.parent;
+        replace(x, y);
+        y.left = x;
+        x.parent = y;
+        update(x);
+        update(y);
+        return y;
+    }
+
+    private Node<E> rotateRight(Node<E> x) {
+        Node<E> y = x.left;
+        x.left = y.right;
+        if (y.right != null) {
+            y.right.parent = x;
+        }
+        y.parent = x.parent;
+        replace(x, y);
+        y.right = x;
+        x.parent = y;
+        update(x);
+        update(y);
+        return y;
+    }
+
+    private static <E> void update(Node<E> n) {
+        n.size = size(n.left) + size(n.right) + 1;
+        n.height = Math.max(height(n.left), height(n.right)) + 1;
+    }
+
+    private static <E> int balance(Node<E> n) {
+        return height(n.left) - height(n.right);
+    }
+
+    private static <E> int size(Node<E> n) {
+        return n != null ? n.size : 0;
+    }
+
+    private static <E> int height(Node<E> n) {
+        return n != null ? n.height : 0;
+    }
+
+    private static final class Node<E> {
+
+        private E value;
+        private Node<E> left;
+        private Node<E> right;
+        private Node<E> parent;
+        private int size;
+        private int height;
+
+        Node(E value) {
+            this.value = value;
+            this.size = 1;
+            this.height = 1;
+        }
+    }
+}
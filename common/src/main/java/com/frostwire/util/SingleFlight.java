@@ -0,0 +1,151 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Suppresses duplicated concurrent calls. While a call for a key is in
+ * flight, other callers for the same key (or any of its alias keys) wait
+ * for it and share its result instead of executing their own.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, Call<V>> calls;
+
+    private final AtomicLong executions;
+    private final AtomicLong joins;
+
+    public SingleFlight() {
+        this.calls = new ConcurrentHashMap<K, Call<V>>();
+        this.executions = new AtomicLong();
+        this.joins = new AtomicLong();
+    }
+
+    public V execute(K key, Callable<V> callable) throws Exception {
+        List<K> keys = new ArrayList<K>(1);
+        keys.add(key);
+        return execute(keys, callable);
+    }
+
+    /**
+     * Executes the callable, unless there is a call in flight for any of
+     * the keys, in which case waits for it and returns its result.
+     */
+    public V execute(List<K> keys, Callable<V> callable) throws Exception {
+        Call<V> call = new Call<V>(callable);
+        Call<V> existing = null;
+
+        List<K> registered = new ArrayList<K>(keys.size());
+        for (K key : keys) {
+            if (key == null) {
+                continue;
+            }
+            existing = calls.putIfAbsent(key, call);
+            if (existing != null) {
+                break;
+            }
+            registered.add(key);
+        }
+
+        if (existing != null) {
+            joins.incrementAndGet();
+            // other callers could have joined this call through the keys
+            // already registered, it's completed with the joined result
+            try {
+                V result = get(existing);
+                call.complete(result);
+                return result;
+            } catch (Throwable e) {
+                call.fail(e);
+                throw e;
+            } finally {
+                unregister(registered, call);
+            }
+        }
+
+        try {
+            executions.incrementAndGet();
+            call.run();
+            return get(call);
+        } finally {
+            unregister(registered, call);
+        }
+    }
+
+    /**
+     * Number of calls actually executed.
+     */
+    public long executions() {
+        return executions.get();
+    }
+
+    /**
+     * Number of callers that joined a call in flight, each one is a saved execution.
+     */
+    public long joins() {
+        return joins.get();
+    }
+
+    private void unregister(List<K> keys, Call<V> call) {
+        for (K key : keys) {
+            calls.remove(key, call);
+        }
+    }
+
+    private static <V> V get(FutureTask<V> call) throws Exception {
+        try {
+            return call.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static final class Call<V> extends FutureTask<V> {
+
+        Call(Callable<V> callable) {
+            super(callable);
+        }
+
+        void complete(V result) {
+            set(result);
+        }
+
+        void fail(Throwable e) {
+            setException(e);
+        }
+    }
+}
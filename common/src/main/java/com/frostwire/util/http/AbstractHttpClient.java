@@ -27,6 +27,7 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
 import java.security.SecureRandom;
 import java.util.List;
 import java.util.Map;
@@ -35,11 +36,12 @@ import java.util.Map;
  * @author gubatron
  * @author aldenml
  */
-public abstract class AbstractHttpClient implements HttpClient {
+public abstract class AbstractHttpClient implements HttpClient, AsyncHttpClient {
     private static final Logger LOG = Logger.getLogger(AbstractHttpClient.class);
     protected static final int DEFAULT_TIMEOUT = 10000;
     protected static final String DEFAULT_USER_AGENT = UserAgentGenerator.getUserAgent();
     protected static final SSLSocketFactory CUSTOM_SSL_SOCKET_FACTORY = createCustomSSLSocketFactory();
+    static final int READ_BUFFER_SIZE = 16 * 1024;
     protected HttpClientListener listener;
     protected boolean canceled = false;
 
@@ -228,4 +230,33 @@ public abstract class AbstractHttpClient implements HttpClient {
             destination.put(key, origin.get(key));
         }
     }
+
+    /**
+     * The async calls only accept a success code, and the partial content
+     * if a range was requested.
+     */
+    static void checkAsyncResponseCode(int code, long rangeStart) throws IOException {
+        if (code < HttpURLConnection.HTTP_OK || code >= HttpURLConnection.HTTP_MULT_CHOICE) {
+            throw new ResponseCodeNotSupportedException(code);
+        }
+        if (rangeStart > 0 && code != HttpURLConnection.HTTP_PARTIAL) {
+            throw new RangeNotSupportedException("Server does not support bytes range request");
+        }
+    }
+
+    /**
+     * The progress of a save, reported to the listener.
+     */
+    final class SaveProgress implements BodySaver.Progress {
+
+        @Override
+        public void onData(byte[] b, int off, int len) {
+            AbstractHttpClient.this.onData(b, off, len);
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled;
+        }
+    }
 }
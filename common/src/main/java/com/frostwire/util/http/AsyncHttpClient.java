@@ -0,0 +1,88 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.frostwire.util.http;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The non blocking variant of {@link HttpClient}, the requests are queued in
+ * the client and the caller is notified with a {@link Callback} or waits on
+ * the returned {@link HttpCall}.
+ * <p>
+ * Cancelling an {@link HttpCall} aborts the socket of the request. The calls
+ * don't use the listener or the cancel flag of the {@link HttpClient}, the
+ * same client can have many calls in flight.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+public interface AsyncHttpClient {
+
+    HttpCall<String> getAsync(String url, int timeout, String userAgent, String referrer, String cookie, Map<String, String> customHeaders, Callback<String> callback);
+
+    HttpCall<byte[]> getBytesAsync(String url, int timeout, String userAgent, String referrer, String cookies, Callback<byte[]> callback);
+
+    /**
+     * Streams the body of the response (from the byte rangeStart if greater
+     * than zero) to the consumer, the result of the call is the number of
+     * bytes consumed.
+     */
+    HttpCall<Long> streamAsync(String url, int timeout, String userAgent, String referrer, String cookie, Map<String, String> customHeaders, long rangeStart, BodyConsumer consumer, Callback<Long> callback);
+
+    /**
+     * Called in the thread of the client once the call is done, or in the
+     * thread cancelling it with a {@link java.util.concurrent.CancellationException}.
+     */
+    interface Callback<T> {
+
+        void onResponse(HttpCall<T> call, T result);
+
+        void onFailure(HttpCall<T> call, Throwable e);
+    }
+
+    /**
+     * Receives the body as it's read from the socket, the next chunk is not
+     * read until {@link #onData(byte[], int, int)} returns, so a slow consumer
+     * slows the transfer down (through the TCP window) instead of the body
+     * being buffered in memory.
+     */
+    interface BodyConsumer {
+
+        /**
+         * Called before the body, throw to abort the call.
+         */
+        void onHeaders(int responseCode, Map<String, List<String>> headers) throws IOException;
+
+        /**
+         * The buffer is reused for the next chunk, throw to abort the call.
+         */
+        void onData(byte[] b, int off, int len) throws IOException;
+    }
+
+    abstract class CallbackAdapter<T> implements Callback<T> {
+
+        public void onResponse(HttpCall<T> call, T result) {
+        }
+
+        public void onFailure(HttpCall<T> call, Throwable e) {
+        }
+    }
+}
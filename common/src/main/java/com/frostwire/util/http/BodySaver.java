@@ -0,0 +1,114 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.frostwire.util.http;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Saves a response body to a file. The socket is read straight into a large
+ * pooled buffer, written to the file channel when it's full or when the
+ * progress is due, so there is a write and a progress call per megabyte (or
+ * interval) instead of per read.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+final class BodySaver {
+
+    static final int BUFFER_SIZE = 1024 * 1024;
+    static final long PROGRESS_INTERVAL_MILLIS = 250;
+
+    private static final int MAX_POOLED_BUFFERS = 4;
+    private static final Queue<byte[]> BUFFERS = new ConcurrentLinkedQueue<>();
+
+    private BodySaver() {
+    }
+
+    /**
+     * The progress is called with the bytes of each write to the file.
+     */
+    interface Progress {
+
+        void onData(byte[] b, int off, int len);
+
+        boolean isCanceled();
+    }
+
+    /**
+     * Returns the number of bytes saved, the bytes read before a cancel are
+     * saved too, to be resumed.
+     */
+    static long save(InputStream in, File file, boolean append, Progress progress) throws IOException {
+        byte[] b = acquire();
+        FileOutputStream fos = new FileOutputStream(file, append);
+        try {
+            FileChannel ch = fos.getChannel();
+            long total = 0;
+            int pos = 0;
+            long last = System.currentTimeMillis();
+            int n;
+            while (!progress.isCanceled() && (n = in.read(b, pos, b.length - pos)) != -1) {
+                pos += n;
+                long now = System.currentTimeMillis();
+                if (pos == b.length || now - last >= PROGRESS_INTERVAL_MILLIS) {
+                    write(ch, b, pos);
+                    total += pos;
+                    progress.onData(b, 0, pos);
+                    pos = 0;
+                    last = now;
+                }
+            }
+            if (pos > 0) {
+                write(ch, b, pos);
+                total += pos;
+                progress.onData(b, 0, pos);
+            }
+            return total;
+        } finally {
+            AbstractHttpClient.closeQuietly(fos);
+            release(b);
+        }
+    }
+
+    private static void write(FileChannel ch, byte[] b, int len) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(b, 0, len);
+        while (buffer.hasRemaining()) {
+            ch.write(buffer);
+        }
+    }
+
+    private static byte[] acquire() {
+        byte[] b = BUFFERS.poll();
+        return b != null ? b : new byte[BUFFER_SIZE];
+    }
+
+    private static void release(byte[] b) {
+        // the size is not exact, but it's only a bound
+        if (BUFFERS.size() < MAX_POOLED_BUFFERS) {
+            BUFFERS.offer(b);
+        }
+    }
+}
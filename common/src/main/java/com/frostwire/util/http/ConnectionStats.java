@@ -0,0 +1,93 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.frostwire.util.http;
+
+import com.squareup.okhttp.ConnectionPool;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * The use of the connections of a shared OkHttp client, a request on a
+ * connection already seen by a previous request is a reuse, no TCP or TLS
+ * handshake.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+public final class ConnectionStats {
+
+    private final ConnectionPool pool;
+    private final Set<Object> connections;
+
+    private long requests;
+    private long reused;
+
+    ConnectionStats(ConnectionPool pool) {
+        this.pool = pool;
+        this.connections = Collections.newSetFromMap(new WeakHashMap<Object, Boolean>());
+    }
+
+    synchronized void onRequest(Object connection) {
+        requests++;
+        if (!connections.add(connection)) {
+            reused++;
+        }
+    }
+
+    public synchronized long getRequests() {
+        return requests;
+    }
+
+    public synchronized long getReusedRequests() {
+        return reused;
+    }
+
+    /**
+     * The fraction of the requests sent over a reused connection.
+     */
+    public synchronized double getReuseRatio() {
+        return requests > 0 ? (double) reused / requests : 0;
+    }
+
+    public int getConnectionCount() {
+        return pool.getConnectionCount();
+    }
+
+    public int getIdleConnectionCount() {
+        return pool.getIdleConnectionCount();
+    }
+
+    public int getActiveConnectionCount() {
+        return Math.max(0, pool.getConnectionCount() - pool.getIdleConnectionCount());
+    }
+
+    /**
+     * The HTTP/2 connections, a connection can carry many requests at once.
+     */
+    public int getMultiplexedConnectionCount() {
+        return pool.getMultiplexedConnectionCount();
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionStats(requests: " + getRequests() + ", reused: " + getReusedRequests() + ", connections: " + getConnectionCount() + ", idle: " + getIdleConnectionCount() + ", multiplexed: " + getMultiplexedConnectionCount() + ")";
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.frostwire.util.http;
+
+import com.frostwire.logging.Logger;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A request in flight of an {@link AsyncHttpClient}, cancelling it aborts
+ * the socket. The callback (can be null) is called once, when the call
+ * succeeds, fails or is cancelled.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+public abstract class HttpCall<T> implements Future<T> {
+
+    private static final Logger LOG = Logger.getLogger(HttpCall.class);
+
+    private final AsyncHttpClient.Callback<T> callback;
+    private final AtomicBoolean done;
+    private final CountDownLatch latch;
+
+    private volatile boolean cancelled;
+    private T result;
+    private Throwable error;
+
+    HttpCall(AsyncHttpClient.Callback<T> callback) {
+        this.callback = callback;
+        this.done = new AtomicBoolean();
+        this.latch = new CountDownLatch(1);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!done.compareAndSet(false, true)) {
+            return false;
+        }
+
+        cancelled = true;
+        try {
+            abort();
+        } catch (Throwable e) {
+            LOG.warn("Error aborting http call: " + e.getMessage());
+        }
+        latch.countDown();
+        onFailure(new CancellationException());
+
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return latch.getCount() == 0;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        latch.await();
+        return result();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!latch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return result();
+    }
+
+    /**
+     * Aborts the request, closing the socket if it's already open.
+     */
+    abstract void abort();
+
+    void succeed(T result) {
+        if (done.compareAndSet(false, true)) {
+            this.result = result;
+            latch.countDown();
+            if (callback != null) {
+                try {
+                    callback.onResponse(this, result);
+                } catch (Throwable e) {
+                    LOG.warn("Error in http call callback: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    void fail(Throwable e) {
+        if (done.compareAndSet(false, true)) {
+            this.error = e;
+            latch.countDown();
+            onFailure(e);
+        }
+    }
+
+    private void onFailure(Throwable e) {
+        if (callback != null) {
+            try {
+                callback.onFailure(this, e);
+            } catch (Throwable e2) {
+                LOG.warn("Error in http call callback: " + e2.getMessage(), e2);
+            }
+        }
+    }
+
+    private T result() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+        return result;
+    }
+}
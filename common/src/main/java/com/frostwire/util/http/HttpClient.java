@@ -19,6 +19,7 @@ package com.frostwire.util.http;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -57,6 +58,12 @@ public interface HttpClient {
 
     String get(String url, int timeout, String userAgent, String referrer, String cookie, Map<String, String> customHeaders) throws IOException;
 
+    /**
+     * Opens the body of the response to be consumed as it arrives, instead
+     * of buffering the whole page. The caller must close the stream.
+     */
+    InputStream getStream(String url, int timeout, String userAgent, String referrer, String cookie, Map<String, String> customHeaders) throws IOException;
+
     byte[] getBytes(String url);
 
     byte[] getBytes(String url, int timeout);
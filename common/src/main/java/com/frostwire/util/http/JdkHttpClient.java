@@ -18,6 +18,7 @@
 package com.frostwire.util.http;
 
 import com.frostwire.logging.Logger;
+import com.frostwire.util.ThreadPool;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
@@ -29,6 +30,8 @@ import java.net.URLConnection;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -41,6 +44,8 @@ import java.util.zip.GZIPOutputStream;
 public final class JdkHttpClient extends AbstractHttpClient {
     private static final Logger LOG = Logger.getLogger(JdkHttpClient.class);
 
+    private static final int ASYNC_THREADS = 8;
+
     @Override
     public int head(String url, int connectTimeoutInMillis, Map<String, List<String>> outputHeaders) throws IOException {
         HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
@@ -93,23 +98,70 @@ public final class JdkHttpClient extends AbstractHttpClient {
         return result;
     }
 
+    @Override
+    public InputStream getStream(String url, int timeout, String userAgent, String referrer, String cookie, Map<String, String> customHeaders) throws IOException {
+        final URLConnection conn = openConnection(url, timeout, userAgent, referrer, cookie, -1, -1, customHeaders);
+
+        InputStream in = conn.getInputStream();
+        if ("gzip".equals(conn.getContentEncoding())) {
+            in = new GZIPInputStream(in);
+        }
+
+        int httpResponseCode = getResponseCode(conn);
+
+        if (httpResponseCode != HttpURLConnection.HTTP_OK) {
+            closeQuietly(in);
+            closeQuietly(conn);
+            throw new ResponseCodeNotSupportedException(httpResponseCode);
+        }
+
+        return in;
+    }
+
     @Override
     public void save(String url, File file, boolean resume, int timeout, String userAgent, String referrer) throws IOException {
-        FileOutputStream fos = null;
-        long rangeStart;
+        canceled = false;
+        boolean append = resume && file.exists();
+        long rangeStart = append ? file.length() : -1;
+
+        final URLConnection conn = openConnection(url, timeout, userAgent, referrer, null, rangeStart, -1, null);
+        InputStream in = null;
 
         try {
-            if (resume && file.exists()) {
-                fos = new FileOutputStream(file, true);
-                rangeStart = file.length();
-            } else {
-                fos = new FileOutputStream(file, false);
-                rangeStart = -1;
+            in = conn.getInputStream();
+            if ("gzip".equals(conn.getContentEncoding())) {
+                in = new GZIPInputStream(in);
+            }
+
+            int httpResponseCode = getResponseCode(conn);
+
+            if (httpResponseCode != HttpURLConnection.HTTP_OK &&
+                    httpResponseCode != HttpURLConnection.HTTP_PARTIAL &&
+                    httpResponseCode != HttpURLConnection.HTTP_MOVED_TEMP &&
+                    httpResponseCode != HttpURLConnection.HTTP_MOVED_PERM) {
+                throw new ResponseCodeNotSupportedException(httpResponseCode);
             }
+            onHeaders(conn.getHeaderFields());
+            checkRangeSupport(rangeStart, conn);
+        } catch (IOException e) {
+            closeQuietly(in);
+            closeQuietly(conn);
+            throw e;
+        }
+
+        try {
+            BodySaver.save(in, file, append, new SaveProgress());
 
-            get(url, fos, timeout, userAgent, null, referrer, rangeStart);
+            if (canceled) {
+                onCancel();
+            } else {
+                onComplete();
+            }
+        } catch (Exception e) {
+            onError(e);
         } finally {
-            closeQuietly(fos);
+            closeQuietly(in);
+            closeQuietly(conn);
         }
     }
 
@@ -169,7 +221,7 @@ public final class JdkHttpClient extends AbstractHttpClient {
                 out = conn.getOutputStream();
             }
 
-            byte[] b = new byte[4096];
+            byte[] b = new byte[READ_BUFFER_SIZE];
             int n;
             while (!canceled && (n = in.read(b, 0, b.length)) != -1) {
                 if (!canceled) {
@@ -191,18 +243,15 @@ public final class JdkHttpClient extends AbstractHttpClient {
             if (canceled) {
                 onCancel();
             } else {
-                BufferedInputStream bis = new BufferedInputStream(conn.getInputStream(), 4096);
-                ByteArrayBuffer baf = new ByteArrayBuffer(1024);
-                byte[] buffer = new byte[64];
+                InputStream responseIn = conn.getInputStream();
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                byte[] buffer = new byte[READ_BUFFER_SIZE];
                 int read;
-                while (true) {
-                    read = bis.read(buffer);
-                    if (read == -1) {
-                        break;
-                    }
-                    baf.append(buffer, 0, read);
+                while ((read = responseIn.read(buffer)) != -1) {
+                    baos.write(buffer, 0, read);
                 }
-                result = new String(baf.toByteArray());
+                closeQuietly(responseIn);
+                result = new String(baos.toByteArray());
                 onComplete();
             }
         } catch (Exception e) {
@@ -214,6 +263,100 @@ public final class JdkHttpClient extends AbstractHttpClient {
         return result;
     }
 
+    @Override
+    public HttpCall<String> getAsync(String url, int timeout, String userAgent, String referrer, String cookie, Map<String, String> customHeaders, Callback<String> callback) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        return execute(url, timeout, userAgent, referrer, cookie, customHeaders, -1, new BodyReader<String>() {
+            @Override
+            public String read(InputStream in, HttpCall<String> call) throws IOException {
+                copy(in, baos, call);
+                return new String(baos.toByteArray(), "UTF-8");
+            }
+        }, callback);
+    }
+
+    @Override
+    public HttpCall<byte[]> getBytesAsync(String url, int timeout, String userAgent, String referrer, String cookies, Callback<byte[]> callback) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        return execute(url, timeout, userAgent, referrer, cookies, null, -1, new BodyReader<byte[]>() {
+            @Override
+            public byte[] read(InputStream in, HttpCall<byte[]> call) throws IOException {
+                copy(in, baos, call);
+                return baos.toByteArray();
+            }
+        }, callback);
+    }
+
+    @Override
+    public HttpCall<Long> streamAsync(String url, int timeout, String userAgent, String referrer, String cookie, Map<String, String> customHeaders, long rangeStart, final BodyConsumer consumer, Callback<Long> callback) {
+        return execute(url, timeout, userAgent, referrer, cookie, customHeaders, rangeStart, new BodyReader<Long>() {
+            @Override
+            public void onHeaders(int responseCode, Map<String, List<String>> headers) throws IOException {
+                consumer.onHeaders(responseCode, headers);
+            }
+
+            @Override
+            public Long read(InputStream in, HttpCall<Long> call) throws IOException {
+                byte[] b = new byte[READ_BUFFER_SIZE];
+                long total = 0;
+                int n;
+                while (!call.isCancelled() && (n = in.read(b, 0, b.length)) != -1) {
+                    consumer.onData(b, 0, n);
+                    total += n;
+                }
+                return total;
+            }
+        }, callback);
+    }
+
+    /**
+     * Runs the call in the shared pool of the async calls, the connection
+     * is kept in the call to be able to disconnect it.
+     */
+    private <T> HttpCall<T> execute(final String url, final int timeout, final String userAgent, final String referrer, final String cookie, final Map<String, String> customHeaders, final long rangeStart, final BodyReader<T> reader, Callback<T> callback) {
+        final JdkCall<T> call = new JdkCall<>(callback);
+        call.task = AsyncPool.POOL.submit(new Runnable() {
+            @Override
+            public void run() {
+                InputStream in = null;
+                try {
+                    URLConnection conn = openConnection(url, timeout, userAgent, referrer, cookie, rangeStart, -1, customHeaders);
+                    call.connection = conn;
+                    if (call.isCancelled()) {
+                        closeQuietly(conn);
+                        return;
+                    }
+
+                    // reads the response before checking the code
+                    int httpResponseCode = ((HttpURLConnection) conn).getResponseCode();
+                    checkAsyncResponseCode(httpResponseCode, rangeStart);
+                    reader.onHeaders(httpResponseCode, conn.getHeaderFields());
+
+                    in = conn.getInputStream();
+                    if ("gzip".equals(conn.getContentEncoding())) {
+                        in = new GZIPInputStream(in);
+                    }
+
+                    call.succeed(reader.read(in, call));
+                } catch (Throwable e) {
+                    call.fail(e);
+                } finally {
+                    closeQuietly(in);
+                    closeQuietly(call.connection);
+                }
+            }
+        });
+        return call;
+    }
+
+    private static void copy(InputStream in, OutputStream out, HttpCall<?> call) throws IOException {
+        byte[] b = new byte[READ_BUFFER_SIZE];
+        int n;
+        while (!call.isCancelled() && (n = in.read(b, 0, b.length)) != -1) {
+            out.write(b, 0, n);
+        }
+    }
+
     private String buildRange(long rangeStart, long rangeLength) {
         String prefix = "bytes=" + rangeStart + "-";
         return prefix + ((rangeLength > -1) ? (rangeStart + rangeLength) : "");
@@ -235,8 +378,7 @@ public final class JdkHttpClient extends AbstractHttpClient {
         get(url, out, timeout, userAgent, referrer, cookie, rangeStart, -1, null);
     }
 
-    private void get(String url, OutputStream out, int timeout, String userAgent, String referrer, String cookie, long rangeStart, long rangeLength, final Map<String, String> customHeaders) throws IOException {
-        canceled = false;
+    private URLConnection openConnection(String url, int timeout, String userAgent, String referrer, String cookie, long rangeStart, long rangeLength, final Map<String, String> customHeaders) throws IOException {
         final URL u = new URL(url);
         final URLConnection conn = u.openConnection();
 
@@ -274,6 +416,13 @@ public final class JdkHttpClient extends AbstractHttpClient {
             setCustomHeaders(conn, customHeaders);
         }
 
+        return conn;
+    }
+
+    private void get(String url, OutputStream out, int timeout, String userAgent, String referrer, String cookie, long rangeStart, long rangeLength, final Map<String, String> customHeaders) throws IOException {
+        canceled = false;
+        final URLConnection conn = openConnection(url, timeout, userAgent, referrer, cookie, rangeStart, rangeLength, customHeaders);
+
         InputStream in = conn.getInputStream();
         if ("gzip".equals(conn.getContentEncoding())) {
             in = new GZIPInputStream(in);
@@ -291,7 +440,7 @@ public final class JdkHttpClient extends AbstractHttpClient {
         checkRangeSupport(rangeStart, conn);
 
         try {
-            byte[] b = new byte[4096];
+            byte[] b = new byte[READ_BUFFER_SIZE];
             int n;
             while (!canceled && (n = in.read(b, 0, b.length)) != -1) {
                 if (!canceled) {
@@ -342,7 +491,7 @@ public final class JdkHttpClient extends AbstractHttpClient {
         try {
             OutputStream postOut = conn.getOutputStream();
 
-            byte[] b = new byte[4096];
+            byte[] b = new byte[READ_BUFFER_SIZE];
             int n;
             while (!canceled && (n = in.read(b, 0, b.length)) != -1) {
                 if (!canceled) {
@@ -367,7 +516,7 @@ public final class JdkHttpClient extends AbstractHttpClient {
                 throw new ResponseCodeNotSupportedException(httpResponseCode);
             }
 
-            b = new byte[4096];
+            b = new byte[READ_BUFFER_SIZE];
             while (!canceled && (n = in.read(b, 0, b.length)) != -1) {
                 if (!canceled) {
                     out.write(b, 0, n);
@@ -487,4 +636,46 @@ public final class JdkHttpClient extends AbstractHttpClient {
             }
         }
     }
+
+    private static abstract class BodyReader<T> {
+
+        public void onHeaders(int responseCode, Map<String, List<String>> headers) throws IOException {
+        }
+
+        public abstract T read(InputStream in, HttpCall<T> call) throws IOException;
+    }
+
+    private static final class JdkCall<T> extends HttpCall<T> {
+
+        volatile Future<?> task;
+        volatile URLConnection connection;
+
+        JdkCall(Callback<T> callback) {
+            super(callback);
+        }
+
+        @Override
+        void abort() {
+            Future<?> t = task;
+            if (t != null) {
+                t.cancel(false);
+            }
+            // closes the socket, a blocked read fails right away
+            URLConnection conn = connection;
+            if (conn instanceof HttpURLConnection) {
+                ((HttpURLConnection) conn).disconnect();
+            }
+        }
+    }
+
+    // lazy, a handful of threads for all the async calls
+    private static final class AsyncPool {
+        static final ThreadPool POOL = newAsyncPool();
+
+        private static ThreadPool newAsyncPool() {
+            ThreadPool pool = new ThreadPool("JdkHttpClient-async", ASYNC_THREADS, ASYNC_THREADS, 30, new LinkedBlockingQueue<Runnable>(), true);
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
 }
@@ -1,6 +1,6 @@
 /*
  * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
- * Copyright (c) 2011-2015, FrostWire(R). All rights reserved.
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -30,10 +30,10 @@ import okio.Okio;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLSession;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -45,10 +45,23 @@ import java.util.concurrent.TimeUnit;
 */
 public class OKHTTPClient extends AbstractHttpClient {
     private static final Logger LOG = Logger.getLogger(OKHTTPClient.class);
-    private final ThreadPool pool;
+
+    private static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    private static final long DEFAULT_KEEP_ALIVE_MILLIS = 5 * 60 * 1000;
+    private static final int DEFAULT_MAX_REQUESTS_PER_HOST = 5;
+
+    private final OkHttpClient client;
 
     public OKHTTPClient(final ThreadPool pool) {
-        this.pool = pool;
+        this(newOkHttpClient(pool));
+    }
+
+    /**
+     * Uses a long lived client, each request works on a copy of it to set
+     * its timeouts and interceptors, sharing the connections and dispatcher.
+     */
+    public OKHTTPClient(final OkHttpClient client) {
+        this.client = client;
     }
 
     @Override
@@ -63,6 +76,7 @@ public class OKHTTPClient extends AbstractHttpClient {
                 build();
         Response resp = okHttpClient.newCall(req).execute();
         copyMultiMap(resp.headers().toMultimap(), outputHeaders);
+        closeQuietly(resp.body());
         return resp.code();
     }
 
@@ -108,37 +122,37 @@ public class OKHTTPClient extends AbstractHttpClient {
         return result;
     }
 
+    @Override
+    public InputStream getStream(String url, int timeout, String userAgent, String referrer, String cookie, Map<String, String> customHeaders) throws IOException {
+        final OkHttpClient okHttpClient = newOkHttpClient();
+        final Request.Builder builder = prepareRequestBuilder(okHttpClient, url, timeout, userAgent, referrer, cookie);
+        addCustomHeaders(customHeaders, builder);
+        final Response response = getSyncResponse(okHttpClient, builder);
+
+        if (!response.isSuccessful()) {
+            closeQuietly(response.body());
+            throw new ResponseCodeNotSupportedException(response.code());
+        }
+
+        return response.body().byteStream();
+    }
+
     @Override
     public void save(String url, File file, boolean resume, int timeout, String userAgent, String referrer) throws IOException {
-        FileOutputStream fos;
-        long rangeStart;
         canceled = false;
-        if (resume && file.exists()) {
-            fos = new FileOutputStream(file, true);
-            rangeStart = file.length();
-        } else {
-            fos = new FileOutputStream(file, false);
-            rangeStart = -1;
-        }
+        final boolean append = resume && file.exists();
+        final long rangeStart = append ? file.length() : -1;
 
         final OkHttpClient okHttpClient = newOkHttpClient();
         final Request.Builder builder = prepareRequestBuilder(okHttpClient, url, timeout, userAgent, referrer, null);
         addRangeHeader(rangeStart, -1, builder);
         final Response response = getSyncResponse(okHttpClient, builder);
-        final Headers headers = response.headers();
-        onHeaders(headers);
-        final InputStream in = response.body().byteStream();
-
-        byte[] b = new byte[4096];
-        int n;
-        while (!canceled && (n = in.read(b, 0, b.length)) != -1) {
-            if (!canceled) {
-                fos.write(b, 0, n);
-                onData(b, 0, n);
-            }
+        try {
+            onHeaders(response.headers());
+            BodySaver.save(response.body().byteStream(), file, append, new SaveProgress());
+        } finally {
+            closeQuietly(response.body());
         }
-        closeQuietly(fos);
-        closeQuietly(response.body());
         if (canceled) {
             onCancel();
         } else {
@@ -146,6 +160,87 @@ public class OKHTTPClient extends AbstractHttpClient {
         }
     }
 
+    @Override
+    public HttpCall<String> getAsync(String url, int timeout, String userAgent, String referrer, String cookie, Map<String, String> customHeaders, Callback<String> callback) {
+        final OkHttpClient okHttpClient = newOkHttpClient();
+        final Request.Builder builder = prepareRequestBuilder(okHttpClient, url, timeout, userAgent, referrer, cookie);
+        addCustomHeaders(customHeaders, builder);
+        return enqueue(okHttpClient, builder, new BodyReader<String>() {
+            @Override
+            public String read(Response response, HttpCall<String> call) throws IOException {
+                checkAsyncResponseCode(response.code(), -1);
+                return response.body().string();
+            }
+        }, callback);
+    }
+
+    @Override
+    public HttpCall<byte[]> getBytesAsync(String url, int timeout, String userAgent, String referrer, String cookies, Callback<byte[]> callback) {
+        final OkHttpClient okHttpClient = newOkHttpClient();
+        final Request.Builder builder = prepareRequestBuilder(okHttpClient, url, timeout, userAgent, referrer, cookies);
+        return enqueue(okHttpClient, builder, new BodyReader<byte[]>() {
+            @Override
+            public byte[] read(Response response, HttpCall<byte[]> call) throws IOException {
+                checkAsyncResponseCode(response.code(), -1);
+                return response.body().bytes();
+            }
+        }, callback);
+    }
+
+    @Override
+    public HttpCall<Long> streamAsync(String url, int timeout, String userAgent, String referrer, String cookie, Map<String, String> customHeaders, final long rangeStart, final BodyConsumer consumer, Callback<Long> callback) {
+        final OkHttpClient okHttpClient = newOkHttpClient();
+        final Request.Builder builder = prepareRequestBuilder(okHttpClient, url, timeout, userAgent, referrer, cookie);
+        addCustomHeaders(customHeaders, builder);
+        if (rangeStart > 0) {
+            addRangeHeader(rangeStart, -1, builder);
+        }
+        return enqueue(okHttpClient, builder, new BodyReader<Long>() {
+            @Override
+            public Long read(Response response, HttpCall<Long> call) throws IOException {
+                checkAsyncResponseCode(response.code(), rangeStart);
+                consumer.onHeaders(response.code(), response.headers().toMultimap());
+
+                InputStream in = response.body().byteStream();
+                byte[] b = new byte[READ_BUFFER_SIZE];
+                long total = 0;
+                int n;
+                while (!call.isCancelled() && (n = in.read(b, 0, b.length)) != -1) {
+                    consumer.onData(b, 0, n);
+                    total += n;
+                }
+                return total;
+            }
+        }, callback);
+    }
+
+    /**
+     * Queues the call in the dispatcher of the client, the body is read in
+     * the thread of the dispatcher.
+     */
+    private <T> HttpCall<T> enqueue(OkHttpClient okHttpClient, Request.Builder builder, final BodyReader<T> reader, Callback<T> callback) {
+        final Call call = okHttpClient.newCall(builder.build());
+        final OkHttpCall<T> httpCall = new OkHttpCall<>(call, callback);
+        call.enqueue(new com.squareup.okhttp.Callback() {
+            @Override
+            public void onFailure(Request request, IOException e) {
+                httpCall.fail(e);
+            }
+
+            @Override
+            public void onResponse(Response response) {
+                try {
+                    httpCall.succeed(reader.read(response, httpCall));
+                } catch (Throwable e) {
+                    httpCall.fail(e);
+                } finally {
+                    closeQuietly(response.body());
+                }
+            }
+        });
+        return httpCall;
+    }
+
     private void onHeaders(Headers headers) {
         if (getListener() != null) {
             try {
@@ -173,16 +268,16 @@ public class OKHTTPClient extends AbstractHttpClient {
         final RequestBody requestBody = RequestBody.create(MediaType.parse(postContentType), postData);
         prepareOkHttpClientForPost(okHttpClient, gzip);
         builder.post(requestBody);
-        return getPostSyncResponse(builder);
+        return getPostSyncResponse(okHttpClient, builder);
     }
 
-    private String getPostSyncResponse(Request.Builder builder) throws IOException {
+    private String getPostSyncResponse(OkHttpClient okHttpClient, Request.Builder builder) throws IOException {
         String result = null;
-        final OkHttpClient okHttpClient = newOkHttpClient();
         final Response response = this.getSyncResponse(okHttpClient, builder);
         int httpResponseCode = response.code();
 
         if ((httpResponseCode != HttpURLConnection.HTTP_OK) && (httpResponseCode != HttpURLConnection.HTTP_PARTIAL)) {
+            closeQuietly(response.body());
             throw new ResponseCodeNotSupportedException(httpResponseCode);
         }
 
@@ -257,12 +352,25 @@ public class OKHTTPClient extends AbstractHttpClient {
     }
 
     private OkHttpClient newOkHttpClient() {
-        return newOkHttpClient(pool);
+        return client.clone();
     }
 
     public static OkHttpClient newOkHttpClient(ThreadPool pool) {
+        return newOkHttpClient(pool, new ConnectionPool(DEFAULT_MAX_IDLE_CONNECTIONS, DEFAULT_KEEP_ALIVE_MILLIS), DEFAULT_MAX_REQUESTS_PER_HOST);
+    }
+
+    /**
+     * Creates a client to share, with its own connection pool, HTTP/2 when
+     * the server and the platform (ALPN) support it, and the stats of the
+     * connections, see {@link #getConnectionStats(OkHttpClient)}.
+     */
+    public static OkHttpClient newOkHttpClient(ThreadPool pool, ConnectionPool connectionPool, int maxRequestsPerHost) {
         OkHttpClient searchClient = new OkHttpClient();
-        searchClient.setDispatcher(new Dispatcher(pool));
+        Dispatcher dispatcher = new Dispatcher(pool);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        searchClient.setDispatcher(dispatcher);
+        searchClient.setConnectionPool(connectionPool);
+        searchClient.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
         searchClient.setFollowRedirects(true);
         searchClient.setFollowSslRedirects(true);
         searchClient.setHostnameVerifier(new HostnameVerifier() {
@@ -273,11 +381,58 @@ public class OKHTTPClient extends AbstractHttpClient {
         });
         searchClient.setSslSocketFactory(CUSTOM_SSL_SOCKET_FACTORY);
         searchClient.setConnectTimeout(DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
-        // Maybe we should use a custom connection pool here. Using default.
-        //searchClient.setConnectionPool(?);
+        searchClient.networkInterceptors().add(new StatsInterceptor(new ConnectionStats(connectionPool)));
         return searchClient;
     }
 
+    /**
+     * Returns the stats of the connections of a client created by
+     * {@link #newOkHttpClient(ThreadPool, ConnectionPool, int)}, or null.
+     */
+    public static ConnectionStats getConnectionStats(OkHttpClient client) {
+        for (Interceptor i : client.networkInterceptors()) {
+            if (i instanceof StatsInterceptor) {
+                return ((StatsInterceptor) i).stats;
+            }
+        }
+        return null;
+    }
+
+    private interface BodyReader<T> {
+
+        T read(Response response, HttpCall<T> call) throws IOException;
+    }
+
+    private static final class OkHttpCall<T> extends HttpCall<T> {
+
+        private final Call call;
+
+        OkHttpCall(Call call, Callback<T> callback) {
+            super(callback);
+            this.call = call;
+        }
+
+        @Override
+        void abort() {
+            call.cancel();
+        }
+    }
+
+    private static final class StatsInterceptor implements Interceptor {
+
+        private final ConnectionStats stats;
+
+        StatsInterceptor(ConnectionStats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            stats.onRequest(chain.connection());
+            return chain.proceed(chain.request());
+        }
+    }
+
     /** This interceptor compresses the HTTP request body. Many web servers can't handle this! */
     class GzipRequestInterceptor implements Interceptor {
         @Override public Response intercept(Chain chain) throws IOException {
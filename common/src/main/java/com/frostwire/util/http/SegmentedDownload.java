@@ -0,0 +1,714 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.frostwire.util.http;
+
+import com.frostwire.logging.Logger;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Downloads a file over several connections, each one fetching a range
+ * (segment) of the file into its position in the preallocated file.
+ * <p>
+ * The range support is probed first with a request of the first byte, if
+ * the server doesn't support it, or the size is unknown, the file is
+ * downloaded in a single stream. When a segment is done the largest
+ * segment left is split in half, so the connections are busy until the
+ * end. The segments are saved next to the file to resume the download.
+ * <p>
+ * The segments of all the downloads from the same host are limited to
+ * {@link #MAX_SEGMENTS_PER_HOST}, past that a download only keeps one
+ * connection, so the downloads from a host don't queue behind the long
+ * segments of another one.
+ * <p>
+ * The listener is called in the threads of the client, one call at a time,
+ * the end of the download is notified without holding any lock.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+public final class SegmentedDownload {
+
+    private static final Logger LOG = Logger.getLogger(SegmentedDownload.class);
+
+    public static final int DEFAULT_SEGMENTS = 4;
+
+    static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
+    static final int MAX_SEGMENTS_PER_HOST = 8;
+
+    // active segments by host, of all the downloads
+    private static final Map<String, Integer> HOST_SEGMENTS = new HashMap<>();
+
+    private static final long PERSIST_INTERVAL_MILLIS = 1000;
+    private static final int MAX_RETRIES = 3;
+
+    private final AsyncHttpClient client;
+    private final String url;
+    private final String host;
+    private final File file;
+    private final File stateFile;
+    private final int maxSegments;
+    private final List<Segment> segments;
+
+    private Listener listener;
+    private HttpCall<Long> probe;
+    private FileChannel channel;
+    private long size;
+    private boolean ranges;
+    private boolean stopped;
+    private long lastPersist;
+
+    // the end, not yet notified to the listener
+    private boolean endPending;
+    private Throwable endError;
+
+    public SegmentedDownload(AsyncHttpClient client, String url, File file, int maxSegments) {
+        this.client = client;
+        this.url = url;
+        this.host = host(url);
+        this.file = file;
+        this.stateFile = getStateFile(file);
+        this.maxSegments = maxSegments;
+        this.segments = new ArrayList<>();
+        this.size = -1;
+    }
+
+    public SegmentedDownload(AsyncHttpClient client, String url, File file) {
+        this(client, url, file, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * The file with the segments of the download to the file.
+     */
+    public static File getStateFile(File file) {
+        return new File(file.getPath() + ".segments");
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts the download without blocking, resuming from the saved
+     * segments if there are any.
+     */
+    public void start(boolean resume) {
+        synchronized (this) {
+            if (resume && restore()) {
+                LOG.info("Resuming " + url + " with " + segments.size() + " segments");
+                begin();
+            } else {
+                probe();
+            }
+        }
+        notifyEnd();
+    }
+
+    private void probe() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Range", "bytes=0-0");
+        headers.put("Accept-Encoding", "identity");
+
+        probe = client.streamAsync(url, AbstractHttpClient.DEFAULT_TIMEOUT, AbstractHttpClient.DEFAULT_USER_AGENT, null, null, headers, -1, new AsyncHttpClient.BodyConsumer() {
+            @Override
+            public void onHeaders(int responseCode, Map<String, List<String>> headers) throws IOException {
+                throw new ProbeResult(responseCode, header(headers, "Content-Range"), header(headers, "Content-Length"));
+            }
+
+            @Override
+            public void onData(byte[] b, int off, int len) {
+            }
+        }, new AsyncHttpClient.CallbackAdapter<Long>() {
+            @Override
+            public void onFailure(HttpCall<Long> call, Throwable e) {
+                onProbe(e);
+            }
+        });
+    }
+
+    /**
+     * Stops the connections, keeping the segments to resume.
+     */
+    public synchronized void stop() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+
+        if (probe != null) {
+            probe.cancel(true);
+        }
+        for (Segment s : segments) {
+            if (s.call != null) {
+                s.call.cancel(true);
+            }
+        }
+        persist();
+        close();
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized long getBytesReceived() {
+        long received = 0;
+        for (Segment s : segments) {
+            received += s.received;
+        }
+        return received;
+    }
+
+    /**
+     * The number of segments so far, including the ones done.
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    private void onProbe(Throwable e) {
+        synchronized (this) {
+            probed(e);
+        }
+        notifyEnd();
+    }
+
+    private void probed(Throwable e) {
+        if (stopped) {
+            return;
+        }
+        if (!(e instanceof ProbeResult)) {
+            fail(e);
+            return;
+        }
+
+        ProbeResult r = (ProbeResult) e;
+        long total = r.responseCode == 206 ? parseTotal(r.contentRange) : -1;
+        if (total > 0) {
+            size = total;
+            ranges = true;
+
+            int n = (int) Math.max(1, Math.min(maxSegments, size / MIN_SEGMENT_SIZE));
+            long length = size / n;
+            for (int i = 0; i < n; i++) {
+                long start = i * length;
+                segments.add(new Segment(start, i == n - 1 ? size : start + length));
+            }
+        } else {
+            // a single stream, to the end of the body
+            size = r.responseCode == 200 ? parseLong(r.contentLength) : -1;
+            ranges = false;
+            segments.add(new Segment(0, Long.MAX_VALUE));
+        }
+
+        begin();
+    }
+
+    private void begin() {
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            if (ranges) {
+                raf.setLength(size);
+            } else {
+                raf.setLength(0);
+            }
+            channel = raf.getChannel();
+        } catch (Throwable e) {
+            fail(e);
+            return;
+        }
+
+        if (listener != null) {
+            listener.onStart(size, getBytesReceived(), ranges);
+        }
+
+        persist();
+        lastPersist = System.currentTimeMillis();
+
+        if (!schedule()) {
+            complete();
+        }
+    }
+
+    /**
+     * Launches the segments not done nor in flight, as long as the host has
+     * room for them, returns false if all the segments are done.
+     */
+    private boolean schedule() {
+        boolean pending = false;
+        for (Segment s : new ArrayList<>(segments)) {
+            if (!s.isDone()) {
+                pending = true;
+                if (s.slot || !acquireSlot()) {
+                    continue;
+                }
+                s.slot = true;
+                launch(s);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * A download can always have one segment in flight, the rest only if
+     * the host has room.
+     */
+    private boolean acquireSlot() {
+        boolean first = true;
+        for (Segment s : segments) {
+            if (s.slot) {
+                first = false;
+                break;
+            }
+        }
+
+        synchronized (HOST_SEGMENTS) {
+            Integer n = HOST_SEGMENTS.get(host);
+            int count = n != null ? n : 0;
+            if (!first && count >= MAX_SEGMENTS_PER_HOST) {
+                return false;
+            }
+            HOST_SEGMENTS.put(host, count + 1);
+            return true;
+        }
+    }
+
+    private void releaseSlot(Segment s) {
+        if (!s.slot) {
+            return;
+        }
+        s.slot = false;
+
+        synchronized (HOST_SEGMENTS) {
+            Integer n = HOST_SEGMENTS.get(host);
+            if (n == null || n <= 1) {
+                HOST_SEGMENTS.remove(host);
+            } else {
+                HOST_SEGMENTS.put(host, n - 1);
+            }
+        }
+    }
+
+    static int hostSegments(String host) {
+        synchronized (HOST_SEGMENTS) {
+            Integer n = HOST_SEGMENTS.get(host);
+            return n != null ? n : 0;
+        }
+    }
+
+    private void launch(Segment s) {
+        Map<String, String> headers = null;
+        if (ranges) {
+            headers = new HashMap<>();
+            headers.put("Range", "bytes=" + s.position() + "-" + (s.end - 1));
+            // the ranges are of the file, not of a compressed body
+            headers.put("Accept-Encoding", "identity");
+        }
+        SegmentHandler handler = new SegmentHandler(s);
+        s.call = client.streamAsync(url, AbstractHttpClient.DEFAULT_TIMEOUT, AbstractHttpClient.DEFAULT_USER_AGENT, null, null, headers, -1, handler, handler);
+    }
+
+    private synchronized void onData(Segment s, byte[] b, int off, int len) throws IOException {
+        if (stopped) {
+            throw new IOException("Download stopped");
+        }
+
+        int n = (int) Math.min(len, s.end - s.position());
+        if (n > 0) {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, n);
+            long position = s.position();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            s.received += n;
+
+            if (listener != null) {
+                listener.onData(n);
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - lastPersist >= PERSIST_INTERVAL_MILLIS) {
+                persist();
+                lastPersist = now;
+            }
+        }
+
+        if (s.isDone()) {
+            // the segment could have been split while in flight
+            throw new SegmentDone();
+        }
+    }
+
+    private void onSegmentEnd(Segment s, Throwable e) {
+        synchronized (this) {
+            segmentEnded(s, e);
+        }
+        notifyEnd();
+    }
+
+    private void segmentEnded(Segment s, Throwable e) {
+        s.call = null;
+        releaseSlot(s);
+        if (stopped) {
+            return;
+        }
+
+        if (e == null && !ranges) {
+            // the end of the single stream
+            s.end = s.received;
+            size = s.received;
+        }
+
+        if (e != null && !(e instanceof SegmentDone) || !s.isDone()) {
+            // the single stream can't be resumed
+            if (ranges && s.retries < MAX_RETRIES) {
+                s.retries++;
+                LOG.warn("Retrying segment " + s.start + "-" + s.end + " of " + url + ": " + (e != null ? e.getMessage() : "body ended early"));
+                schedule();
+            } else {
+                fail(e != null ? e : new IOException("Segment body ended early"));
+            }
+            return;
+        }
+
+        // the segments waiting for room first
+        if (!schedule()) {
+            complete();
+            return;
+        }
+        split();
+    }
+
+    /**
+     * Splits the segment with more bytes left in two, if it's worth it.
+     */
+    private void split() {
+        if (!ranges) {
+            return;
+        }
+
+        Segment largest = null;
+        for (Segment s : segments) {
+            if (!s.isDone() && (largest == null || s.remaining() > largest.remaining())) {
+                largest = s;
+            }
+        }
+
+        if (largest != null && largest.remaining() >= 2 * MIN_SEGMENT_SIZE && acquireSlot()) {
+            long mid = largest.position() + largest.remaining() / 2;
+            Segment s = new Segment(mid, largest.end);
+            largest.end = mid;
+            s.slot = true;
+            segments.add(s);
+            launch(s);
+        }
+    }
+
+    private void complete() {
+        stopped = true;
+        close();
+        if (!stateFile.delete() && stateFile.exists()) {
+            LOG.warn("Unable to delete the segments of " + file);
+        }
+        // left by a crash while saving
+        new File(stateFile.getPath() + ".tmp").delete();
+        endPending = true;
+    }
+
+    private void fail(Throwable e) {
+        stopped = true;
+        for (Segment s : segments) {
+            if (s.call != null) {
+                s.call.cancel(true);
+            }
+        }
+        persist();
+        close();
+        endPending = true;
+        endError = e;
+    }
+
+    /**
+     * Notifies the end of the download, once, without holding the lock.
+     */
+    private void notifyEnd() {
+        Throwable e;
+        synchronized (this) {
+            if (!endPending) {
+                return;
+            }
+            endPending = false;
+            e = endError;
+        }
+
+        if (listener != null) {
+            if (e == null) {
+                listener.onComplete();
+            } else {
+                listener.onError(e);
+            }
+        }
+    }
+
+    private void close() {
+        if (channel != null) {
+            AbstractHttpClient.closeQuietly(channel);
+            channel = null;
+        }
+    }
+
+    /**
+     * Saves the size and the segments, a line per segment with the start,
+     * the bytes received and the end. Written aside and renamed, so a
+     * crash never leaves a partial file.
+     */
+    private void persist() {
+        if (!ranges) {
+            return;
+        }
+
+        File tmp = new File(stateFile.getPath() + ".tmp");
+        PrintWriter w = null;
+        try {
+            w = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+            w.println(size);
+            for (Segment s : segments) {
+                w.println(s.start + " " + s.received + " " + s.end);
+            }
+            w.close();
+            if (w.checkError()) {
+                throw new IOException("Error writing " + tmp);
+            }
+
+            // the rename doesn't replace an existing file in some systems,
+            // without the file the download just starts again
+            if (!tmp.renameTo(stateFile) && (!stateFile.delete() || !tmp.renameTo(stateFile))) {
+                throw new IOException("Unable to rename " + tmp);
+            }
+        } catch (Throwable e) {
+            LOG.warn("Unable to save the segments of " + file + ": " + e.getMessage());
+        } finally {
+            AbstractHttpClient.closeQuietly(w);
+        }
+    }
+
+    private boolean restore() {
+        if (!stateFile.exists() || !file.exists()) {
+            return false;
+        }
+
+        BufferedReader r = null;
+        try {
+            r = new BufferedReader(new InputStreamReader(new FileInputStream(stateFile), "UTF-8"));
+            long total = Long.parseLong(r.readLine().trim());
+            if (total != file.length()) {
+                return false;
+            }
+
+            List<Segment> restored = new ArrayList<>();
+            String line;
+            while ((line = r.readLine()) != null) {
+                String[] parts = line.trim().split(" ");
+                if (parts.length != 3) {
+                    return false;
+                }
+                Segment s = new Segment(Long.parseLong(parts[0]), Long.parseLong(parts[2]));
+                s.received = Long.parseLong(parts[1]);
+                restored.add(s);
+            }
+            if (!covers(restored, total)) {
+                LOG.warn("Invalid segments of " + file + ", starting again");
+                return false;
+            }
+
+            size = total;
+            ranges = true;
+            segments.addAll(restored);
+            return true;
+        } catch (Throwable e) {
+            LOG.warn("Unable to read the segments of " + file + ": " + e.getMessage());
+            return false;
+        } finally {
+            AbstractHttpClient.closeQuietly(r);
+        }
+    }
+
+    /**
+     * Sorts the segments and checks that they cover [0, size) without gaps
+     * or overlaps, with the received bytes inside each one.
+     */
+    private static boolean covers(List<Segment> list, long size) {
+        Collections.sort(list, new Comparator<Segment>() {
+            @Override
+            public int compare(Segment a, Segment b) {
+                return a.start < b.start ? -1 : (a.start == b.start ? 0 : 1);
+            }
+        });
+
+        long next = 0;
+        for (Segment s : list) {
+            if (s.start != next || s.received < 0 || s.position() > s.end) {
+                return false;
+            }
+            next = s.end;
+        }
+        return !list.isEmpty() && next == size;
+    }
+
+    private static String host(String url) {
+        try {
+            String h = new URL(url).getHost();
+            return h != null ? h.toLowerCase(Locale.US) : url;
+        } catch (Throwable e) {
+            return url;
+        }
+    }
+
+    private static String header(Map<String, List<String>> headers, String name) {
+        for (Map.Entry<String, List<String>> e : headers.entrySet()) {
+            if (name.equalsIgnoreCase(e.getKey()) && e.getValue() != null && !e.getValue().isEmpty()) {
+                return e.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The total of a content range like "bytes 0-0/1234", -1 if unknown.
+     */
+    static long parseTotal(String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+        int i = contentRange.lastIndexOf('/');
+        return i != -1 ? parseLong(contentRange.substring(i + 1)) : -1;
+    }
+
+    private static long parseLong(String s) {
+        try {
+            return s != null ? Long.parseLong(s.trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public interface Listener {
+
+        /**
+         * Called once the size is known (-1 if unknown), with the bytes
+         * already received when resuming.
+         */
+        void onStart(long size, long received, boolean segmented);
+
+        void onData(int length);
+
+        void onComplete();
+
+        void onError(Throwable e);
+    }
+
+    private static final class Segment {
+
+        final long start;
+        long end;
+        long received;
+        int retries;
+        HttpCall<Long> call;
+        // holds a slot of the host
+        boolean slot;
+
+        Segment(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        long position() {
+            return start + received;
+        }
+
+        long remaining() {
+            return end - position();
+        }
+
+        boolean isDone() {
+            return position() >= end;
+        }
+    }
+
+    private final class SegmentHandler extends AsyncHttpClient.CallbackAdapter<Long> implements AsyncHttpClient.BodyConsumer {
+
+        private final Segment segment;
+
+        SegmentHandler(Segment segment) {
+            this.segment = segment;
+        }
+
+        @Override
+        public void onHeaders(int responseCode, Map<String, List<String>> headers) throws IOException {
+            if (ranges && responseCode != 206) {
+                throw new HttpClient.RangeNotSupportedException("Server does not support bytes range request");
+            }
+        }
+
+        @Override
+        public void onData(byte[] b, int off, int len) throws IOException {
+            SegmentedDownload.this.onData(segment, b, off, len);
+        }
+
+        @Override
+        public void onResponse(HttpCall<Long> call, Long result) {
+            onSegmentEnd(segment, null);
+        }
+
+        @Override
+        public void onFailure(HttpCall<Long> call, Throwable e) {
+            onSegmentEnd(segment, e);
+        }
+    }
+
+    private static final class ProbeResult extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        final int responseCode;
+        final String contentRange;
+        final String contentLength;
+
+        ProbeResult(int responseCode, String contentRange, String contentLength) {
+            super("Probe result");
+            this.responseCode = responseCode;
+            this.contentRange = contentRange;
+            this.contentLength = contentLength;
+        }
+    }
+
+    private static final class SegmentDone extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        SegmentDone() {
+            super("Segment done");
+        }
+    }
+}
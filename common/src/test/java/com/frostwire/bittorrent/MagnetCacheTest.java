@@ -0,0 +1,129 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.bittorrent;
+
+import com.frostwire.util.Hex;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author gubatron
+ * @author aldenml
+ */
+public class MagnetCacheTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("magnets").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testPersistence() {
+        MagnetCache cache = new MagnetCache(1024, 1024 * 1024);
+        cache.open(dir, "magnets");
+        cache.put(sha1(1), data(1, 100));
+        cache.put(sha1(2), data(2, 100));
+        cache.close();
+
+        cache = new MagnetCache(1024, 1024 * 1024);
+        cache.open(dir, "magnets");
+
+        assertEquals(2, cache.size());
+        assertArrayEquals(data(1, 100), cache.get(sha1(1)));
+        assertArrayEquals(data(1, 100), cache.get(sha1(1)));
+        assertNull(cache.get(sha1(3)));
+
+        assertEquals(1, cache.diskHits());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        cache.close();
+    }
+
+    @Test
+    public void testPartialWrite() throws Exception {
+        MagnetCache cache = new MagnetCache(1024, 1024 * 1024);
+        cache.open(dir, "magnets");
+        cache.put(sha1(1), data(1, 100));
+        cache.close();
+
+        // an index record pointing past the end of the data
+        try (RandomAccessFile raf = new RandomAccessFile(new File(dir, "magnets.idx"), "rw")) {
+            raf.seek(raf.length());
+            ByteBuffer record = ByteBuffer.allocate(32);
+            record.put(Hex.decode(sha1(2)));
+            record.putLong(100);
+            record.putInt(100);
+            raf.write(record.array());
+        }
+
+        cache = new MagnetCache(1024, 1024 * 1024);
+        cache.open(dir, "magnets");
+        assertEquals(1, cache.size());
+        assertNull(cache.get(sha1(2)));
+        assertArrayEquals(data(1, 100), cache.get(sha1(1)));
+        cache.close();
+    }
+
+    @Test
+    public void testBudgets() {
+        MagnetCache cache = new MagnetCache(1024, 10 * 1024);
+        cache.open(dir, "magnets");
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put(sha1(i), data(i, 100));
+        }
+
+        assertTrue(new File(dir, "magnets.dat").length() <= 10 * 1024);
+        assertTrue(cache.size() < 1000);
+        assertArrayEquals(data(999, 100), cache.get(sha1(999)));
+        assertNull(cache.get(sha1(0)));
+        cache.close();
+    }
+
+    private static String sha1(int n) {
+        return String.format("%040x", n);
+    }
+
+    private static byte[] data(int n, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (n + i);
+        }
+        return data;
+    }
+}
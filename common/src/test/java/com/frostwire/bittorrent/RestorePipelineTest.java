@@ -0,0 +1,184 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.bittorrent;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author gubatron
+ * @author aldenml
+ */
+public class RestorePipelineTest {
+
+    private static final int NUM_TORRENTS = 3000;
+    private static final int WINDOW = 16;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("restore").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testRestore() throws Exception {
+        // every third torrent is unfinished
+        List<File> files = new ArrayList<>(NUM_TORRENTS);
+        for (int i = 0; i < NUM_TORRENTS; i++) {
+            String hash = String.format("%040x", i);
+            File f = new File(dir, hash + ".torrent");
+            FileUtils.writeStringToFile(f, hash + "," + (i % 3 != 0));
+            files.add(f);
+        }
+        Collections.shuffle(files);
+
+        final ExecutorService alerts = Executors.newSingleThreadExecutor();
+        final List<Item> order = Collections.synchronizedList(new ArrayList<Item>());
+        final AtomicInteger maxInflight = new AtomicInteger();
+        final AtomicReference<RestorePipeline<Item>> ref = new AtomicReference<>();
+
+        RestorePipeline<Item> pipeline = new RestorePipeline<>(new RestorePipeline.Handler<Item>() {
+            @Override
+            public Item parse(File file) throws Exception {
+                String[] s = FileUtils.readFileToString(file).split(",");
+                return new Item(s[0], Boolean.parseBoolean(s[1]));
+            }
+
+            @Override
+            public String infoHash(Item item) {
+                return item.hash;
+            }
+
+            @Override
+            public boolean isFinished(Item item) {
+                return item.finished;
+            }
+
+            @Override
+            public void add(final Item item) {
+                order.add(item);
+                int n = ref.get().inflight();
+                if (n > maxInflight.get()) {
+                    maxInflight.set(n);
+                }
+                // simulates the torrent added alert
+                alerts.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        ref.get().added(item.hash);
+                    }
+                });
+            }
+        }, 4, WINDOW);
+        ref.set(pipeline);
+
+        pipeline.run(files, Collections.<Item>emptyList());
+        alerts.shutdown();
+
+        assertEquals(NUM_TORRENTS, pipeline.parsed());
+        assertEquals(NUM_TORRENTS, pipeline.added());
+        assertEquals(0, pipeline.failed());
+        assertEquals(0, pipeline.timeouts());
+        assertEquals(0, pipeline.inflight());
+        assertTrue(maxInflight.get() <= WINDOW);
+        assertTrue(pipeline.throughput() > 0);
+
+        // unfinished first
+        assertEquals(NUM_TORRENTS, order.size());
+        int unfinished = NUM_TORRENTS / 3;
+        for (int i = 0; i < order.size(); i++) {
+            assertEquals(i >= unfinished, order.get(i).finished);
+        }
+    }
+
+    @Test
+    public void testParseErrors() throws Exception {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            files.add(new File(dir, i + ".torrent"));
+        }
+
+        final List<String> added = new ArrayList<>();
+        final AtomicReference<RestorePipeline<String>> ref = new AtomicReference<>();
+
+        RestorePipeline<String> pipeline = new RestorePipeline<>(new RestorePipeline.Handler<String>() {
+            @Override
+            public String parse(File file) throws Exception {
+                // files don't exist
+                return FileUtils.readFileToString(file);
+            }
+
+            @Override
+            public String infoHash(String item) {
+                return item;
+            }
+
+            @Override
+            public boolean isFinished(String item) {
+                return false;
+            }
+
+            @Override
+            public void add(String item) {
+                added.add(item);
+                ref.get().added(item);
+            }
+        }, 2, WINDOW);
+        ref.set(pipeline);
+
+        pipeline.run(files, Collections.singletonList("extra"));
+
+        assertEquals(10, pipeline.failed());
+        assertEquals(1, pipeline.added());
+        assertFalse(added.isEmpty());
+    }
+
+    private static final class Item {
+
+        private final String hash;
+        private final boolean finished;
+
+        Item(String hash, boolean finished) {
+            this.hash = hash;
+            this.finished = finished;
+        }
+    }
+}
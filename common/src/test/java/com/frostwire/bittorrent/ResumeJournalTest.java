@@ -0,0 +1,207 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.bittorrent;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author gubatron
+ * @author aldenml
+ */
+public class ResumeJournalTest {
+
+    private File dir;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("journal").toFile();
+        file = new File(dir, "resume.journal");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testGroupCommit() {
+        ResumeJournal journal = new ResumeJournal(file, 0);
+        journal.open();
+
+        for (int i = 0; i < 100; i++) {
+            journal.put(hash(i % 10), data(i, 1000));
+        }
+        journal.remove(hash(9));
+        journal.commit();
+
+        // only the last value of each info-hash is written, in one commit
+        assertEquals(1, journal.commits());
+        assertEquals(10, journal.records());
+        journal.close();
+
+        journal = new ResumeJournal(file, 0);
+        journal.open();
+        assertEquals(9, journal.size());
+        assertArrayEquals(data(98, 1000), journal.get(hash(8)));
+        assertNull(journal.get(hash(9)));
+        journal.close();
+    }
+
+    @Test
+    public void testIncompleteRecord() throws Exception {
+        ResumeJournal journal = new ResumeJournal(file, 0);
+        journal.open();
+        journal.put(hash(1), data(1, 100));
+        journal.commit();
+        journal.put(hash(2), data(2, 100));
+        journal.close();
+
+        long length = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length - 10);
+        }
+
+        journal = new ResumeJournal(file, 0);
+        journal.open();
+        assertEquals(1, journal.size());
+        assertArrayEquals(data(1, 100), journal.get(hash(1)));
+
+        // appends after the last good record
+        journal.put(hash(3), data(3, 100));
+        journal.close();
+
+        journal = new ResumeJournal(file, 0);
+        journal.open();
+        assertEquals(2, journal.size());
+        assertArrayEquals(data(3, 100), journal.get(hash(3)));
+        journal.close();
+    }
+
+    @Test
+    public void testCompaction() {
+        ResumeJournal journal = new ResumeJournal(file, 0);
+        journal.open();
+
+        for (int i = 0; i < 100; i++) {
+            journal.put(hash(0), data(i, 64 * 1024));
+            journal.commit();
+        }
+
+        assertTrue(file.length() < 2 * 1024 * 1024);
+        journal.close();
+
+        journal = new ResumeJournal(file, 0);
+        journal.open();
+        assertArrayEquals(data(99, 64 * 1024), journal.get(hash(0)));
+        journal.close();
+    }
+
+    @Test
+    public void testMigration() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            FileUtils.writeByteArrayToFile(new File(dir, hash(i) + ".resume"), data(i, 100));
+        }
+        FileUtils.writeByteArrayToFile(new File(dir, "invalid.resume"), data(0, 100));
+
+        ResumeJournal journal = new ResumeJournal(file, 0);
+        journal.open();
+        assertEquals(1000, journal.migrate(dir));
+        assertEquals(1000, journal.size());
+        assertFalse(new File(dir, hash(0) + ".resume").exists());
+        assertTrue(new File(dir, "invalid.resume").exists());
+        journal.close();
+
+        journal = new ResumeJournal(file, 0);
+        journal.open();
+        assertEquals(0, journal.migrate(dir));
+        assertEquals(1000, journal.size());
+        assertArrayEquals(data(500, 100), journal.get(hash(500)));
+        journal.close();
+    }
+
+    @Test
+    public void testCrashDuringReplace() throws Exception {
+        File tmp = new File(dir, "resume.journal.tmp");
+        File bak = new File(dir, "resume.journal.bak");
+
+        // the old journal
+        ResumeJournal journal = new ResumeJournal(file, 0);
+        journal.open();
+        journal.put(hash(1), data(1, 100));
+        journal.close();
+        assertTrue(file.renameTo(bak));
+
+        // the compacted one, synced but not renamed yet
+        File compacted = new File(dir, "compacted");
+        journal = new ResumeJournal(compacted, 0);
+        journal.open();
+        journal.put(hash(1), data(2, 100));
+        journal.close();
+        assertTrue(compacted.renameTo(tmp));
+
+        journal = new ResumeJournal(file, 0);
+        journal.open();
+        assertArrayEquals(data(2, 100), journal.get(hash(1)));
+        journal.close();
+        assertTrue(file.exists());
+        assertFalse(tmp.exists());
+        assertFalse(bak.exists());
+
+        // only the backup left
+        assertTrue(file.renameTo(bak));
+        journal = new ResumeJournal(file, 0);
+        journal.open();
+        assertArrayEquals(data(2, 100), journal.get(hash(1)));
+        journal.close();
+
+        // a partial tmp file with the journal in place is discarded
+        FileUtils.writeByteArrayToFile(tmp, data(3, 10));
+        journal = new ResumeJournal(file, 0);
+        journal.open();
+        assertArrayEquals(data(2, 100), journal.get(hash(1)));
+        journal.close();
+        assertFalse(tmp.exists());
+    }
+
+    private static String hash(int n) {
+        return String.format("%040x", n);
+    }
+
+    private static byte[] data(int n, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (n + i);
+        }
+        return data;
+    }
+}
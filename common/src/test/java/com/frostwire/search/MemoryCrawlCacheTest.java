@@ -0,0 +1,181 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.frostwire.search;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author gubatron
+ * @author aldenml
+ */
+public class MemoryCrawlCacheTest {
+
+    @Test
+    public void testHitsAndMisses() {
+        MemoryCrawlCache cache = new MemoryCrawlCache(null, 1024 * 1024);
+
+        assertNull(cache.get("a"));
+        cache.put("a", new byte[]{1, 2, 3});
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.get("a"));
+
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(3, cache.bytes());
+
+        cache.remove("a");
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.bytes());
+        assertEquals(0, cache.count());
+    }
+
+    @Test
+    public void testByteBudget() {
+        long maxBytes = 16 * 1024;
+        MemoryCrawlCache cache = new MemoryCrawlCache(null, maxBytes);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, new byte[100]);
+        }
+
+        assertTrue(cache.bytes() <= maxBytes);
+        assertTrue(cache.evictions() > 0);
+        assertEquals(1000, cache.count() + cache.evictions());
+    }
+
+    @Test
+    public void testBackend() throws Exception {
+        MapCrawlCache backend = new MapCrawlCache();
+        backend.put("old", new byte[]{1});
+
+        MemoryCrawlCache cache = new MemoryCrawlCache(backend, 1024 * 1024);
+
+        assertNotNull(cache.get("old"));
+        assertNotNull(cache.get("old"));
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.hits());
+
+        cache.put("new", new byte[]{2});
+        cache.remove("old");
+
+        // write behind
+        for (int i = 0; i < 100 && !backend.written(); i++) {
+            Thread.sleep(10);
+        }
+        synchronized (backend) {
+            assertNull(backend.get("old"));
+            assertArrayEquals(new byte[]{2}, backend.get("new"));
+        }
+    }
+
+    @Test
+    public void testPendingWrites() throws Exception {
+        MapCrawlCache backend = new MapCrawlCache();
+        backend.put("old", new byte[]{1});
+        backend.put("updated", new byte[]{1});
+
+        MemoryCrawlCache cache = new MemoryCrawlCache(backend, 1024 * 1024);
+
+        // the writes stay pending while the writer is blocked
+        backend.gate = new CountDownLatch(1);
+        cache.remove("old");
+        cache.put("updated", new byte[]{2});
+        cache.clear();
+        cache.put("new", new byte[]{3});
+
+        // misses don't load the old values back
+        assertNull(cache.get("old"));
+        assertNull(cache.get("updated"));
+        assertArrayEquals(new byte[]{3}, cache.get("new"));
+
+        backend.gate.countDown();
+
+        for (int i = 0; i < 100 && !backend.written(); i++) {
+            Thread.sleep(10);
+        }
+        assertNull(cache.get("old"));
+        assertNull(cache.get("updated"));
+        assertArrayEquals(new byte[]{3}, cache.get("new"));
+    }
+
+    private static final class MapCrawlCache implements CrawlCache {
+
+        private final Map<String, byte[]> map = new HashMap<String, byte[]>();
+
+        // if not null, the writes wait for it
+        volatile CountDownLatch gate;
+
+        @Override
+        public synchronized byte[] get(String key) {
+            return map.get(key);
+        }
+
+        @Override
+        public void put(String key, byte[] data) {
+            await();
+            synchronized (this) {
+                map.put(key, data);
+            }
+        }
+
+        @Override
+        public void remove(String key) {
+            await();
+            synchronized (this) {
+                map.remove(key);
+            }
+        }
+
+        @Override
+        public void clear() {
+            await();
+            synchronized (this) {
+                map.clear();
+            }
+        }
+
+        @Override
+        public synchronized long size() {
+            return map.size();
+        }
+
+        private void await() {
+            CountDownLatch g = gate;
+            if (g != null) {
+                try {
+                    g.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        synchronized boolean written() {
+            return !map.containsKey("old") && map.containsKey("new");
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.frostwire.search;
+
+import org.junit.Test;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author gubatron
+ * @author aldenml
+ */
+public class QueryMatcherTest {
+
+    private static final String[] WORDS = {"Ubuntu", "linux", "16.04", "desktop", "amd64", "iso", "Beyoncé",
+            "Lemonade", "FLAC", "<b>", "</b>", "&amp;", "www.", ".com", ".net", ".torrent", "[eztv]", "(2016)",
+            "Música", "Ñandú", "ＡＢＣ", "x264", "720p", "S01E01", "-", "_", "\n", "Café", "naïve", "ÀÁ", "<a href=\"x\">"};
+
+    @Test
+    public void testMatches() {
+        QueryMatcher m = QueryMatcher.from(tokenize("ubuntu desktop iso"));
+
+        assertTrue(m.matches("Ubuntu 16.04 Desktop amd64.iso", null, null));
+        assertTrue(m.matches("ubuntu-16.04", "desktop", "amd64.iso"));
+        assertFalse(m.matches("Ubuntu 16.04 Server amd64.iso", null, null));
+        assertTrue(m.matches("<b>Ubuntu</b> Desktop&nbsp;ISO", null, null));
+
+        m = QueryMatcher.from(tokenize("beyonce musica"));
+        assertTrue(m.matches("Beyoncé - Música", null, null));
+
+        // empty query
+        assertTrue(QueryMatcher.from(tokenize("")).matches("anything", null, null));
+    }
+
+    @Test
+    public void testSameAsRegexFilter() {
+        Random r = new Random(7);
+
+        for (int q = 0; q < 200; q++) {
+            List<String> tokens = tokenize(randomText(r, 1 + r.nextInt(3)));
+            QueryMatcher m = QueryMatcher.from(tokens);
+
+            for (int i = 0; i < 200; i++) {
+                String p1 = randomText(r, 1 + r.nextInt(8));
+                String p2 = r.nextBoolean() ? randomText(r, r.nextInt(6)) : null;
+                String p3 = r.nextBoolean() ? randomText(r, r.nextInt(4)) : null;
+
+                assertEquals(tokens + " in " + p1 + p2 + p3, legacyFilter(new LinkedList<>(tokens), p1, p2, p3), m.matches(p1, p2, p3));
+            }
+        }
+    }
+
+    /**
+     * Not a rigorous benchmark, gives an idea of the cost per result of
+     * the matcher vs the old regex based filter.
+     */
+    @Test
+    public void testBenchmark() {
+        Random r = new Random(11);
+        int n = 20000;
+
+        List<String[]> results = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            results.add(new String[]{randomText(r, 6 + r.nextInt(6)), randomText(r, 4), randomText(r, 3)});
+        }
+
+        List<String> tokens = tokenize("ubuntu desktop 720p");
+
+        int expected = 0;
+        long legacyTime = 0;
+        long matcherTime = 0;
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            int count = 0;
+            for (String[] p : results) {
+                if (legacyFilter(new LinkedList<>(tokens), p[0], p[1], p[2])) {
+                    count++;
+                }
+            }
+            legacyTime = System.nanoTime() - start;
+            expected = count;
+
+            start = System.nanoTime();
+            QueryMatcher m = QueryMatcher.from(tokens);
+            count = 0;
+            for (String[] p : results) {
+                if (m.matches(p[0], p[1], p[2])) {
+                    count++;
+                }
+            }
+            matcherTime = System.nanoTime() - start;
+
+            assertEquals(expected, count);
+        }
+
+        System.out.println("QueryMatcher benchmark, " + n + " results (" + expected + " matched): regex filter " +
+                legacyTime / 1000000 + "ms, matcher " + matcherTime / 1000000 + "ms");
+    }
+
+    private static String randomText(Random r, int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0 && r.nextInt(3) != 0) {
+                sb.append(' ');
+            }
+            sb.append(WORDS[r.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    // the filter in the desktop SearchMediator, for reference
+
+    private static boolean legacyFilter(List<String> tokens, String p1, String p2, String p3) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(p1);
+        if (p2 != null) {
+            sb.append(p2);
+        }
+        if (p3 != null) {
+            sb.append(p3);
+        }
+
+        String str = sanitize(sb.toString());
+        str = normalize(str);
+
+        Iterator<String> it = tokens.iterator();
+        while (it.hasNext()) {
+            String token = it.next();
+            if (str.contains(token)) {
+                it.remove();
+            }
+        }
+
+        return tokens.isEmpty();
+    }
+
+    private static String sanitize(String str) {
+        str = str.replaceAll("\\<.*?>", "");
+        str = str.replaceAll("\\&.*?\\;", "");
+        str = str.replaceAll("\\.torrent|www\\.|\\.com|\\.net|[\\\\\\/%_;\\-\\.\\(\\)\\[\\]\\n\\rÐ&~{}\\*@\\^'=!,¡|#ÀÁ]", " ");
+        str = str.replaceAll("\\s+", " ");
+        return str.trim();
+    }
+
+    private static String normalize(String token) {
+        String norm = Normalizer.normalize(token, Normalizer.Form.NFKD);
+        norm = norm.replaceAll("\\p{InCombiningDiacriticalMarks}+", "");
+        norm = norm.toLowerCase(Locale.US);
+        return norm;
+    }
+
+    private static List<String> tokenize(String keywords) {
+        keywords = sanitize(keywords);
+        Set<String> tokens = new HashSet<>(Arrays.asList(keywords.toLowerCase(Locale.US).split(" ")));
+        Set<String> normalized = new HashSet<>();
+        for (String token : tokens) {
+            normalized.add(normalize(token));
+        }
+        return new ArrayList<>(normalized);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.frostwire.search;
+
+import com.frostwire.search.torrent.AbstractTorrentSearchResult;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author gubatron
+ * @author aldenml
+ */
+public class SearchDeduplicatorTest {
+
+    @Test
+    public void testMergeByInfoHash() {
+        SearchDeduplicator d = new SearchDeduplicator();
+
+        TorrentResult a = new TorrentResult("Extratorrent", "86D4C80024A469BE4C50BC5A102CF71780310074", 10);
+        TorrentResult b = new TorrentResult("TorLock", "86d4c80024a469be4c50bc5a102cf71780310074", 25);
+        // same hash in base32
+        TorrentResult c = new TorrentResult("Monova", "Q3KMQABEURU34TCQXRNBALHXC6ADCADU", 3);
+        TorrentResult other = new TorrentResult("Monova", "0000000000000000000000000000000000000001", 1);
+
+        assertTrue(d.add(a));
+        assertFalse(d.add(b));
+        assertFalse(d.add(c));
+        assertTrue(d.add(other));
+
+        SearchDeduplicator.Group g = d.group(c);
+        assertTrue(g.first() == a);
+        assertEquals(3, g.size());
+        assertEquals(25, g.seeds());
+        assertEquals(new HashSet<>(Arrays.asList("Extratorrent", "TorLock", "Monova")), g.sources());
+
+        assertEquals(4, d.results());
+        assertEquals(2, d.duplicates());
+        assertEquals(2, d.crawlsAvoided());
+    }
+
+    @Test
+    public void testKeys() {
+        assertEquals("86d4c80024a469be4c50bc5a102cf71780310074", SearchDeduplicator.infoHash("Q3KMQABEURU34TCQXRNBALHXC6ADCADU"));
+        assertNull(SearchDeduplicator.infoHash("not a hash"));
+
+        assertEquals("http://example.com/a/b?x=1", SearchDeduplicator.normalizeUrl("HTTP://Example.COM:80/a/b/?x=1#top"));
+        assertEquals("https://example.com:8443/a", SearchDeduplicator.normalizeUrl("https://example.com:8443/a"));
+
+        // without a hash there is nothing to merge
+        assertNull(SearchDeduplicator.key(new TorrentResult("TPB", null, 0)));
+    }
+
+    private static final class TorrentResult extends AbstractTorrentSearchResult {
+
+        private final String source;
+        private final String hash;
+        private final int seeds;
+
+        TorrentResult(String source, String hash, int seeds) {
+            this.source = source;
+            this.hash = hash;
+            this.seeds = seeds;
+        }
+
+        @Override
+        public String getTorrentUrl() {
+            return "magnet:?xt=urn:btih:" + hash;
+        }
+
+        @Override
+        public int getSeeds() {
+            return seeds;
+        }
+
+        @Override
+        public String getHash() {
+            return hash;
+        }
+
+        @Override
+        public String getFilename() {
+            return "file.torrent";
+        }
+
+        @Override
+        public long getSize() {
+            return 0;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "file";
+        }
+
+        @Override
+        public String getDetailsUrl() {
+            return "http://" + source + "/details";
+        }
+
+        @Override
+        public String getSource() {
+            return source;
+        }
+    }
+}
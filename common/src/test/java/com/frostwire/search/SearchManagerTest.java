@@ -0,0 +1,272 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.frostwire.search;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author gubatron
+ * @author aldenml
+ */
+public class SearchManagerTest {
+
+    @Test
+    public void testSlowEngineDoesNotStarveOthers() throws Exception {
+        SearchManager manager = SearchManager.getInstance();
+        manager.setGlobalBudget(6);
+        manager.setEngineBudget(3);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch fastDone = new CountDownLatch(1);
+
+        manager.setListener(new SearchListener() {
+            @Override
+            public void onResults(long token, List<? extends SearchResult> results) {
+            }
+
+            @Override
+            public void onError(long token, SearchError error) {
+            }
+
+            @Override
+            public void onStopped(long token) {
+                if (token == 100) {
+                    fastDone.countDown();
+                }
+            }
+        });
+
+        for (int i = 0; i < 10; i++) {
+            manager.perform(new SlowPerformer(i, release));
+        }
+        manager.perform(new FastPerformer(100));
+
+        assertTrue(fastDone.await(10, TimeUnit.SECONDS));
+
+        SearchTaskStats slow = stats(manager, SlowPerformer.class.getSimpleName());
+        assertEquals(3, slow.running());
+        assertEquals(7, slow.queued());
+
+        release.countDown();
+        manager.stop();
+    }
+
+    @Test
+    public void testExpiredCrawlsAreDropped() throws Exception {
+        SearchManager manager = SearchManager.getInstance();
+        manager.setGlobalBudget(6);
+        manager.setEngineBudget(1);
+        manager.setTokenTimeout(200);
+
+        CountDownLatch done = new CountDownLatch(1);
+        manager.setListener(new StoppedListener(200, done));
+
+        try {
+            // the first crawl outlives the deadline, the parked ones are dropped
+            CrawlingPerformer performer = new CrawlingPerformer(200, 5, 400);
+            manager.perform(performer);
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(1, performer.crawls.get());
+
+            SearchTaskStats stats = stats(manager, CrawlingPerformer.class.getSimpleName());
+            assertEquals(4, stats.dropped());
+            // the perform and the crawl run, not the dropped ones
+            assertEquals(2, stats.completed());
+            assertEquals(0, stats.queued());
+        } finally {
+            manager.setEngineBudget(3);
+            manager.setTokenTimeout(SearchManager.DEFAULT_TOKEN_TIMEOUT);
+        }
+    }
+
+    @Test
+    public void testNoDeadline() throws Exception {
+        SearchManager manager = SearchManager.getInstance();
+        manager.setGlobalBudget(6);
+        manager.setEngineBudget(1);
+        manager.setTokenTimeout(0);
+
+        CountDownLatch done = new CountDownLatch(1);
+        manager.setListener(new StoppedListener(300, done));
+
+        try {
+            NoDeadlinePerformer performer = new NoDeadlinePerformer(300, 3, 100);
+            manager.perform(performer);
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(3, performer.crawls.get());
+            assertEquals(0, stats(manager, NoDeadlinePerformer.class.getSimpleName()).dropped());
+        } finally {
+            manager.setEngineBudget(3);
+            manager.setTokenTimeout(SearchManager.DEFAULT_TOKEN_TIMEOUT);
+        }
+    }
+
+    private static SearchTaskStats stats(SearchManager manager, String name) {
+        for (SearchTaskStats s : manager.engineStats()) {
+            if (s.name().equals(name)) {
+                return s;
+            }
+        }
+        throw new AssertionError("No stats for " + name);
+    }
+
+    private static final class SlowPerformer extends AbstractSearchPerformer {
+
+        private final CountDownLatch release;
+
+        SlowPerformer(long token, CountDownLatch release) {
+            super(token);
+            this.release = release;
+        }
+
+        @Override
+        public void perform() {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+
+        @Override
+        public void crawl(CrawlableSearchResult sr) {
+        }
+    }
+
+    private static final class FastPerformer extends AbstractSearchPerformer {
+
+        FastPerformer(long token) {
+            super(token);
+        }
+
+        @Override
+        public void perform() {
+        }
+
+        @Override
+        public void crawl(CrawlableSearchResult sr) {
+        }
+    }
+
+    private static class CrawlingPerformer extends AbstractSearchPerformer {
+
+        private final int results;
+        private final long crawlTime;
+        final AtomicInteger crawls;
+
+        CrawlingPerformer(long token, int results, long crawlTime) {
+            super(token);
+            this.results = results;
+            this.crawlTime = crawlTime;
+            this.crawls = new AtomicInteger();
+        }
+
+        @Override
+        public void perform() {
+            List<SearchResult> list = new ArrayList<SearchResult>();
+            for (int i = 0; i < results; i++) {
+                list.add(new IncompleteResult(i));
+            }
+            onResults(list);
+        }
+
+        @Override
+        public void crawl(CrawlableSearchResult sr) {
+            crawls.incrementAndGet();
+            try {
+                Thread.sleep(crawlTime);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+    }
+
+    // other stats than the ones of the performer with a deadline
+    private static final class NoDeadlinePerformer extends CrawlingPerformer {
+
+        NoDeadlinePerformer(long token, int results, long crawlTime) {
+            super(token, results, crawlTime);
+        }
+    }
+
+    private static final class IncompleteResult extends AbstractSearchResult implements CrawlableSearchResult {
+
+        private final int n;
+
+        IncompleteResult(int n) {
+            this.n = n;
+        }
+
+        @Override
+        public boolean isComplete() {
+            return false;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "result " + n;
+        }
+
+        @Override
+        public String getDetailsUrl() {
+            return "http://localhost/" + n;
+        }
+
+        @Override
+        public String getSource() {
+            return "Test";
+        }
+    }
+
+    private static final class StoppedListener implements SearchListener {
+
+        private final long token;
+        private final CountDownLatch done;
+
+        StoppedListener(long token, CountDownLatch done) {
+            this.token = token;
+            this.done = done;
+        }
+
+        @Override
+        public void onResults(long token, List<? extends SearchResult> results) {
+        }
+
+        @Override
+        public void onError(long token, SearchError error) {
+        }
+
+        @Override
+        public void onStopped(long token) {
+            if (token == this.token) {
+                done.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.frostwire.search;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author gubatron
+ * @author aldenml
+ */
+public class SearchTaskRegistryTest {
+
+    @Test
+    public void testOrdinalsAndFinish() {
+        SearchTaskRegistry r = new SearchTaskRegistry();
+        TestPerformer p = new TestPerformer(1);
+
+        assertEquals(0, r.register(p));
+        assertEquals(1, r.register(p));
+        assertEquals(2, r.pending(1));
+
+        assertFalse(r.complete(p));
+        assertFalse(r.finished(1));
+        assertTrue(r.complete(p));
+        assertTrue(r.finished(1));
+        assertEquals(0, r.size());
+
+        // a finished token can be reused
+        assertEquals(0, r.register(p));
+        assertTrue(r.complete(p));
+    }
+
+    @Test
+    public void testStopByToken() {
+        SearchTaskRegistry r = new SearchTaskRegistry();
+        TestPerformer p1 = new TestPerformer(1);
+        TestPerformer p2 = new TestPerformer(2);
+
+        r.register(p1);
+        r.register(p2);
+
+        r.stop(1);
+        assertTrue(p1.isStopped());
+        assertFalse(p2.isStopped());
+
+        r.stop(-1);
+        assertTrue(p2.isStopped());
+    }
+
+    @Test
+    public void testSubmitCompleteThroughput() throws Exception {
+        final int numTokens = 50;
+        final int numCrawls = 10000;
+        final int numThreads = 8;
+
+        final SearchTaskRegistry r = new SearchTaskRegistry();
+        final AtomicIntegerArray finished = new AtomicIntegerArray(numTokens);
+        final TestPerformer[] performers = new TestPerformer[numTokens];
+        for (int i = 0; i < numTokens; i++) {
+            performers[i] = new TestPerformer(i);
+            // the perform task, crawls are scheduled while it's in flight
+            r.register(performers[i]);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        final CountDownLatch latch = new CountDownLatch(numCrawls);
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < numCrawls; i++) {
+            final TestPerformer p = performers[i % numTokens];
+            r.register(p);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (r.complete(p)) {
+                        finished.incrementAndGet((int) p.getToken());
+                    }
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue(latch.await(1, TimeUnit.MINUTES));
+
+        for (int i = 0; i < numTokens; i++) {
+            assertFalse(r.finished(i));
+            assertTrue(r.complete(performers[i]));
+            finished.incrementAndGet(i);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+
+        for (int i = 0; i < numTokens; i++) {
+            assertEquals(1, finished.get(i));
+        }
+        assertEquals(0, r.size());
+
+        double opsPerSecond = numCrawls / (elapsed / 1e9);
+        System.out.println("SearchTaskRegistry: " + numCrawls + " crawl tasks, " + numTokens + " tokens, " +
+                TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms, " + (long) opsPerSecond + " submit/complete per second");
+    }
+
+    private static final class TestPerformer extends AbstractSearchPerformer {
+
+        TestPerformer(long token) {
+            super(token);
+        }
+
+        @Override
+        public void perform() {
+        }
+
+        @Override
+        public void crawl(CrawlableSearchResult sr) {
+        }
+    }
+}
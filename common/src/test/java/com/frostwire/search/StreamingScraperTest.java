@@ -0,0 +1,172 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.frostwire.search;
+
+import com.frostwire.regex.Pattern;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author gubatron
+ * @author aldenml
+ */
+public class StreamingScraperTest {
+
+    @Test
+    public void testSameResultsAsWholePage() throws IOException {
+        StringBuilder sb = new StringBuilder("<html><body>");
+        for (int i = 0; i < 200; i++) {
+            sb.append("<div class=\"r\">");
+            for (int j = 0; j < i % 7; j++) {
+                sb.append("<span>noise</span>");
+            }
+            sb.append("<a href=\"/t/").append(i).append("\">name ").append(i).append("</a></div>\n");
+        }
+        sb.append("</body></html>");
+        String page = sb.toString();
+
+        TestPerformer performer = new TestPerformer();
+        List<String> expected = names(PerformersHelper.searchPageHelper(performer, page, 1000));
+        assertEquals(200, expected.size());
+
+        // a window smaller than the page, read in small chunks
+        final List<SearchResult> results = new ArrayList<>();
+        final int[] batches = {0};
+        int n = new StreamingScraper(performer, 1000, 512) {
+            @Override
+            protected void onResults(List<? extends SearchResult> r) {
+                results.addAll(r);
+                batches[0]++;
+            }
+        }.scrape(new ChunkedReader(page, 13));
+
+        assertEquals(200, n);
+        assertEquals(expected, names(results));
+        assertTrue(batches[0] > 1);
+    }
+
+    @Test
+    public void testMaxResults() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            sb.append("<div class=\"r\"><a href=\"/t/").append(i).append("\">name ").append(i).append("</a></div>");
+        }
+
+        final List<SearchResult> results = new ArrayList<>();
+        int n = new StreamingScraper(new TestPerformer(), 10, 128) {
+            @Override
+            protected void onResults(List<? extends SearchResult> r) {
+                results.addAll(r);
+            }
+        }.scrape(new StringReader(sb.toString()));
+
+        assertEquals(10, n);
+        assertEquals(10, results.size());
+        assertEquals("name 9", results.get(9).getDisplayName());
+    }
+
+    private static List<String> names(List<? extends SearchResult> results) {
+        List<String> names = new ArrayList<>();
+        for (SearchResult sr : results) {
+            names.add(sr.getDisplayName());
+        }
+        return names;
+    }
+
+    private static final class ChunkedReader extends Reader {
+
+        private final StringReader reader;
+        private final int chunk;
+
+        ChunkedReader(String s, int chunk) {
+            this.reader = new StringReader(s);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return reader.read(cbuf, off, Math.min(len, chunk));
+        }
+
+        @Override
+        public void close() {
+            reader.close();
+        }
+    }
+
+    private static final class TestPerformer extends AbstractSearchPerformer implements RegexSearchPerformer<SearchResult> {
+
+        private static final Pattern PATTERN = Pattern.compile("(?is)<div class=\"r\">.*?<a href=\"([^\"]*?)\">(.*?)</a>");
+
+        TestPerformer() {
+            super(0);
+        }
+
+        @Override
+        public Pattern getPattern() {
+            return PATTERN;
+        }
+
+        @Override
+        public SearchResult fromMatcher(SearchMatcher matcher) {
+            return new TestResult(matcher.group(2), matcher.group(1));
+        }
+
+        @Override
+        public void perform() {
+        }
+
+        @Override
+        public void crawl(CrawlableSearchResult sr) {
+        }
+    }
+
+    private static final class TestResult extends AbstractSearchResult {
+
+        private final String name;
+        private final String url;
+
+        TestResult(String name, String url) {
+            this.name = name;
+            this.url = url;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return name;
+        }
+
+        @Override
+        public String getDetailsUrl() {
+            return url;
+        }
+
+        @Override
+        public String getSource() {
+            return "Test";
+        }
+    }
+}
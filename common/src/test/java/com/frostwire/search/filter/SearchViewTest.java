@@ -0,0 +1,102 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.frostwire.search.filter;
+
+import com.frostwire.search.SearchResult;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author gubatron
+ * @author aldenml
+ */
+public class SearchViewTest {
+
+    @Test
+    public void testFilterChangeDeltas() {
+        SearchTable t = new SearchTable(0);
+
+        SearchResult a1 = new TestSearchResult("a1").source("a");
+        SearchResult a2 = new TestSearchResult("a2").source("a");
+        SearchResult b1 = new TestSearchResult("b1").source("b");
+        SearchResult c1 = new TestSearchResult("c1").source("c");
+        t.add(Arrays.asList(a1, a2, b1, c1));
+
+        SourceKey ka = new SourceKey("a", 0);
+        SourceKey kb = new SourceKey("b", 1);
+
+        SearchView view = t.view(new SourceFilter(ka));
+        SortedMap<FilterKey, SearchGroup> groups = view.groups();
+        assertEquals(2, groups.size());
+        // same seeds, none is lost
+        assertEquals(2, groups.get(ka).size());
+        assertEquals(2, groups.get(FilterKey.NULL).size());
+
+        final List<SearchResult> removed = new ArrayList<>();
+        final List<SearchResult> added = new ArrayList<>();
+        final AtomicBoolean changed = new AtomicBoolean();
+        view.setListener(new SearchViewDeltaListener() {
+            @Override
+            public void viewRemoved(SearchView view, List<SearchResult> results) {
+                removed.addAll(results);
+            }
+
+            @Override
+            public void viewChanged(SearchView view) {
+                changed.set(true);
+            }
+
+            @Override
+            public void viewAdded(SearchView view, List<SearchResult> results) {
+                added.addAll(results);
+            }
+        });
+
+        // only b1 moves to its own group
+        view.filter(new SourceFilter(ka, kb));
+        assertEquals(Arrays.asList(b1), removed);
+        assertEquals(Arrays.asList(b1), added);
+        assertFalse(changed.get());
+
+        groups = view.groups();
+        assertEquals(3, groups.size());
+        assertEquals(1, groups.get(kb).size());
+        assertEquals(1, groups.get(FilterKey.NULL).size());
+
+        // new rows go through the index of the new filter
+        added.clear();
+        SearchResult b2 = new TestSearchResult("b2").source("b");
+        t.add(b2);
+        assertEquals(Arrays.asList(b2), added);
+        assertEquals(2, view.groups().get(kb).size());
+
+        // a different order sorts all the groups again
+        view.filter(SearchFilter.NONE);
+        assertTrue(changed.get());
+        assertEquals(5, view.groups().get(FilterKey.NULL).size());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.frostwire.transfers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author gubatron
+ * @author aldenml
+ */
+public class TailChannelTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("TailChannelTest", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testReadsWhileWritten() throws Exception {
+        final byte[] data = new byte[1024 * 1024 + 17];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+
+        final TailChannel tail = new TailChannel(file);
+        tail.length(data.length);
+
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    FileOutputStream out = new FileOutputStream(file);
+                    try {
+                        for (int pos = 0; pos < data.length; pos += 8 * 1024) {
+                            int n = Math.min(8 * 1024, data.length - pos);
+                            out.write(data, pos, n);
+                            tail.data(n);
+                            if (pos % (128 * 1024) == 0) {
+                                Thread.sleep(5);
+                            }
+                        }
+                    } finally {
+                        out.close();
+                    }
+                    tail.finished();
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        });
+        writer.start();
+
+        // the reader is ahead of the writer most of the time
+        byte[] read = readAll(tail);
+        writer.join();
+
+        assertNull(error.get());
+        assertTrue(Arrays.equals(data, read));
+    }
+
+    @Test
+    public void testEndsWithTheStream() throws Exception {
+        TailChannel tail = new TailChannel(file);
+        tail.length(100);
+
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[50]);
+        out.close();
+        tail.data(50);
+        tail.finished();
+
+        // shorter than announced, the mux gets the end of the stream
+        assertEquals(50, readAll(tail).length);
+    }
+
+    @Test
+    public void testStopped() throws Exception {
+        final boolean[] stopped = {false};
+        final TailChannel tail = new TailChannel(file) {
+            @Override
+            protected boolean isStopped() {
+                return stopped[0];
+            }
+        };
+
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    readAll(tail);
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        });
+        reader.start();
+
+        Thread.sleep(100);
+        stopped[0] = true;
+        reader.join(5000);
+
+        assertNotNull(error.get());
+        assertTrue(error.get() instanceof IOException);
+    }
+
+    private static byte[] readAll(TailChannel tail) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(10 * 1024);
+        try {
+            while (tail.read(buffer) != -1) {
+                buffer.flip();
+                bytes.write(buffer.array(), 0, buffer.limit());
+                buffer.clear();
+            }
+        } finally {
+            tail.close();
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author gubatron
+ * @author aldenml
+ */
+public class IndexedTreeListTest {
+
+    @Test
+    public void testSameAsArrayList() {
+        Random r = new Random(3);
+
+        IndexedTreeList<Item> list = new IndexedTreeList<>();
+        List<Item> expected = new ArrayList<>();
+
+        for (int i = 0; i < 20000; i++) {
+            int op = r.nextInt(10);
+            if (op < 6 || expected.isEmpty()) {
+                Item item = new Item(r.nextInt(100));
+                int index = r.nextInt(expected.size() + 1);
+                list.add(index, item);
+                expected.add(index, item);
+            } else if (op < 9) {
+                int index = r.nextInt(expected.size());
+                assertTrue(expected.remove(index) == list.remove(index));
+            } else {
+                int index = r.nextInt(expected.size());
+                Item item = new Item(r.nextInt(100));
+                list.set(index, item);
+                expected.set(index, item);
+            }
+
+            if (i % 1000 == 0) {
+                assertEquals(expected, list);
+                for (int k = 0; k < expected.size(); k++) {
+                    assertEquals(k, list.indexOf(expected.get(k)));
+                }
+            }
+        }
+
+        assertEquals(expected, list);
+        assertFalse(list.contains(new Item(1)));
+        assertEquals(-1, list.indexOf(new Item(1)));
+    }
+
+    @Test
+    public void testSortedInsertAndBulkBuild() {
+        Random r = new Random(5);
+        Comparator<Item> c = new Comparator<Item>() {
+            @Override
+            public int compare(Item o1, Item o2) {
+                return Integer.compare(o1.value, o2.value);
+            }
+        };
+
+        IndexedTreeList<Item> list = new IndexedTreeList<>();
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Item item = new Item(r.nextInt(500));
+            items.add(item);
+            list.add(list.upperBound(item, c), item);
+        }
+
+        // stable, same as sorting all at once
+        List<Item> expected = new ArrayList<>(items);
+        Collections.sort(expected, c);
+        assertEquals(expected, list);
+
+        IndexedTreeList<Item> built = new IndexedTreeList<>();
+        built.addAll(expected);
+        assertEquals(expected, built);
+        for (int k = 0; k < expected.size(); k += 7) {
+            assertEquals(k, built.indexOf(expected.get(k)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoDuplicates() {
+        IndexedTreeList<Item> list = new IndexedTreeList<>();
+        Item item = new Item(1);
+        list.add(item);
+        list.add(item);
+    }
+
+    private static final class Item {
+
+        private final int value;
+
+        Item(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(value);
+        }
+    }
+}
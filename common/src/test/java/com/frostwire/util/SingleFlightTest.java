@@ -0,0 +1,169 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author gubatron
+ * @author aldenml
+ */
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentCallsShareResult() throws Exception {
+        final SingleFlight<String, String> flight = new SingleFlight<String, String>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger results = new AtomicInteger();
+
+        final Callable<String> callable = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                calls.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "data";
+            }
+        };
+
+        int n = 10;
+        final CountDownLatch done = new CountDownLatch(n);
+
+        for (int i = 0; i < n; i++) {
+            // the leader uses the url, the rest also come with the infohash alias
+            final boolean leader = i == 0;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        String r = leader ?
+                                flight.execute("url", callable) :
+                                flight.execute(Arrays.asList("infohash", "url"), callable);
+                        if ("data".equals(r)) {
+                            results.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        // ignore
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+
+            if (leader) {
+                assertTrue(started.await(10, TimeUnit.SECONDS));
+            }
+        }
+
+        // wait for the followers to join
+        for (int i = 0; i < 100 && flight.joins() < n - 1; i++) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+        assertEquals(n, results.get());
+        assertEquals(1, flight.executions());
+        assertEquals(n - 1, flight.joins());
+
+        // nothing in flight, a new call executes again
+        flight.execute("url", callable);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testOverlappingKeys() throws Exception {
+        final SingleFlight<String, String> flight = new SingleFlight<String, String>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger results = new AtomicInteger();
+
+        final Callable<String> callable = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                calls.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "data";
+            }
+        };
+
+        final CountDownLatch done = new CountDownLatch(3);
+
+        // in flight with the infohash, registers the url and joins by the
+        // infohash, joins the abandoned call by the url
+        String[][] keys = {{"infohash"}, {"url", "infohash"}, {"url"}};
+        for (int i = 0; i < keys.length; i++) {
+            final String[] k = keys[i];
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if ("data".equals(flight.execute(Arrays.asList(k), callable))) {
+                            results.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        // ignore
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+
+            if (i == 0) {
+                assertTrue(started.await(10, TimeUnit.SECONDS));
+            } else {
+                for (int j = 0; j < 100 && flight.joins() < i; j++) {
+                    Thread.sleep(10);
+                }
+                assertEquals(i, flight.joins());
+            }
+        }
+
+        release.countDown();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+        assertEquals(3, results.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testExceptionPropagates() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<String, String>();
+        flight.execute("key", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                throw new IllegalStateException();
+            }
+        });
+    }
+}
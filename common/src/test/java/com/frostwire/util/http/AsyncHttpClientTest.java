@@ -0,0 +1,236 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.frostwire.util.http;
+
+import com.frostwire.util.ThreadPool;
+import com.squareup.okhttp.ConnectionPool;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author gubatron
+ * @author aldenml
+ */
+public class AsyncHttpClientTest {
+
+    private static final int REQUESTS = 1000;
+
+    static {
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String url;
+    private CountDownLatch slowAborted;
+
+    @Before
+    public void setUp() throws IOException {
+        slowAborted = new CountDownLatch(1);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ok", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = "ok".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(body);
+                os.close();
+            }
+        });
+        server.createContext("/missing", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+            }
+        });
+        // a body that never ends, until the client closes the socket
+        server.createContext("/slow", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream os = exchange.getResponseBody();
+                byte[] chunk = new byte[64 * 1024];
+                try {
+                    for (int i = 0; i < 200; i++) {
+                        os.write(chunk);
+                        os.flush();
+                        Thread.sleep(50);
+                    }
+                } catch (IOException e) {
+                    slowAborted.countDown();
+                } catch (InterruptedException e) {
+                    // exit
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testOkHttpManyCallsOnFewThreads() throws Exception {
+        manyCalls(okHttpClient());
+    }
+
+    @Test
+    public void testJdkManyCallsOnFewThreads() throws Exception {
+        manyCalls(new JdkHttpClient());
+    }
+
+    @Test
+    public void testOkHttpCancelAbortsSocket() throws Exception {
+        cancelAbortsSocket(okHttpClient());
+    }
+
+    @Test
+    public void testJdkCancelAbortsSocket() throws Exception {
+        cancelAbortsSocket(new JdkHttpClient());
+    }
+
+    @Test
+    public void testOkHttpResponseCode() throws Exception {
+        responseCode(okHttpClient());
+    }
+
+    @Test
+    public void testJdkResponseCode() throws Exception {
+        responseCode(new JdkHttpClient());
+    }
+
+    private void manyCalls(AsyncHttpClient client) throws Exception {
+        final CountDownLatch latch = new CountDownLatch(REQUESTS);
+        final AtomicInteger ok = new AtomicInteger();
+        final Map<Thread, Boolean> seen = new ConcurrentHashMap<>();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            client.getAsync(url + "/ok", 10000, null, null, null, null, new AsyncHttpClient.Callback<String>() {
+                @Override
+                public void onResponse(HttpCall<String> call, String result) {
+                    if ("ok".equals(result)) {
+                        ok.incrementAndGet();
+                    }
+                    seen.put(Thread.currentThread(), true);
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailure(HttpCall<String> call, Throwable e) {
+                    latch.countDown();
+                }
+            });
+        }
+        // all the calls are queued without blocking this thread
+        assertTrue(latch.await(60, TimeUnit.SECONDS));
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(REQUESTS, ok.get());
+        assertTrue(seen.size() <= 8);
+
+        System.out.println("AsyncHttpClientTest: " + client.getClass().getSimpleName() + " " + REQUESTS + " calls on " + seen.size() + " threads in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms");
+    }
+
+    private void cancelAbortsSocket(AsyncHttpClient client) throws Exception {
+        final CountDownLatch data = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        HttpCall<Long> call = client.streamAsync(url + "/slow", 10000, null, null, null, null, -1, new AsyncHttpClient.BodyConsumer() {
+            @Override
+            public void onHeaders(int responseCode, Map<String, List<String>> headers) {
+            }
+
+            @Override
+            public void onData(byte[] b, int off, int len) {
+                data.countDown();
+            }
+        }, new AsyncHttpClient.CallbackAdapter<Long>() {
+            @Override
+            public void onFailure(HttpCall<Long> call, Throwable e) {
+                failure.set(e);
+            }
+        });
+
+        assertTrue(data.await(10, TimeUnit.SECONDS));
+        assertTrue(call.cancel(true));
+        assertTrue(call.isCancelled());
+        assertTrue(failure.get() instanceof CancellationException);
+
+        // the server fails to write once the socket is closed
+        assertTrue(slowAborted.await(5, TimeUnit.SECONDS));
+
+        try {
+            call.get();
+            fail();
+        } catch (CancellationException e) {
+            // expected
+        }
+    }
+
+    private void responseCode(AsyncHttpClient client) throws Exception {
+        try {
+            client.getBytesAsync(url + "/missing", 10000, null, null, null, null).get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof HttpClient.ResponseCodeNotSupportedException);
+            assertEquals(404, ((HttpClient.ResponseCodeNotSupportedException) e.getCause()).getResponseCode());
+        }
+    }
+
+    private static OKHTTPClient okHttpClient() {
+        ThreadPool pool = new ThreadPool("AsyncHttpClientTest", 4, 4, 1, new LinkedBlockingQueue<Runnable>(), true);
+        return new OKHTTPClient(OKHTTPClient.newOkHttpClient(pool, new ConnectionPool(5, 1, TimeUnit.MINUTES), 4));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.frostwire.util.http;
+
+import com.frostwire.util.ThreadPool;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author gubatron
+ * @author aldenml
+ */
+public class OKHTTPClientTest {
+
+    private static final int REQUESTS = 200;
+
+    static {
+        // otherwise the reused connections wait for the delayed acks
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private HttpServer server;
+    private String url;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = "ok".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(body);
+                os.close();
+            }
+        });
+        server.createContext("/missing", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = "not found".getBytes("UTF-8");
+                exchange.sendResponseHeaders(404, body.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(body);
+                os.close();
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testSharedClientReusesConnections() throws IOException {
+        ThreadPool pool = new ThreadPool("OKHTTPClientTest", 1, 2, 1, new LinkedBlockingQueue<Runnable>(), true);
+
+        // a client per request, as before
+        long start = System.nanoTime();
+        int connections = 0;
+        for (int i = 0; i < REQUESTS; i++) {
+            OkHttpClient c = OKHTTPClient.newOkHttpClient(pool);
+            assertEquals("ok", new OKHTTPClient(c).get(url));
+            connections += OKHTTPClient.getConnectionStats(c).getConnectionCount();
+            // the server limits its idle connections
+            c.getConnectionPool().evictAll();
+        }
+        long fresh = System.nanoTime() - start;
+        assertEquals(REQUESTS, connections);
+
+        // a shared client
+        OkHttpClient shared = OKHTTPClient.newOkHttpClient(pool, new ConnectionPool(5, 1, TimeUnit.MINUTES), 5);
+        start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            assertEquals("ok", new OKHTTPClient(shared).get(url));
+        }
+        long reused = System.nanoTime() - start;
+
+        ConnectionStats stats = OKHTTPClient.getConnectionStats(shared);
+        assertNotNull(stats);
+        assertEquals(REQUESTS, stats.getRequests());
+        assertEquals(REQUESTS - 1, stats.getReusedRequests());
+        assertEquals(1, stats.getConnectionCount());
+        assertEquals(1, stats.getIdleConnectionCount());
+        assertTrue(stats.getReuseRatio() > 0.99);
+
+        System.out.println("OKHTTPClientTest: " + REQUESTS + " requests, client per request " + TimeUnit.NANOSECONDS.toMillis(fresh) + "ms, shared client " + TimeUnit.NANOSECONDS.toMillis(reused) + "ms, " + stats);
+    }
+
+    @Test
+    public void testGetStreamResponseCode() throws IOException {
+        ThreadPool pool = new ThreadPool("OKHTTPClientTest", 1, 2, 1, new LinkedBlockingQueue<Runnable>(), true);
+        OkHttpClient c = OKHTTPClient.newOkHttpClient(pool, new ConnectionPool(5, 1, TimeUnit.MINUTES), 5);
+
+        try {
+            new OKHTTPClient(c).getStream(url + "missing", 5000, null, null, null, null);
+            fail("No exception for a 404");
+        } catch (HttpClient.ResponseCodeNotSupportedException e) {
+            assertEquals(404, e.getResponseCode());
+        }
+
+        // the body was closed, the connection is reused
+        assertEquals("ok", new OKHTTPClient(c).get(url));
+        assertEquals(1, OKHTTPClient.getConnectionStats(c).getConnectionCount());
+    }
+}
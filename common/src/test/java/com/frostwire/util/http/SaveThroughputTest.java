@@ -0,0 +1,178 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.frostwire.util.http;
+
+import com.frostwire.util.ThreadPool;
+import com.squareup.okhttp.ConnectionPool;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the throughput of the save of a large file from a local server.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+public class SaveThroughputTest {
+
+    private static final int SIZE = 64 * 1024 * 1024;
+
+    static {
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private HttpServer server;
+    private String url;
+    private byte[] pattern;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        pattern = new byte[1024 * 1024 + 7];
+        for (int i = 0; i < pattern.length; i++) {
+            pattern[i] = (byte) (i * 31);
+        }
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/file", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, SIZE);
+                OutputStream os = exchange.getResponseBody();
+                int sent = 0;
+                while (sent < SIZE) {
+                    int n = Math.min(pattern.length, SIZE - sent);
+                    os.write(pattern, 0, n);
+                    sent += n;
+                }
+                os.close();
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/file";
+        file = File.createTempFile("SaveThroughputTest", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        file.delete();
+    }
+
+    @Test
+    public void testSaveThroughput() throws IOException {
+        ThreadPool pool = new ThreadPool("SaveThroughputTest", 2, 2, 1, new LinkedBlockingQueue<Runnable>(), true);
+        HttpClient jdkClient = new JdkHttpClient();
+        HttpClient okHttpClient = new OKHTTPClient(OKHTTPClient.newOkHttpClient(pool, new ConnectionPool(1, 1, TimeUnit.MINUTES), 1));
+
+        // the first round warms up
+        long baseline = 0, jdk = 0, okhttp = 0;
+        for (int i = 0; i < 2; i++) {
+            // the previous write path, 4 KB reads written to the stream as they come
+            long start = System.nanoTime();
+            HttpURLConnection4K.save(url, file);
+            baseline = System.nanoTime() - start;
+            assertEquals(SIZE, file.length());
+
+            jdk = save(jdkClient);
+            okhttp = save(okHttpClient);
+        }
+
+        System.out.println("SaveThroughputTest: " + (SIZE >> 20) + "MB, 4KB writes " + mbps(baseline) + "MB/s, JdkHttpClient " + mbps(jdk) + "MB/s, OKHTTPClient " + mbps(okhttp) + "MB/s");
+    }
+
+    private long save(HttpClient client) throws IOException {
+        final long[] calls = {0};
+        final long[] bytes = {0};
+        client.setListener(new HttpClient.HttpClientListenerAdapter() {
+            @Override
+            public void onData(HttpClient client, byte[] buffer, int offset, int length) {
+                calls[0]++;
+                bytes[0] += length;
+            }
+        });
+
+        long start = System.nanoTime();
+        client.save(url, file, false, 10000, null, null);
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(SIZE, file.length());
+        assertEquals(SIZE, bytes[0]);
+        assertContent();
+
+        // a progress call per buffer or interval, not per read
+        long maxCalls = SIZE / BodySaver.BUFFER_SIZE + TimeUnit.NANOSECONDS.toMillis(elapsed) / BodySaver.PROGRESS_INTERVAL_MILLIS + 2;
+        assertTrue(calls[0] + " progress calls", calls[0] <= maxCalls);
+
+        return elapsed;
+    }
+
+    private void assertContent() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long[] positions = {0, pattern.length - 1, pattern.length, SIZE / 2 + 13, SIZE - 1};
+            for (long pos : positions) {
+                raf.seek(pos);
+                assertEquals(pattern[(int) (pos % pattern.length)], (byte) raf.read());
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static long mbps(long nanos) {
+        return (SIZE >> 20) * 1000L / Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    private static final class HttpURLConnection4K {
+
+        static void save(String url, File file) throws IOException {
+            InputStream in = new URL(url).openConnection().getInputStream();
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                byte[] b = new byte[4096];
+                int n;
+                while ((n = in.read(b, 0, b.length)) != -1) {
+                    out.write(b, 0, n);
+                }
+            } finally {
+                out.close();
+                in.close();
+            }
+        }
+    }
+}
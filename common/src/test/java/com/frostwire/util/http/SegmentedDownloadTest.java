@@ -0,0 +1,342 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.frostwire.util.http;
+
+import com.frostwire.util.ThreadPool;
+import com.squareup.okhttp.ConnectionPool;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author gubatron
+ * @author aldenml
+ */
+public class SegmentedDownloadTest {
+
+    private static final int SIZE = 16 * 1024 * 1024 + 123;
+    private static final int CHUNK = 64 * 1024;
+
+    static {
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String url;
+    private byte[] data;
+    private File file;
+
+    private volatile boolean rangeSupport;
+    private volatile boolean slowFirstRange;
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final AtomicInteger maxHostSegments = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        data = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            data[i] = (byte) (i * 31 + (i >> 16));
+        }
+        rangeSupport = true;
+
+        // a server throttled per connection, with ranges like "bytes=a-b"
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/file", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                int start = 0;
+                int end = SIZE - 1;
+                if (rangeSupport && range != null) {
+                    String[] parts = range.substring("bytes=".length()).split("-");
+                    start = Integer.parseInt(parts[0]);
+                    if (parts.length > 1 && !parts[1].isEmpty()) {
+                        end = Math.min(end, Integer.parseInt(parts[1]));
+                    }
+                    rangeRequests.incrementAndGet();
+                    exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + SIZE);
+                    exchange.sendResponseHeaders(206, end - start + 1);
+                } else {
+                    exchange.sendResponseHeaders(200, SIZE);
+                }
+
+                boolean slow = slowFirstRange && start == 0 && range != null;
+
+                int segments = SegmentedDownload.hostSegments("127.0.0.1");
+                if (segments > maxHostSegments.get()) {
+                    maxHostSegments.set(segments);
+                }
+
+                OutputStream os = exchange.getResponseBody();
+                try {
+                    for (int pos = start; pos <= end; pos += CHUNK) {
+                        int n = Math.min(CHUNK, end - pos + 1);
+                        os.write(data, pos, n);
+                        bytesServed.addAndGet(n);
+                        Thread.sleep(slow ? 40 : 4);
+                    }
+                } catch (InterruptedException e) {
+                    // exit
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/file";
+        file = File.createTempFile("SegmentedDownloadTest", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        file.delete();
+        SegmentedDownload.getStateFile(file).delete();
+    }
+
+    @Test
+    public void testSegmented() throws Exception {
+        for (AsyncHttpClient client : Arrays.asList(okHttpClient(), new JdkHttpClient())) {
+            rangeRequests.set(0);
+
+            long start = System.nanoTime();
+            SegmentedDownload dl = new SegmentedDownload(client, url, file);
+            TestListener l = download(dl, false);
+            long elapsed = System.nanoTime() - start;
+
+            assertNull(l.error.get());
+            assertTrue(l.segmented);
+            assertEquals(SIZE, l.size);
+            assertEquals(SIZE, l.bytes.get());
+            assertEquals(SIZE, dl.getBytesReceived());
+            assertTrue(dl.getSegmentCount() >= SegmentedDownload.DEFAULT_SEGMENTS);
+            // the probe and a request per segment
+            assertTrue(rangeRequests.get() > dl.getSegmentCount());
+            assertContent();
+            assertFalse(SegmentedDownload.getStateFile(file).exists());
+
+            System.out.println("SegmentedDownloadTest: " + client.getClass().getSimpleName() + " " + dl.getSegmentCount() + " segments in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms");
+        }
+    }
+
+    @Test
+    public void testRebalance() throws Exception {
+        slowFirstRange = true;
+
+        SegmentedDownload dl = new SegmentedDownload(okHttpClient(), url, file);
+        TestListener l = download(dl, false);
+
+        assertNull(l.error.get());
+        // the slow segment was split by the ones done
+        assertTrue(dl.getSegmentCount() > SegmentedDownload.DEFAULT_SEGMENTS);
+        assertEquals(SIZE, l.bytes.get());
+        assertContent();
+    }
+
+    @Test
+    public void testSingleStreamWithoutRanges() throws Exception {
+        rangeSupport = false;
+
+        long start = System.nanoTime();
+        SegmentedDownload dl = new SegmentedDownload(okHttpClient(), url, file);
+        TestListener l = download(dl, false);
+        long elapsed = System.nanoTime() - start;
+
+        assertNull(l.error.get());
+        assertFalse(l.segmented);
+        assertEquals(1, dl.getSegmentCount());
+        assertEquals(SIZE, l.bytes.get());
+        assertContent();
+
+        System.out.println("SegmentedDownloadTest: single stream in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms");
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        AsyncHttpClient client = okHttpClient();
+
+        final SegmentedDownload first = new SegmentedDownload(client, url, file);
+        final CountDownLatch third = new CountDownLatch(1);
+        first.setListener(new TestListener() {
+            @Override
+            public void onData(int length) {
+                super.onData(length);
+                if (bytes.get() >= SIZE / 3) {
+                    third.countDown();
+                }
+            }
+        });
+        first.start(false);
+        assertTrue(third.await(30, TimeUnit.SECONDS));
+        first.stop();
+
+        long received = first.getBytesReceived();
+        assertTrue(received < SIZE);
+        assertTrue(SegmentedDownload.getStateFile(file).exists());
+
+        bytesServed.set(0);
+        SegmentedDownload second = new SegmentedDownload(client, url, file);
+        TestListener l = download(second, true);
+
+        assertNull(l.error.get());
+        assertEquals(received, l.resumed);
+        assertEquals(SIZE, second.getBytesReceived());
+        // only the missing bytes are downloaded again
+        assertTrue(bytesServed.get() < SIZE - received + SIZE / 10);
+        assertContent();
+    }
+
+    @Test
+    public void testTruncatedState() throws Exception {
+        // the file of a previous run and its state cut in the middle of the end
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(SIZE);
+        } finally {
+            raf.close();
+        }
+        FileUtils.writeStringToFile(SegmentedDownload.getStateFile(file), SIZE + "\n0 0 41", "UTF-8");
+
+        SegmentedDownload dl = new SegmentedDownload(okHttpClient(), url, file);
+        TestListener l = download(dl, true);
+
+        assertNull(l.error.get());
+        assertEquals(0, l.resumed);
+        assertContent();
+        assertFalse(SegmentedDownload.getStateFile(file).exists());
+    }
+
+    @Test
+    public void testHostLimit() throws Exception {
+        // enough threads for all the segments
+        ThreadPool pool = new ThreadPool("SegmentedDownloadTest", 32, 32, 1, new LinkedBlockingQueue<Runnable>(), true);
+        AsyncHttpClient client = new OKHTTPClient(OKHTTPClient.newOkHttpClient(pool, new ConnectionPool(32, 1, TimeUnit.MINUTES), 32));
+
+        int n = 3;
+        File[] files = new File[n];
+        TestListener[] listeners = new TestListener[n];
+        try {
+            for (int i = 0; i < n; i++) {
+                files[i] = File.createTempFile("SegmentedDownloadTest", ".bin");
+                listeners[i] = new TestListener();
+                SegmentedDownload dl = new SegmentedDownload(client, url, files[i]);
+                dl.setListener(listeners[i]);
+                dl.start(false);
+            }
+
+            for (int i = 0; i < n; i++) {
+                assertTrue(listeners[i].done.await(60, TimeUnit.SECONDS));
+                assertNull(listeners[i].error.get());
+                assertTrue(Arrays.equals(data, Files.readAllBytes(files[i].toPath())));
+            }
+        } finally {
+            for (File f : files) {
+                if (f != null) {
+                    f.delete();
+                }
+            }
+        }
+
+        // the downloads wanted more segments than the host allows
+        assertTrue(maxHostSegments.get() > SegmentedDownload.DEFAULT_SEGMENTS);
+        // the first segment of a download is let in even if the host is full
+        assertTrue(maxHostSegments.get() <= SegmentedDownload.MAX_SEGMENTS_PER_HOST + n - 1);
+        assertEquals(0, SegmentedDownload.hostSegments("127.0.0.1"));
+    }
+
+    private TestListener download(SegmentedDownload dl, boolean resume) throws InterruptedException {
+        TestListener l = new TestListener();
+        dl.setListener(l);
+        dl.start(resume);
+        assertTrue(l.done.await(60, TimeUnit.SECONDS));
+        return l;
+    }
+
+    private void assertContent() throws IOException {
+        assertTrue(Arrays.equals(data, Files.readAllBytes(file.toPath())));
+    }
+
+    private static OKHTTPClient okHttpClient() {
+        ThreadPool pool = new ThreadPool("SegmentedDownloadTest", 4, 4, 1, new LinkedBlockingQueue<Runnable>(), true);
+        return new OKHTTPClient(OKHTTPClient.newOkHttpClient(pool, new ConnectionPool(5, 1, TimeUnit.MINUTES), 5));
+    }
+
+    private static class TestListener implements SegmentedDownload.Listener {
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        long size;
+        long resumed;
+        boolean segmented;
+
+        @Override
+        public void onStart(long size, long received, boolean segmented) {
+            this.size = size;
+            this.resumed = received;
+            this.segmented = segmented;
+        }
+
+        @Override
+        public void onData(int length) {
+            bytes.addAndGet(length);
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            error.set(e);
+            done.countDown();
+        }
+    }
+}
@@ -32,10 +32,11 @@ public class LibraryDatabase {
     public static final int OBJECT_NOT_SAVED_ID = -1;
     public static final int OBJECT_INVALID_ID = -2;
     public static final int STARRED_PLAYLIST_ID = -3;
-    public static final int LIBRARY_DATABASE_VERSION = 4;
+    public static final int LIBRARY_DATABASE_VERSION = 6;
     
     private final File _databaseFile;
     private final String _name;
+    private final PlaylistItemIndex _playlistItemIndex = new PlaylistItemIndex(this);
     
     private Connection _connection;
 
@@ -75,6 +76,10 @@ public class LibraryDatabase {
         return _closed;
     }
 
+    public PlaylistItemIndex getPlaylistItemIndex() {
+        return _playlistItemIndex;
+    }
+
     public synchronized List<List<Object>> query(String statementSql, Object... arguments) {
         if (isClosed()) {
             return new ArrayList<>();
@@ -115,6 +120,17 @@ public class LibraryDatabase {
         return OBJECT_INVALID_ID;
     }
 
+    /**
+     * Executes the statement once per arguments row, in a single transaction.
+     */
+    public synchronized int updateBatch(String statementSql, List<Object[]> arguments) {
+        if (isClosed()) {
+            return -1;
+        }
+
+        return updateBatch(_connection, statementSql, arguments);
+    }
+
     public synchronized void close() {
         if (isClosed()) {
             return;
@@ -148,14 +164,22 @@ public class LibraryDatabase {
             setupLuceneIndex(connection);
         }
 
-        if (oldVersion == 2 && newVersion == 3) {
+        if (oldVersion == 2 && newVersion >= 3) {
             setupLuceneIndex(connection);
         }
         
-        if (oldVersion == 3 && newVersion == 4) {
+        if (oldVersion == 3 && newVersion >= 4) {
             setupPlaylistIndexes(connection);
         }
 
+        if (oldVersion < 5 && newVersion >= 5) {
+            setupLibraryFiles(connection);
+        }
+
+        if (oldVersion < 6 && newVersion >= 6) {
+            dropLuceneIndex(connection);
+        }
+
         update(connection, "UPDATE Library SET version = ?", LIBRARY_DATABASE_VERSION);
     }
 
@@ -192,7 +216,7 @@ public class LibraryDatabase {
         update(connection, "CREATE INDEX idx_PlaylistItems_filePath ON PlaylistItems (filePath)");
         update(connection, "CREATE INDEX idx_PlaylistItems_starred ON PlaylistItems (starred)");
 
-        setupLuceneIndex(connection);
+        setupLibraryFiles(connection);
 
         // INITIAL DATA
         update(connection, "INSERT INTO Library (name , version) VALUES (?, ?)", name, LIBRARY_DATABASE_VERSION);
@@ -326,6 +350,54 @@ public class LibraryDatabase {
         return -1;
     }
 
+    private int updateBatch(Connection connection, String statementSql, List<Object[]> arguments) {
+
+        PreparedStatement statement = null;
+        boolean autoCommit = true;
+
+        try {
+            autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            statement = connection.prepareStatement(statementSql);
+
+            for (Object[] row : arguments) {
+                for (int i = 0; i < row.length; i++) {
+                    statement.setObject(i + 1, row[i]);
+                }
+                statement.addBatch();
+            }
+
+            int n = 0;
+            for (int count : statement.executeBatch()) {
+                n += Math.max(count, 0);
+            }
+
+            connection.commit();
+
+            return n;
+        } catch (Exception e) {
+            e.printStackTrace();
+            try {
+                connection.rollback();
+            } catch (SQLException ignored) {
+            }
+        } finally {
+            if (statement != null) {
+                try {
+                    statement.close();
+                } catch (SQLException ignored) {
+                }
+            }
+            try {
+                connection.setAutoCommit(autoCommit);
+            } catch (SQLException ignored) {
+            }
+        }
+
+        return -1;
+    }
+
     private int getDatabaseVersion(Connection connection) {
         List<List<Object>> query = query(connection, "SELECT version FROM Library");
         return query.size() > 0 ? (Integer) query.get(0).get(0) : -1;
@@ -337,6 +409,24 @@ public class LibraryDatabase {
         update(connection, "CALL FTL_CREATE_INDEX('PUBLIC', 'PLAYLISTITEMS', 'FILEPATH, TRACKTITLE, TRACKARTIST, TRACKALBUM, TRACKGENRE, TRACKYEAR')");
     }
 
+    /**
+     * The playlist items are searched with the {@link PlaylistItemIndex},
+     * the lucene triggers only slowed down the writes.
+     */
+    private void dropLuceneIndex(final Connection connection) {
+        update(connection, "CREATE ALIAS IF NOT EXISTS FTL_INIT FOR \"org.h2.fulltext.FullTextLucene.init\"");
+        update(connection, "CALL FTL_INIT()");
+        update(connection, "CALL FTL_DROP_ALL()");
+    }
+
+    private void setupLibraryFiles(final Connection connection) {
+        update(connection, "CREATE TABLE LibraryFiles (filePath VARCHAR(10000) PRIMARY KEY, fileExtension VARCHAR(10), fileSize BIGINT, lastModified BIGINT, trackTitle VARCHAR(500), trackDurationInSecs REAL, trackArtist VARCHAR(500), trackAlbum VARCHAR(500), trackGenre VARCHAR(20), trackYear VARCHAR(6))");
+        update(connection, "CREATE INDEX idx_LibraryFiles_fileExtension ON LibraryFiles (fileExtension)");
+
+        // the folders of the last walk, a different configuration rebuilds the files
+        update(connection, "CREATE TABLE LibraryFolders (folderPath VARCHAR(10000), excluded BOOLEAN)");
+    }
+
     private void setupPlaylistIndexes(final Connection connection) {
         
         // add new column
@@ -0,0 +1,180 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.alexandria.db;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * The files found in the library folders, with the tags when parsed, so the
+ * library can be browsed by media type without walking the folders.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+public class LibraryFileDB {
+
+    private static final String MERGE_SQL = "MERGE INTO LibraryFiles (filePath, fileExtension, fileSize, lastModified, trackTitle, trackDurationInSecs, trackArtist, trackAlbum, trackGenre, trackYear) KEY (filePath) "
+            + "VALUES (LEFT(?, 10000), LEFT(?, 10), ?, ?, LEFT(?, 500), ?, LEFT(?, 500), LEFT(?, 500), LEFT(?, 20), LEFT(?, 6))";
+
+    private static final String UPDATE_TAGS_SQL = "UPDATE LibraryFiles SET trackTitle = LEFT(?, 500), trackDurationInSecs = ?, trackArtist = LEFT(?, 500), trackAlbum = LEFT(?, 500), trackGenre = LEFT(?, 20), trackYear = LEFT(?, 6) "
+            + "WHERE filePath = ?";
+
+    private LibraryFileDB() {}
+
+    /**
+     * Creates the arguments of a file for {@link #save(LibraryDatabase, List)},
+     * the track values are null if the tags were not parsed.
+     */
+    public static Object[] row(String filePath, String fileExtension, long fileSize, long lastModified, String trackTitle, Float trackDurationInSecs, String trackArtist, String trackAlbum, String trackGenre, String trackYear) {
+        return new Object[] { filePath, fileExtension, fileSize, lastModified, trackTitle, trackDurationInSecs, trackArtist, trackAlbum, trackGenre, trackYear };
+    }
+
+    public static void save(LibraryDatabase db, List<Object[]> rows) {
+        if (rows.size() > 0) {
+            db.updateBatch(MERGE_SQL, rows);
+        }
+    }
+
+    /**
+     * Creates the arguments of a file for {@link #updateTags(LibraryDatabase, List)},
+     * a negative duration marks the files whose tags can't be parsed.
+     */
+    public static Object[] tagsRow(String filePath, String trackTitle, Float trackDurationInSecs, String trackArtist, String trackAlbum, String trackGenre, String trackYear) {
+        return new Object[] { trackTitle, trackDurationInSecs, trackArtist, trackAlbum, trackGenre, trackYear, filePath };
+    }
+
+    public static void updateTags(LibraryDatabase db, List<Object[]> rows) {
+        if (rows.size() > 0) {
+            db.updateBatch(UPDATE_TAGS_SQL, rows);
+        }
+    }
+
+    /**
+     * Deletes the file, or all the files under it if it's a folder.
+     */
+    public static void delete(LibraryDatabase db, String path) {
+        String prefix = path.endsWith(File.separator) ? path : path + File.separator;
+        db.update("DELETE FROM LibraryFiles WHERE filePath = ? OR filePath LIKE ? ESCAPE '!'", path, escapeLike(prefix) + "%");
+    }
+
+    /**
+     * Deletes the files, not the ones under them.
+     */
+    public static void deleteFiles(LibraryDatabase db, Collection<String> paths) {
+        List<Object[]> rows = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            rows.add(new Object[] { path });
+        }
+        if (rows.size() > 0) {
+            db.updateBatch("DELETE FROM LibraryFiles WHERE filePath = ?", rows);
+        }
+    }
+
+    /**
+     * Returns the paths of the files with one of the extensions (lower case),
+     * or all the files if there are no extensions.
+     */
+    public static List<String> getFilePaths(LibraryDatabase db, Collection<String> extensions) {
+        List<List<Object>> result;
+
+        if (extensions.isEmpty()) {
+            result = db.query("SELECT filePath FROM LibraryFiles");
+        } else {
+            result = db.query("SELECT filePath FROM LibraryFiles WHERE fileExtension IN (" + params(extensions.size()) + ")", extensions.toArray());
+        }
+
+        return paths(result);
+    }
+
+    /**
+     * Returns up to limit paths of the files with one of the extensions
+     * (lower case) whose tags were not parsed yet.
+     */
+    public static List<String> getUntaggedFilePaths(LibraryDatabase db, Collection<String> extensions, int limit) {
+        List<Object> args = new ArrayList<Object>(extensions);
+        args.add(limit);
+        return paths(db.query("SELECT filePath FROM LibraryFiles WHERE trackDurationInSecs IS NULL AND fileExtension IN (" + params(extensions.size()) + ") LIMIT ?", args.toArray()));
+    }
+
+    /**
+     * Returns the modification times of the files under the folder, by path.
+     */
+    public static Map<String, Long> getLastModified(LibraryDatabase db, String folder) {
+        String prefix = folder.endsWith(File.separator) ? folder : folder + File.separator;
+        List<List<Object>> result = db.query("SELECT filePath, lastModified FROM LibraryFiles WHERE filePath LIKE ? ESCAPE '!'", escapeLike(prefix) + "%");
+
+        Map<String, Long> files = new HashMap<>(result.size());
+        for (List<Object> row : result) {
+            files.put((String) row.get(0), (Long) row.get(1));
+        }
+        return files;
+    }
+
+    /**
+     * Returns the folders (true if excluded) the files were walked from.
+     */
+    public static Map<String, Boolean> getFolders(LibraryDatabase db) {
+        Map<String, Boolean> folders = new HashMap<>();
+        for (List<Object> row : db.query("SELECT folderPath, excluded FROM LibraryFolders")) {
+            folders.put((String) row.get(0), (Boolean) row.get(1));
+        }
+        return folders;
+    }
+
+    public static void setFolders(LibraryDatabase db, Map<String, Boolean> folders) {
+        db.update("DELETE FROM LibraryFolders");
+
+        List<Object[]> rows = new ArrayList<>(folders.size());
+        for (Map.Entry<String, Boolean> e : folders.entrySet()) {
+            rows.add(new Object[] { e.getKey(), e.getValue() });
+        }
+        if (rows.size() > 0) {
+            db.updateBatch("INSERT INTO LibraryFolders (folderPath, excluded) VALUES (?, ?)", rows);
+        }
+    }
+
+    /**
+     * Deletes all the files and folders.
+     */
+    public static void clear(LibraryDatabase db) {
+        db.update("DELETE FROM LibraryFiles");
+        db.update("DELETE FROM LibraryFolders");
+    }
+
+    private static List<String> paths(List<List<Object>> result) {
+        List<String> paths = new ArrayList<>(result.size());
+        for (List<Object> row : result) {
+            paths.add((String) row.get(0));
+        }
+        return paths;
+    }
+
+    private static String params(int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+
+    private static String escapeLike(String s) {
+        return s.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+}
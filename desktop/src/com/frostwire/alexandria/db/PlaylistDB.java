@@ -41,6 +41,7 @@ public class PlaylistDB {
             obj.setId(id);
         } else {
             db.update("DELETE FROM PlaylistItems WHERE playlistId = ?", obj.getId());
+            db.getPlaylistItemIndex().deletePlaylist(obj.getId());
             Object[] statementObjects = createPlaylistUpdateStatement(obj);
             db.update((String) statementObjects[0], (Object[]) statementObjects[1]);
         }
@@ -56,6 +57,7 @@ public class PlaylistDB {
     public static void delete(LibraryDatabase db, Playlist obj) {
         db.update("DELETE FROM PlaylistItems WHERE playlistId = ?", obj.getId());
         db.update("DELETE FROM Playlists WHERE playlistId = ?", obj.getId());
+        db.getPlaylistItemIndex().deletePlaylist(obj.getId());
     }
 
     public static List<Playlist> getPlaylists(LibraryDatabase db) {
@@ -110,6 +112,7 @@ public class PlaylistDB {
     public static void updatePlaylistItemProperties(LibraryDatabase db, String filePath, String title, String artist, String album, String comment, String genre, String track, String year) {
         Object[] sqlAndValues = createPlaylistItemPropertiesUpdate(filePath, title, artist, album, comment, genre, track, year);
         db.update((String) sqlAndValues[0], (Object[]) sqlAndValues[1]);
+        db.getPlaylistItemIndex().setProperties(filePath, title, artist, album, comment, genre, track, year);
     }
 
     private static Object[] createPlaylistItemPropertiesUpdate(String filePath, String title, String artist, String album, String comment, String genre, String track, String year) {
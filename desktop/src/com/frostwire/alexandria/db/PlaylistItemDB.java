@@ -95,10 +95,16 @@ public class PlaylistItemDB {
             sqlAndValues = updateStarred(obj);
             db.update((String) sqlAndValues[0], (Object[]) sqlAndValues[1]);
         }
+
+        if (obj.getId() != LibraryDatabase.OBJECT_INVALID_ID) {
+            db.getPlaylistItemIndex().put(obj);
+            db.getPlaylistItemIndex().setStarred(obj.getFilePath(), obj.isStarred());
+        }
     }
 
     public static void delete(LibraryDatabase db, PlaylistItem obj) {
         db.update("DELETE FROM PlaylistItems WHERE playlistItemId = ?", obj.getId());
+        db.getPlaylistItemIndex().delete(obj.getId());
     }
     
     public static List<PlaylistItem> getPlaylistItems(LibraryDatabase db, Playlist playlist) {
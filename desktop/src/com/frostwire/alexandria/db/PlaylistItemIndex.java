@@ -0,0 +1,427 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.alexandria.db;
+
+import com.frostwire.alexandria.PlaylistItem;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * An in memory inverted index of the playlist items by the words of the
+ * title, artist, album, genre, year and path, kept up to date by the
+ * writes of {@link PlaylistItemDB} and {@link PlaylistDB}.
+ * <p>
+ * Every word of a query must match the start of an indexed word, or the
+ * start of one with a typo if none does. The searches don't hold the
+ * database monitor, the items are read from the database once, on the
+ * first search.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+public final class PlaylistItemIndex {
+
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern DIACRITICAL_MARKS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+
+    private static final String SELECT_SQL = "SELECT playlistItemId, filePath, fileName, fileSize, fileExtension, trackTitle, trackDurationInSecs, trackArtist, trackAlbum, coverArtPath, trackBitrate, trackComment, trackGenre, trackNumber, trackYear, starred, sortIndex, playlistId FROM PlaylistItems";
+
+    // the columns of a row, as read by PlaylistItemDB.fill
+    private static final int FILE_PATH = 1;
+    private static final int TRACK_TITLE = 5;
+    private static final int TRACK_ARTIST = 7;
+    private static final int TRACK_ALBUM = 8;
+    private static final int TRACK_COMMENT = 11;
+    private static final int TRACK_GENRE = 12;
+    private static final int TRACK_NUMBER = 13;
+    private static final int TRACK_YEAR = 14;
+    private static final int STARRED = 15;
+    private static final int SORT_INDEX = 16;
+    private static final int NUM_COLUMNS = 17;
+
+    private static final int MIN_TYPO_LENGTH = 4;
+
+    private final LibraryDatabase db;
+    private final ReadWriteLock lock;
+    private final Map<Integer, Doc> docs;
+    private final Map<String, Set<Integer>> paths;
+    private final NavigableMap<String, Set<Integer>> words;
+
+    private boolean loaded;
+
+    PlaylistItemIndex(LibraryDatabase db) {
+        this.db = db;
+        this.lock = new ReentrantReadWriteLock();
+        this.docs = new HashMap<>();
+        this.paths = new HashMap<>();
+        this.words = new TreeMap<>();
+    }
+
+    /**
+     * Returns the items of the playlist, or the starred items for
+     * {@link LibraryDatabase#STARRED_PLAYLIST_ID}, matching all the words
+     * of the query.
+     */
+    public Results search(String query, int playlistId) {
+        load();
+
+        String[] tokens = words(query);
+        if (tokens.length == 0) {
+            return new Results(new int[0]);
+        }
+
+        lock.readLock().lock();
+        try {
+            Set<Integer> ids = null;
+            for (String token : tokens) {
+                Set<Integer> m = match(token);
+                if (ids == null) {
+                    ids = m;
+                } else {
+                    ids.retainAll(m);
+                }
+                if (ids.isEmpty()) {
+                    break;
+                }
+            }
+
+            List<Doc> found = new ArrayList<>(ids.size());
+            for (Integer id : ids) {
+                Doc doc = docs.get(id);
+                if (playlistId == LibraryDatabase.STARRED_PLAYLIST_ID ? Boolean.TRUE.equals(doc.row[STARRED]) : doc.playlistId == playlistId) {
+                    found.add(doc);
+                }
+            }
+            Collections.sort(found);
+
+            int[] result = new int[found.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = found.get(i).id;
+            }
+            return new Results(result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void put(PlaylistItem item) {
+        Object[] row = new Object[] { item.getId(), left(item.getFilePath(), 10000), left(item.getFileName(), 500), item.getFileSize(), left(item.getFileExtension(), 10), left(item.getTrackTitle(), 500), item.getTrackDurationInSecs(), left(item.getTrackArtist(), 500), left(item.getTrackAlbum(), 500),
+                left(item.getCoverArtPath(), 10000), left(item.getTrackBitrate(), 10), left(item.getTrackComment(), 500), left(item.getTrackGenre(), 20), left(item.getTrackNumber(), 6), left(item.getTrackYear(), 6), item.isStarred(), item.getSortIndex() };
+
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                // an update keeps the playlist, the item could come from the starred view
+                Doc doc = remove(item.getId());
+                add(new Doc(doc != null ? doc.playlistId : item.getPlaylist().getId(), row));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void delete(int id) {
+        lock.writeLock().lock();
+        try {
+            remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void deletePlaylist(int playlistId) {
+        lock.writeLock().lock();
+        try {
+            List<Integer> ids = new ArrayList<>();
+            for (Doc doc : docs.values()) {
+                if (doc.playlistId == playlistId) {
+                    ids.add(doc.id);
+                }
+            }
+            for (Integer id : ids) {
+                remove(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void setStarred(String filePath, boolean starred) {
+        Map<Integer, Object> values = new HashMap<>();
+        values.put(STARRED, starred);
+        update(filePath, values);
+    }
+
+    void setProperties(String filePath, String title, String artist, String album, String comment, String genre, String track, String year) {
+        Map<Integer, Object> values = new HashMap<>();
+        values.put(TRACK_TITLE, left(title, 500));
+        values.put(TRACK_ARTIST, left(artist, 500));
+        values.put(TRACK_ALBUM, left(album, 500));
+        values.put(TRACK_COMMENT, left(comment, 500));
+        values.put(TRACK_GENRE, left(genre, 20));
+        values.put(TRACK_NUMBER, left(track, 6));
+        values.put(TRACK_YEAR, left(year, 6));
+        update(filePath, values);
+    }
+
+    private void load() {
+        lock.readLock().lock();
+        try {
+            if (loaded) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                // the writes wait, so none is missed between the query and the end of the load
+                for (List<Object> r : db.query(SELECT_SQL)) {
+                    Object[] row = r.subList(0, NUM_COLUMNS).toArray();
+                    if (row[SORT_INDEX] == null) {
+                        row[SORT_INDEX] = 0;
+                    }
+                    add(new Doc((Integer) r.get(NUM_COLUMNS), row));
+                }
+                loaded = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void update(String filePath, Map<Integer, Object> values) {
+        lock.writeLock().lock();
+        try {
+            Set<Integer> ids = paths.get(left(filePath, 10000));
+            if (ids == null) {
+                return;
+            }
+            for (Integer id : new ArrayList<>(ids)) {
+                Doc doc = remove(id);
+                Object[] row = doc.row.clone();
+                for (Map.Entry<Integer, Object> e : values.entrySet()) {
+                    row[e.getKey()] = e.getValue();
+                }
+                add(new Doc(doc.playlistId, row));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(Doc doc) {
+        docs.put(doc.id, doc);
+        index(paths, (String) doc.row[FILE_PATH], doc.id);
+        for (String word : doc.words) {
+            index(words, word, doc.id);
+        }
+    }
+
+    private Doc remove(int id) {
+        Doc doc = docs.remove(id);
+        if (doc != null) {
+            unindex(paths, (String) doc.row[FILE_PATH], id);
+            for (String word : doc.words) {
+                unindex(words, word, id);
+            }
+        }
+        return doc;
+    }
+
+    /**
+     * The ids of the words starting with the token, or within a typo of
+     * it if there are none.
+     */
+    private Set<Integer> match(String token) {
+        Set<Integer> ids = new HashSet<>();
+        for (Set<Integer> s : words.subMap(token, true, token + Character.MAX_VALUE, true).values()) {
+            ids.addAll(s);
+        }
+
+        if (ids.isEmpty() && token.length() >= MIN_TYPO_LENGTH) {
+            int maxDistance = token.length() < 8 ? 1 : 2;
+            for (Map.Entry<String, Set<Integer>> e : words.entrySet()) {
+                if (prefixDistance(token, e.getKey(), maxDistance) <= maxDistance) {
+                    ids.addAll(e.getValue());
+                }
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * The edit distance, with transpositions, between the token and the
+     * closest start of the word, stops as soon as it's more than the max.
+     */
+    static int prefixDistance(String token, String word, int max) {
+        int n = token.length();
+        int[] prev2 = new int[n + 1];
+        int[] prev = new int[n + 1];
+        int[] curr = new int[n + 1];
+        for (int i = 0; i <= n; i++) {
+            prev[i] = i;
+        }
+
+        int best = prev[n];
+        for (int j = 1; j <= word.length() && j <= n + max; j++) {
+            curr[0] = j;
+            int rowMin = curr[0];
+            char c = word.charAt(j - 1);
+            for (int i = 1; i <= n; i++) {
+                char t = token.charAt(i - 1);
+                curr[i] = Math.min(Math.min(curr[i - 1] + 1, prev[i] + 1), prev[i - 1] + (t == c ? 0 : 1));
+                if (i > 1 && j > 1 && t == word.charAt(j - 2) && token.charAt(i - 2) == c) {
+                    curr[i] = Math.min(curr[i], prev2[i - 2] + 1);
+                }
+                rowMin = Math.min(rowMin, curr[i]);
+            }
+            best = Math.min(best, curr[n]);
+            if (rowMin > max) {
+                break;
+            }
+            int[] r = prev2;
+            prev2 = prev;
+            prev = curr;
+            curr = r;
+        }
+
+        return best;
+    }
+
+    static String[] words(String s) {
+        if (s == null) {
+            return new String[0];
+        }
+        String norm = Normalizer.normalize(s, Normalizer.Form.NFKD);
+        norm = DIACRITICAL_MARKS.matcher(norm).replaceAll("").toLowerCase(Locale.US);
+
+        List<String> words = new ArrayList<>();
+        for (String w : WORD_SEPARATOR.split(norm)) {
+            if (w.length() > 0) {
+                words.add(w);
+            }
+        }
+        return words.toArray(new String[words.size()]);
+    }
+
+    private static <K> void index(Map<K, Set<Integer>> map, K key, int id) {
+        if (key == null) {
+            return;
+        }
+        Set<Integer> ids = map.get(key);
+        if (ids == null) {
+            ids = new HashSet<>(2);
+            map.put(key, ids);
+        }
+        ids.add(id);
+    }
+
+    private static <K> void unindex(Map<K, Set<Integer>> map, K key, int id) {
+        if (key == null) {
+            return;
+        }
+        Set<Integer> ids = map.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+
+    private static String left(String s, int n) {
+        return s != null && s.length() > n ? s.substring(0, n) : s;
+    }
+
+    /**
+     * The ids of a search, read in pages with the rows of the items still
+     * in the index.
+     */
+    public final class Results {
+
+        private final int[] ids;
+        private int position;
+
+        private Results(int[] ids) {
+            this.ids = ids;
+        }
+
+        public int size() {
+            return ids.length;
+        }
+
+        /**
+         * Returns the rows of the next items, in the columns order of
+         * {@link PlaylistItemDB#fill(List, PlaylistItem)}, empty at the end.
+         */
+        public List<List<Object>> next(int count) {
+            List<List<Object>> rows = new ArrayList<>(Math.min(count, ids.length - position));
+
+            lock.readLock().lock();
+            try {
+                while (rows.size() < count && position < ids.length) {
+                    Doc doc = docs.get(ids[position++]);
+                    if (doc != null) {
+                        rows.add(Collections.unmodifiableList(Arrays.asList(doc.row)));
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            return rows;
+        }
+    }
+
+    /**
+     * An indexed item, the row is not modified once indexed.
+     */
+    private static final class Doc implements Comparable<Doc> {
+
+        private final int id;
+        private final int playlistId;
+        private final Object[] row;
+        private final Set<String> words;
+
+        Doc(int playlistId, Object[] row) {
+            this.id = (Integer) row[0];
+            this.playlistId = playlistId;
+            this.row = row;
+            this.words = new HashSet<>();
+            for (int column : new int[] { TRACK_TITLE, TRACK_ARTIST, TRACK_ALBUM, TRACK_GENRE, TRACK_YEAR, FILE_PATH }) {
+                Collections.addAll(words, words((String) row[column]));
+            }
+        }
+
+        @Override
+        public int compareTo(Doc o) {
+            int a = (Integer) row[SORT_INDEX];
+            int b = (Integer) o.row[SORT_INDEX];
+            return a != b ? (a < b ? -1 : 1) : (id < o.id ? -1 : (id == o.id ? 0 : 1));
+        }
+    }
+}
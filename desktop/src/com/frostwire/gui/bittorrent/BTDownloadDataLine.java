@@ -397,7 +397,11 @@ final class BTDownloadDataLine extends AbstractDataLine<BTDownload> {
                     actions = new Action[] { new LaunchAction(file), new ShowInLibraryAction(file) };
                 }
                 notification = new Notification(theDownload.getDisplayName(), getIcon(), actions);
-                LibraryMediator.instance().getLibraryExplorer().clearDirectoryHolderCaches();
+                if (file != null) {
+                    LibraryMediator.instance().getLibraryExplorer().addToLibraryIndex(file);
+                } else {
+                    LibraryMediator.instance().getLibraryExplorer().clearDirectoryHolderCaches();
+                }
             } else {
                 return;
             }
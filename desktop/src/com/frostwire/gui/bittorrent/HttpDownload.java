@@ -27,12 +27,12 @@ import com.frostwire.util.HttpClientFactory;
 import com.frostwire.util.http.HttpClient;
 import com.frostwire.util.http.HttpClient.HttpClientListener;
 import com.frostwire.util.http.HttpClient.RangeNotSupportedException;
+import com.frostwire.util.http.SegmentedDownload;
 import com.limegroup.gnutella.settings.SharingSettings;
 import org.apache.commons.io.FilenameUtils;
 import org.limewire.util.FileUtils;
 
 import java.io.File;
-import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.util.Date;
 import java.util.List;
@@ -63,6 +63,7 @@ public class HttpDownload implements BTDownload {
     private final String md5; //optional
     private final HttpClient httpClient;
     private final HttpClientListener httpClientListener;
+    private volatile SegmentedDownload segmented;
     private final Date dateCreated;
 
     /** If false it should delete any temporary data and start from the beginning. */
@@ -146,6 +147,7 @@ public class HttpDownload implements BTDownload {
         if (state != TransferState.FINISHED) {
             state = TransferState.CANCELING;
             httpClient.cancel();
+            stopSegmented();
         }
 
         if (deleteDataWhenRemoved) {
@@ -168,6 +170,7 @@ public class HttpDownload implements BTDownload {
                 state = TransferState.CANCELING;
             }
             httpClient.cancel();
+            stopSegmented();
         }
     }
 
@@ -285,14 +288,12 @@ public class HttpDownload implements BTDownload {
                         return;
                     }
 
-                    if (resume) {
-                        if (incompleteFile.exists()) {
-                            bytesReceived = incompleteFile.length();
-                        }
-                    }
-
-                    httpClient.save(url, incompleteFile, resume);
-                } catch (IOException e) {
+                    // over several connections if the server supports ranges
+                    SegmentedDownload dl = new SegmentedDownload(HttpClientFactory.getAsyncInstance(HttpClientFactory.HttpContext.DOWNLOAD), url, incompleteFile);
+                    dl.setListener(new SegmentedListener());
+                    segmented = dl;
+                    dl.start(resume);
+                } catch (Throwable e) {
                     e.printStackTrace();
                     httpClientListener.onError(httpClient, e);
                 }
@@ -311,6 +312,19 @@ public class HttpDownload implements BTDownload {
 
     private void cleanupIncomplete() {
         cleanupFile(incompleteFile);
+        cleanupFile(SegmentedDownload.getStateFile(incompleteFile));
+    }
+
+    /**
+     * Stops the connections of the download, the segments are kept to resume.
+     */
+    private void stopSegmented() {
+        SegmentedDownload dl = segmented;
+        if (dl != null) {
+            segmented = null;
+            dl.stop();
+            httpClientListener.onCancel(httpClient);
+        }
     }
 
     private void cleanupComplete() {
@@ -366,6 +380,47 @@ public class HttpDownload implements BTDownload {
         }
     }
 
+    private final class SegmentedListener implements SegmentedDownload.Listener {
+
+        @Override
+        public void onStart(long size, long received, boolean segmented) {
+            if (size > 0) {
+                HttpDownload.this.size = size;
+            }
+            bytesReceived = received;
+            isResumable = segmented;
+        }
+
+        @Override
+        public void onData(int length) {
+            httpClientListener.onData(httpClient, null, 0, length);
+        }
+
+        // the md5 check and the rename out of the threads of the http client
+
+        @Override
+        public void onComplete() {
+            segmented = null;
+            HTTP_THREAD_POOL.execute(new Runnable() {
+                @Override
+                public void run() {
+                    httpClientListener.onComplete(httpClient);
+                }
+            });
+        }
+
+        @Override
+        public void onError(final Throwable e) {
+            segmented = null;
+            HTTP_THREAD_POOL.execute(new Runnable() {
+                @Override
+                public void run() {
+                    httpClientListener.onError(httpClient, e);
+                }
+            });
+        }
+    }
+
     private final class HttpDownloadListenerImpl implements HttpClientListener {
         private final HttpDownload dl;
 
@@ -19,7 +19,6 @@
 package com.frostwire.gui.library;
 
 import com.frostwire.alexandria.Playlist;
-import com.frostwire.gui.bittorrent.TorrentUtil;
 import com.frostwire.gui.theme.SkinMenuItem;
 import com.frostwire.gui.theme.SkinPopupMenu;
 import com.frostwire.logging.Logger;
@@ -35,7 +34,6 @@ import com.limegroup.gnutella.gui.tables.TableSettings;
 import com.limegroup.gnutella.gui.util.BackgroundExecutorService;
 import com.limegroup.gnutella.settings.LibrarySettings;
 import com.limegroup.gnutella.settings.SharingSettings;
-import org.limewire.util.FileUtils;
 
 import javax.swing.*;
 import javax.swing.event.TreeSelectionEvent;
@@ -114,6 +112,8 @@ public class LibraryExplorer extends AbstractLibraryListPanel {
             MediaTypeSavedFilesDirectoryHolder mtsfdh = (MediaTypeSavedFilesDirectoryHolder) directoryHolder;
             if (clearCache) {
                 mtsfdh.clearCache();
+                // walk the library folders again
+                LibraryMediaIndex.instance().invalidate();
             }
 
             LibraryMediator.instance().updateTableFiles(directoryHolder);
@@ -248,6 +248,8 @@ public class LibraryExplorer extends AbstractLibraryListPanel {
 
     private final class SearchByMediaTypeRunnable implements Runnable {
 
+        private static final int RESULTS_BATCH_SIZE = 500;
+
         private final MediaTypeSavedFilesDirectoryHolder _mtsfdh;
 
         public SearchByMediaTypeRunnable(MediaTypeSavedFilesDirectoryHolder mtsfdh) {
@@ -262,34 +264,26 @@ public class LibraryExplorer extends AbstractLibraryListPanel {
                     }
                 });
 
-                final List<File> cache = new ArrayList<File>(_mtsfdh.getCache());
+                List<File> cache = new ArrayList<File>(_mtsfdh.getCache());
                 if (cache.size() == 0) {
+                    //avoids npe if for some reason the directory holder is not selected.
+                    if (getSelectedDirectoryHolder() == null) {
+                        selectMediaTypeSavedFilesDirectoryHolderbyType(_mtsfdh.getMediaType());
+                    }
 
-                    File torrentDataDirFile = SharingSettings.TORRENT_DATA_DIR_SETTING.getValue();
-
-                    Set<File> ignore = TorrentUtil.getIgnorableFiles();
-
-                    Set<File> directories = new HashSet<File>(LibrarySettings.DIRECTORIES_TO_INCLUDE.getValue());
-                    directories.removeAll(LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
+                    cache = LibraryMediaIndex.instance().getFiles(_mtsfdh.getMediaType());
+                    _mtsfdh.addToCache(cache);
+                }
 
-                    for (File dir : directories) {
-                        if (dir == null) {
-                            continue;
-                        }
-                        if (dir.equals(torrentDataDirFile)) {
-                            search(dir, ignore, LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
-                        } else if (dir.equals(LibrarySettings.USER_MUSIC_FOLDER.getValue()) && !_mtsfdh.getMediaType().equals(MediaType.getAudioMediaType())) {
-                            continue;
-                        } else {
-                            search(dir, new HashSet<File>(), LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
-                        }
+                if (_mtsfdh.equals(getSelectedDirectoryHolder())) {
+                    for (int i = 0; i < cache.size(); i += RESULTS_BATCH_SIZE) {
+                        final List<File> files = cache.subList(i, Math.min(i + RESULTS_BATCH_SIZE, cache.size()));
+                        GUIMediator.safeInvokeLater(new Runnable() {
+                            public void run() {
+                                LibraryMediator.instance().addFilesToLibraryTable(files);
+                            }
+                        });
                     }
-                } else {
-                    GUIMediator.safeInvokeLater(new Runnable() {
-                        public void run() {
-                            LibraryMediator.instance().addFilesToLibraryTable(cache);
-                        }
-                    });
                 }
 
                 LibraryExplorer.this.executePendingRunnables();
@@ -298,55 +292,6 @@ public class LibraryExplorer extends AbstractLibraryListPanel {
                 e.printStackTrace();
             }
         }
-
-        private void search(File file, Set<File> ignore, Set<File> exludedSubFolders) {
-
-            if (file == null || !file.isDirectory() || !file.exists()) {
-                return;
-            }
-
-            //avoids npe if for some reason the directory holder is not selected.
-            if (getSelectedDirectoryHolder() == null) {
-                selectMediaTypeSavedFilesDirectoryHolderbyType(_mtsfdh.getMediaType());
-            }
-
-            List<File> directories = new ArrayList<File>();
-            final List<File> files = new ArrayList<File>();
-
-            for (File child : FileUtils.listFiles(file)) {// file.listFiles()) {
-
-                DirectoryHolder directoryHolder = getSelectedDirectoryHolder();
-                if (!_mtsfdh.equals(directoryHolder)) {
-                    return;
-                }
-
-                if (ignore.contains(child)) {
-                    continue;
-                }
-
-                if (child.isHidden()) {
-                    continue;
-                }
-
-                if (child.isDirectory() && !exludedSubFolders.contains(child)) {
-                    directories.add(child);
-                } else if (_mtsfdh.accept(child)) {
-                    files.add(child);
-                }
-            }
-            _mtsfdh.addToCache(files);
-            Runnable r = new Runnable() {
-                public void run() {
-                    LibraryMediator.instance().addFilesToLibraryTable(files);
-                }
-            };
-
-            GUIMediator.safeInvokeLater(r);
-
-            for (File directory : directories) {
-                search(directory, ignore, exludedSubFolders);
-            }
-        }
     }
 
     public void selectMediaTypeSavedFilesDirectoryHolderbyType(MediaType mediaType) {
@@ -489,6 +434,53 @@ public class LibraryExplorer extends AbstractLibraryListPanel {
         return holders;
     }
 
+    /**
+     * Adds the file (or folder) of a completed download to the library index
+     * and refreshes the caches.
+     */
+    public void addToLibraryIndex(final File file) {
+        BackgroundExecutorService.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    LibraryMediaIndex.instance().add(file);
+                } catch (Throwable e) {
+                    LOG.error("Error adding to the library index: " + file, e);
+                }
+                GUIMediator.safeInvokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        clearDirectoryHolderCaches();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Removes the deleted files from the library index and refreshes the caches.
+     */
+    public void removeFromLibraryIndex(final List<File> files) {
+        BackgroundExecutorService.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (File file : files) {
+                        LibraryMediaIndex.instance().remove(file);
+                    }
+                } catch (Throwable e) {
+                    LOG.error("Error removing files from the library index", e);
+                }
+                GUIMediator.safeInvokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        clearDirectoryHolderCaches();
+                    }
+                });
+            }
+        });
+    }
+
     /**
      * Cleans the caches of all directory holders and refreshes the current selection.
      */
@@ -0,0 +1,413 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.library;
+
+import com.frostwire.logging.Logger;
+import org.limewire.util.OSUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Pattern;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+
+/**
+ * An in memory index of the file names under a library directory, used by
+ * the library search.
+ * <p>
+ * The directories are walked in parallel, reading the attributes once per
+ * entry, and the index of a directory is kept until the watch service
+ * reports a file created or deleted under it.
+ * <p>
+ * When a directory can't be watched, usually the limit of watches of the
+ * OS, the index is kept and checked on each use against the modification
+ * times of its directories, one stat per directory instead of a walk. The
+ * same is done on macOS, where the watch service of the JDK polls every
+ * watched directory each 10 seconds, listing it whether used or not.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+final class LibraryFileIndex {
+
+    private static final Logger LOG = Logger.getLogger(LibraryFileIndex.class);
+
+    private static final Pattern DIACRITICAL_MARKS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+
+    private static final LibraryFileIndex INSTANCE = new LibraryFileIndex();
+
+    private static final boolean WATCH = !OSUtils.isMacOSX();
+
+    private final ForkJoinPool pool;
+    private final Map<File, Snapshot> snapshots;
+    // the same key is returned for a directory registered again, shared by
+    // the snapshots of nested roots, guarded by itself
+    private final Map<WatchKey, Set<Snapshot>> keys;
+
+    private WatchService watcher;
+
+    private LibraryFileIndex() {
+        this.pool = new ForkJoinPool();
+        this.snapshots = new ConcurrentHashMap<>();
+        this.keys = new HashMap<>();
+    }
+
+    public static LibraryFileIndex instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the index of the visible files under the directory, walking
+     * it if there is no valid index for the same excluded sub folders.
+     */
+    public Snapshot get(File root, Set<File> excludedSubFolders) {
+        Snapshot s = snapshots.get(root);
+        if (s != null) {
+            if (s.isValid() && s.excluded.equals(excludedSubFolders)) {
+                return s;
+            }
+            invalidate(s);
+        }
+
+        s = new Snapshot(root, new HashSet<>(excludedSubFolders), WATCH);
+        pool.invoke(new WalkTask(s, root.toPath()));
+
+        if (!s.watched) {
+            // the keys of a partial registration are of no use
+            release(s);
+        }
+
+        if (s.valid) {
+            snapshots.put(root, s);
+        } else {
+            invalidate(s);
+        }
+
+        return s;
+    }
+
+    /**
+     * Drops all the indexes.
+     */
+    public void clear() {
+        for (Snapshot s : snapshots.values()) {
+            invalidate(s);
+        }
+    }
+
+    static String normalize(String s) {
+        String norm = Normalizer.normalize(s, Normalizer.Form.NFKD);
+        norm = DIACRITICAL_MARKS.matcher(norm).replaceAll("");
+        return norm.toLowerCase(Locale.US);
+    }
+
+    private void invalidate(Snapshot s) {
+        s.valid = false;
+        snapshots.remove(s.root);
+        release(s);
+    }
+
+    private void release(Snapshot s) {
+        synchronized (keys) {
+            for (WatchKey key : s.watchKeys) {
+                Set<Snapshot> set = keys.get(key);
+                if (set != null) {
+                    set.remove(s);
+                }
+                // only when no other snapshot uses it
+                if (set == null || set.isEmpty()) {
+                    keys.remove(key);
+                    key.cancel();
+                }
+            }
+            s.watchKeys.clear();
+        }
+    }
+
+    private void watch(Snapshot s, Path dir) {
+        if (!s.watched) {
+            return;
+        }
+
+        try {
+            WatchKey key = dir.register(watcher(), ENTRY_CREATE, ENTRY_DELETE);
+            synchronized (keys) {
+                Set<Snapshot> set = keys.get(key);
+                if (set == null) {
+                    set = new HashSet<>();
+                    keys.put(key, set);
+                }
+                set.add(s);
+                s.watchKeys.add(key);
+            }
+        } catch (Throwable e) {
+            // usually the limit of watches of the OS
+            LOG.warn("Unable to watch " + dir + ", library index checked by modification times: " + e.getMessage());
+            s.watched = false;
+        }
+    }
+
+    private synchronized WatchService watcher() throws IOException {
+        if (watcher == null) {
+            watcher = FileSystems.getDefault().newWatchService();
+
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    watchLoop();
+                }
+            }, "LibraryFileIndex-watcher");
+            t.setDaemon(true);
+            t.start();
+        }
+        return watcher;
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                key.pollEvents();
+
+                List<Snapshot> list;
+                synchronized (keys) {
+                    Set<Snapshot> set = keys.get(key);
+                    list = set != null ? new ArrayList<>(set) : Collections.<Snapshot>emptyList();
+                }
+
+                for (Snapshot s : list) {
+                    invalidate(s);
+                }
+
+                synchronized (keys) {
+                    // registered again by a new snapshot in the meantime
+                    if (keys.containsKey(key)) {
+                        key.reset();
+                    } else {
+                        key.cancel();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // exit
+        } catch (ClosedWatchServiceException e) {
+            // exit
+        }
+    }
+
+    private static boolean isHidden(Path path, BasicFileAttributes attrs) {
+        if (attrs instanceof DosFileAttributes) {
+            return ((DosFileAttributes) attrs).isHidden();
+        }
+        Path name = path.getFileName();
+        return name != null && name.toString().startsWith(".");
+    }
+
+    /**
+     * The visible files of a walked directory.
+     */
+    static final class Snapshot {
+
+        private final File root;
+        private final Set<File> excluded;
+        private final Queue<Dir> dirs;
+        private final Set<Object> visited;
+        private final Map<File, Long> modified;
+        private final List<WatchKey> watchKeys;
+
+        private volatile boolean valid;
+        private volatile boolean watched;
+
+        Snapshot(File root, Set<File> excluded, boolean watched) {
+            this.root = root;
+            this.excluded = excluded;
+            this.dirs = new ConcurrentLinkedQueue<>();
+            this.visited = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+            this.modified = new ConcurrentHashMap<>();
+            this.watchKeys = new LinkedList<>();
+
+            this.valid = true;
+            this.watched = watched;
+        }
+
+        public Collection<Dir> dirs() {
+            return dirs;
+        }
+
+        /**
+         * False once a change is detected, by the watch service or by the
+         * modification times of the directories if not watched.
+         */
+        public boolean isValid() {
+            if (valid && !watched && modified()) {
+                valid = false;
+            }
+            return valid;
+        }
+
+        private boolean modified() {
+            for (Map.Entry<File, Long> e : modified.entrySet()) {
+                // a created or deleted entry changes the time of its directory
+                if (e.getKey().lastModified() != e.getValue()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A directory with the names, sizes and modification times of its
+     * files, the path and names are also kept normalized for the search.
+     */
+    static final class Dir {
+
+        private final File dir;
+        private final String path;
+        private final String[] names;
+        private final String[] normNames;
+        private final long[] sizes;
+        private final long[] lastModified;
+
+        Dir(File dir, List<String> names, List<BasicFileAttributes> attrs) {
+            this.dir = dir;
+
+            String p = normalize(dir.getAbsolutePath());
+            this.path = p.endsWith(File.separator) ? p : p + File.separator;
+
+            this.names = names.toArray(new String[names.size()]);
+            this.normNames = new String[this.names.length];
+            this.sizes = new long[this.names.length];
+            this.lastModified = new long[this.names.length];
+            for (int i = 0; i < this.names.length; i++) {
+                normNames[i] = normalize(this.names[i]);
+                sizes[i] = attrs.get(i).size();
+                lastModified[i] = attrs.get(i).lastModifiedTime().toMillis();
+            }
+        }
+
+        public int size() {
+            return names.length;
+        }
+
+        public File file(int index) {
+            return new File(dir, names[index]);
+        }
+
+        public String name(int index) {
+            return names[index];
+        }
+
+        public long size(int index) {
+            return sizes[index];
+        }
+
+        public long lastModified(int index) {
+            return lastModified[index];
+        }
+
+        /**
+         * If the normalized absolute path of the file contains the
+         * normalized token.
+         */
+        public boolean contains(int index, String token) {
+            if (path.contains(token) || normNames[index].contains(token)) {
+                return true;
+            }
+            // only a token with a separator can span both
+            return token.contains(File.separator) && (path + normNames[index]).contains(token);
+        }
+    }
+
+    private final class WalkTask extends RecursiveAction {
+
+        private final Snapshot snapshot;
+        private final Path dir;
+
+        WalkTask(Snapshot snapshot, Path dir) {
+            this.snapshot = snapshot;
+            this.dir = dir;
+        }
+
+        @Override
+        protected void compute() {
+            // before the listing, to not miss a change
+            watch(snapshot, dir);
+            File f = dir.toFile();
+            snapshot.modified.put(f, f.lastModified());
+
+            final List<String> names = new ArrayList<>();
+            final List<BasicFileAttributes> attrsList = new ArrayList<>();
+            final List<WalkTask> tasks = new ArrayList<>();
+
+            try {
+                Files.walkFileTree(dir, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (isHidden(file, attrs)) {
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        if (attrs.isDirectory()) {
+                            if (!snapshot.excluded.contains(file.toFile()) && visit(attrs)) {
+                                tasks.add(new WalkTask(snapshot, file));
+                            }
+                        } else if (attrs.isRegularFile()) {
+                            names.add(file.getFileName().toString());
+                            attrsList.add(attrs);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                LOG.warn("Error walking " + dir + ": " + e.getMessage());
+            }
+
+            if (names.size() > 0) {
+                snapshot.dirs.add(new Dir(f, names, attrsList));
+            }
+
+            invokeAll(tasks);
+        }
+
+        /**
+         * Guards against the cycles of the links, when the file system
+         * has a file key.
+         */
+        private boolean visit(BasicFileAttributes attrs) {
+            Object key = attrs.fileKey();
+            return key == null || snapshot.visited.add(key);
+        }
+    }
+}
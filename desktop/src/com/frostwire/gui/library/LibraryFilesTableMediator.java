@@ -483,7 +483,7 @@ final class LibraryFilesTableMediator extends AbstractLibraryTableMediator<Libra
         List<File> selected = listPanel.getSelectedElements();
         List<String> undeletedFileNames = new ArrayList<String>();
 
-        boolean somethingWasRemoved = false;
+        List<File> removedFiles = new ArrayList<File>();
 
         for (File file : selected) {
             // stop seeding if seeding
@@ -503,7 +503,7 @@ final class LibraryFilesTableMediator extends AbstractLibraryTableMediator<Libra
             // removeOptions > 2 => OS offers trash options
             boolean removed = FileUtils.delete(file, removeOptions.length > 2 && option == 0 /* "move to trash" option index */);
             if (removed) {
-                somethingWasRemoved = true;
+                removedFiles.add(file);
                 DATA_MODEL.remove(DATA_MODEL.getRow(file));
             } else {
                 undeletedFileNames.add(getCompleteFileName(file));
@@ -512,8 +512,8 @@ final class LibraryFilesTableMediator extends AbstractLibraryTableMediator<Libra
 
         clearSelection();
 
-        if (somethingWasRemoved) {
-            LibraryMediator.instance().getLibraryExplorer().refreshSelection(true);
+        if (!removedFiles.isEmpty()) {
+            LibraryMediator.instance().getLibraryExplorer().removeFromLibraryIndex(removedFiles);
         }
 
         if (undeletedFileNames.isEmpty()) {
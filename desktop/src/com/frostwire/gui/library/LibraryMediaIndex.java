@@ -0,0 +1,401 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.library;
+
+import com.frostwire.alexandria.db.LibraryDatabase;
+import com.frostwire.alexandria.db.LibraryFileDB;
+import com.frostwire.gui.bittorrent.TorrentUtil;
+import com.frostwire.gui.library.tags.TagsData;
+import com.frostwire.gui.library.tags.TagsReader;
+import com.frostwire.logging.Logger;
+import com.limegroup.gnutella.MediaType;
+import com.limegroup.gnutella.settings.LibrarySettings;
+import org.apache.commons.io.FilenameUtils;
+import org.limewire.concurrent.ExecutorsHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The files of the library folders persisted in the library database, so
+ * browsing by media type is a query instead of a walk of the folders.
+ * <p>
+ * The folders are walked again only when the configuration of the library
+ * folders changes or the user refreshes, the completed downloads are added
+ * (with the tags of the audio files) and the deleted files removed as they
+ * happen. The changes made outside are reconciled once per run, and again
+ * when the {@link LibraryFileIndex} detects one. The tags of the audio
+ * files walked are parsed in the background. The methods access the
+ * database, call them from the background executor.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+final class LibraryMediaIndex {
+
+    private static final Logger LOG = Logger.getLogger(LibraryMediaIndex.class);
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final LibraryMediaIndex INSTANCE = new LibraryMediaIndex();
+
+    private final ExecutorService tagger;
+    // the snapshots the roots were reconciled with in this run
+    private final Map<File, LibraryFileIndex.Snapshot> reconciled;
+
+    private boolean stale;
+    private boolean tagging;
+
+    private LibraryMediaIndex() {
+        this.tagger = ExecutorsHelper.newProcessingQueue("LibraryMediaIndex-Tagger");
+        this.reconciled = new HashMap<>();
+    }
+
+    public static LibraryMediaIndex instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the files of the library with the media type.
+     */
+    public synchronized List<File> getFiles(MediaType type) {
+        sync();
+
+        Set<String> extensions = new HashSet<>();
+        for (String ext : type.getExtensions()) {
+            extensions.add(ext.toLowerCase(Locale.US));
+        }
+
+        // the user music folder is only browsed for audio
+        String musicFolder = null;
+        File userMusicFolder = LibrarySettings.USER_MUSIC_FOLDER.getValue();
+        if (userMusicFolder != null && !type.equals(MediaType.getAudioMediaType()) && roots().contains(userMusicFolder)) {
+            musicFolder = prefix(userMusicFolder);
+        }
+
+        Set<File> ignore = TorrentUtil.getIgnorableFiles();
+
+        List<String> paths = LibraryFileDB.getFilePaths(db(), extensions);
+        List<File> files = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            if (musicFolder != null && path.startsWith(musicFolder)) {
+                continue;
+            }
+            File f = new File(path);
+            if (!ignore.contains(f)) {
+                files.add(f);
+            }
+        }
+
+        return files;
+    }
+
+    /**
+     * Adds the file, or the files under it, if it's in a library folder.
+     */
+    public synchronized void add(File file) {
+        sync();
+
+        String path = file.getAbsolutePath();
+        if (!isIncluded(path)) {
+            return;
+        }
+
+        final List<File> files = new ArrayList<>();
+        final List<BasicFileAttributes> attrsList = new ArrayList<>();
+
+        try {
+            Files.walkFileTree(file.toPath(), EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    return isExcluded(dir.toFile()) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && !file.getFileName().toString().startsWith(".")) {
+                        files.add(file.toFile());
+                        attrsList.add(attrs);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LOG.warn("Error adding " + file + " to the library index: " + e.getMessage());
+        }
+
+        List<File> audioFiles = new ArrayList<>();
+        for (File f : files) {
+            if (MediaType.getAudioMediaType().matches(f.getName())) {
+                audioFiles.add(f);
+            }
+        }
+        Map<File, TagsData> tags = TagsReader.parseAll(audioFiles);
+
+        List<Object[]> rows = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            BasicFileAttributes attrs = attrsList.get(i);
+            rows.add(row(files.get(i), attrs.size(), attrs.lastModifiedTime().toMillis(), tags.get(files.get(i))));
+        }
+
+        save(rows);
+    }
+
+    /**
+     * Removes the file, or the files under it.
+     */
+    public synchronized void remove(File file) {
+        LibraryFileDB.delete(db(), file.getAbsolutePath());
+    }
+
+    /**
+     * The folders are walked again on the next access.
+     */
+    public synchronized void invalidate() {
+        stale = true;
+    }
+
+    /**
+     * Walks the library folders again if the configuration changed,
+     * otherwise reconciles the folders not reconciled yet or changed.
+     */
+    private void sync() {
+        Set<File> roots = roots();
+        Set<File> excluded = LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue();
+
+        Map<String, Boolean> folders = new HashMap<>();
+        for (File f : roots) {
+            folders.put(f.getAbsolutePath(), false);
+        }
+        for (File f : excluded) {
+            folders.put(f.getAbsolutePath(), true);
+        }
+
+        LibraryDatabase db = db();
+        if (!stale && folders.equals(LibraryFileDB.getFolders(db))) {
+            for (File root : roots) {
+                // null if the root is not a directory, reconciled only once
+                LibraryFileIndex.Snapshot s = reconciled.get(root);
+                if (!reconciled.containsKey(root) || (s != null && !s.isValid())) {
+                    reconcile(root, excluded);
+                }
+            }
+            tag();
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+
+        LibraryFileDB.clear(db);
+        reconciled.clear();
+
+        int n = 0;
+        List<Object[]> rows = new ArrayList<>();
+        for (File root : roots) {
+            if (!root.isDirectory()) {
+                continue;
+            }
+            LibraryFileIndex.Snapshot s = LibraryFileIndex.instance().get(root, excluded);
+            reconciled.put(root, s);
+            for (LibraryFileIndex.Dir dir : s.dirs()) {
+                for (int i = 0; i < dir.size(); i++) {
+                    rows.add(row(dir.file(i), dir.size(i), dir.lastModified(i), null));
+                    if (rows.size() >= BATCH_SIZE) {
+                        n += save(rows);
+                        rows = new ArrayList<>();
+                    }
+                }
+            }
+        }
+        n += save(rows);
+
+        LibraryFileDB.setFolders(db, folders);
+        stale = false;
+
+        LOG.info("Library index rebuilt with " + n + " files in " + (System.currentTimeMillis() - start) + "ms");
+
+        tag();
+    }
+
+    /**
+     * Adds the files of the root that are new or modified, and removes
+     * the ones no longer there. A root not accessible is left as is.
+     */
+    private void reconcile(File root, Set<File> excluded) {
+        if (!root.isDirectory()) {
+            reconciled.put(root, null);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+
+        LibraryFileIndex.Snapshot s = LibraryFileIndex.instance().get(root, excluded);
+        reconciled.put(root, s);
+
+        Map<String, Long> indexed = LibraryFileDB.getLastModified(db(), root.getAbsolutePath());
+
+        int added = 0;
+        List<Object[]> rows = new ArrayList<>();
+        for (LibraryFileIndex.Dir dir : s.dirs()) {
+            for (int i = 0; i < dir.size(); i++) {
+                File f = dir.file(i);
+                Long lastModified = indexed.remove(f.getAbsolutePath());
+                if (lastModified == null || lastModified != dir.lastModified(i)) {
+                    rows.add(row(f, dir.size(i), dir.lastModified(i), null));
+                    if (rows.size() >= BATCH_SIZE) {
+                        added += save(rows);
+                        rows = new ArrayList<>();
+                    }
+                }
+            }
+        }
+        added += save(rows);
+
+        // the ones left are gone, or now under an excluded folder
+        LibraryFileDB.deleteFiles(db(), indexed.keySet());
+
+        if (added > 0 || indexed.size() > 0) {
+            LOG.info("Library index of " + root + " reconciled, " + added + " added, " + indexed.size() + " removed in " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    /**
+     * Parses in the background the tags of the audio files walked.
+     */
+    private void tag() {
+        if (tagging) {
+            return;
+        }
+        tagging = true;
+
+        tagger.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tagAll();
+                } catch (Throwable e) {
+                    LOG.warn("Error parsing the tags of the library index: " + e.getMessage());
+                } finally {
+                    synchronized (LibraryMediaIndex.this) {
+                        tagging = false;
+                    }
+                }
+            }
+        });
+    }
+
+    // not holding the lock, the files removed meanwhile are not updated
+    private void tagAll() {
+        Set<String> extensions = new HashSet<>();
+        for (String ext : MediaType.getAudioMediaType().getExtensions()) {
+            extensions.add(ext.toLowerCase(Locale.US));
+        }
+
+        List<String> last = null;
+        List<String> paths;
+        while (!(paths = LibraryFileDB.getUntaggedFilePaths(db(), extensions, BATCH_SIZE)).isEmpty()) {
+            if (paths.equals(last)) {
+                // the paths not matching the rows, don't loop forever
+                break;
+            }
+            last = paths;
+
+            List<File> files = new ArrayList<>(paths.size());
+            for (String path : paths) {
+                files.add(new File(path));
+            }
+            Map<File, TagsData> tags = TagsReader.parseAll(files);
+
+            List<Object[]> rows = new ArrayList<>(files.size());
+            for (File f : files) {
+                TagsData t = tags.get(f);
+                if (t != null) {
+                    rows.add(LibraryFileDB.tagsRow(f.getAbsolutePath(), t.getTitle(), (float) t.getDuration(), t.getArtist(), t.getAlbum(), t.getGenre(), t.getYear()));
+                } else {
+                    // not tried again
+                    rows.add(LibraryFileDB.tagsRow(f.getAbsolutePath(), null, -1f, null, null, null, null));
+                }
+            }
+            LibraryFileDB.updateTags(db(), rows);
+        }
+    }
+
+    private Set<File> roots() {
+        Set<File> roots = new HashSet<>(LibrarySettings.DIRECTORIES_TO_INCLUDE.getValue());
+        roots.removeAll(LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
+        roots.remove(null);
+        return roots;
+    }
+
+    private boolean isIncluded(String path) {
+        boolean included = false;
+        for (File root : roots()) {
+            String prefix = prefix(root);
+            if (path.startsWith(prefix) || path.equals(root.getAbsolutePath())) {
+                included = true;
+                break;
+            }
+        }
+        return included && !isExcluded(new File(path));
+    }
+
+    private boolean isExcluded(File file) {
+        String path = file.getAbsolutePath();
+        for (File f : LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue()) {
+            if (path.equals(f.getAbsolutePath()) || path.startsWith(prefix(f))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Object[] row(File file, long size, long lastModified, TagsData tags) {
+        String name = file.getName();
+        String ext = FilenameUtils.getExtension(name).toLowerCase(Locale.US);
+
+        if (tags != null) {
+            return LibraryFileDB.row(file.getAbsolutePath(), ext, size, lastModified, tags.getTitle(), (float) tags.getDuration(), tags.getArtist(), tags.getAlbum(), tags.getGenre(), tags.getYear());
+        } else {
+            return LibraryFileDB.row(file.getAbsolutePath(), ext, size, lastModified, null, null, null, null, null, null);
+        }
+    }
+
+    private int save(List<Object[]> rows) {
+        LibraryFileDB.save(db(), rows);
+        return rows.size();
+    }
+
+    private static String prefix(File dir) {
+        String path = dir.getAbsolutePath();
+        return path.endsWith(File.separator) ? path : path + File.separator;
+    }
+
+    private static LibraryDatabase db() {
+        return LibraryMediator.getLibrary().getLibraryDatabase();
+    }
+}
@@ -20,7 +20,9 @@ package com.frostwire.gui.library;
 
 import com.frostwire.alexandria.Playlist;
 import com.frostwire.alexandria.PlaylistItem;
+import com.frostwire.alexandria.db.LibraryDatabase;
 import com.frostwire.alexandria.db.PlaylistItemDB;
+import com.frostwire.alexandria.db.PlaylistItemIndex;
 import com.frostwire.gui.bittorrent.TorrentUtil;
 import com.frostwire.gui.searchfield.JXSearchField.SearchMode;
 import com.frostwire.gui.searchfield.SearchField;
@@ -31,7 +33,6 @@ import com.limegroup.gnutella.gui.search.SearchInformation;
 import com.limegroup.gnutella.gui.search.SearchMediator;
 import com.limegroup.gnutella.gui.util.BackgroundExecutorService;
 import com.limegroup.gnutella.settings.LibrarySettings;
-import org.limewire.util.FileUtils;
 import org.limewire.util.StringUtils;
 
 import javax.swing.*;
@@ -42,7 +43,6 @@ import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.io.File;
 import java.io.FileFilter;
-import java.text.Normalizer;
 import java.util.*;
 import java.util.List;
 
@@ -245,7 +245,7 @@ public class LibrarySearch extends JPanel {
     }
 
     private abstract class SearchRunnable implements Runnable {
-        protected boolean canceled;
+        protected volatile boolean canceled;
 
         public void cancel() {
             canceled = true;
@@ -254,6 +254,9 @@ public class LibrarySearch extends JPanel {
 
     private final class SearchFilesRunnable extends SearchRunnable {
 
+        private static final int RESULTS_BATCH_SIZE = 500;
+        private static final int SELECTION_CHECK_INTERVAL = 256;
+
         private final String _query;
         private final DirectoryHolder directoryHolder;
 
@@ -339,7 +342,8 @@ public class LibrarySearch extends JPanel {
         }
 
         /**
-         * It searches _query in haystackDir.
+         * It searches _query in haystackDir, using the in memory index of
+         * the directory and posting the results in batches.
          * 
          * @param haystackDir
          * @param excludeFiles - Usually a list of incomplete files.
@@ -353,44 +357,58 @@ public class LibrarySearch extends JPanel {
                 return;
             }
 
-            final List<File> directories = new ArrayList<File>();
-            final List<File> results = new ArrayList<File>();
+            LibraryFileIndex.Snapshot snapshot = LibraryFileIndex.instance().get(haystackDir, exludedSubFolders);
+
+            List<File> results = new ArrayList<File>();
             SearchFileFilter searchFilter = new SearchFileFilter(_query);
+            int n = 0;
 
-            for (File child : FileUtils.listFiles(haystackDir)) { //haystackDir.listFiles(searchFilter)) {
+            for (LibraryFileIndex.Dir dir : snapshot.dirs()) {
                 if (canceled) {
                     return;
                 }
 
-                /////
                 //Stop search if the user selected another item in the library tree
-                DirectoryHolder currentDirectoryHolder = LibraryMediator.instance().getLibraryExplorer().getSelectedDirectoryHolder();
-                if (!directoryHolder.equals(currentDirectoryHolder)) {
+                if (++n % SELECTION_CHECK_INTERVAL == 0 && !isSelected()) {
                     return;
                 }
-                /////
-
-                if (excludeFiles.contains(child)) {
-                    continue;
-                }
 
-                if (child.isHidden()) {
-                    continue;
-                }
-
-                if (child.isDirectory() && !exludedSubFolders.contains(child)) {
-                    directories.add(child);
-                } else if (child.isFile()) {
+                for (int i = 0; i < dir.size(); i++) {
                     if (directoryHolder instanceof SavedFilesDirectoryHolder) {
-                        if (searchFilter.accept(child, false)) {
-                            results.add(child);
+                        if (!searchFilter.accept(dir, i)) {
+                            continue;
+                        }
+                        File file = dir.file(i);
+                        if (!excludeFiles.contains(file)) {
+                            results.add(file);
+                        }
+                    } else {
+                        File file = dir.file(i);
+                        if (!excludeFiles.contains(file) && directoryHolder.accept(file)) {
+                            results.add(file);
                         }
-                    } else if (directoryHolder.accept(child)) {
-                        results.add(child);
                     }
                 }
+
+                if (results.size() >= RESULTS_BATCH_SIZE) {
+                    if (!isSelected()) {
+                        return;
+                    }
+                    post(results);
+                    results = new ArrayList<File>();
+                }
             }
 
+            if (results.size() > 0 && isSelected()) {
+                post(results);
+            }
+        }
+
+        private boolean isSelected() {
+            return directoryHolder.equals(LibraryMediator.instance().getLibraryExplorer().getSelectedDirectoryHolder());
+        }
+
+        private void post(final List<File> results) {
             Runnable r = new Runnable() {
                 public void run() {
                     LibraryMediator.instance().addFilesToLibraryTable(results);
@@ -401,10 +419,6 @@ public class LibrarySearch extends JPanel {
                 }
             };
             GUIMediator.safeInvokeLater(r);
-
-            for (File directory : directories) {
-                search(directory, excludeFiles, exludedSubFolders);
-            }
         }
 
         private void search(List<File> cache) {
@@ -451,7 +465,21 @@ public class LibrarySearch extends JPanel {
         private final String[] _tokens;
 
         public SearchFileFilter(String query) {
-            _tokens = StringUtils.removeDoubleSpaces(normalize(query)).split(" ");
+            _tokens = StringUtils.removeDoubleSpaces(LibraryFileIndex.normalize(query)).split(" ");
+        }
+
+        /**
+         * Matches the file of the index against the tokens, the file is
+         * known to exist.
+         */
+        public boolean accept(LibraryFileIndex.Dir dir, int index) {
+            for (String token : _tokens) {
+                if (!dir.contains(index, token)) {
+                    return false;
+                }
+            }
+
+            return true;
         }
 
         public boolean accept(File pathname) {
@@ -473,7 +501,7 @@ public class LibrarySearch extends JPanel {
                 return true;
             }
 
-            String name = normalize(pathname.getAbsolutePath());
+            String name = LibraryFileIndex.normalize(pathname.getAbsolutePath());
 
             for (String token : _tokens) {
                 if (!name.contains(token)) {
@@ -483,18 +511,12 @@ public class LibrarySearch extends JPanel {
 
             return true;
         }
-
-        private String normalize(String token) {
-            String norm = Normalizer.normalize(token, Normalizer.Form.NFKD);
-            norm = norm.replaceAll("\\p{InCombiningDiacriticalMarks}+", "");
-            norm = norm.toLowerCase(Locale.US);
-
-            return norm;
-        }
     }
 
     private final class SearchPlaylistItemsRunnable extends SearchRunnable {
 
+        private static final int RESULTS_PAGE_SIZE = 100;
+
         private final String query;
         private final Playlist playlist;
 
@@ -535,9 +557,6 @@ public class LibrarySearch extends JPanel {
                 return;
             }
 
-            String sql = null;
-            List<List<Object>> rows = null;
-
             //Show everything
             if (StringUtils.isNullOrEmpty(query, true) || query.equals(".")) {
                 if (playlist.isStarred()) {
@@ -546,57 +565,40 @@ public class LibrarySearch extends JPanel {
                     LibraryMediator.instance().getLibraryPlaylists().selectPlaylist(playlist);
                 }
                 return;
-            } else {
-                String luceneQuery = com.frostwire.alexandria.LibraryUtils.wildcardLuceneQuery(query);
-                //Full text search
-                if (!playlist.isStarred()) {
-                    sql = "SELECT T.playlistItemId, T.filePath, T.fileName, T.fileSize, T.fileExtension, T.trackTitle, T.trackDurationInSecs, T.trackArtist, T.trackAlbum, T.coverArtPath, T.trackBitrate, T.trackComment, T.trackGenre, T.trackNumber, T.trackYear, T.starred, T.sortIndex FROM FTL_SEARCH_DATA(?, 0, 0) FT, PLAYLISTITEMS T WHERE FT.TABLE='PLAYLISTITEMS' AND T.playlistItemId = FT.KEYS[0] AND T.playlistId = ?";
-                    rows = LibraryMediator.getLibrary().getLibraryDatabase().query(sql, luceneQuery, playlist.getId());
-                }
-                //Starred playlist search
-                else {
-                    sql = "SELECT T.playlistItemId, T.filePath, T.fileName, T.fileSize, T.fileExtension, T.trackTitle, T.trackDurationInSecs, T.trackArtist, T.trackAlbum, T.coverArtPath, T.trackBitrate, T.trackComment, T.trackGenre, T.trackNumber, T.trackYear, T.starred FROM FTL_SEARCH_DATA(?, 1000, 0) FT, PLAYLISTITEMS T WHERE FT.TABLE='PLAYLISTITEMS' AND T.playlistItemId = FT.KEYS[0] AND T.starred = TRUE";
-                    rows = LibraryMediator.getLibrary().getLibraryDatabase().query(sql, luceneQuery);
-                }
-
             }
 
-            final List<PlaylistItem> results = new ArrayList<PlaylistItem>();
+            //Full text search, or starred playlist search
+            int playlistId = playlist.isStarred() ? LibraryDatabase.STARRED_PLAYLIST_ID : playlist.getId();
+            PlaylistItemIndex.Results results = LibraryMediator.getLibrary().getLibraryDatabase().getPlaylistItemIndex().search(query, playlistId);
 
-            for (List<Object> row : rows) {
-                if (canceled) {
-                    return;
-                }
+            List<List<Object>> rows;
+            while (!(rows = results.next(RESULTS_PAGE_SIZE)).isEmpty()) {
+                final List<PlaylistItem> items = new ArrayList<>(rows.size());
 
-                /////
-                //Stop search if the user selected another item in the playlist list
-                Playlist currentPlaylist = LibraryMediator.instance().getLibraryPlaylists().getSelectedPlaylist();
-                if (!playlist.isStarred() && !playlist.equals(currentPlaylist)) {
-                    return;
-                }
-                /////
+                for (List<Object> row : rows) {
+                    if (canceled) {
+                        return;
+                    }
 
-                PlaylistItem item = new PlaylistItem(currentPlaylist);
-                PlaylistItemDB.fill(row, item);
-                results.add(item);
+                    /////
+                    //Stop search if the user selected another item in the playlist list
+                    Playlist currentPlaylist = LibraryMediator.instance().getLibraryPlaylists().getSelectedPlaylist();
+                    if (!playlist.isStarred() && !playlist.equals(currentPlaylist)) {
+                        return;
+                    }
+                    /////
 
-                if (results.size() > 100) {
-                    Runnable r = new Runnable() {
-                        public void run() {
-                            LibraryMediator.instance().addItemsToLibraryTable(results);
-                            results.clear();
-                        }
-                    };
-                    GUIMediator.safeInvokeLater(r);
+                    PlaylistItem item = new PlaylistItem(currentPlaylist);
+                    PlaylistItemDB.fill(row, item);
+                    items.add(item);
                 }
-            }
 
-            Runnable r = new Runnable() {
-                public void run() {
-                    LibraryMediator.instance().addItemsToLibraryTable(results);
-                }
-            };
-            GUIMediator.safeInvokeLater(r);
+                GUIMediator.safeInvokeLater(new Runnable() {
+                    public void run() {
+                        LibraryMediator.instance().addItemsToLibraryTable(items);
+                    }
+                });
+            }
         }
     }
 
@@ -43,6 +43,7 @@ import java.awt.event.KeyEvent;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
@@ -71,14 +72,19 @@ public class LibraryUtils {
         executor = ExecutorsHelper.newProcessingQueue("LibraryUtils-Executor");
     }
 
-    private static void addPlaylistItem(Playlist playlist, File file, boolean starred) {
-        addPlaylistItem(playlist, file, starred, -1);
+    private static void addPlaylistItem(Playlist playlist, File file, boolean starred, TagsData mt) {
+        addPlaylistItem(playlist, file, starred, -1, mt);
     }
 
-    private static void addPlaylistItem(Playlist playlist, File file, boolean starred, int index) {
+    /**
+     * The tags are parsed if null.
+     */
+    private static void addPlaylistItem(Playlist playlist, File file, boolean starred, int index, TagsData mt) {
         try {
             LibraryMediator.instance().getLibrarySearch().pushStatus(I18n.tr("Importing") + " " + file.getName());
-            TagsData mt = new TagsReader(file).parse();
+            if (mt == null) {
+                mt = new TagsReader(file).parse();
+            }
             PlaylistItem item = playlist.newItem(file.getAbsolutePath(), file.getName(), file.length(), FilenameUtils.getExtension(file.getName()), mt.getTitle(), mt.getDuration(), mt.getArtist(), mt.getAlbum(), "",// TODO: cover art path
                     mt.getBitrate(), mt.getComment(), mt.getGenre(), mt.getTrack(), mt.getYear(), starred);
 
@@ -465,10 +471,19 @@ public class LibraryUtils {
     }
 
     private static void addToPlaylist(Playlist playlist, List<? extends AbstractLibraryTableDataLine<?>> lines) {
+        List<File> files = new ArrayList<>(lines.size());
+        for (AbstractLibraryTableDataLine<?> line : lines) {
+            if (MediaPlayer.isPlayableFile(line.getFile())) {
+                files.add(line.getFile());
+            }
+        }
+        // parsed in parallel, added in order
+        Map<File, TagsData> tags = TagsReader.parseAll(files);
+
         for (int i = 0; i < lines.size() && !playlist.isDeleted(); i++) {
             AbstractLibraryTableDataLine<?> line = lines.get(i);
             if (MediaPlayer.isPlayableFile(line.getFile())) {
-                LibraryUtils.addPlaylistItem(playlist, line.getFile(), false);
+                LibraryUtils.addPlaylistItem(playlist, line.getFile(), false, tags.get(line.getFile()));
             }
         }
     }
@@ -478,10 +493,23 @@ public class LibraryUtils {
     }
 
     private static int addToPlaylist(Playlist playlist, File[] files, boolean starred, int index, Set<File> ignore) {
+        if (files == null) {
+            return 0;
+        }
+
+        List<File> playableFiles = new ArrayList<>();
+        for (File f : files) {
+            if (MediaPlayer.isPlayableFile(f) && !ignore.contains(f)) {
+                playableFiles.add(f);
+            }
+        }
+        // parsed in parallel, added in order
+        Map<File, TagsData> tags = TagsReader.parseAll(playableFiles);
+
         int count = 0;
         for (int i = 0; i < files.length && !playlist.isDeleted(); i++) {
             if (MediaPlayer.isPlayableFile(files[i]) && !ignore.contains(files[i])) {
-                LibraryUtils.addPlaylistItem(playlist, files[i], starred, index + count);
+                LibraryUtils.addPlaylistItem(playlist, files[i], starred, index + count, tags.get(files[i]));
                 count++;
             } else if (files[i].isDirectory()) {
                 count += addToPlaylist(playlist, files[i].listFiles(), starred, index + count, ignore);
@@ -608,9 +636,17 @@ public class LibraryUtils {
         HistoHashMap<String> albumNames = new HistoHashMap<>();
         HistoHashMap<String> genres = new HistoHashMap<>();
 
+        List<File> playableFiles = new ArrayList<>();
         for (File mf : mediaFiles) {
             if (MediaPlayer.isPlayableFile(mf)) {
-                TagsData mt = new TagsReader(mf).parse();
+                playableFiles.add(mf);
+            }
+        }
+
+        Map<File, TagsData> tags = TagsReader.parseAll(playableFiles);
+        for (File mf : playableFiles) {
+            TagsData mt = tags.get(mf);
+            if (mt != null) {
                 artistNames.update(mt.getArtist());
                 artistsAlbums.update(mt.getArtist() + " - " + mt.getAlbum());
                 albumNames.update(mt.getAlbum());
@@ -689,12 +725,21 @@ public class LibraryUtils {
     public static void refreshID3Tags(final Playlist playlist, final List<PlaylistItem> items) {
         executor.execute(new Runnable() {
             public void run() {
+                List<File> files = new ArrayList<>(items.size());
+                for (PlaylistItem item : items) {
+                    files.add(new File(item.getFilePath()));
+                }
+                Map<File, TagsData> tags = TagsReader.parseAll(files);
+
                 for (PlaylistItem item : items) {
                     try {
                         LibraryMediator.instance().getLibrarySearch().pushStatus(I18n.tr("Refreshing") + " " + item.getTrackAlbum() + " - " + item.getTrackTitle());
                         File file = new File(item.getFilePath());
-                        if (file.exists()) {
-                            TagsData mt = new TagsReader(file).parse();
+                        TagsData mt = tags.get(file);
+                        if (mt == null && file.exists()) {
+                            mt = new TagsReader(file).parse();
+                        }
+                        if (mt != null) {
                             LibraryMediator.getLibrary().updatePlaylistItemProperties(item.getFilePath(), mt.getTitle(), mt.getArtist(), mt.getAlbum(), mt.getComment(), mt.getGenre(), mt.getTrack(), mt.getYear());
                         }
                     } catch (Exception e) {
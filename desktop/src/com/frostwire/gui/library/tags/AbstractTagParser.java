@@ -43,6 +43,11 @@ abstract class AbstractTagParser implements TagsParser {
         this.file = file;
     }
 
+    @Override
+    public TagsResult parse(boolean artwork) {
+        return new TagsResult(parse(), artwork ? getArtwork() : null);
+    }
+
     protected TagsData sanitize(int duration, String bitrate, String title, String artist, String album, String comment, String genre, String track, String year) {
         if (title == null || title.length() == 0) {
             title = FilenameUtils.getBaseName(file.getAbsolutePath());
@@ -22,7 +22,6 @@ import java.io.File;
 import java.util.List;
 
 import org.jaudiotagger.audio.AudioFile;
-import org.jaudiotagger.audio.AudioFileIO;
 import org.jaudiotagger.audio.flac.FlacFileReader;
 import org.jaudiotagger.audio.flac.metadatablock.MetadataBlockDataPicture;
 import org.jaudiotagger.tag.flac.FlacTag;
@@ -43,12 +42,11 @@ class FlacParser extends JaudiotaggerParser {
     }
 
     @Override
-    public BufferedImage getArtwork() {
-        BufferedImage image = super.getArtwork();
+    protected BufferedImage getArtwork(AudioFile audioFile) {
+        BufferedImage image = super.getArtwork(audioFile);
 
         if (image == null) {
             try {
-                AudioFile audioFile = AudioFileIO.read(file);
                 FlacTag tag = (FlacTag) audioFile.getTag();
                 if (tag != null) {
                     List<MetadataBlockDataPicture> images = tag.getImages();
@@ -52,11 +52,35 @@ class JaudiotaggerParser extends AbstractTagParser {
 
     @Override
     public TagsData parse() {
-        TagsData data = null;
+        return parse(false).getData();
+    }
+
+    @Override
+    public BufferedImage getArtwork() {
+        BufferedImage data = null;
+
+        try {
+            data = getArtwork(read());
+        } catch (Exception e) {
+            LOG.warn("Unable to read artwork of file using Jaudiotagger: " + file);
+        }
+
+        return data;
+    }
 
+    @Override
+    public TagsResult parse(boolean artwork) {
+        AudioFile audioFile;
         try {
-            AudioFile audioFile = fileReader != null ? fileReader.read(file) : AudioFileIO.read(file);
+            audioFile = read();
+        } catch (Exception e) {
+            LOG.warn("Unable to parse file using Jaudiotagger: " + file);
+            return new TagsResult(null, null);
+        }
+
+        TagsData data = null;
 
+        try {
             AudioHeader header = audioFile.getAudioHeader();
 
             int duration = header.getTrackLength();
@@ -76,18 +100,16 @@ class JaudiotaggerParser extends AbstractTagParser {
             LOG.warn("Unable to parse file using Jaudiotagger: " + file);
         }
 
-        return data;
+        return new TagsResult(data, artwork ? getArtwork(audioFile) : null);
     }
 
-    @Override
-    public BufferedImage getArtwork() {
+    protected BufferedImage getArtwork(AudioFile audioFile) {
         BufferedImage data = null;
 
         try {
-            AudioFile audioFile = fileReader != null ? fileReader.read(file) : AudioFileIO.read(file);
             Tag tag = audioFile.getTag();
             if (tag != null) {
-                Artwork artwork = audioFile.getTag().getFirstArtwork();
+                Artwork artwork = tag.getFirstArtwork();
                 if (artwork != null) {
                     byte[] imageData = artwork.getBinaryData();
                     data = imageFromData(imageData);
@@ -100,6 +122,10 @@ class JaudiotaggerParser extends AbstractTagParser {
         return data;
     }
 
+    private AudioFile read() throws Exception {
+        return fileReader != null ? fileReader.read(file) : AudioFileIO.read(file);
+    }
+
     protected String getTitle(AudioFile audioFile) {
         return getValueSafe(audioFile.getTag(), FieldKey.TITLE);
     }
@@ -43,12 +43,12 @@ class MP3Parser extends JaudiotaggerParser {
     }
 
     @Override
-    public BufferedImage getArtwork() {
-        BufferedImage image = super.getArtwork();
+    protected BufferedImage getArtwork(AudioFile audioFile) {
+        BufferedImage image = super.getArtwork(audioFile);
 
-        if (image == null) {
+        if (image == null && audioFile instanceof MP3File) {
             try {
-                MP3File mp3 = new MP3File(file.getAbsoluteFile());
+                MP3File mp3 = (MP3File) audioFile;
                 if (mp3.hasID3v2Tag()) {
                     AbstractID3v2Tag tag = mp3.getID3v2Tag();
                     Artwork artwork = tag.getFirstArtwork();
@@ -47,7 +47,18 @@ class MP4Parser extends AbstractTagParser {
 
     @Override
     public TagsData parse() {
+        return parse(false).getData();
+    }
+
+    @Override
+    public BufferedImage getArtwork() {
+        return getArtworkFromMP4(file);
+    }
+
+    @Override
+    public TagsResult parse(boolean artwork) {
         TagsData data = null;
+        BufferedImage image = null;
 
         try {
             RandomAccessFile iso = new RandomAccessFile(file, "r");
@@ -55,6 +66,10 @@ class MP4Parser extends AbstractTagParser {
 
             try {
 
+                if (artwork) {
+                    image = getArtwork(boxes);
+                }
+
                 int duration = getDuration(boxes);
                 String bitrate = getBitRate(boxes);
 
@@ -78,12 +93,7 @@ class MP4Parser extends AbstractTagParser {
             LOG.warn("Unable to parse file using mp4parser: " + file);
         }
 
-        return data;
-    }
-
-    @Override
-    public BufferedImage getArtwork() {
-        return getArtworkFromMP4(file);
+        return new TagsResult(data, image);
     }
 
     static BufferedImage getArtworkFromMP4(File file) {
@@ -94,20 +104,7 @@ class MP4Parser extends AbstractTagParser {
             LinkedList<Box> boxes = IsoFile.head(iso, ByteBuffer.allocate(100 * 1024));
 
             try {
-
-                AppleCoverBox data = Box.findFirst(boxes, Box.covr);
-                if (data != null) {
-                    byte[] imageData = data.value();
-                    if (data.dataType() == 13) { // jpg
-                        image = imageFromData(imageData);
-                    } else if (data.dataType() == 14) { // png
-                        try {
-                            image = ImageIO.read(new ByteArrayInputStream(imageData, 0, imageData.length));
-                        } catch (IIOException e) {
-                            LOG.warn("Unable to decode png image from data tag");
-                        }
-                    }
-                }
+                image = getArtwork(boxes);
             } finally {
                 IOUtils.closeQuietly(iso);
             }
@@ -118,6 +115,30 @@ class MP4Parser extends AbstractTagParser {
         return image;
     }
 
+    private static BufferedImage getArtwork(LinkedList<Box> boxes) {
+        BufferedImage image = null;
+
+        try {
+            AppleCoverBox data = Box.findFirst(boxes, Box.covr);
+            if (data != null) {
+                byte[] imageData = data.value();
+                if (data.dataType() == 13) { // jpg
+                    image = imageFromData(imageData);
+                } else if (data.dataType() == 14) { // png
+                    try {
+                        image = ImageIO.read(new ByteArrayInputStream(imageData, 0, imageData.length));
+                    } catch (IIOException e) {
+                        LOG.warn("Unable to decode png image from data tag");
+                    }
+                }
+            }
+        } catch (Throwable e) {
+            //LOG.error("Unable to read cover art from mp4 boxes");
+        }
+
+        return image;
+    }
+
     private int getDuration(LinkedList<Box> boxes) {
         MovieHeaderBox mvhd = Box.findFirst(boxes, Box.mvhd);
         return (int) (mvhd.duration() / mvhd.timescale());
@@ -21,7 +21,6 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 
 import org.jaudiotagger.audio.AudioFile;
-import org.jaudiotagger.audio.AudioFileIO;
 import org.jaudiotagger.audio.ogg.OggFileReader;
 import org.jaudiotagger.tag.vorbiscomment.VorbisCommentTag;
 
@@ -41,12 +40,11 @@ class OggParser extends JaudiotaggerParser {
     }
 
     @Override
-    public BufferedImage getArtwork() {
-        BufferedImage image = super.getArtwork();
+    protected BufferedImage getArtwork(AudioFile audioFile) {
+        BufferedImage image = super.getArtwork(audioFile);
 
         if (image == null) {
             try {
-                AudioFile audioFile = AudioFileIO.read(file);
                 VorbisCommentTag tag = (VorbisCommentTag) audioFile.getTag();
                 if (tag != null) {
                     byte[] data = tag.getArtworkBinaryData();
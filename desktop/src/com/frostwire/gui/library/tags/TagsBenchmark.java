@@ -0,0 +1,130 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+ 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.frostwire.gui.library.tags;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Development benchmark of the tags extraction, not used by the application.
+ * <p>
+ * Generates a corpus copying the seed files (mp3, m4a/mp4, flac, ogg) of a
+ * folder, then times a parser per file in sequence, as before the service,
+ * against the bulk parse cold and with the cache.
+ * <pre>
+ * TagsBenchmark &lt;seeds folder&gt; [copies per seed]
+ * </pre>
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+final class TagsBenchmark {
+
+    private TagsBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: TagsBenchmark <seeds folder> [copies per seed]");
+            return;
+        }
+
+        File seeds = new File(args[0]);
+        int copies = args.length > 1 ? Integer.parseInt(args[1]) : 250;
+
+        File corpus = new File(FileUtils.getTempDirectory(), "tags-benchmark-" + System.currentTimeMillis());
+        try {
+            List<File> files = generate(seeds, corpus, copies);
+            System.out.println("Corpus of " + files.size() + " files in " + corpus);
+
+            long start = System.currentTimeMillis();
+            int parsed = 0;
+            TagsParserFactory factory = new TagsParserFactory();
+            for (File f : files) {
+                if (factory.getInstance(f).parse() != null) {
+                    parsed++;
+                }
+                factory.getInstance(f).getArtwork();
+            }
+            print("Sequential, tags and artwork", files.size(), parsed, start);
+
+            start = System.currentTimeMillis();
+            parsed = count(TagsReader.parseAll(files).values());
+            print("Bulk parse, cold", files.size(), parsed, start);
+
+            start = System.currentTimeMillis();
+            parsed = count(TagsReader.parseAll(files).values());
+            print("Bulk parse, cached", files.size(), parsed, start);
+
+            start = System.currentTimeMillis();
+            parsed = 0;
+            for (File f : files) {
+                if (new TagsReader(f).parseWithArtwork().getData() != null) {
+                    parsed++;
+                }
+            }
+            print("One pass, tags and artwork", files.size(), parsed, start);
+        } finally {
+            FileUtils.deleteQuietly(corpus);
+        }
+    }
+
+    private static List<File> generate(File seeds, File corpus, int copies) throws IOException {
+        List<File> files = new ArrayList<>();
+
+        File[] list = seeds.listFiles();
+        if (list == null) {
+            return files;
+        }
+
+        for (File seed : list) {
+            if (!seed.isFile()) {
+                continue;
+            }
+            String name = FilenameUtils.getBaseName(seed.getName());
+            String ext = FilenameUtils.getExtension(seed.getName());
+            for (int i = 0; i < copies; i++) {
+                File f = new File(corpus, name + "-" + i + "." + ext);
+                FileUtils.copyFile(seed, f);
+                files.add(f);
+            }
+        }
+
+        return files;
+    }
+
+    private static int count(Iterable<TagsData> values) {
+        int n = 0;
+        for (TagsData data : values) {
+            if (data != null) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static void print(String name, int total, int parsed, long start) {
+        System.out.println(name + ": " + parsed + "/" + total + " parsed in " + (System.currentTimeMillis() - start) + "ms");
+    }
+}
@@ -29,4 +29,9 @@ interface TagsParser {
     public TagsData parse();
 
     public BufferedImage getArtwork();
+
+    /**
+     * Parses the tags, and the artwork if requested, reading the file once.
+     */
+    public TagsResult parse(boolean artwork);
 }
@@ -19,18 +19,18 @@ package com.frostwire.gui.library.tags;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
-
-import com.frostwire.logging.Logger;
+import java.util.Collection;
+import java.util.Map;
 
 /**
- * 
+ * Reads the tags of a file through the {@link TagsService}, the results
+ * are cached until the file changes.
+ *
  * @author aldenml
  *
  */
 public class TagsReader {
 
-    private static final Logger LOG = Logger.getLogger(TagsReader.class);
-
     private final File file;
 
     public TagsReader(File file) {
@@ -38,38 +38,25 @@ public class TagsReader {
     }
 
     public TagsData parse() {
-        TagsData data = null;
-
-        TagsParser parser = new TagsParserFactory().getInstance(file);
-
-        if (parser != null) {
-            data = parser.parse();
-
-            // aldenml: fallback to mplayer parsing, refactor this logic (remove it)
-            if (data == null || isEmpty(data)) {
-                data = new MPlayerParser(file).parse();
-            }
-        } else {
-            LOG.warn("Unable to create tags parser for file: " + file);
-        }
-
-        return data;
+        return TagsService.instance().parse(file);
     }
 
     public BufferedImage getArtwork() {
-        BufferedImage image = null;
-
-        TagsParser parser = new TagsParserFactory().getInstance(file);
-        if (parser != null) {
-            image = parser.getArtwork();
-        } else {
-            LOG.warn("Unable to create tags parser for file: " + file);
-        }
+        return TagsService.instance().getArtwork(file);
+    }
 
-        return image;
+    /**
+     * Returns the tags and the artwork, reading the file once.
+     */
+    public TagsResult parseWithArtwork() {
+        return TagsService.instance().parseWithArtwork(file);
     }
 
-    private boolean isEmpty(TagsData data) {
-        return false; // default behavior for now
+    /**
+     * Parses the tags of the files in parallel, use it to populate the
+     * tags of many files at once.
+     */
+    public static Map<File, TagsData> parseAll(Collection<File> files) {
+        return TagsService.instance().parseAll(files);
     }
 }
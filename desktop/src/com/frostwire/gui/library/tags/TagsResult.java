@@ -0,0 +1,47 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+ 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.frostwire.gui.library.tags;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The tags and the artwork of a file parsed in one pass, any of them
+ * can be null.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+public final class TagsResult {
+
+    private final TagsData data;
+    private final BufferedImage artwork;
+
+    TagsResult(TagsData data, BufferedImage artwork) {
+        this.data = data;
+        this.artwork = artwork;
+    }
+
+    public TagsData getData() {
+        return data;
+    }
+
+    public BufferedImage getArtwork() {
+        return artwork;
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2016, FrostWire(R). All rights reserved.
+ 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.frostwire.gui.library.tags;
+
+import com.frostwire.logging.Logger;
+import org.limewire.concurrent.ExecutorsHelper;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Parses the tags of the files with a bounded pool of workers and keeps
+ * the results by path, size and modification time, so a file is parsed
+ * again only when it changes.
+ * <p>
+ * The fallback to mplayer, a process per file, runs in a single queue
+ * with a minimum interval between processes, the files of a bulk parse
+ * are sent to it in one batch.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+final class TagsService {
+
+    private static final Logger LOG = Logger.getLogger(TagsService.class);
+
+    private static final int TAGS_CACHE_SIZE = 5000;
+    private static final int ARTWORK_CACHE_SIZE = 32;
+    private static final long MPLAYER_INTERVAL = 100; // ms
+
+    private static final TagsService INSTANCE = new TagsService();
+
+    private final TagsParserFactory factory;
+    private final ExecutorService workers;
+    private final ExecutorService mplayer;
+    private final Map<Key, TagsResult> tags;
+    private final Map<Key, TagsResult> artworks;
+
+    // only accessed from the mplayer queue
+    private long lastMPlayer;
+
+    private TagsService() {
+        this.factory = new TagsParserFactory();
+        this.workers = ExecutorsHelper.newFixedSizeThreadPool(Math.min(4, Runtime.getRuntime().availableProcessors()), "TagsService-Worker");
+        this.mplayer = ExecutorsHelper.newProcessingQueue("TagsService-MPlayer");
+        this.tags = lru(TAGS_CACHE_SIZE);
+        this.artworks = lru(ARTWORK_CACHE_SIZE);
+    }
+
+    public static TagsService instance() {
+        return INSTANCE;
+    }
+
+    public TagsData parse(File file) {
+        Key key = new Key(file);
+
+        TagsResult r = get(tags, key);
+        if (r == null) {
+            r = parseJava(file, false);
+            if (r.getData() == null) {
+                r = new TagsResult(parseMPlayer(Collections.singletonList(file)).get(file), null);
+            }
+            put(tags, key, r);
+        }
+
+        return r.getData();
+    }
+
+    /**
+     * The artworks are kept only for the last few files.
+     */
+    public TagsResult parseWithArtwork(File file) {
+        return parseWithArtwork(file, true);
+    }
+
+    /**
+     * Returns the artwork without the mplayer fallback for the tags.
+     */
+    public BufferedImage getArtwork(File file) {
+        return parseWithArtwork(file, false).getArtwork();
+    }
+
+    /**
+     * Parses the files in parallel, the ones not in the cache, and returns
+     * the tags by file, null if they could not be parsed.
+     */
+    public Map<File, TagsData> parseAll(Collection<File> files) {
+        Map<File, TagsData> result = new HashMap<>();
+        Map<File, Key> keys = new HashMap<>();
+        Map<File, Future<TagsResult>> futures = new LinkedHashMap<>();
+
+        for (final File file : files) {
+            Key key = new Key(file);
+            TagsResult r = get(tags, key);
+            if (r != null) {
+                result.put(file, r.getData());
+            } else if (!futures.containsKey(file)) {
+                keys.put(file, key);
+                futures.put(file, workers.submit(new Callable<TagsResult>() {
+                    @Override
+                    public TagsResult call() {
+                        return parseJava(file, false);
+                    }
+                }));
+            }
+        }
+
+        List<File> fallback = new ArrayList<>();
+        for (Map.Entry<File, Future<TagsResult>> e : futures.entrySet()) {
+            File file = e.getKey();
+            TagsData data = null;
+            try {
+                data = e.getValue().get().getData();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return result;
+            } catch (ExecutionException ex) {
+                LOG.warn("Error parsing tags of " + file, ex.getCause());
+            }
+            if (data != null) {
+                put(tags, keys.get(file), new TagsResult(data, null));
+                result.put(file, data);
+            } else {
+                fallback.add(file);
+            }
+        }
+
+        if (!fallback.isEmpty()) {
+            Map<File, TagsData> parsed = parseMPlayer(fallback);
+            for (File file : fallback) {
+                TagsData data = parsed.get(file);
+                put(tags, keys.get(file), new TagsResult(data, null));
+                result.put(file, data);
+            }
+        }
+
+        return result;
+    }
+
+    private TagsResult parseWithArtwork(File file, boolean fallback) {
+        Key key = new Key(file);
+
+        TagsResult r = get(artworks, key);
+        if (r == null) {
+            r = parseJava(file, true);
+            if (r.getData() != null) {
+                put(tags, key, new TagsResult(r.getData(), null));
+            }
+            put(artworks, key, r);
+        }
+
+        if (r.getData() == null && fallback) {
+            r = new TagsResult(parse(file), r.getArtwork());
+            put(artworks, key, r);
+        }
+
+        return r;
+    }
+
+    /**
+     * Parses with the java parsers, the data is null if the file needs
+     * the mplayer fallback.
+     */
+    private TagsResult parseJava(File file, boolean artwork) {
+        TagsParser parser = factory.getInstance(file);
+        if (parser instanceof MPlayerParser) {
+            return new TagsResult(null, null);
+        }
+
+        try {
+            return parser.parse(artwork);
+        } catch (Throwable e) {
+            LOG.warn("Error parsing tags of " + file + ": " + e.getMessage());
+            return new TagsResult(null, null);
+        }
+    }
+
+    /**
+     * Parses the files with mplayer as one batch of the mplayer queue.
+     */
+    private Map<File, TagsData> parseMPlayer(final List<File> files) {
+        Future<Map<File, TagsData>> f = mplayer.submit(new Callable<Map<File, TagsData>>() {
+            @Override
+            public Map<File, TagsData> call() throws Exception {
+                Map<File, TagsData> result = new HashMap<>();
+                for (File file : files) {
+                    long wait = lastMPlayer + MPLAYER_INTERVAL - System.currentTimeMillis();
+                    if (wait > 0) {
+                        Thread.sleep(wait);
+                    }
+                    try {
+                        result.put(file, new MPlayerParser(file).parse());
+                    } finally {
+                        lastMPlayer = System.currentTimeMillis();
+                    }
+                }
+                return result;
+            }
+        });
+
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.warn("Error parsing tags with mplayer", e.getCause());
+        }
+
+        return Collections.emptyMap();
+    }
+
+    private static TagsResult get(Map<Key, TagsResult> cache, Key key) {
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    private static void put(Map<Key, TagsResult> cache, Key key, TagsResult r) {
+        synchronized (cache) {
+            cache.put(key, r);
+        }
+    }
+
+    private static Map<Key, TagsResult> lru(final int maxSize) {
+        return new LinkedHashMap<Key, TagsResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, TagsResult> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    private static final class Key {
+
+        private final String path;
+        private final long size;
+        private final long lastModified;
+
+        Key(File file) {
+            this.path = file.getAbsolutePath();
+            this.size = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return size == k.size && lastModified == k.lastModified && path.equals(k.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode() * 31 + (int) (lastModified ^ (lastModified >>> 32));
+        }
+    }
+}
@@ -18,7 +18,13 @@
 
 package com.frostwire.search;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
 import com.frostwire.logging.Logger;
 import org.apache.commons.io.FileUtils;
@@ -51,14 +57,35 @@ public final class CrawlCacheDB {
 
     private static final String DATABASE_NAME = "crawldb";
 
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 2;
 
     private static final String TABLE_NAME = "CacheData";
 
     public static final String DEFAULT_SORT_ORDER = Columns.DATE_ADDED + " DESC";
 
+    /**
+     * Time to live of an entry if no expiration date is specified.
+     */
+    public static final long DEFAULT_TTL = TimeUnit.DAYS.toMillis(30);
+
+    /**
+     * The compactor deletes the oldest entries when the total size of the
+     * data goes over this cap.
+     */
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024; // 256MB
+
+    private static final long COMPACTION_DELAY = TimeUnit.MINUTES.toMillis(1);
+    private static final long COMPACTION_PERIOD = TimeUnit.MINUTES.toMillis(10);
+    private static final int COMPACTION_BATCH_SIZE = 500;
+
     private final DatabaseHelper databaseHelper;
 
+    // maintained counters, guarded by the object monitor
+    private long count;
+    private long bytes;
+
+    private volatile long maxBytes;
+
     private final static CrawlCacheDB instance = new CrawlCacheDB();
 
     public static CrawlCacheDB instance() {
@@ -67,6 +94,21 @@ public final class CrawlCacheDB {
 
     private CrawlCacheDB() {
         databaseHelper = new DatabaseHelper(new Context());
+        maxBytes = DEFAULT_MAX_BYTES;
+
+        loadCounters();
+
+        Timer timer = new Timer("CrawlCacheDB-compactor", true);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                } catch (Throwable e) {
+                    LOG.warn("Error compacting crawl cache database", e);
+                }
+            }
+        }, COMPACTION_DELAY, COMPACTION_PERIOD);
     }
 
     public Cursor query(String[] projection, String selection, String[] selectionArgs, String sortOrder) {
@@ -100,23 +142,51 @@ public final class CrawlCacheDB {
             values = new ContentValues();
         }
 
-        Long now = Long.valueOf(System.currentTimeMillis() / 1000);
+        long now = System.currentTimeMillis();
 
         if (values.containsKey(Columns.DATE_ADDED) == false) {
-            values.put(Columns.DATE_ADDED, now);
+            values.put(Columns.DATE_ADDED, Long.valueOf(now / 1000));
+        }
+
+        if (values.containsKey(Columns.DATE_EXPIRES) == false) {
+            values.put(Columns.DATE_EXPIRES, Long.valueOf((now + DEFAULT_TTL) / 1000));
         }
 
+        byte[] data = values.getAsByteArray(Columns.DATA);
+        long size = data != null ? data.length : 0;
+        values.put(Columns.DATA_SIZE, Long.valueOf(size));
+
         SQLiteDatabase db = databaseHelper.getWritableDatabase();
 
-        return db.insert(TABLE_NAME, "", values);
+        synchronized (this) {
+            long n = db.insert(TABLE_NAME, "", values);
+            if (n > 0) {
+                count += n;
+                bytes += n * size;
+            }
+            return n;
+        }
     }
 
     public int delete(String where, String[] whereArgs) {
         SQLiteDatabase db = databaseHelper.getWritableDatabase();
 
-        int count = db.delete(TABLE_NAME, where, whereArgs);
+        synchronized (this) {
+            if (StringUtils.isEmpty(where)) {
+                int n = db.delete(TABLE_NAME, where, whereArgs);
+                count = 0;
+                bytes = 0;
+                return n;
+            }
 
-        return count;
+            long[] stats = stats(where, whereArgs);
+            int n = db.delete(TABLE_NAME, where, whereArgs);
+            if (n > 0) {
+                count -= stats[0];
+                bytes -= stats[1];
+            }
+            return n;
+        }
     }
 
     public int update(ContentValues values, String where, String[] whereArgs) {
@@ -128,6 +198,140 @@ public final class CrawlCacheDB {
         return count;
     }
 
+    /**
+     * Number of entries, from the maintained counters.
+     */
+    public synchronized long count() {
+        return count;
+    }
+
+    /**
+     * Total size of the cached data, from the maintained counters.
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Deletes the expired entries and then the oldest entries until the total
+     * size of the data is under the cap, in batches.
+     *
+     * @return the number of entries deleted
+     */
+    public int compact() {
+        int deleted = 0;
+
+        String[] args = new String[]{String.valueOf(System.currentTimeMillis() / 1000)};
+        int n;
+        do {
+            n = deleteBatch(Columns.DATE_EXPIRES + " <= ?", args);
+            deleted += n;
+        } while (n == COMPACTION_BATCH_SIZE);
+
+        // leave some room to avoid compacting all the time
+        long target = maxBytes - maxBytes / 10;
+        if (bytes() > maxBytes) {
+            while (bytes() > target) {
+                n = deleteBatch(null, null);
+                if (n <= 0) {
+                    break;
+                }
+                deleted += n;
+            }
+        }
+
+        if (deleted > 0) {
+            LOG.info("Crawl cache compacted, deleted " + deleted + " entries, count=" + count() + ", bytes=" + bytes());
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Deletes the oldest entries matching the selection, at most one batch.
+     */
+    private int deleteBatch(String selection, String[] selectionArgs) {
+        SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
+        qb.setTables(TABLE_NAME);
+
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+        List<String> ids = new ArrayList<String>(COMPACTION_BATCH_SIZE);
+        long size = 0;
+
+        Cursor c = null;
+        try {
+            c = qb.query(db, new String[]{Columns.ID, Columns.DATA_SIZE}, selection, selectionArgs, null, null,
+                    Columns.DATE_ADDED + " ASC", String.valueOf(COMPACTION_BATCH_SIZE));
+            if (c == null) {
+                return -1;
+            }
+            while (c.moveToNext()) {
+                ids.add(String.valueOf(c.getLong(1)));
+                size += c.getLong(2);
+            }
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        StringBuilder where = new StringBuilder(Columns.ID).append(" IN (");
+        for (int i = 0; i < ids.size(); i++) {
+            where.append(i > 0 ? ",?" : "?");
+        }
+        where.append(")");
+
+        synchronized (this) {
+            int n = db.delete(TABLE_NAME, where.toString(), ids.toArray(new String[ids.size()]));
+            if (n == ids.size()) {
+                count -= n;
+                bytes -= size;
+            } else if (n > 0) {
+                // concurrently modified, count again
+                loadCounters();
+            }
+            return n;
+        }
+    }
+
+    private synchronized void loadCounters() {
+        long[] stats = stats(null, null);
+        count = stats[0];
+        bytes = stats[1];
+    }
+
+    private long[] stats(String where, String[] whereArgs) {
+        long[] stats = new long[2];
+
+        String sql = "SELECT COUNT(*), COALESCE(SUM(" + Columns.DATA_SIZE + "), 0) FROM " + TABLE_NAME +
+                (!StringUtils.isEmpty(where) ? " WHERE " + where : "");
+
+        SQLiteDatabase db = databaseHelper.getReadableDatabase();
+        Cursor c = null;
+        try {
+            c = db.rawQueryWithFactory(null, sql, whereArgs, TABLE_NAME);
+            if (c != null && c.moveToNext()) {
+                stats[0] = c.getLong(1);
+                stats[1] = c.getLong(2);
+            }
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+
+        return stats;
+    }
+
     public static final class Columns {
 
         private Columns() {
@@ -137,6 +341,8 @@ public final class CrawlCacheDB {
         public static final String KEY = "key";
         public static final String DATA = "data";
         public static final String DATE_ADDED = "dateAdded";
+        public static final String DATE_EXPIRES = "dateExpires";
+        public static final String DATA_SIZE = "dataSize";
     }
 
     /**
@@ -159,12 +365,24 @@ public final class CrawlCacheDB {
                 }
             }
 
+            // the database folder is per version, remove the previous one
+            File previous = new File(new Context().getDatabasePath(DATABASE_NAME).getAbsolutePath() + "." + (DATABASE_VERSION - 1));
+            if (previous.exists()) {
+                try {
+                    FileUtils.deleteDirectory(previous);
+                } catch (IOException e) {
+                    LOG.warn("Unable to delete previous crawl cache database");
+                }
+            }
+
             db.execSQL("SET IGNORECASE TRUE");
 
-            db.execSQL("CREATE TABLE " + TABLE_NAME + " (" + Columns.ID + " INTEGER IDENTITY," + Columns.KEY + " VARCHAR," + Columns.DATA + " BINARY," + Columns.DATE_ADDED + " BIGINT" + ");");
+            db.execSQL("CREATE TABLE " + TABLE_NAME + " (" + Columns.ID + " INTEGER IDENTITY," + Columns.KEY + " VARCHAR," + Columns.DATA + " BINARY," + Columns.DATE_ADDED + " BIGINT," + Columns.DATE_EXPIRES + " BIGINT," + Columns.DATA_SIZE + " BIGINT" + ");");
 
             db.execSQL("CREATE INDEX idx_" + TABLE_NAME + "_" + Columns.ID + " ON " + TABLE_NAME + " (" + Columns.ID + ")");
             db.execSQL("CREATE INDEX idx_" + TABLE_NAME + "_" + Columns.KEY + " ON " + TABLE_NAME + " (" + Columns.KEY + ")");
+            db.execSQL("CREATE INDEX idx_" + TABLE_NAME + "_" + Columns.DATE_ADDED + " ON " + TABLE_NAME + " (" + Columns.DATE_ADDED + ")");
+            db.execSQL("CREATE INDEX idx_" + TABLE_NAME + "_" + Columns.DATE_EXPIRES + " ON " + TABLE_NAME + " (" + Columns.DATE_EXPIRES + ")");
         }
 
         @Override
@@ -47,8 +47,8 @@ public class DatabaseCrawlCache implements CrawlCache {
 
         try {
             String[] columns = new String[] { Columns.DATA };
-            String where = Columns.KEY + " = ?";
-            String[] whereArgs = new String[] { key };
+            String where = Columns.KEY + " = ? AND " + Columns.DATE_EXPIRES + " > ?";
+            String[] whereArgs = new String[] { key, String.valueOf(System.currentTimeMillis() / 1000) };
 
             c = db.query(columns, where, whereArgs, null);
 
@@ -71,6 +71,9 @@ public class DatabaseCrawlCache implements CrawlCache {
     public void put(String key, byte[] data) {
         if (SearchSettings.SMART_SEARCH_ENABLED.getValue()) {
             try {
+                // replace, avoid duplicated keys
+                remove(key);
+
                 ContentValues values = new ContentValues();
 
                 values.put(Columns.KEY, key);
@@ -106,30 +109,10 @@ public class DatabaseCrawlCache implements CrawlCache {
 
     @Override
     public long size() {
-        long size = 0;
-
-        Cursor c = null;
-
-        try {
-
-            String[] columns = new String[] { Columns.ID };
-            String where = "";
-            String[] whereArgs = new String[] {};
-
-            c = db.query(columns, where, whereArgs, null);
-
-            if (c != null) {
-                size = c.getCount();
-            }
-
-        } catch (Exception e) {
-            LOG.warn("Failed to get num of shared files", e);
-        } finally {
-            if (c != null) {
-                c.close();
-            }
-        }
+        return db.count();
+    }
 
-        return size;
+    public long bytes() {
+        return db.bytes();
     }
 }
@@ -18,10 +18,14 @@
 
 package com.limegroup.gnutella.gui.search;
 
+import java.util.Collections;
+import java.util.Set;
+
 import org.apache.commons.io.FilenameUtils;
 
 import com.frostwire.gui.player.StreamMediaSource;
 import com.frostwire.search.FileSearchResult;
+import com.frostwire.search.SearchDeduplicator;
 import com.frostwire.search.SearchResult;
 import com.frostwire.search.StreamableSearchResult;
 import com.frostwire.search.youtube.YouTubeCrawledStreamableSearchResult;
@@ -43,6 +47,8 @@ public abstract class AbstractUISearchResult implements UISearchResult {
     private final String query;
     private final String extension;
 
+    private SearchDeduplicator.Group group;
+
     public AbstractUISearchResult(FileSearchResult sr, SearchEngine se, String query) {
         this.sr = sr;
         this.se = se;
@@ -70,6 +76,15 @@ public abstract class AbstractUISearchResult implements UISearchResult {
         return sr.getSource();
     }
 
+    @Override
+    public Set<String> getSources() {
+        SearchDeduplicator.Group g = group;
+        if (g != null) {
+            return g.sources();
+        }
+        return sr.getSource() != null ? Collections.singleton(sr.getSource()) : Collections.<String> emptySet();
+    }
+
     @Override
     public SearchEngine getSearchEngine() {
         return se;
@@ -134,4 +149,20 @@ public abstract class AbstractUISearchResult implements UISearchResult {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * The duplicates of this result reported by other engines are
+     * merged into the group.
+     */
+    void setGroup(SearchDeduplicator.Group group) {
+        this.group = group;
+    }
+
+    /**
+     * The maximum of the seeds and the seeds of the merged duplicates.
+     */
+    protected int mergedSeeds(int seeds) {
+        SearchDeduplicator.Group g = group;
+        return g != null ? Math.max(seeds, g.seeds()) : seeds;
+    }
+}
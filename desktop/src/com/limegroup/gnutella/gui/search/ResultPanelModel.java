@@ -15,11 +15,15 @@
 
 package com.limegroup.gnutella.gui.search;
 
+import com.frostwire.util.IndexedTreeList;
 import com.limegroup.gnutella.gui.tables.AbstractTableMediator;
 import com.limegroup.gnutella.gui.tables.BasicDataLineModel;
 import com.limegroup.gnutella.gui.tables.LimeTableColumn;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /** 
@@ -28,6 +32,9 @@ import java.util.Map;
  * Ensures that if new lines are added and they are similar to old lines,
  * that the new lines are added as extra information to the existing lines,
  * instead of as brand new lines.
+ *
+ * The lines are kept in an order statistic tree, so sorted inserts, removals
+ * and row lookups are O(log n) instead of shifting and remapping the rows.
  */
 class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, UISearchResult> {
 
@@ -42,17 +49,33 @@ class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, UISearch
     protected final SearchTableColumns COLUMNS = new SearchTableColumns();
 
     /**
-     * HashMap for quick access to indexes based on SHA1 info.
+     * The lines, same instance as _list.
+     */
+    private final IndexedTreeList<SearchResultDataLine> _rows;
+
+    /**
+     * HashMap for quick access to lines based on SHA1 info, the row
+     * is resolved in the tree.
      */
-    private final Map<String, Integer> _indexes = new HashMap<>();
+    private final Map<String, SearchResultDataLine> _indexes = new HashMap<>();
 
     private int _numResults;
 
+    /**
+     * While in a batch, the rows inserted events are coalesced.
+     */
+    private boolean _batch;
+    private int _batchFirst;
+    private int _batchLast;
+    private boolean _batchScattered;
+
     /**
      * Constructs a new ResultPanelModel with the given MetadataModel.
      */
     ResultPanelModel() {
         super(SearchResultDataLine.class);
+        _rows = new IndexedTreeList<>();
+        _list = _rows;
     }
 
     /**
@@ -100,12 +123,12 @@ class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, UISearch
      * @param row  the index of the row to remove.
      */
     public void remove(int row) {
-        String sha1 = getHash(row);
-        if (sha1 != null)
+        SearchResultDataLine tl = get(row);
+        String sha1 = tl.getHash();
+        if (sha1 != null && _indexes.get(sha1) == tl)
             _indexes.remove(sha1);
         super.remove(row);
         _numResults -= 1;
-        remapIndexes(row);
     }
 
     /**
@@ -137,31 +160,100 @@ class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, UISearch
         _numResults += 1;
         String sha1 = tl.getHash();
         if (sha1 != null)
-            _indexes.put(sha1, new Integer(row));
-        int addedAt = super.add(tl, row);
-        remapIndexes(addedAt + 1);
-        return addedAt;
+            _indexes.put(sha1, tl);
+        return super.add(tl, row);
+    }
+
+    /**
+     * Adds the lines, in the given order, to an empty model in one pass.
+     * No event is fired.
+     */
+    void load(List<SearchResultDataLine> lines) {
+        _rows.addAll(lines);
+        _numResults += lines.size();
+        for (SearchResultDataLine tl : lines) {
+            String sha1 = tl.getHash();
+            if (sha1 != null)
+                _indexes.put(sha1, tl);
+        }
+    }
+
+    /**
+     * Finds the position with a descent of the tree, after the
+     * lines that compare equal.
+     */
+    public int getSortedPosition(SearchResultDataLine dl) {
+        return _rows.upperBound(dl, this);
+    }
+
+    /**
+     * Starts coalescing the rows inserted events until {@link #endBatch()}.
+     */
+    void beginBatch() {
+        _batch = true;
+        _batchFirst = -1;
+        _batchLast = -1;
+        _batchScattered = false;
+    }
+
+    /**
+     * Fires one event for all the rows inserted in the batch, a rows inserted
+     * event if they are contiguous, a data changed event otherwise.
+     *
+     * @return true if any row was inserted.
+     */
+    boolean endBatch() {
+        _batch = false;
+
+        if (_batchFirst == -1) {
+            return false;
+        }
+
+        if (_batchScattered) {
+            fireTableDataChanged();
+        } else {
+            fireTableRowsInserted(_batchFirst, _batchLast);
+        }
+
+        return true;
+    }
+
+    @Override
+    public void fireTableRowsInserted(int firstRow, int lastRow) {
+        if (!_batch) {
+            super.fireTableRowsInserted(firstRow, lastRow);
+        } else if (_batchFirst == -1) {
+            _batchFirst = firstRow;
+            _batchLast = lastRow;
+        } else if (firstRow == _batchLast + 1) {
+            _batchLast = lastRow;
+        } else {
+            _batchScattered = true;
+        }
     }
 
     /**
      * Gets the row this DataLine is at.
      */
     public int getRow(SearchResultDataLine tl) {
-        String sha1 = tl.getHash();
-        if (sha1 != null)
-            return fastMatch(sha1);
-        else
-            return super.getRow(tl);
+        int row = _rows.indexOf(tl);
+        if (row == -1) {
+            String sha1 = tl.getHash();
+            if (sha1 != null)
+                row = fastMatch(sha1);
+        }
+        return row;
     }
 
     /** 
-     * Overrides the default sort to maintain the indexes HashMap,
+     * Overrides the default sort to rebuild the tree in one pass,
      * according to the current sort column and order.
      */
     protected void doResort() {
-        super.doResort();
-        _indexes.clear(); // it's easier & quicker to just clear & re-input
-        remapIndexes(0);
+        List<SearchResultDataLine> lines = new ArrayList<>(_rows);
+        Collections.sort(lines, this);
+        _rows.clear();
+        _rows.addAll(lines);
     }
 
     /**
@@ -180,36 +272,6 @@ class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, UISearch
         super.clear();
     }
 
-    /**
-     * Remaps the indexes, starting at 'start' and going to the end of
-     * the list.  This is needed for when rows are added to the middle of
-     * the list to maintain the correct rows per objects.
-     */
-    private void remapIndexes(int start) {
-        remapIndexes(start, getRowCount());
-    }
-
-    /**
-     * Remaps the indexes, starting at 'start' and going to 'end'.
-     * This is useful for when we move a row from end to start or vice versa.
-     */
-    private void remapIndexes(int start, int end) {
-        for (int i = start; i < end; i++) {
-            String sha1 = getHash(i);
-            if (sha1 != null)
-                _indexes.put(sha1, new Integer(i));
-        }
-    }
-
-    /**
-     * Gets the SHA1 URN for a row.
-     */
-    private String getHash(int idx) {
-        if (idx >= getRowCount())
-            return null;
-        return get(idx).getHash();
-    }
-
     /**
      * Compares the count between two rows.
      */
@@ -223,11 +285,11 @@ class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, UISearch
      * Fast match -- lookup in the table.
      */
     private int fastMatch(String sha1) {
-        Integer idx = _indexes.get(sha1);
-        if (idx == null)
+        SearchResultDataLine tl = _indexes.get(sha1);
+        if (tl == null)
             return -1;
         else
-            return idx.intValue();
+            return _rows.indexOf(tl);
     }
 
     public int getTotalResults() {
@@ -15,9 +15,21 @@ class SearchEngineFilter implements TableLineFilter<SearchResultDataLine> {
     }
 
     public boolean allow(SearchResultDataLine node) {
+        if (allow(node.getSearchEngine())) {
+            return true;
+        }
+        // the duplicates reported by other engines
+        for (String source : node.getSearchResult().getSources()) {
+            if (allow(SearchEngine.getSearchEngineByName(source))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean allow(SearchEngine searchEngine) {
         boolean result = false;
-        final SearchEngine searchEngine = node.getSearchEngine();
-        JCheckBox box = engineCheckboxes.get(searchEngine);
+        JCheckBox box = searchEngine != null ? engineCheckboxes.get(searchEngine) : null;
         if (box != null) {
             result = searchEngine.isEnabled() && box.isEnabled() && box.isSelected();
         }
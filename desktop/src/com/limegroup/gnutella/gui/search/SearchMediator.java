@@ -15,7 +15,6 @@
 
 package com.limegroup.gnutella.gui.search;
 
-import com.frostwire.gui.filters.SearchFilter;
 import com.frostwire.gui.filters.SearchFilterFactory;
 import com.frostwire.gui.filters.SearchFilterFactoryImpl;
 import com.frostwire.gui.tabs.TransfersTab;
@@ -94,6 +93,8 @@ public final class SearchMediator {
 
     static final String CLOSE_TABS_TO_THE_RIGHT = I18n.tr("Close Tabs to the Right");
 
+    private static final long CRAWL_MEMORY_CACHE_SIZE = 32 * 1024 * 1024; // 32MB
+
     private final SearchManager manager;
 
     /**
@@ -104,6 +105,8 @@ public final class SearchMediator {
 
     private static SearchFilterFactory SEARCH_FILTER_FACTORY;
 
+    private static SearchResultDispatcher RESULT_DISPATCHER;
+
     private static final SearchMediator instance = new SearchMediator();
 
     public static SearchMediator instance() {
@@ -131,7 +134,7 @@ public final class SearchMediator {
         });
 
         try {
-            CrawlPagedWebSearchPerformer.setCache(new DatabaseCrawlCache());
+            CrawlPagedWebSearchPerformer.setCache(new MemoryCrawlCache(new DatabaseCrawlCache(), CRAWL_MEMORY_CACHE_SIZE));
         } catch (Throwable t) {
             LOG.error("could not set database crawl cache", t);
         }
@@ -139,6 +142,10 @@ public final class SearchMediator {
         CrawlPagedWebSearchPerformer.setMagnetDownloader(new LibTorrentMagnetDownloader());
 
         this.manager = SearchManager.getInstance();
+        // more engines are searched at once than on a device
+        this.manager.setGlobalBudget(8);
+        this.manager.setEngineBudget(3);
+        this.manager.setTokenTimeout(SearchManager.DEFAULT_TOKEN_TIMEOUT);
         this.manager.setListener(new SearchListener() {
             @Override
             public void onResults(long token, List<? extends SearchResult> results) {
@@ -265,20 +272,20 @@ public final class SearchMediator {
         }
     }
 
-    private List<SearchResult> filter(List<SearchResult> results, List<String> searchTokens) {
+    private List<SearchResult> filter(List<SearchResult> results, QueryMatcher matcher) {
         List<SearchResult> list;
 
-        if (searchTokens == null || searchTokens.isEmpty()) {
+        if (matcher == null) {
             list = Collections.emptyList();
         } else {
-            list = filter2(results, searchTokens);
+            list = filter2(results, matcher);
         }
 
         return list;
     }
 
-    private List<SearchResult> filter2(List<? extends SearchResult> results, List<String> searchTokens) {
-        List<SearchResult> list = new LinkedList<SearchResult>();
+    private List<SearchResult> filter2(List<? extends SearchResult> results, QueryMatcher matcher) {
+        List<SearchResult> list = new ArrayList<SearchResult>(results.size());
 
         try {
             for (SearchResult sr : results) {
@@ -286,7 +293,7 @@ public final class SearchMediator {
                     // special case for youtube
                     if (sr instanceof YouTubeCrawledSearchResult) {
                         list.add(sr);
-                    } else if (filter(new LinkedList<String>(searchTokens), sr)) {
+                    } else if (matcher.matches(sr)) {
                         list.add(sr);
                     }
                 } else {
@@ -301,32 +308,6 @@ public final class SearchMediator {
         return list;
     }
 
-    private boolean filter(List<String> tokens, SearchResult sr) {
-        StringBuilder sb = new StringBuilder();
-
-        sb.append(sr.getDisplayName());
-        if (sr instanceof CrawledSearchResult) {
-            sb.append(((CrawledSearchResult) sr).getParent().getDisplayName());
-        }
-
-        if (sr instanceof FileSearchResult) {
-            sb.append(((FileSearchResult) sr).getFilename());
-        }
-
-        String str = sanitize(sb.toString());
-        str = normalize(str);
-
-        Iterator<String> it = tokens.iterator();
-        while (it.hasNext()) {
-            String token = it.next();
-            if (str.contains(token)) {
-                it.remove();
-            }
-        }
-
-        return tokens.isEmpty();
-    }
-
     private static String stripHtml(String str) {
         str = str.replaceAll("\\<.*?>", "");
         str = str.replaceAll("\\&.*?\\;", "");
@@ -379,13 +360,13 @@ public final class SearchMediator {
         });
     }
 
-    private static List<UISearchResult> convertResults(List<? extends SearchResult> results, SearchEngine engine, String query) {
+    private static List<UISearchResult> convertResults(List<? extends SearchResult> results, SearchEngine engine, String query, SearchDeduplicator dedup) {
 
         List<UISearchResult> result = new ArrayList<UISearchResult>();
 
         for (SearchResult sr : results) {
 
-            UISearchResult ui = null;
+            AbstractUISearchResult ui = null;
 
             if (sr instanceof YouTubeCrawledSearchResult) {
                 ui = new YouTubeUISearchResult((YouTubeCrawledSearchResult) sr, engine, query);
@@ -398,6 +379,9 @@ public final class SearchMediator {
             }
 
             if (ui != null) {
+                if (dedup != null) {
+                    ui.setGroup(dedup.group(sr));
+                }
                 result.add(ui);
             }
         }
@@ -524,6 +508,17 @@ public final class SearchMediator {
         return RESULT_DISPLAYER;
     }
 
+    /**
+     * Called from the search threads, only one dispatcher (queue and timer)
+     * keeps the order of the results and the end of the searches.
+     */
+    static synchronized SearchResultDispatcher getSearchResultDispatcher() {
+        if (RESULT_DISPATCHER == null) {
+            RESULT_DISPATCHER = new SearchResultDispatcher(getSearchResultDisplayer());
+        }
+        return RESULT_DISPATCHER;
+    }
+
     public static SearchFilterFactory getSearchFilterFactory() {
         if (SEARCH_FILTER_FACTORY == null) {
             SEARCH_FILTER_FACTORY = new SearchFilterFactoryImpl();
@@ -537,7 +532,7 @@ public final class SearchMediator {
 
         if (rp != null && !rp.isStopped()) {
             @SuppressWarnings("unchecked")
-            List<SearchResult> filtered = filter((List<SearchResult>) results, rp.getSearchTokens());
+            List<SearchResult> filtered = filter((List<SearchResult>) results, rp.getQueryMatcher());
 
             if (filtered != null && !filtered.isEmpty()) {
 
@@ -546,33 +541,27 @@ public final class SearchMediator {
                     return;
                 }
 
-                final List<UISearchResult> uiResults = convertResults(filtered, se, rp.getQuery());
-
-                GUIMediator.safeInvokeAndWait(new Runnable() {
-                    public void run() {
-                        try {
-                            SearchFilter filter = getSearchFilterFactory().createFilter();
-                            for (UISearchResult sr : uiResults) {
-                                if (filter.allow(sr)) {
-                                    getSearchResultDisplayer().addQueryResult(token, sr, rp);
-                                }
-                            }
-                        } catch (Exception e) {
-                            LOG.error("Error adding search result to UI", e);
-                        }
-                    }
+                final List<UISearchResult> uiResults = convertResults(filtered, se, rp.getQuery(), manager.deduplicator(token));
 
-                });
+                // filtered and added in the EDT, in batches
+                getSearchResultDispatcher().dispatch(token, rp, uiResults);
             }
         }
     }
 
-    private void onFinished(long token) {
-        SearchResultMediator rp = getResultPanelForGUID(token);
-        if (rp != null) {
-            updateSearchIcon(token, false);
-            rp.setToken(0); // to identify that the search is stopped (needs refactor)
-        }
+    private void onFinished(final long token) {
+        // after the results still in flight
+        getSearchResultDispatcher().dispatch(new Runnable() {
+            @Override
+            public void run() {
+                SearchResultMediator rp = getResultPanelForGUID(token);
+                if (rp != null) {
+                    updateSearchIcon(token, false);
+                    rp.setToken(0); // to identify that the search is stopped (needs refactor)
+                }
+                LOG.debug(getSearchResultDispatcher().toString());
+            }
+        });
     }
 
     public void clearCache() {
@@ -60,7 +60,6 @@ public final class SearchResultDataLine extends AbstractDataLine<UISearchResult>
     private Date addedOn;
     private SearchResultActionsHolder actionsHolder;
     private SearchResultNameHolder name;
-    private String seeds;
     private Icon icon;
     private SizeHolder size;
     private SourceHolder source;
@@ -80,7 +79,6 @@ public final class SearchResultDataLine extends AbstractDataLine<UISearchResult>
         addedOn = sr.getCreationTime() > 0 ? new Date(sr.getCreationTime()) : null;
         actionsHolder = new SearchResultActionsHolder(sr);
         name = new SearchResultNameHolder(sr);
-        seeds = RESULT.getSeeds() <= 0 || !(RESULT instanceof TorrentUISearchResult) ? "" : String.valueOf(RESULT.getSeeds());
         icon = getIcon();
         size = new SizeHolder(getSize());
         source = new SourceHolder(RESULT);
@@ -239,7 +237,9 @@ public final class SearchResultDataLine extends AbstractDataLine<UISearchResult>
         case SearchTableColumns.ACTIONS_IDX:
             return actionsHolder;
         case SearchTableColumns.COUNT_IDX:
-            return seeds;
+            // the seeds of the duplicates merged later
+            int seeds = RESULT.getSeeds();
+            return seeds <= 0 || !(RESULT instanceof TorrentUISearchResult) ? "" : String.valueOf(seeds);
         case SearchTableColumns.TYPE_IDX:
             return icon;
         case SearchTableColumns.NAME_IDX:
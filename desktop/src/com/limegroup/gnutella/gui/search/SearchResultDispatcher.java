@@ -0,0 +1,250 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.limegroup.gnutella.gui.search;
+
+import com.frostwire.gui.filters.SearchFilter;
+import com.frostwire.logging.Logger;
+
+import javax.swing.Timer;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers the search results to the result panels without blocking the
+ * search threads.
+ * <p>
+ * The results are queued and drained in the EDT at most once per frame,
+ * all the results of a panel in a frame are added with one table event
+ * and one tab title update. Tasks dispatched with {@link #dispatch(Runnable)}
+ * run in the EDT after the results dispatched before them.
+ *
+ * @author gubatron
+ * @author aldenml
+ */
+final class SearchResultDispatcher {
+
+    private static final Logger LOG = Logger.getLogger(SearchResultDispatcher.class);
+
+    private static final int FRAME_MILLIS = 50;
+
+    // not a hard limit, the batches are not split
+    private static final int MAX_RESULTS_PER_FRAME = 2000;
+
+    private final SearchResultDisplayer displayer;
+
+    private final ConcurrentLinkedQueue<Batch> queue;
+    private final AtomicBoolean scheduled;
+    private final Timer timer;
+
+    private final AtomicLong queued;
+    private final AtomicLong delivered;
+    private final AtomicLong frames;
+    private final AtomicLong totalLatency;
+    private final AtomicLong maxLatency;
+
+    SearchResultDispatcher(SearchResultDisplayer displayer) {
+        this.displayer = displayer;
+
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.scheduled = new AtomicBoolean();
+        this.timer = new Timer(FRAME_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                drain();
+            }
+        });
+
+        this.queued = new AtomicLong();
+        this.delivered = new AtomicLong();
+        this.frames = new AtomicLong();
+        this.totalLatency = new AtomicLong();
+        this.maxLatency = new AtomicLong();
+    }
+
+    /**
+     * Safe to call from any thread, never blocks.
+     */
+    void dispatch(long token, SearchResultMediator rp, List<UISearchResult> results) {
+        if (results.isEmpty()) {
+            return;
+        }
+
+        queue.offer(new Batch(token, rp, results, null));
+        queued.addAndGet(results.size());
+
+        schedule();
+    }
+
+    /**
+     * Runs the task in the EDT once the results already dispatched are added.
+     */
+    void dispatch(Runnable task) {
+        queue.offer(new Batch(0, null, Collections.<UISearchResult>emptyList(), task));
+
+        schedule();
+    }
+
+    long queued() {
+        return queued.get();
+    }
+
+    long delivered() {
+        return delivered.get();
+    }
+
+    long frames() {
+        return frames.get();
+    }
+
+    /**
+     * Average time in milliseconds from the dispatch of a result to its
+     * addition to the table.
+     */
+    long avgLatency() {
+        long n = delivered.get();
+        return n > 0 ? totalLatency.get() / n : 0;
+    }
+
+    long maxLatency() {
+        return maxLatency.get();
+    }
+
+    @Override
+    public String toString() {
+        long f = frames.get();
+        return "SearchResultDispatcher[queued=" + queued.get() + ", delivered=" + delivered.get() +
+                ", frames=" + f + ", results/frame=" + (f > 0 ? delivered.get() / f : 0) +
+                ", avgLatency=" + avgLatency() + "ms, maxLatency=" + maxLatency() + "ms]";
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            timer.start();
+        }
+    }
+
+    // in the EDT
+    private void drain() {
+        long now = System.currentTimeMillis();
+
+        Map<SearchResultMediator, Lines> panels = new LinkedHashMap<>();
+        SearchFilter filter = SearchMediator.getSearchFilterFactory().createFilter();
+
+        int count = 0;
+        Batch b;
+        while (count < MAX_RESULTS_PER_FRAME && (b = queue.poll()) != null) {
+            count += b.results.size();
+
+            long latency = now - b.timestamp;
+            totalLatency.addAndGet(latency * b.results.size());
+            if (latency > maxLatency.get()) {
+                maxLatency.set(latency);
+            }
+            delivered.addAndGet(b.results.size());
+
+            if (b.task != null) {
+                flush(panels);
+                run(b.task);
+                continue;
+            }
+
+            // a new search in the same panel
+            if (!b.rp.matches(b.token)) {
+                continue;
+            }
+
+            Lines lines = panels.get(b.rp);
+            if (lines == null) {
+                lines = new Lines(b.token);
+                panels.put(b.rp, lines);
+            }
+
+            for (UISearchResult sr : b.results) {
+                if (filter.allow(sr)) {
+                    lines.add(sr);
+                }
+            }
+        }
+
+        flush(panels);
+
+        if (count > 0) {
+            frames.incrementAndGet();
+        }
+
+        if (queue.isEmpty()) {
+            timer.stop();
+            scheduled.set(false);
+            // a dispatch between the check and the flag reset
+            if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+                timer.start();
+            }
+        }
+    }
+
+    private void flush(Map<SearchResultMediator, Lines> panels) {
+        for (Map.Entry<SearchResultMediator, Lines> e : panels.entrySet()) {
+            try {
+                displayer.addQueryResults(e.getValue().token, e.getValue(), e.getKey());
+            } catch (Throwable t) {
+                LOG.error("Error adding search results to UI", t);
+            }
+        }
+        panels.clear();
+    }
+
+    private static void run(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable t) {
+            LOG.error("Error running search UI task", t);
+        }
+    }
+
+    private static final class Batch {
+
+        private final long token;
+        private final SearchResultMediator rp;
+        private final List<UISearchResult> results;
+        private final Runnable task;
+        private final long timestamp;
+
+        Batch(long token, SearchResultMediator rp, List<UISearchResult> results, Runnable task) {
+            this.token = token;
+            this.rp = rp;
+            this.results = results;
+            this.task = task;
+            this.timestamp = System.currentTimeMillis();
+        }
+    }
+
+    private static final class Lines extends ArrayList<UISearchResult> {
+
+        private final long token;
+
+        Lines(long token) {
+            this.token = token;
+        }
+    }
+}
@@ -327,6 +327,28 @@ public final class SearchResultDisplayer implements RefreshListener {
         tabbedPane.setTitleAt(resultPanelIndex, titleOf(rp));
     }
 
+    /**
+     * Same as {@link #addQueryResult(long, UISearchResult, SearchResultMediator)}
+     * for many lines, with one table event and one title update.
+     */
+    void addQueryResults(long token, List<UISearchResult> lines, SearchResultMediator rp) {
+        if (rp.isStopped() || lines.isEmpty()) {
+            return;
+        }
+
+        if (!rp.matches(token))//GUID of rp!=replyGuid
+            throw new IllegalArgumentException("guids don't match");
+
+        rp.addAll(lines);
+
+        int resultPanelIndex = entries.indexOf(rp);
+        if (resultPanelIndex == -1) {
+            return;
+        }
+
+        tabbedPane.setTitleAt(resultPanelIndex, titleOf(rp));
+    }
+
     void updateSearchIcon(SearchResultMediator rp, boolean active) {
         int resultPanelIndex;
         // Search for the ResultPanel to verify it exists.
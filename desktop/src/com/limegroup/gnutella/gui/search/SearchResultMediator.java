@@ -25,6 +25,7 @@ import com.frostwire.gui.theme.SkinMenu;
 import com.frostwire.gui.theme.SkinMenuItem;
 import com.frostwire.gui.theme.SkinPopupMenu;
 import com.frostwire.gui.theme.ThemeMediator;
+import com.frostwire.search.QueryMatcher;
 import com.frostwire.search.SearchResult;
 import com.frostwire.search.torrent.TorrentSearchResult;
 import com.frostwire.uxstats.UXAction;
@@ -53,6 +54,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -77,6 +79,11 @@ public final class SearchResultMediator extends AbstractTableMediator<TableRowFi
 
     private final List<String> searchTokens;
 
+    /**
+     * Matches the crawled results against the search tokens, built once per search.
+     */
+    private final QueryMatcher queryMatcher;
+
     /**
      * The CompositeFilter for this ResultPanel.
      */
@@ -121,6 +128,7 @@ public final class SearchResultMediator extends AbstractTableMediator<TableRowFi
         FILTER = null;
         this.token = 0;
         this.searchTokens = null;
+        this.queryMatcher = null;
         setButtonEnabled(SearchButtons.TORRENT_DETAILS_BUTTON_INDEX, false);
         // disable dnd for overlay panel
         TABLE.setDragEnabled(false);
@@ -140,6 +148,7 @@ public final class SearchResultMediator extends AbstractTableMediator<TableRowFi
         SEARCH_INFO = info;
         this.token = token;
         this.searchTokens = searchTokens;
+        this.queryMatcher = searchTokens != null && !searchTokens.isEmpty() ? QueryMatcher.from(searchTokens) : null;
         setupRealTable();
         resetFilters();
     }
@@ -864,6 +873,10 @@ public final class SearchResultMediator extends AbstractTableMediator<TableRowFi
         return searchTokens;
     }
 
+    QueryMatcher getQueryMatcher() {
+        return queryMatcher;
+    }
+
     void updateFiltersPanel() {
         schemaBox.applyFilters();
         searchOptionsPanel.updateFiltersPanel();
@@ -881,4 +894,59 @@ public final class SearchResultMediator extends AbstractTableMediator<TableRowFi
 
         schemaBox.updateCounters(o);
     }
+
+    /**
+     * Adds the results with only one table event, keeping the selection.
+     */
+    void addAll(List<UISearchResult> results) {
+        if (TABLE.isEditing()) {
+            CellEditor editor = TABLE.getCellEditor();
+            editor.cancelCellEditing();
+        }
+
+        boolean inView = TABLE.isSelectionVisible();
+
+        int[] rows = TABLE.getSelectedRows();
+        List<SearchResultDataLine> selected = new ArrayList<SearchResultDataLine>(rows.length);
+        for (int row : rows) {
+            selected.add(DATA_MODEL.get(row));
+        }
+
+        boolean sorted = SETTINGS.REAL_TIME_SORT.getValue() && DATA_MODEL.isSorted();
+
+        DATA_MODEL.beginBatch();
+        try {
+            for (UISearchResult o : results) {
+                if (sorted) {
+                    DATA_MODEL.addSorted(o);
+                } else {
+                    DATA_MODEL.add(o);
+                }
+                schemaBox.updateCounters(o);
+            }
+        } finally {
+            if (DATA_MODEL.endBatch()) {
+                restoreSelection(selected, inView);
+            }
+        }
+    }
+
+    private void restoreSelection(List<SearchResultDataLine> selected, boolean inView) {
+        TABLE.clearSelection();
+
+        int first = -1;
+        for (SearchResultDataLine line : selected) {
+            int row = DATA_MODEL.getRow(line);
+            if (row >= 0 && row < DATA_MODEL.getRowCount()) {
+                TABLE.addRowSelectionInterval(row, row);
+                if (first == -1) {
+                    first = row;
+                }
+            }
+        }
+
+        if (inView && first != -1) {
+            TABLE.ensureRowVisible(first);
+        }
+    }
 }
@@ -16,9 +16,8 @@
 package com.limegroup.gnutella.gui.search;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 import com.frostwire.gui.filters.TableLineFilter;
 import com.limegroup.gnutella.settings.SearchSettings;
@@ -140,52 +139,36 @@ public class TableRowFilteredModel extends ResultPanelModel {
 
     /**
      * Rebuilds the internal map to denote a new filter.
+     *
+     * All the lines are filtered and sorted at once, then loaded
+     * in a single pass.
      */
     private void rebuild() {
-        List<SearchResultDataLine> existing = new ArrayList<SearchResultDataLine>(_list);
-        List<SearchResultDataLine> hidden = new ArrayList<SearchResultDataLine>(HIDDEN);
+        List<SearchResultDataLine> lines = new ArrayList<SearchResultDataLine>(_list.size() + HIDDEN.size());
+        lines.addAll(_list);
+        lines.addAll(HIDDEN);
         simpleClear();
 
-        // For stuff in _list, we can just re-add the DataLines as-is.
-        if (isSorted()) {
-            for (int i = 0; i < existing.size(); i++) {
-                addSorted(existing.get(i));
-            }
-        } else {
-            for (int i = 0; i < existing.size(); i++) {
-                add(existing.get(i));
-            }
-        }
-
-        // Merge the hidden TableLines
-        Map<String, SearchResultDataLine> mergeMap = new HashMap<String, SearchResultDataLine>();
-        for (int i = 0; i < hidden.size(); i++) {
-            SearchResultDataLine tl = hidden.get(i);
-            //SearchResult sr = tl.getInitializeObject();
-            //String urn = sr.getHash();
-
-            if (isSorted()) {
-                addSorted(tl);
+        List<SearchResultDataLine> visible = new ArrayList<SearchResultDataLine>(lines.size());
+        for (SearchResultDataLine tl : lines) {
+            // same as add(SearchResultDataLine, int)
+            if (junkFilter.allow(tl) || !SearchSettings.hideJunk()) {
+                if (allow(tl)) {
+                    visible.add(tl);
+                } else {
+                    HIDDEN.add(tl);
+                    _numResults += 1;
+                }
             } else {
-                add(tl);
+                _numResults += 1;
             }
-
-            //            TableLine tableLine = mergeMap.get(urn);
-            //            if (tableLine == null) {
-            //                mergeMap.put(urn, tl); // re-use TableLines
-            //            } else {
-            //                tableLine.addNewResult(sr, METADATA);
-            //            }
         }
 
-        // And add them
         if (isSorted()) {
-            for (SearchResultDataLine line : mergeMap.values())
-                addSorted(line);
-        } else {
-            for (SearchResultDataLine line : mergeMap.values())
-                add(line);
+            Collections.sort(visible, this);
         }
+
+        load(visible);
     }
 
     public int getFilteredResults() {
@@ -76,6 +76,6 @@ public class TorrentUISearchResult extends AbstractUISearchResult {
 
     @Override
     public int getSeeds() {
-        return sr.getSeeds();
+        return mergedSeeds(sr.getSeeds());
     }
 }
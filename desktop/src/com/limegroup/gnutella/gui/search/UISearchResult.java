@@ -21,6 +21,7 @@ package com.limegroup.gnutella.gui.search;
 import com.frostwire.search.SearchResult;
 
 import javax.swing.*;
+import java.util.Set;
 
 /**
  * A single SearchResult. These are returned in the {@link SearchInputPanel} and
@@ -44,6 +45,11 @@ public interface UISearchResult {
     long getCreationTime();
     
     String getSource();
+
+    /**
+     * The sources that reported this result, the first one included.
+     */
+    Set<String> getSources();
     
     /**
      * Returns the extension of this result.